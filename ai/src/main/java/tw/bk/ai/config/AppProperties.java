@@ -4,6 +4,10 @@ import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import tw.bk.ai.entity.type.PackedVector;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * 應用程式自訂屬性
@@ -19,15 +23,31 @@ public class AppProperties {
     private Llm llm = new Llm();
     private RateLimit rateLimit = new RateLimit();
     private Cors cors = new Cors();
+    private PasswordHash passwordHash = new PasswordHash();
+    private Search search = new Search();
+    private Transfer transfer = new Transfer();
+    private Purge purge = new Purge();
+    private Title title = new Title();
+    private Id id = new Id();
+    private Replica replica = new Replica();
+    private Archive archive = new Archive();
+    private Vector vector = new Vector();
+    private Embedding embedding = new Embedding();
+    private Ingest ingest = new Ingest();
+    private Retrieval retrieval = new Retrieval();
 
     @Getter
     @Setter
     public static class Jwt {
         private String secret;
-        private long expiration = 86400000; // 24 hours
+        private long expiration = 900000; // 15 minutes
         private long refreshExpiration = 604800000; // 7 days
         private String cookieName = "access_token";
         private String cookiePath = "/";
+        private String refreshCookieName = "refresh_token";
+        private String refreshCookiePath = "/api/auth"; // 只在認證端點攜帶 Refresh Token
+        private long revocationSyncMillis = 5000;
+        private long revocationSyncOverlapMillis = 60000; // 每次同步重讀此期間內已越過的 id，補上較晚 commit 的較小 id
         private String cookieDomain; // 新增：支援跨子網域
         private String cookieSameSite = "Lax";
         private boolean cookieSecure = false;
@@ -52,6 +72,7 @@ public class AppProperties {
         private String reasoningEffort = "medium";
         private Integer maxCompletionTokens;
         private int maxTokens = 4096;
+        private int promptTokenBudget = 12000; // 系統提示 + 歷史 + 檢索 context 的估算 token 上限
     }
 
     @Getter
@@ -61,4 +82,155 @@ public class AppProperties {
         private int maxRequests = 30;
         private int windowSeconds = 60;
     }
+
+    @Getter
+    @Setter
+    public static class PasswordHash {
+        private int strength = 10; // BCrypt cost，調整後登入時自動重新雜湊
+        private int poolSize = 2;
+        private int queueCapacity = 32;
+        private long maxQueueWaitMillis = 2000;
+    }
+
+    @Getter
+    @Setter
+    public static class Search {
+        private String indexDir = "data/search-index"; // 本機索引目錄（每個節點各自一份）
+        private int flushDocs = 2000; // MemTable 累積筆數達此值即寫出區段
+        private long flushIntervalMillis = 30000;
+        private int maxSegments = 8; // 單一使用者區段數超過即合併
+        private long syncMillis = 2000; // 輪詢新訊息間隔
+        private long idleEvictMinutes = 30; // 使用者索引閒置超過此時間即釋放（區段 mmap 與 heap 內的索引資料）
+    }
+
+    @Getter
+    @Setter
+    public static class Transfer {
+        private int exportFetchSize = 500; // 匯出時每次由伺服器端 cursor 取回的列數
+        private int maxConcurrentExports = 2; // 每個匯出佔用一條連線直到完成
+        private int importBatchSize = 500;
+        private int maxImportContentLength = 1_000_000;
+    }
+
+    @Getter
+    @Setter
+    public static class Purge {
+        private int batchSize = 1000; // 每次 DELETE ... LIMIT 的列數
+        private long pauseMillis = 20; // 批次間停頓
+        private int maxAttempts = 5;
+        private long staleAfterSeconds = 300; // 執行中工作超過此時間無進度即視為中斷，可被重新認領
+        private long recoverMillis = 60000;
+    }
+
+    @Getter
+    @Setter
+    public static class Title {
+        private boolean enabled = true;
+        private String model; // 未設定時使用 LLM 預設模型，建議指定小型快速模型
+        private int batchSize = 16; // 單次 LLM 呼叫最多處理的對話數
+        private long maxDelayMillis = 5000; // 未湊滿一批時的最長等待
+        private int queueCapacity = 1000;
+        private int maxInputChars = 500; // 每段問答送入模型的最大字元數
+        private int maxTitleLength = 50;
+    }
+
+    @Getter
+    @Setter
+    public static class Id {
+        private Integer nodeId; // 0 ~ 15；未設定時由資料庫租約（id_node_leases）配發，設定時須自行確保各節點不同
+        private long leaseSeconds = 60; // 節點編號租約期限，續約間隔為 lease-renew-millis
+        private long reorderWindowMillis = 10000; // 以 id 游標追趕時重讀的視窗：涵蓋節點時鐘偏差與交易提交延遲
+    }
+
+    @Getter
+    @Setter
+    public static class Replica {
+        private boolean enabled = false;
+        private List<String> urls = new ArrayList<>(); // 副本 JDBC URL
+        private String username; // 未設定時沿用主庫帳號
+        private String password; // 未設定時沿用主庫密碼
+        private int poolSize = 10;
+        private String lagQuery = "SHOW REPLICA STATUS"; // 自訂查詢時以第一欄為延遲秒數
+        private long maxLagSeconds = 5; // 超過即暫停分流到該副本
+        private int checkTimeoutSeconds = 2;
+        private long checkMillis = 5000;
+        private long readYourWritesMillis = 5000; // 使用者寫入後此期間內的讀取走主庫
+    }
+
+    @Getter
+    @Setter
+    public static class Archive {
+        private boolean enabled = true;
+        private int idleDays = 30; // 最後活動（或上次還原）超過此天數的對話移入封存
+        private int batchSize = 200; // 每次掃描的對話數
+        private int maxChatsPerRun = 1000;
+        private int maxMessagesPerChat = 5000; // 超過此訊息數的對話不封存（單一交易與封存列大小上限）
+        private long runMillis = 3600000;
+        private int decodedCacheSize = 64; // 保留解碼結果的封存對話數，分頁讀取時不重複解壓
+    }
+
+    @Getter
+    @Setter
+    public static class Vector {
+        private int m = 16; // 每個節點的鄰居數（第 0 層為兩倍）
+        private int efConstruction = 100; // 建構時的搜尋寬度（越大圖品質越好、建構越慢）
+        private int efSearch = 64; // 查詢預設搜尋寬度，可逐次覆寫
+        private int maxK = 100;
+        private long syncMillis = 5000; // 輪詢新切塊間隔
+        private long idleEvictMinutes = 60; // 已載入索引閒置超過此時間即釋放記憶體
+        private double compactDeletedRatio = 0.2; // 墓碑比例超過即合併全部區段
+        private int maxSegments = 8; // 區段數超過即合併較小的區段
+        private double bm25K1 = 1.2; // 詞彙索引詞頻飽和參數
+        private double bm25B = 0.75; // 詞彙索引文件長度正規化
+        private boolean snapshotEnabled = true;
+        private String snapshotDir = "data/vector-index"; // 本機索引快照目錄（每個節點各自一份）
+        private int snapshotMinChanges = 1000; // 快照後累積異動達此數即寫出新快照
+    }
+
+    @Getter
+    @Setter
+    public static class Embedding {
+        private String provider = "local"; // local（雜湊，離線 / 測試用）或 openai（OpenAI 相容 API）
+        private String apiKey;
+        private String baseUrl = "https://api.openai.com/v1";
+        private String model = "text-embedding-3-small";
+        private Integer dimensions; // openai 時傳給 API（模型須支援）；local 未設定時為 384
+        private int maxBatchSize = 256; // 每次 API 呼叫的筆數上限
+        private int maxBatchTokens = 100_000; // 每次 API 呼叫的估算 token 上限，被拒時自動縮小
+        private int maxInputTokens = 8000; // 單筆超過即截斷
+        private int maxAttempts = 3; // 429 / 5xx / 連線錯誤的重試次數
+        private long timeoutSeconds = 30;
+        private PackedVector.Format storageFormat = PackedVector.Format.FLOAT32; // INT8 約為 1/4 大小
+        private int migrationBatchSize = 500; // 舊 JSON 向量轉換每批列數
+        private int migrationBatchesPerRun = 20;
+        private long migrationMillis = 10000;
+        private int queryBatchSize = 16; // 查詢向量合併成一次呼叫的筆數上限
+        private long queryMaxWaitMillis = 5; // 未湊滿一批時最長等待
+        private long queryDeadlineMillis = 250; // 單一查詢向量的硬性期限（應小於 retrieval.budget-millis）
+    }
+
+    @Getter
+    @Setter
+    public static class Ingest {
+        private boolean enabled = true;
+        private int chunkChars = 1000;
+        private int chunkOverlapChars = 100; // 上限為 chunkChars 的四分之一
+        private int embedBatchSize = 32; // 每次嵌入呼叫的切塊數（亦為每次寫入交易的列數）
+        private int embedThreads = 2; // 每份文件的嵌入並行數
+        private int queueCapacity = 4; // 各段之間佇列的批次數（背壓）
+        private int concurrentDocuments = 2;
+        private long pollMillis = 5000;
+        private long staleAfterSeconds = 300; // 處理中文件超過此時間無進度即視為中斷，可被重新認領
+    }
+
+    @Getter
+    @Setter
+    public static class Retrieval {
+        private int topK = 8; // 融合後送入 prompt 的切塊數
+        private int candidates = 50; // 每個檢索器取回的候選數
+        private int rrfK = 60; // RRF 常數：分數 = Σ 1 / (rrfK + 排名)
+        private long budgetMillis = 300; // 檢索延遲預算，逾時的檢索器以空結果參與融合
+        private double maxContextShare = 0.6; // context 最多佔 prompt 預算的比例（歷史用不完時可再多）
+        private double duplicateThreshold = 0.8; // 與已選切塊詞彙包含度達此值視為重複
+    }
 }
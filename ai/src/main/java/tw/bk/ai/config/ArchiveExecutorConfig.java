@@ -0,0 +1,25 @@
+package tw.bk.ai.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Executor for rehydrating archived chats in the background after a cold read.
+ * Single thread: rehydration is rare and each task is one short transaction.
+ */
+@Configuration
+public class ArchiveExecutorConfig {
+
+    @Bean(name = "archiveExecutor")
+    public TaskExecutor archiveExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("archive-");
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,56 @@
+package tw.bk.ai.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+
+/**
+ * Exports Hibernate second-level and query cache statistics per region to Actuator
+ * (hibernate.cache.hits / misses / puts and hibernate.cache.hit.ratio).
+ */
+@Configuration
+@RequiredArgsConstructor
+public class CacheMetricsConfig {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final MeterRegistry meterRegistry;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void registerCacheMetrics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        if (!statistics.isStatisticsEnabled()) {
+            return;
+        }
+        // Statistics 由 SessionFactory 持有；各區域統計物件每次查詢重新建立，不可直接作為量測對象（弱參照）
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            FunctionCounter.builder("hibernate.cache.hits", statistics,
+                            s -> s.getCacheRegionStatistics(region).getHitCount())
+                    .tag("region", region)
+                    .register(meterRegistry);
+            FunctionCounter.builder("hibernate.cache.misses", statistics,
+                            s -> s.getCacheRegionStatistics(region).getMissCount())
+                    .tag("region", region)
+                    .register(meterRegistry);
+            FunctionCounter.builder("hibernate.cache.puts", statistics,
+                            s -> s.getCacheRegionStatistics(region).getPutCount())
+                    .tag("region", region)
+                    .register(meterRegistry);
+            Gauge.builder("hibernate.cache.hit.ratio", statistics, s -> hitRatio(s.getCacheRegionStatistics(region)))
+                    .tag("region", region)
+                    .register(meterRegistry);
+        }
+    }
+
+    private static double hitRatio(CacheRegionStatistics statistics) {
+        long total = statistics.getHitCount() + statistics.getMissCount();
+        return total == 0 ? 0 : (double) statistics.getHitCount() / total;
+    }
+}
@@ -0,0 +1,44 @@
+package tw.bk.ai.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import tw.bk.ai.entity.id.NodeIdLease;
+import tw.bk.ai.entity.id.TimeOrderedIds;
+
+import javax.sql.DataSource;
+
+/**
+ * Configures the node id of the time-ordered id generator.
+ * Runs as a HibernatePropertiesCustomizer so it is applied before the EntityManagerFactory is built.
+ * Without an explicit app.id.node-id the node id is leased from the database, and startup fails
+ * instead of guessing an id that could collide with another instance.
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class IdGeneratorConfig {
+
+    private final AppProperties appProperties;
+
+    @Bean
+    public NodeIdLease nodeIdLease(DataSource dataSource) {
+        return new NodeIdLease(new JdbcTemplate(dataSource), appProperties.getId().getLeaseSeconds());
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer timeOrderedIdCustomizer(NodeIdLease nodeIdLease) {
+        return properties -> {
+            Integer configured = appProperties.getId().getNodeId();
+            if (configured != null) {
+                TimeOrderedIds.configure(configured);
+                log.info("Time-ordered id generator using configured node id {}", configured);
+                return;
+            }
+            nodeIdLease.acquire();
+        };
+    }
+}
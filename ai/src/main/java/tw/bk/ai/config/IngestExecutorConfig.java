@@ -0,0 +1,31 @@
+package tw.bk.ai.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Executor for document ingestion pipelines.
+ * Each document in flight runs its chunking thread, its embedding threads and one writer here,
+ * so the pool is sized for exactly that; admission is limited by IngestService, not by a queue.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class IngestExecutorConfig {
+
+    private final AppProperties appProperties;
+
+    @Bean(name = "ingestExecutor")
+    public ThreadPoolTaskExecutor ingestExecutor() {
+        AppProperties.Ingest config = appProperties.getIngest();
+        int threads = Math.max(1, config.getConcurrentDocuments()) * (Math.max(1, config.getEmbedThreads()) + 2);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("ingest-");
+        executor.initialize();
+        return executor;
+    }
+}
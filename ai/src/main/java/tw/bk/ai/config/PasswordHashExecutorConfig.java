@@ -0,0 +1,29 @@
+package tw.bk.ai.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Dedicated executor for password hashing (login / register).
+ * Keeps BCrypt work off the Tomcat request threads.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class PasswordHashExecutorConfig {
+
+    private final AppProperties appProperties;
+
+    @Bean(name = "passwordHashExecutor")
+    public ThreadPoolTaskExecutor passwordHashExecutor() {
+        AppProperties.PasswordHash config = appProperties.getPasswordHash();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(config.getPoolSize());
+        executor.setMaxPoolSize(config.getPoolSize());
+        executor.setQueueCapacity(config.getQueueCapacity());
+        executor.setThreadNamePrefix("pwd-hash-");
+        executor.initialize();
+        return executor;
+    }
+}
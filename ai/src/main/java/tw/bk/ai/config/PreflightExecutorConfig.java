@@ -0,0 +1,30 @@
+package tw.bk.ai.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Executor for the pre-flight stages of an LLM stream
+ * (user message persistence, history load, retrieval), which run concurrently.
+ * Sized for three stages per streaming job; when saturated the stage runs on the
+ * calling stream thread, which degrades to the sequential path instead of failing.
+ */
+@Configuration
+public class PreflightExecutorConfig {
+
+    @Bean(name = "preflightExecutor")
+    public TaskExecutor preflightExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(8);
+        executor.setMaxPoolSize(48);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("llm-preflight-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+}
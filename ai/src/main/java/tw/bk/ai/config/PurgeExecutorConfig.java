@@ -0,0 +1,25 @@
+package tw.bk.ai.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Executor for background purge jobs (chat / knowledge base deletion).
+ * Kept small so bulk deletes never compete with request traffic for connections.
+ */
+@Configuration
+public class PurgeExecutorConfig {
+
+    @Bean(name = "purgeExecutor")
+    public TaskExecutor purgeExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("purge-");
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,26 @@
+package tw.bk.ai.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Executor for coalesced query embedding calls.
+ * Each task sends one batch of concurrent retrieval queries to the embedding provider;
+ * several batches may be in flight at once.
+ */
+@Configuration
+public class QueryEmbeddingExecutorConfig {
+
+    @Bean(name = "queryEmbeddingExecutor")
+    public TaskExecutor queryEmbeddingExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(8);
+        executor.setQueueCapacity(32);
+        executor.setThreadNamePrefix("query-embed-");
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,82 @@
+package tw.bk.ai.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+import tw.bk.ai.datasource.DataSourceRouting;
+import tw.bk.ai.datasource.ReadWriteRoutingDataSource;
+import tw.bk.ai.datasource.ReplicaHealthMonitor;
+import tw.bk.ai.datasource.ReplicaNode;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read/write splitting across MySQL replicas (enabled with app.replica.enabled=true).
+ * The primary pool keeps the spring.datasource settings; read-only transactions are routed
+ * to healthy replicas and fall back to the primary when none is available.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "app.replica", name = "enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    public List<ReplicaNode> replicaNodes(DataSourceProperties properties, AppProperties appProperties) {
+        AppProperties.Replica config = appProperties.getReplica();
+        if (config.getUrls().isEmpty()) {
+            throw new IllegalStateException("app.replica.enabled=true requires at least one app.replica.urls entry");
+        }
+        List<ReplicaNode> nodes = new ArrayList<>();
+        for (int i = 0; i < config.getUrls().size(); i++) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("replica-" + i);
+            dataSource.setDriverClassName(properties.getDriverClassName());
+            dataSource.setJdbcUrl(config.getUrls().get(i));
+            dataSource.setUsername(StringUtils.hasText(config.getUsername())
+                    ? config.getUsername() : properties.getUsername());
+            dataSource.setPassword(StringUtils.hasText(config.getPassword())
+                    ? config.getPassword() : properties.getPassword());
+            dataSource.setMaximumPoolSize(config.getPoolSize());
+            dataSource.setReadOnly(true);
+            // 副本離線不應阻止啟動，由健康檢查決定是否分流
+            dataSource.setInitializationFailTimeout(-1);
+            nodes.add(new ReplicaNode(dataSource.getPoolName(), dataSource));
+        }
+        return nodes;
+    }
+
+    @Bean
+    public ReplicaHealthMonitor replicaHealthMonitor(List<ReplicaNode> replicaNodes, AppProperties appProperties,
+            MeterRegistry meterRegistry) {
+        AppProperties.Replica config = appProperties.getReplica();
+        return new ReplicaHealthMonitor(replicaNodes, config.getLagQuery(), config.getMaxLagSeconds(),
+                config.getCheckTimeoutSeconds(), meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, List<ReplicaNode> replicaNodes,
+            AppProperties appProperties, MeterRegistry meterRegistry) {
+        DataSourceRouting.configure(appProperties.getReplica().getReadYourWritesMillis());
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primaryDataSource, replicaNodes,
+                meterRegistry);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+}
@@ -0,0 +1,25 @@
+package tw.bk.ai.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Executor for knowledge base retrieval.
+ * Lexical and vector retrievers of one query run here in parallel.
+ */
+@Configuration
+public class RetrievalExecutorConfig {
+
+    @Bean(name = "retrievalExecutor")
+    public TaskExecutor retrievalExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(16);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("retrieval-");
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,12 @@
+package tw.bk.ai.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * 啟用排程任務（撤銷清單同步等背景工作）
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -2,13 +2,17 @@ package tw.bk.ai.config;
 
 import lombok.RequiredArgsConstructor;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpMethod;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
@@ -19,7 +23,6 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
@@ -29,6 +32,7 @@ import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import tw.bk.ai.exception.ErrorCode;
 import tw.bk.ai.filter.JwtAuthFilter;
 import tw.bk.ai.result.Result;
+import tw.bk.ai.security.BulkheadPasswordEncoder;
 import tw.bk.ai.security.SecurityUserService;
 
 import java.io.IOException;
@@ -46,9 +50,14 @@ public class SecurityConfig {
     private final JwtAuthFilter jwtAuthFilter;
     private final SecurityUserService securityUserService;
     private final ObjectMapper objectMapper;
+    private final AppProperties appProperties;
 
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, AuthenticationProvider authenticationProvider,
+            @Value("${server.port:8080}") int serverPort,
+            @Value("${management.server.port:-1}") int managementPort) throws Exception {
+        // 管理埠與服務埠相同時不放行，避免 metrics 隨設定變更公開
+        boolean separateManagementPort = managementPort > 0 && managementPort != serverPort;
         http
                 .cors(Customizer.withDefaults())
                 // 停用 CSRF（使用 JWT 無狀態認證）
@@ -60,9 +69,14 @@ public class SecurityConfig {
                 // 配置授權規則
                 .authorizeHttpRequests(auth -> auth
                         // 公開端點
-                        .requestMatchers("/api/auth/register", "/api/auth/login").permitAll()
+                        .requestMatchers("/api/auth/register", "/api/auth/login",
+                                "/api/auth/refresh", "/api/auth/logout").permitAll()
                         .requestMatchers("/api/health", "/api/health/**").permitAll()
-                        .requestMatchers("/actuator/**").permitAll()
+                        // 監控端點：健康與版本資訊公開，其餘（metrics 等）只接受管理埠（預設僅綁定本機）的請求
+                        .requestMatchers("/actuator/health", "/actuator/health/**", "/actuator/info").permitAll()
+                        .requestMatchers(request -> separateManagementPort && request.getLocalPort() == managementPort
+                                && request.getRequestURI().startsWith("/actuator/")).permitAll()
+                        .requestMatchers("/actuator/**").denyAll()
                         .requestMatchers("/swagger-ui/**", "/v3/api-docs/**").permitAll()
                         .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
 
@@ -80,7 +94,7 @@ public class SecurityConfig {
                                 response, HttpStatus.FORBIDDEN, ErrorCode.AUTH_FORBIDDEN)))
 
                 // 設定認證提供者
-                .authenticationProvider(authenticationProvider())
+                .authenticationProvider(authenticationProvider)
 
                 // 添加 JWT 過濾器
                 .addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class);
@@ -102,15 +116,16 @@ public class SecurityConfig {
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/api/**", config);
-        source.registerCorsConfiguration("/actuator/**", config);
         return source;
     }
 
     @Bean
-    public AuthenticationProvider authenticationProvider() {
+    public AuthenticationProvider authenticationProvider(PasswordEncoder passwordEncoder) {
         DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
         provider.setUserDetailsService(securityUserService);
-        provider.setPasswordEncoder(passwordEncoder());
+        provider.setPasswordEncoder(passwordEncoder);
+        // cost 調整後，登入成功時自動以新 cost 重新雜湊
+        provider.setUserDetailsPasswordService(securityUserService);
         return provider;
     }
 
@@ -120,8 +135,15 @@ public class SecurityConfig {
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(
+            @Qualifier("passwordHashExecutor") ThreadPoolTaskExecutor passwordHashExecutor,
+            MeterRegistry meterRegistry) {
+        AppProperties.PasswordHash config = appProperties.getPasswordHash();
+        return new BulkheadPasswordEncoder(
+                config.getStrength(),
+                passwordHashExecutor,
+                config.getMaxQueueWaitMillis(),
+                meterRegistry);
     }
 
     private void writeErrorResponse(
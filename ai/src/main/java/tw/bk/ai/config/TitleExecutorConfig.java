@@ -0,0 +1,25 @@
+package tw.bk.ai.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Single-threaded executor that drains the title generation queue.
+ * One drainer at a time keeps batches full and LLM calls sequential.
+ */
+@Configuration
+public class TitleExecutorConfig {
+
+    @Bean(name = "titleExecutor")
+    public TaskExecutor titleExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.setThreadNamePrefix("chat-title-");
+        executor.initialize();
+        return executor;
+    }
+}
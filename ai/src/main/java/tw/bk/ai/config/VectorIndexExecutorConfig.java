@@ -0,0 +1,25 @@
+package tw.bk.ai.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Executor for knowledge base vector index maintenance (catch-up and rebuilds).
+ * Single thread so index writers never contend with each other.
+ */
+@Configuration
+public class VectorIndexExecutorConfig {
+
+    @Bean(name = "vectorIndexExecutor")
+    public TaskExecutor vectorIndexExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(10);
+        executor.setThreadNamePrefix("vector-index-");
+        executor.initialize();
+        return executor;
+    }
+}
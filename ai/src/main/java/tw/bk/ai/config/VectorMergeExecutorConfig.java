@@ -0,0 +1,26 @@
+package tw.bk.ai.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Executor for knowledge base index segment merges, one task per knowledge base.
+ * Kept apart from the maintenance thread so a long HNSW rebuild never delays catch-up,
+ * snapshots or eviction; two threads so one large knowledge base cannot hold back the others.
+ */
+@Configuration
+public class VectorMergeExecutorConfig {
+
+    @Bean(name = "vectorMergeExecutor")
+    public TaskExecutor vectorMergeExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("vector-merge-");
+        executor.initialize();
+        return executor;
+    }
+}
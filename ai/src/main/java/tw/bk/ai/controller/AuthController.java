@@ -1,5 +1,7 @@
 package tw.bk.ai.controller;
 
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpHeaders;
@@ -36,9 +38,9 @@ public class AuthController {
     @PostMapping("/register")
     public ResponseEntity<Result<AuthMeResp>> register(@Valid @RequestBody RegisterReq req) {
         AuthMeResp resp = authService.register(req);
-        ResponseCookie cookie = buildAccessTokenCookie(resp.getToken());
         return ResponseEntity.status(HttpStatus.CREATED)
-                .header(HttpHeaders.SET_COOKIE, cookie.toString())
+                .header(HttpHeaders.SET_COOKIE, buildAccessTokenCookie(resp.getToken()).toString())
+                .header(HttpHeaders.SET_COOKIE, buildRefreshTokenCookie(resp.getRefreshToken()).toString())
                 .body(Result.ok(resp));
     }
 
@@ -49,23 +51,41 @@ public class AuthController {
     @PostMapping("/login")
     public ResponseEntity<Result<AuthMeResp>> login(@Valid @RequestBody LoginReq req) {
         AuthMeResp resp = authService.login(req);
-        ResponseCookie cookie = buildAccessTokenCookie(resp.getToken());
         return ResponseEntity.ok()
-                .header(HttpHeaders.SET_COOKIE, cookie.toString())
+                .header(HttpHeaders.SET_COOKIE, buildAccessTokenCookie(resp.getToken()).toString())
+                .header(HttpHeaders.SET_COOKIE, buildRefreshTokenCookie(resp.getRefreshToken()).toString())
                 .body(Result.ok(resp));
     }
 
     /**
-     * 登出（前端清除 token 即可，此端點僅供記錄）
+     * 以 Refresh Token Cookie 換發新 Token（輪替）
+     * POST /api/auth/refresh
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<Result<AuthMeResp>> refresh(HttpServletRequest request) {
+        String refreshToken = readCookie(request, appProperties.getJwt().getRefreshCookieName());
+        AuthMeResp resp = authService.refresh(refreshToken);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.SET_COOKIE, buildAccessTokenCookie(resp.getToken()).toString())
+                .header(HttpHeaders.SET_COOKIE, buildRefreshTokenCookie(resp.getRefreshToken()).toString())
+                .body(Result.ok(resp));
+    }
+
+    /**
+     * 登出：撤銷 Access / Refresh Token 並清除 Cookie
      * POST /api/auth/logout
      */
     @PostMapping("/logout")
-    public ResponseEntity<Result<Void>> logout(@AuthenticationPrincipal JwtUserPrincipal principal) {
-        // 無狀態 JWT 不需要伺服器端處理，前端清除 token 即可
-        // 若需要黑名單機制，可在此實作
-        ResponseCookie cookie = clearAccessTokenCookie();
+    public ResponseEntity<Result<Void>> logout(HttpServletRequest request) {
+        AppProperties.Jwt jwt = appProperties.getJwt();
+        authService.logout(
+                resolveAccessToken(request),
+                readCookie(request, jwt.getRefreshCookieName()));
+
         return ResponseEntity.ok()
-                .header(HttpHeaders.SET_COOKIE, cookie.toString())
+                .header(HttpHeaders.SET_COOKIE, clearCookie(jwt.getCookieName(), jwt.getCookiePath()).toString())
+                .header(HttpHeaders.SET_COOKIE,
+                        clearCookie(jwt.getRefreshCookieName(), jwt.getRefreshCookiePath()).toString())
                 .body(Result.ok());
     }
 
@@ -81,28 +101,27 @@ public class AuthController {
 
     private ResponseCookie buildAccessTokenCookie(String token) {
         AppProperties.Jwt jwt = appProperties.getJwt();
-        ResponseCookie.ResponseCookieBuilder builder = ResponseCookie.from(jwt.getCookieName(), token)
-                .httpOnly(jwt.isCookieHttpOnly())
-                .secure(jwt.isCookieSecure())
-                .sameSite(jwt.getCookieSameSite())
-                .path(jwt.getCookiePath())
-                .maxAge(Duration.ofMillis(jwt.getExpiration()));
+        return buildCookie(jwt.getCookieName(), token, jwt.getCookiePath(), Duration.ofMillis(jwt.getExpiration()));
+    }
 
-        if (jwt.getCookieDomain() != null && !jwt.getCookieDomain().isEmpty()) {
-            builder.domain(jwt.getCookieDomain());
-        }
+    private ResponseCookie buildRefreshTokenCookie(String token) {
+        AppProperties.Jwt jwt = appProperties.getJwt();
+        return buildCookie(jwt.getRefreshCookieName(), token, jwt.getRefreshCookiePath(),
+                Duration.ofMillis(jwt.getRefreshExpiration()));
+    }
 
-        return builder.build();
+    private ResponseCookie clearCookie(String name, String path) {
+        return buildCookie(name, "", path, Duration.ZERO);
     }
 
-    private ResponseCookie clearAccessTokenCookie() {
+    private ResponseCookie buildCookie(String name, String value, String path, Duration maxAge) {
         AppProperties.Jwt jwt = appProperties.getJwt();
-        ResponseCookie.ResponseCookieBuilder builder = ResponseCookie.from(jwt.getCookieName(), "")
+        ResponseCookie.ResponseCookieBuilder builder = ResponseCookie.from(name, value)
                 .httpOnly(jwt.isCookieHttpOnly())
                 .secure(jwt.isCookieSecure())
                 .sameSite(jwt.getCookieSameSite())
-                .path(jwt.getCookiePath())
-                .maxAge(Duration.ZERO);
+                .path(path)
+                .maxAge(maxAge);
 
         if (jwt.getCookieDomain() != null && !jwt.getCookieDomain().isEmpty()) {
             builder.domain(jwt.getCookieDomain());
@@ -110,4 +129,25 @@ public class AuthController {
 
         return builder.build();
     }
+
+    private String resolveAccessToken(HttpServletRequest request) {
+        String bearerToken = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (bearerToken != null && bearerToken.startsWith("Bearer ")) {
+            return bearerToken.substring("Bearer ".length());
+        }
+        return readCookie(request, appProperties.getJwt().getCookieName());
+    }
+
+    private String readCookie(HttpServletRequest request, String name) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+        for (Cookie cookie : cookies) {
+            if (name.equals(cookie.getName()) && !cookie.getValue().isEmpty()) {
+                return cookie.getValue();
+            }
+        }
+        return null;
+    }
 }
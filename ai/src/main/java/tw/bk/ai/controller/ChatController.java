@@ -2,23 +2,36 @@ package tw.bk.ai.controller;
 
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import tw.bk.ai.dto.chat.ChatCreateReq;
 import tw.bk.ai.dto.chat.ChatDetailResp;
+import tw.bk.ai.dto.chat.ChatImportResp;
 import tw.bk.ai.dto.chat.ChatResp;
+import tw.bk.ai.dto.chat.ChatSearchHitResp;
 import tw.bk.ai.dto.chat.ChatTitleUpdateReq;
 import tw.bk.ai.dto.chat.MessageSendReq;
+import tw.bk.ai.dto.chat.MessageSyncResp;
+import tw.bk.ai.dto.common.CursorPageResp;
+import tw.bk.ai.dto.purge.PurgeJobResp;
 import tw.bk.ai.result.Result;
 import tw.bk.ai.security.JwtUserPrincipal;
 import tw.bk.ai.service.chat.ChatService;
+import tw.bk.ai.service.chat.ChatTransferService;
+import tw.bk.ai.service.chat.MessageService;
 import tw.bk.ai.service.llm.LlmService;
+import tw.bk.ai.service.search.ChatSearchService;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 對話控制器
@@ -29,7 +42,12 @@ import java.util.List;
 public class ChatController {
 
     private final ChatService chatService;
+    private final MessageService messageService;
     private final LlmService llmService;
+    private final ChatSearchService chatSearchService;
+    private final ChatTransferService chatTransferService;
+
+    private static final String NDJSON = "application/x-ndjson";
 
     /**
      * 建立新對話
@@ -49,27 +67,83 @@ public class ChatController {
     }
 
     /**
-     * 取得對話列表
-     * GET /api/chats
+     * 取得對話列表（游標分頁）
+     * GET /api/chats?cursor=&limit=
      */
     @GetMapping
-    public ResponseEntity<Result<List<ChatResp>>> getChatList(
-            @AuthenticationPrincipal JwtUserPrincipal principal) {
+    public ResponseEntity<Result<CursorPageResp<ChatResp>>> getChatList(
+            @AuthenticationPrincipal JwtUserPrincipal principal,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
 
-        List<ChatResp> chats = chatService.getChatList(principal.getId());
+        CursorPageResp<ChatResp> chats = chatService.getChatList(principal.getId(), cursor, limit);
         return ResponseEntity.ok(Result.ok(chats));
     }
 
     /**
-     * 取得對話詳情（含訊息）
-     * GET /api/chats/{chatId}
+     * 搜尋使用者所有對話的訊息
+     * GET /api/chats/search?q=&limit=
+     */
+    @GetMapping("/search")
+    public ResponseEntity<Result<List<ChatSearchHitResp>>> searchChats(
+            @AuthenticationPrincipal JwtUserPrincipal principal,
+            @RequestParam String q,
+            @RequestParam(defaultValue = "20") int limit) {
+
+        List<ChatSearchHitResp> hits = chatSearchService.search(principal.getId(), q, limit);
+        return ResponseEntity.ok(Result.ok(hits));
+    }
+
+    /**
+     * 匯出使用者所有對話（NDJSON 串流）
+     * GET /api/chats/export
+     */
+    @GetMapping(value = "/export", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> exportChats(
+            @AuthenticationPrincipal JwtUserPrincipal principal) {
+
+        StreamingResponseBody body = chatTransferService.export(principal.getId(), null);
+        return exportResponse("chats.ndjson", body);
+    }
+
+    /**
+     * 匯出單一對話（NDJSON 串流）
+     * GET /api/chats/{chatId}/export
+     */
+    @GetMapping(value = "/{chatId}/export", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> exportChat(
+            @AuthenticationPrincipal JwtUserPrincipal principal,
+            @PathVariable Long chatId) {
+
+        StreamingResponseBody body = chatTransferService.export(principal.getId(), chatId);
+        return exportResponse("chat-" + chatId + ".ndjson", body);
+    }
+
+    /**
+     * 匯入對話（請求本文為 NDJSON，格式同匯出）
+     * POST /api/chats/import
+     */
+    @PostMapping("/import")
+    public ResponseEntity<Result<ChatImportResp>> importChats(
+            @AuthenticationPrincipal JwtUserPrincipal principal,
+            InputStream body) throws IOException {
+
+        ChatImportResp resp = chatTransferService.importChats(principal.getId(), body);
+        return ResponseEntity.status(HttpStatus.CREATED).body(Result.ok(resp));
+    }
+
+    /**
+     * 取得對話詳情（含最新一頁訊息）
+     * GET /api/chats/{chatId}?before=&limit=
      */
     @GetMapping("/{chatId}")
     public ResponseEntity<Result<ChatDetailResp>> getChatDetail(
             @AuthenticationPrincipal JwtUserPrincipal principal,
-            @PathVariable Long chatId) {
+            @PathVariable Long chatId,
+            @RequestParam(required = false) Long before,
+            @RequestParam(defaultValue = "50") int limit) {
 
-        ChatDetailResp resp = chatService.getChatDetail(principal.getId(), chatId);
+        ChatDetailResp resp = chatService.getChatDetail(principal.getId(), chatId, before, limit);
         return ResponseEntity.ok(Result.ok(resp));
     }
 
@@ -78,12 +152,12 @@ public class ChatController {
      * DELETE /api/chats/{chatId}
      */
     @DeleteMapping("/{chatId}")
-    public ResponseEntity<Result<Void>> deleteChat(
+    public ResponseEntity<Result<PurgeJobResp>> deleteChat(
             @AuthenticationPrincipal JwtUserPrincipal principal,
             @PathVariable Long chatId) {
 
-        chatService.deleteChat(principal.getId(), chatId);
-        return ResponseEntity.ok(Result.ok());
+        PurgeJobResp job = chatService.deleteChat(principal.getId(), chatId);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(Result.ok(job));
     }
 
     /**
@@ -100,6 +174,35 @@ public class ChatController {
         return ResponseEntity.ok(Result.ok(resp));
     }
 
+    /**
+     * 增量同步訊息（只回傳 seq 大於 after 的新訊息與目前 high-water mark）
+     * GET /api/chats/{chatId}/messages?after=&limit=
+     */
+    @GetMapping("/{chatId}/messages")
+    public ResponseEntity<Result<MessageSyncResp>> syncMessages(
+            @AuthenticationPrincipal JwtUserPrincipal principal,
+            @PathVariable Long chatId,
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "100") int limit) {
+
+        MessageSyncResp resp = messageService.syncMessages(principal.getId(), chatId, after, limit);
+        return ResponseEntity.ok(Result.ok(resp));
+    }
+
+    /**
+     * 按需取得單則訊息的擴充資料
+     * GET /api/chats/{chatId}/messages/{messageId}/metadata
+     */
+    @GetMapping("/{chatId}/messages/{messageId}/metadata")
+    public ResponseEntity<Result<Map<String, Object>>> getMessageMetadata(
+            @AuthenticationPrincipal JwtUserPrincipal principal,
+            @PathVariable Long chatId,
+            @PathVariable Long messageId) {
+
+        Map<String, Object> metadata = messageService.getMessageMetadata(principal.getId(), chatId, messageId);
+        return ResponseEntity.ok(Result.ok(metadata));
+    }
+
     /**
      * 發送訊息並串流回覆
      * POST /api/chats/{chatId}/messages:stream
@@ -112,4 +215,11 @@ public class ChatController {
 
         return llmService.streamChat(principal.getId(), chatId, req);
     }
+
+    private ResponseEntity<StreamingResponseBody> exportResponse(String filename, StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .body(body);
+    }
 }
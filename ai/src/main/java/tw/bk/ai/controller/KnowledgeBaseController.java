@@ -0,0 +1,49 @@
+package tw.bk.ai.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import tw.bk.ai.dto.purge.PurgeJobResp;
+import tw.bk.ai.result.Result;
+import tw.bk.ai.security.JwtUserPrincipal;
+import tw.bk.ai.service.kb.KnowledgeBaseService;
+
+/**
+ * 知識庫控制器
+ */
+@RestController
+@RequestMapping("/api/knowledge-bases")
+@RequiredArgsConstructor
+public class KnowledgeBaseController {
+
+    private final KnowledgeBaseService knowledgeBaseService;
+
+    /**
+     * 刪除知識庫（背景清除）
+     * DELETE /api/knowledge-bases/{kbId}
+     */
+    @DeleteMapping("/{kbId}")
+    public ResponseEntity<Result<PurgeJobResp>> deleteKnowledgeBase(
+            @AuthenticationPrincipal JwtUserPrincipal principal,
+            @PathVariable Long kbId) {
+
+        PurgeJobResp job = knowledgeBaseService.deleteKnowledgeBase(principal.getId(), kbId);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(Result.ok(job));
+    }
+
+    /**
+     * 重新匯入文件（背景處理，完成前舊版本持續可查詢）
+     * POST /api/knowledge-bases/{kbId}/documents/{docId}/reprocess
+     */
+    @PostMapping("/{kbId}/documents/{docId}/reprocess")
+    public ResponseEntity<Result<Void>> reprocessDocument(
+            @AuthenticationPrincipal JwtUserPrincipal principal,
+            @PathVariable Long kbId,
+            @PathVariable Long docId) {
+
+        knowledgeBaseService.reprocessDocument(principal.getId(), kbId, docId);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(Result.ok());
+    }
+}
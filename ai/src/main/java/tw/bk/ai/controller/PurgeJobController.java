@@ -0,0 +1,33 @@
+package tw.bk.ai.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import tw.bk.ai.dto.purge.PurgeJobResp;
+import tw.bk.ai.result.Result;
+import tw.bk.ai.security.JwtUserPrincipal;
+import tw.bk.ai.service.purge.PurgeService;
+
+/**
+ * 背景刪除工作控制器
+ */
+@RestController
+@RequestMapping("/api/purge-jobs")
+@RequiredArgsConstructor
+public class PurgeJobController {
+
+    private final PurgeService purgeService;
+
+    /**
+     * 查詢刪除進度
+     * GET /api/purge-jobs/{jobId}
+     */
+    @GetMapping("/{jobId}")
+    public ResponseEntity<Result<PurgeJobResp>> getJob(
+            @AuthenticationPrincipal JwtUserPrincipal principal,
+            @PathVariable Long jobId) {
+
+        return ResponseEntity.ok(Result.ok(purgeService.getJob(principal.getId(), jobId)));
+    }
+}
@@ -0,0 +1,91 @@
+package tw.bk.ai.datasource;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import tw.bk.ai.security.JwtUserPrincipal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 讀寫分流的 read-your-writes 控制
+ * 1) 執行緒釘選：onPrimary 範圍內的唯讀交易一律走主庫（寫入後立即讀回的流程）
+ * 2) 使用者黏著：使用者最近寫入後的一段時間內，其唯讀請求走主庫，避開副本延遲
+ */
+public final class DataSourceRouting {
+
+    private static final ThreadLocal<Integer> PRIMARY_PINS = ThreadLocal.withInitial(() -> 0);
+    private static final Map<Long, Long> LAST_WRITE_AT = new ConcurrentHashMap<>();
+
+    private static volatile long stickyMillis = 5000;
+
+    private DataSourceRouting() {
+    }
+
+    public static void configure(long millis) {
+        stickyMillis = millis;
+    }
+
+    /**
+     * 在主庫上執行（可巢狀）
+     */
+    public static <T> T onPrimary(Supplier<T> action) {
+        PRIMARY_PINS.set(PRIMARY_PINS.get() + 1);
+        try {
+            return action.get();
+        } finally {
+            int pins = PRIMARY_PINS.get() - 1;
+            if (pins == 0) {
+                PRIMARY_PINS.remove();
+            } else {
+                PRIMARY_PINS.set(pins);
+            }
+        }
+    }
+
+    /**
+     * 記錄使用者剛寫入（非請求執行緒上的寫入需明確呼叫，例如串流回覆）
+     */
+    public static void markWritten(Long userId) {
+        if (userId != null) {
+            LAST_WRITE_AT.put(userId, System.currentTimeMillis());
+        }
+    }
+
+    static boolean isPinnedToPrimary() {
+        return PRIMARY_PINS.get() > 0;
+    }
+
+    /**
+     * 目前請求的使用者是否仍在寫入後的黏著期間
+     */
+    static boolean isCurrentUserSticky() {
+        Long userId = currentUserId();
+        if (userId == null) {
+            return false;
+        }
+        Long writtenAt = LAST_WRITE_AT.get(userId);
+        return writtenAt != null && System.currentTimeMillis() - writtenAt < stickyMillis;
+    }
+
+    static void markCurrentUserWritten() {
+        markWritten(currentUserId());
+    }
+
+    /**
+     * 清除已過黏著期間的記錄
+     */
+    static void evictExpired() {
+        long cutoff = System.currentTimeMillis() - stickyMillis;
+        LAST_WRITE_AT.values().removeIf(writtenAt -> writtenAt < cutoff);
+    }
+
+    private static Long currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof JwtUserPrincipal principal) {
+            return principal.getId();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,75 @@
+package tw.bk.ai.datasource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 讀寫分流 DataSource
+ * 唯讀交易輪流分配到健康的副本；寫入、read-your-writes 期間或無健康副本時走主庫。
+ * 需包在 LazyConnectionDataSourceProxy 內，讓連線在交易唯讀旗標設定後才取得。
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+
+    private final List<ReplicaNode> replicas;
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    private final Counter primaryCounter;
+    private final Counter replicaCounter;
+    private final Counter fallbackCounter;
+
+    public ReadWriteRoutingDataSource(DataSource primary, List<ReplicaNode> replicas, MeterRegistry meterRegistry) {
+        this.replicas = replicas;
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        replicas.forEach(replica -> targets.put(replica.getName(), replica.getDataSource()));
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+
+        this.primaryCounter = Counter.builder("db.routing").tag("target", "primary").register(meterRegistry);
+        this.replicaCounter = Counter.builder("db.routing").tag("target", "replica").register(meterRegistry);
+        this.fallbackCounter = Counter.builder("db.routing").tag("target", "fallback").register(meterRegistry);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                DataSourceRouting.markCurrentUserWritten();
+            }
+            primaryCounter.increment();
+            return PRIMARY;
+        }
+        if (DataSourceRouting.isPinnedToPrimary() || DataSourceRouting.isCurrentUserSticky()) {
+            primaryCounter.increment();
+            return PRIMARY;
+        }
+
+        int size = replicas.size();
+        if (size == 0) {
+            fallbackCounter.increment();
+            return PRIMARY;
+        }
+        int start = Math.floorMod(cursor.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            ReplicaNode replica = replicas.get((start + i) % size);
+            if (replica.isHealthy()) {
+                replicaCounter.increment();
+                return replica.getName();
+            }
+        }
+        fallbackCounter.increment();
+        return PRIMARY;
+    }
+}
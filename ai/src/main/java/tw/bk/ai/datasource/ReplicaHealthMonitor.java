@@ -0,0 +1,126 @@
+package tw.bk.ai.datasource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * 副本健康與延遲檢查
+ * 定期執行延遲查詢（預設 SHOW REPLICA STATUS）；連線失敗、複寫停止或延遲超過上限即暫停分流到該副本。
+ */
+@Slf4j
+public class ReplicaHealthMonitor implements DisposableBean {
+
+    private static final String[] LAG_COLUMNS = { "Seconds_Behind_Source", "Seconds_Behind_Master" };
+
+    private final List<ReplicaNode> replicas;
+    private final String lagQuery;
+    private final long maxLagSeconds;
+    private final int timeoutSeconds;
+
+    public ReplicaHealthMonitor(List<ReplicaNode> replicas, String lagQuery, long maxLagSeconds,
+            int timeoutSeconds, MeterRegistry meterRegistry) {
+        this.replicas = replicas;
+        this.lagQuery = lagQuery;
+        this.maxLagSeconds = maxLagSeconds;
+        this.timeoutSeconds = timeoutSeconds;
+
+        for (ReplicaNode replica : replicas) {
+            Gauge.builder("db.replica.lag.seconds", replica, ReplicaNode::getLagSeconds)
+                    .tag("replica", replica.getName())
+                    .register(meterRegistry);
+            Gauge.builder("db.replica.healthy", replica, r -> r.isHealthy() ? 1 : 0)
+                    .tag("replica", replica.getName())
+                    .register(meterRegistry);
+        }
+        checkAll();
+    }
+
+    @Scheduled(fixedDelayString = "${app.replica.check-millis:5000}")
+    public void checkAll() {
+        replicas.forEach(this::check);
+        DataSourceRouting.evictExpired();
+    }
+
+    /**
+     * 關閉副本連線池（副本不是 Spring bean，由監控器負責生命週期）
+     */
+    @Override
+    public void destroy() {
+        for (ReplicaNode replica : replicas) {
+            if (replica.getDataSource() instanceof Closeable closeable) {
+                try {
+                    closeable.close();
+                } catch (IOException ex) {
+                    log.warn("Failed to close replica {}: {}", replica.getName(), ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private void check(ReplicaNode replica) {
+        boolean wasHealthy = replica.isHealthy();
+        long lag;
+        try {
+            lag = readLag(replica);
+        } catch (SQLException | RuntimeException ex) {
+            replica.markUnhealthy(-1);
+            if (wasHealthy) {
+                log.warn("Replica {} marked unhealthy: {}", replica.getName(), ex.getMessage());
+            }
+            return;
+        }
+
+        if (lag < 0 || lag > maxLagSeconds) {
+            replica.markUnhealthy(lag);
+            if (wasHealthy) {
+                log.warn("Replica {} marked unhealthy: lag {} s (max {} s)", replica.getName(), lag, maxLagSeconds);
+            }
+        } else {
+            replica.markHealthy(lag);
+            if (!wasHealthy) {
+                log.info("Replica {} healthy, lag {} s", replica.getName(), lag);
+            }
+        }
+    }
+
+    /**
+     * 讀取延遲秒數；複寫未執行（NULL）或查無資料回傳 -1
+     */
+    private long readLag(ReplicaNode replica) throws SQLException {
+        try (Connection connection = replica.getDataSource().getConnection();
+                Statement statement = connection.createStatement()) {
+            statement.setQueryTimeout(timeoutSeconds);
+            try (ResultSet rs = statement.executeQuery(lagQuery)) {
+                if (!rs.next()) {
+                    return -1;
+                }
+                long lag = rs.getLong(lagColumn(rs.getMetaData()));
+                return rs.wasNull() ? -1 : lag;
+            }
+        }
+    }
+
+    private static int lagColumn(ResultSetMetaData meta) throws SQLException {
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            for (String name : LAG_COLUMNS) {
+                if (name.equalsIgnoreCase(meta.getColumnLabel(i))) {
+                    return i;
+                }
+            }
+        }
+        // 自訂查詢（例如 heartbeat 表）以第一欄為延遲秒數
+        return 1;
+    }
+}
@@ -0,0 +1,33 @@
+package tw.bk.ai.datasource;
+
+import lombok.Getter;
+
+import javax.sql.DataSource;
+
+/**
+ * 唯讀副本節點與其最近一次健康檢查結果
+ */
+@Getter
+public class ReplicaNode {
+
+    private final String name;
+    private final DataSource dataSource;
+
+    private volatile boolean healthy;
+    private volatile long lagSeconds = -1;
+
+    public ReplicaNode(String name, DataSource dataSource) {
+        this.name = name;
+        this.dataSource = dataSource;
+    }
+
+    void markHealthy(long lagSeconds) {
+        this.lagSeconds = lagSeconds;
+        this.healthy = true;
+    }
+
+    void markUnhealthy(long lagSeconds) {
+        this.lagSeconds = lagSeconds;
+        this.healthy = false;
+    }
+}
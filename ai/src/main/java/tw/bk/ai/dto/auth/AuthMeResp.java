@@ -1,5 +1,6 @@
 package tw.bk.ai.dto.auth;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -22,6 +23,12 @@ public class AuthMeResp {
     private String displayName;
     private String status;
     private String token;
+
+    /**
+     * Refresh Token 僅透過 HttpOnly Cookie 下發，不出現在回應內容
+     */
+    @JsonIgnore
+    private String refreshToken;
     private LocalDateTime createdAt;
 
     public static AuthMeResp from(User user) {
@@ -39,4 +46,10 @@ public class AuthMeResp {
         resp.setToken(token);
         return resp;
     }
+
+    public static AuthMeResp from(User user, String token, String refreshToken) {
+        AuthMeResp resp = from(user, token);
+        resp.setRefreshToken(refreshToken);
+        return resp;
+    }
 }
@@ -4,14 +4,12 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import tw.bk.ai.entity.Chat;
 
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
- * 對話詳情回應 DTO（含訊息）
+ * 對話詳情回應 DTO（含最新一頁訊息）
  */
 @Data
 @Builder
@@ -21,17 +19,32 @@ public class ChatDetailResp {
 
     private Long id;
     private String title;
+
+    /**
+     * 依 seq 遞增排列的一頁訊息
+     */
     private List<MessageResp> messages;
+
+    /**
+     * 是否還有更早的訊息
+     */
+    private boolean hasMore;
+
+    /**
+     * 載入更早訊息用的 before 游標（本頁最小 seq）
+     */
+    private Long nextBefore;
+
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
-    public static ChatDetailResp from(Chat chat) {
+    public static ChatDetailResp from(ChatResp chat, List<MessageResp> messages, boolean hasMore) {
         return ChatDetailResp.builder()
                 .id(chat.getId())
                 .title(chat.getTitle())
-                .messages(chat.getMessages().stream()
-                        .map(MessageResp::from)
-                        .collect(Collectors.toList()))
+                .messages(messages)
+                .hasMore(hasMore)
+                .nextBefore(hasMore && !messages.isEmpty() ? messages.get(0).getSeq() : null)
                 .createdAt(chat.getCreatedAt())
                 .updatedAt(chat.getUpdatedAt())
                 .build();
@@ -0,0 +1,19 @@
+package tw.bk.ai.dto.chat;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 對話匯入結果 DTO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatImportResp {
+
+    private long importedChats;
+    private long importedMessages;
+}
@@ -0,0 +1,37 @@
+package tw.bk.ai.dto.chat;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 對話搜尋結果 DTO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatSearchHitResp {
+
+    private Long chatId;
+    private String chatTitle;
+    private Long messageId;
+
+    /**
+     * 訊息序號，可用於定位（before = seq + 1 載入該訊息所在頁）
+     */
+    private Long seq;
+
+    private String role;
+
+    /**
+     * 命中位置附近的內容片段
+     */
+    private String snippet;
+
+    private double score;
+    private LocalDateTime createdAt;
+}
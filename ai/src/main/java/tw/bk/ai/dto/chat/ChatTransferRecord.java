@@ -0,0 +1,49 @@
+package tw.bk.ai.dto.chat;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 對話匯出 / 匯入的單行記錄（NDJSON）
+ * 每個對話先輸出一行 type=chat，接著依 seq 輸出該對話的 type=message
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChatTransferRecord {
+
+    public static final String TYPE_CHAT = "chat";
+    public static final String TYPE_MESSAGE = "message";
+
+    private String type;
+
+    /**
+     * 對話 ID（type=chat）；匯入時僅用於對應後續訊息
+     */
+    private Long id;
+
+    /**
+     * 所屬對話 ID（type=message）
+     */
+    private Long chatId;
+
+    private String title;
+    private Long seq;
+    private String role;
+    private String content;
+    private String provider;
+    private String model;
+    private Integer tokenIn;
+    private Integer tokenOut;
+    private JsonNode metadata;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
@@ -4,10 +4,9 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import tw.bk.ai.entity.Message;
+import tw.bk.ai.repository.projection.MessageRow;
 
 import java.time.LocalDateTime;
-import java.util.Map;
 
 /**
  * 訊息回應 DTO
@@ -19,26 +18,33 @@ import java.util.Map;
 public class MessageResp {
 
     private Long id;
+    private Long seq;
     private String role;
     private String content;
     private String provider;
     private String model;
     private Integer tokenIn;
     private Integer tokenOut;
-    private Map<String, Object> metadata;
+
+    /**
+     * 是否有擴充資料（內容請改打 metadata 端點取得）
+     */
+    private boolean hasMetadata;
+
     private LocalDateTime createdAt;
 
-    public static MessageResp from(Message message) {
+    public static MessageResp from(MessageRow row) {
         return MessageResp.builder()
-                .id(message.getId())
-                .role(message.getRole().name())
-                .content(message.getContent())
-                .provider(message.getProvider())
-                .model(message.getModel())
-                .tokenIn(message.getTokenIn())
-                .tokenOut(message.getTokenOut())
-                .metadata(message.getMetadata())
-                .createdAt(message.getCreatedAt())
+                .id(row.id())
+                .seq(row.seq())
+                .role(row.role().name())
+                .content(row.content().text())
+                .provider(row.provider())
+                .model(row.model())
+                .tokenIn(row.tokenIn())
+                .tokenOut(row.tokenOut())
+                .hasMetadata(row.hasMetadata())
+                .createdAt(row.createdAt())
                 .build();
     }
 }
@@ -34,4 +34,9 @@ public class MessageSendReq {
      * 最大 token 數（可選）
      */
     private Integer maxTokens;
+
+    /**
+     * 知識庫 ID（可選，指定時以該知識庫檢索到的內容回答）
+     */
+    private Long knowledgeBaseId;
 }
@@ -0,0 +1,35 @@
+package tw.bk.ai.dto.chat;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 訊息增量同步回應 DTO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageSyncResp {
+
+    private Long chatId;
+
+    /**
+     * seq 大於 after 的訊息（遞增）
+     */
+    private List<MessageResp> messages;
+
+    /**
+     * 對話目前的最大 seq；下次同步以此（或本頁最後一筆 seq）作為 after
+     */
+    private Long highWaterMark;
+
+    /**
+     * 本頁未取完（超過 limit），需以最後一筆 seq 繼續同步
+     */
+    private boolean hasMore;
+}
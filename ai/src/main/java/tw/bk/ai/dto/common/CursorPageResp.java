@@ -0,0 +1,37 @@
+package tw.bk.ai.dto.common;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 游標（keyset）分頁回應 DTO
+ *
+ * @param <T> 項目類型
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPageResp<T> {
+
+    private List<T> items;
+
+    /**
+     * 下一頁游標（無下一頁時為 null）
+     */
+    private String nextCursor;
+
+    private boolean hasMore;
+
+    public static <T> CursorPageResp<T> of(List<T> items, String nextCursor) {
+        return CursorPageResp.<T>builder()
+                .items(items)
+                .nextCursor(nextCursor)
+                .hasMore(nextCursor != null)
+                .build();
+    }
+}
@@ -0,0 +1,41 @@
+package tw.bk.ai.dto.purge;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import tw.bk.ai.entity.PurgeJob;
+
+import java.time.LocalDateTime;
+
+/**
+ * 背景刪除工作回應 DTO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PurgeJobResp {
+
+    private Long id;
+    private String targetType;
+    private Long targetId;
+    private String status;
+    private Long totalRows;
+    private Long deletedRows;
+    private LocalDateTime createdAt;
+    private LocalDateTime finishedAt;
+
+    public static PurgeJobResp from(PurgeJob job) {
+        return PurgeJobResp.builder()
+                .id(job.getId())
+                .targetType(job.getTargetType().name())
+                .targetId(job.getTargetId())
+                .status(job.getStatus().name())
+                .totalRows(job.getTotalRows())
+                .deletedRows(job.getDeletedRows())
+                .createdAt(job.getCreatedAt())
+                .finishedAt(job.getFinishedAt())
+                .build();
+    }
+}
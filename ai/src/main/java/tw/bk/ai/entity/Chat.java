@@ -2,7 +2,10 @@ package tw.bk.ai.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.SQLRestriction;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.time.LocalDateTime;
@@ -13,7 +16,10 @@ import java.util.List;
  * 對話實體
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name = "chats")
+@SQLRestriction("deleted_at IS NULL")
 @Getter
 @Setter
 @Builder
@@ -32,8 +38,11 @@ public class Chat {
     @Column(length = 255)
     private String title;
 
-    @OneToMany(mappedBy = "chat", cascade = CascadeType.ALL, orphanRemoval = true)
-    @OrderBy("createdAt ASC")
+    /**
+     * 不串聯刪除：訊息由 PurgeService 以分批 DELETE 清除
+     */
+    @OneToMany(mappedBy = "chat")
+    @OrderBy("seq ASC")
     @Builder.Default
     private List<Message> messages = new ArrayList<>();
 
@@ -45,6 +54,20 @@ public class Chat {
     @Column(name = "updated_at", nullable = false)
     private LocalDateTime updatedAt;
 
+    /**
+     * 刪除時間（非 null 表示已隱藏、等待背景清除）
+     * 只由 ChatRepository.hide 以條件式更新寫入，實體更新時不寫回，避免以快取中的舊值取消隱藏
+     */
+    @Column(name = "deleted_at", insertable = false, updatable = false)
+    private LocalDateTime deletedAt;
+
+    /**
+     * 封存時間（非 null 表示訊息已移至 chat_archives）
+     * 只由 ChatArchiveService 以 SQL 維護，實體更新時不寫回，避免覆蓋並行的封存 / 還原
+     */
+    @Column(name = "archived_at", insertable = false, updatable = false)
+    private LocalDateTime archivedAt;
+
     // ========== 便捷方法 ==========
 
     public void addMessage(Message message) {
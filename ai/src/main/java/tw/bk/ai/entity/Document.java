@@ -57,7 +57,16 @@ public class Document {
     @Column(name = "metadata_json", columnDefinition = "JSON")
     private Map<String, Object> metadata;
 
-    @OneToMany(mappedBy = "document", cascade = CascadeType.ALL, orphanRemoval = true)
+    /**
+     * 重新匯入中：id 小於此值的切塊為目前發布的舊版本，匯入完成時刪除；NULL 表示沒有進行中的重新匯入
+     */
+    @Column(name = "reingest_from_chunk_id")
+    private Long reingestFromChunkId;
+
+    /**
+     * No cascading delete: chunks are removed by PurgeService in batches.
+     */
+    @OneToMany(mappedBy = "document")
     @Builder.Default
     private List<DocumentChunk> chunks = new ArrayList<>();
 
@@ -5,9 +5,13 @@ import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.type.SqlTypes;
+import tw.bk.ai.entity.id.TimeOrderedId;
+import tw.bk.ai.entity.type.CompressedText;
+import tw.bk.ai.entity.type.CompressedTextConverter;
+import tw.bk.ai.entity.type.PackedVector;
+import tw.bk.ai.entity.type.PackedVectorConverter;
 
 import java.time.LocalDateTime;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -23,7 +27,7 @@ import java.util.Map;
 public class DocumentChunk {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @TimeOrderedId
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -33,8 +37,14 @@ public class DocumentChunk {
     @Column(name = "chunk_index", nullable = false)
     private Integer chunkIndex;
 
-    @Column(nullable = false, columnDefinition = "TEXT")
-    private String content;
+    /**
+     * Chunk 內容（超過門檻時壓縮儲存，讀取時才解壓）
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @Convert(converter = CompressedTextConverter.class)
+    @Column(nullable = false, columnDefinition = "MEDIUMBLOB")
+    private CompressedText content;
 
     @Column(name = "token_count")
     private Integer tokenCount;
@@ -42,9 +52,12 @@ public class DocumentChunk {
     @Column(name = "page_number")
     private Integer pageNumber;
 
-    @JdbcTypeCode(SqlTypes.JSON)
-    @Column(name = "embedding_vector", columnDefinition = "JSON")
-    private List<Double> embeddingVector;
+    /**
+     * 向量嵌入（float32 或 int8 量化的緊湊二進位；舊 JSON 欄位由 EmbeddingMigrationService 轉換）
+     */
+    @Convert(converter = PackedVectorConverter.class)
+    @Column(name = "embedding", columnDefinition = "MEDIUMBLOB")
+    private PackedVector embedding;
 
     @JdbcTypeCode(SqlTypes.JSON)
     @Column(name = "metadata_json", columnDefinition = "JSON")
@@ -54,7 +67,23 @@ public class DocumentChunk {
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
+    public String getContent() {
+        return content != null ? content.text() : null;
+    }
+
+    public void setContent(String content) {
+        this.content = CompressedText.of(content);
+    }
+
     public Long getDocumentId() {
         return document != null ? document.getId() : null;
     }
+
+    public static class DocumentChunkBuilder {
+
+        public DocumentChunkBuilder content(String content) {
+            this.content = CompressedText.of(content);
+            return this;
+        }
+    }
 }
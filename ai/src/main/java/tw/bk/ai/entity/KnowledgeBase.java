@@ -2,7 +2,10 @@ package tw.bk.ai.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.SQLRestriction;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.time.LocalDateTime;
@@ -13,7 +16,10 @@ import java.util.List;
  * Knowledge base entity.
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name = "knowledge_bases")
+@SQLRestriction("deleted_at IS NULL")
 @Getter
 @Setter
 @Builder
@@ -40,7 +46,10 @@ public class KnowledgeBase {
     @Builder.Default
     private KnowledgeBaseStatus status = KnowledgeBaseStatus.ACTIVE;
 
-    @OneToMany(mappedBy = "knowledgeBase", cascade = CascadeType.ALL, orphanRemoval = true)
+    /**
+     * No cascading delete: documents and chunks are removed by PurgeService in batches.
+     */
+    @OneToMany(mappedBy = "knowledgeBase")
     @Builder.Default
     private List<Document> documents = new ArrayList<>();
 
@@ -52,6 +61,12 @@ public class KnowledgeBase {
     @Column(name = "updated_at", nullable = false)
     private LocalDateTime updatedAt;
 
+    /**
+     * Hidden since this time, pending background purge.
+     */
+    @Column(name = "deleted_at")
+    private LocalDateTime deletedAt;
+
     public enum KnowledgeBaseStatus {
         ACTIVE,
         INACTIVE,
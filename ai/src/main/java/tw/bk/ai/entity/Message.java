@@ -5,6 +5,9 @@ import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.type.SqlTypes;
+import tw.bk.ai.entity.id.TimeOrderedId;
+import tw.bk.ai.entity.type.CompressedText;
+import tw.bk.ai.entity.type.CompressedTextConverter;
 
 import java.time.LocalDateTime;
 import java.util.Map;
@@ -22,19 +25,31 @@ import java.util.Map;
 public class Message {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @TimeOrderedId
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "chat_id", nullable = false)
     private Chat chat;
 
+    /**
+     * 對話內的訊息序號（1 起遞增），作為分頁與增量同步的游標
+     */
+    @Column(nullable = false)
+    private Long seq;
+
     @Enumerated(EnumType.STRING)
     @Column(nullable = false, length = 20)
     private MessageRole role;
 
-    @Column(nullable = false, columnDefinition = "TEXT")
-    private String content;
+    /**
+     * 訊息內容（超過門檻時壓縮儲存，讀取時才解壓）
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @Convert(converter = CompressedTextConverter.class)
+    @Column(nullable = false, columnDefinition = "MEDIUMBLOB")
+    private CompressedText content;
 
     @Column(length = 50)
     private String provider;
@@ -65,6 +80,14 @@ public class Message {
 
     // ========== 便捷方法 ==========
 
+    public String getContent() {
+        return content != null ? content.text() : null;
+    }
+
+    public void setContent(String content) {
+        this.content = CompressedText.of(content);
+    }
+
     public Long getChatId() {
         return chat != null ? chat.getId() : null;
     }
@@ -89,4 +112,12 @@ public class Message {
                 .content(content)
                 .build();
     }
+
+    public static class MessageBuilder {
+
+        public MessageBuilder content(String content) {
+            this.content = CompressedText.of(content);
+            return this;
+        }
+    }
 }
@@ -0,0 +1,84 @@
+package tw.bk.ai.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * 背景刪除工作實體
+ * 對話 / 知識庫先隱藏，再由 PurgeService 分批刪除子資料並記錄進度
+ */
+@Entity
+@Table(name = "purge_jobs")
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PurgeJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "target_type", nullable = false, length = 20)
+    private TargetType targetType;
+
+    @Column(name = "target_id", nullable = false)
+    private Long targetId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    @Builder.Default
+    private PurgeStatus status = PurgeStatus.PENDING;
+
+    /**
+     * 開始時估計的待刪除列數
+     */
+    @Column(name = "total_rows")
+    private Long totalRows;
+
+    @Column(name = "deleted_rows", nullable = false)
+    @Builder.Default
+    private Long deletedRows = 0L;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer attempts = 0;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    /**
+     * 每批刪除後更新，兼作執行中工作的心跳
+     */
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    public enum TargetType {
+        CHAT,
+        KNOWLEDGE_BASE
+    }
+
+    public enum PurgeStatus {
+        PENDING,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+}
@@ -0,0 +1,122 @@
+package tw.bk.ai.entity.id;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 以資料庫租約配發時間排序 ID 的節點編號（未設定 app.id.node-id 時使用）
+ * - 每個節點編號在 id_node_leases 中一列，到期時間以資料庫時鐘計算，不受各節點時鐘偏差影響
+ * - 定期續約；本機只在「最後一次續約開始 + 2/3 租期」之前產生 ID，早於資料庫端到期，
+ *   因此停頓或斷線的節點在租約被接手之前就已停止配發
+ * - 正常關閉時釋放租約，重啟可立即取回
+ */
+@Slf4j
+public class NodeIdLease implements DisposableBean {
+
+    private static final String INSERT = """
+            INSERT INTO id_node_leases (node_id, owner, expires_at)
+            VALUES (?, ?, TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP(3)))""";
+    private static final String TAKE_EXPIRED = """
+            UPDATE id_node_leases SET owner = ?, expires_at = TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP(3))
+            WHERE node_id = ? AND expires_at < CURRENT_TIMESTAMP(3)""";
+    private static final String RENEW = """
+            UPDATE id_node_leases SET expires_at = TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP(3))
+            WHERE node_id = ? AND owner = ?""";
+    private static final String RELEASE = "DELETE FROM id_node_leases WHERE node_id = ? AND owner = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long leaseSeconds;
+    private final String owner;
+    private volatile int nodeId = -1;
+
+    public NodeIdLease(JdbcTemplate jdbcTemplate, long leaseSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.leaseSeconds = leaseSeconds;
+        this.owner = hostName() + "/" + UUID.randomUUID();
+    }
+
+    /**
+     * 取得一個空閒（或已過期）的節點編號並設定 ID 產生器
+     *
+     * @throws IllegalStateException 沒有空閒編號或租約表不存在時（啟動即失敗，不以可能碰撞的編號繼續）
+     */
+    public int acquire() {
+        for (int candidate = 0; candidate <= TimeOrderedIds.MAX_NODE_ID; candidate++) {
+            long started = System.nanoTime();
+            if (claim(candidate)) {
+                nodeId = candidate;
+                TimeOrderedIds.configureLeased(candidate, validUntil(started));
+                log.info("Leased time-ordered id node {} as {}", candidate, owner);
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("All " + (TimeOrderedIds.MAX_NODE_ID + 1)
+                + " time-ordered id node ids are leased; set app.id.node-id or wait for stale leases to expire");
+    }
+
+    @Scheduled(fixedDelayString = "${app.id.lease-renew-millis:10000}")
+    public void renew() {
+        int current = nodeId;
+        if (current < 0) {
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            if (jdbcTemplate.update(RENEW, leaseSeconds, current, owner) == 1) {
+                TimeOrderedIds.extendLease(validUntil(started));
+            } else {
+                // 已被其他節點接手：不再延長，期限到後 ID 產生即失敗（需重啟取得新編號）
+                log.error("Time-ordered id node {} lease was taken over, id generation will stop", current);
+            }
+        } catch (DataAccessException ex) {
+            log.warn("Failed to renew time-ordered id node {} lease: {}", current, ex.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        int current = nodeId;
+        if (current < 0) {
+            return;
+        }
+        try {
+            jdbcTemplate.update(RELEASE, current, owner);
+        } catch (DataAccessException ex) {
+            log.warn("Failed to release time-ordered id node {} lease: {}", current, ex.getMessage());
+        }
+    }
+
+    private boolean claim(int candidate) {
+        try {
+            try {
+                return jdbcTemplate.update(INSERT, candidate, owner, leaseSeconds) == 1;
+            } catch (DuplicateKeyException ex) {
+                return jdbcTemplate.update(TAKE_EXPIRED, owner, leaseSeconds, candidate) == 1;
+            }
+        } catch (DataAccessException ex) {
+            throw new IllegalStateException("app.id.node-id is not set and node ids cannot be leased from "
+                    + "id_node_leases (see instruction/schema.sql): " + ex.getMessage(), ex);
+        }
+    }
+
+    private long validUntil(long renewStartedNanos) {
+        return renewStartedNanos + TimeUnit.SECONDS.toNanos(leaseSeconds) * 2 / 3;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException ex) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package tw.bk.ai.entity.id;
+
+/**
+ * 時間排序的 ID 產生器（Snowflake 風格）
+ * 版面：41 bits 毫秒時間戳（自 2025-01-01 UTC 起，約可用 69 年）| 4 bits 節點 | 8 bits 序號，
+ * 共 53 bits，落在 JavaScript Number 可精確表示的範圍內，前端不需改為字串 ID。
+ * 同一節點內嚴格遞增；時鐘倒退或單毫秒序號用盡時沿用/借用下一毫秒，不會重複。
+ * 跨節點只是「大致」依時間排序：節點間的時鐘偏差與交易提交先後，都會讓較小的 id 晚於較大的 id 出現，
+ * 以 id 游標增量追趕的讀取端須以 {@link #rewind} 重讀一段視窗，不能假設 id 依序可見。
+ */
+public final class TimeOrderedIds {
+
+    static final long EPOCH_MILLIS = 1735689600000L;
+
+    static final int NODE_BITS = 4;
+    static final int SEQUENCE_BITS = 8;
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static volatile TimeOrderedIds instance = new TimeOrderedIds(0);
+
+    private final long nodeBits;
+    /**
+     * 節點 ID 由租約取得時，本機判定租約有效的期限（System.nanoTime）；逾期即拒絕產生 ID，
+     * 避免租約被其他節點接手後仍以同一節點 ID 產生重複值
+     */
+    private final boolean leased;
+    private volatile long leaseValidUntil;
+    private long lastMillis = -1;
+    private long sequence;
+
+    private TimeOrderedIds(int nodeId, boolean leased, long leaseValidUntil) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeBits = (long) nodeId << SEQUENCE_BITS;
+        this.leased = leased;
+        this.leaseValidUntil = leaseValidUntil;
+    }
+
+    private TimeOrderedIds(int nodeId) {
+        this(nodeId, false, 0);
+    }
+
+    /**
+     * 設定本節點 ID（啟動時、建立 EntityManagerFactory 之前呼叫）
+     */
+    public static void configure(int nodeId) {
+        instance = new TimeOrderedIds(nodeId);
+    }
+
+    /**
+     * 以租約取得的節點 ID 設定本節點；之後須在期限前以 {@link #extendLease} 延長
+     */
+    public static void configureLeased(int nodeId, long validUntilNanos) {
+        instance = new TimeOrderedIds(nodeId, true, validUntilNanos);
+    }
+
+    public static void extendLease(long validUntilNanos) {
+        instance.leaseValidUntil = validUntilNanos;
+    }
+
+    /**
+     * 回推指定毫秒數後的 id 下界：id 游標減去此視窗後重讀，可補上時鐘偏差或較晚提交的列
+     */
+    public static long rewind(long id, long millis) {
+        return Math.max(0, id - (millis << (NODE_BITS + SEQUENCE_BITS)));
+    }
+
+    /**
+     * 取得下一個 ID
+     */
+    public static long next() {
+        return instance.nextId();
+    }
+
+    /**
+     * 取出 ID 中的建立時間（epoch 毫秒）
+     */
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+    }
+
+    private synchronized long nextId() {
+        if (leased && System.nanoTime() - leaseValidUntil > 0) {
+            throw new IllegalStateException("Node id lease expired, refusing to generate ids until it is renewed");
+        }
+        long now = System.currentTimeMillis() - EPOCH_MILLIS;
+        if (now > lastMillis) {
+            lastMillis = now;
+            sequence = 0;
+        } else {
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if (sequence == 0) {
+                lastMillis++;
+            }
+        }
+        return (lastMillis << (NODE_BITS + SEQUENCE_BITS)) | nodeBits | sequence;
+    }
+}
@@ -0,0 +1,173 @@
+package tw.bk.ai.entity.type;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 壓縮文字（不可變）
+ * 儲存格式：0x00 + 版本 + 內容
+ * - v1：UTF-8 原文（短文字或壓縮無效益時）
+ * - v2：4 bytes 原始長度 + zlib deflate
+ * 不以 0x00 開頭的資料視為欄位改為 BLOB 前的舊 UTF-8 原文。
+ * 從資料庫載入時只保留位元組，第一次讀取文字時才解壓。
+ */
+public final class CompressedText {
+
+    /**
+     * 超過此 UTF-8 位元組數才嘗試壓縮
+     */
+    public static final int COMPRESS_THRESHOLD = 1024;
+
+    private static final byte MARKER = 0x00;
+    private static final byte VERSION_PLAIN = 1;
+    private static final byte VERSION_DEFLATE = 2;
+    private static final int PLAIN_HEADER = 2;
+    private static final int DEFLATE_HEADER = 6;
+
+    private volatile String text;
+    private volatile byte[] stored;
+
+    private CompressedText(String text, byte[] stored) {
+        this.text = text;
+        this.stored = stored;
+    }
+
+    public static CompressedText of(String text) {
+        return text != null ? new CompressedText(text, null) : null;
+    }
+
+    public static CompressedText fromStored(byte[] stored) {
+        return stored != null ? new CompressedText(null, stored) : null;
+    }
+
+    /**
+     * 取得文字（必要時解壓並快取）
+     */
+    public String text() {
+        String value = text;
+        if (value == null) {
+            value = decode(stored);
+            text = value;
+        }
+        return value;
+    }
+
+    /**
+     * 取得儲存格式位元組（必要時編碼並快取）
+     */
+    public byte[] stored() {
+        byte[] value = stored;
+        if (value == null) {
+            value = encode(text);
+            stored = value;
+        }
+        return value;
+    }
+
+    /**
+     * 是否已解壓（尚未讀取文字的實體不需付出解壓成本）
+     */
+    public boolean isDecoded() {
+        return text != null;
+    }
+
+    private static byte[] encode(String text) {
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        if (raw.length > COMPRESS_THRESHOLD) {
+            byte[] compressed = deflate(raw);
+            if (compressed.length < raw.length + PLAIN_HEADER) {
+                return compressed;
+            }
+        }
+        byte[] out = new byte[raw.length + PLAIN_HEADER];
+        out[0] = MARKER;
+        out[1] = VERSION_PLAIN;
+        System.arraycopy(raw, 0, out, PLAIN_HEADER, raw.length);
+        return out;
+    }
+
+    private static String decode(byte[] bytes) {
+        if (bytes.length < PLAIN_HEADER || bytes[0] != MARKER) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        return switch (bytes[1]) {
+            case VERSION_PLAIN -> new String(bytes, PLAIN_HEADER, bytes.length - PLAIN_HEADER, StandardCharsets.UTF_8);
+            case VERSION_DEFLATE -> new String(inflate(bytes), StandardCharsets.UTF_8);
+            default -> throw new IllegalStateException("Unknown compressed text version: " + bytes[1]);
+        };
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + DEFLATE_HEADER);
+            out.write(MARKER);
+            out.write(VERSION_DEFLATE);
+            out.write(raw.length >>> 24);
+            out.write(raw.length >>> 16);
+            out.write(raw.length >>> 8);
+            out.write(raw.length);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes) {
+        int length = ((bytes[2] & 0xFF) << 24) | ((bytes[3] & 0xFF) << 16)
+                | ((bytes[4] & 0xFF) << 8) | (bytes[5] & 0xFF);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, DEFLATE_HEADER, bytes.length - DEFLATE_HEADER);
+            byte[] raw = new byte[length];
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+                int n = inflater.inflate(raw, offset, length - offset);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += n;
+            }
+            if (offset != length) {
+                throw new IllegalStateException("Truncated compressed text: expected " + length + " bytes");
+            }
+            return raw;
+        } catch (DataFormatException ex) {
+            throw new IllegalStateException("Corrupted compressed text", ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 以儲存位元組比較，髒檢查時不會觸發解壓
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof CompressedText other && Arrays.equals(stored(), other.stored());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(stored());
+    }
+
+    @Override
+    public String toString() {
+        return text();
+    }
+}
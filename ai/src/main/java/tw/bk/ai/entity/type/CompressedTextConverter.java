@@ -0,0 +1,25 @@
+package tw.bk.ai.entity.type;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.hibernate.annotations.Mutability;
+import org.hibernate.type.descriptor.java.Immutability;
+
+/**
+ * CompressedText 與 BLOB 欄位的轉換
+ * 載入時不解壓；宣告為不可變，髒檢查只比較參考
+ */
+@Converter
+@Mutability(Immutability.class)
+public class CompressedTextConverter implements AttributeConverter<CompressedText, byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(CompressedText attribute) {
+        return attribute != null ? attribute.stored() : null;
+    }
+
+    @Override
+    public CompressedText convertToEntityAttribute(byte[] dbData) {
+        return CompressedText.fromStored(dbData);
+    }
+}
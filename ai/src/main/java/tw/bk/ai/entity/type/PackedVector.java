@@ -0,0 +1,157 @@
+package tw.bk.ai.entity.type;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * 緊湊向量（不可變）
+ * 儲存格式：0x00 + 格式 + 4 bytes 維度（little-endian）+ 內容
+ * - FLOAT32：維度 × 4 bytes 的 IEEE 754 float（little-endian）
+ * - INT8：4 bytes scale + 維度 × 1 byte，還原值 = q × scale（每個向量各自的對稱量化）
+ * 1536 維的 float32 向量約 6 KB，int8 約 1.5 KB；讀取時直接以 FloatBuffer 檢視或解成 float[]，不產生裝箱物件。
+ */
+public final class PackedVector {
+
+    public enum Format {
+        FLOAT32(1),
+        INT8(2);
+
+        private final byte code;
+
+        Format(int code) {
+            this.code = (byte) code;
+        }
+
+        static Format of(byte code) {
+            for (Format format : values()) {
+                if (format.code == code) {
+                    return format;
+                }
+            }
+            throw new IllegalStateException("Unknown packed vector format: " + code);
+        }
+    }
+
+    private static final byte MARKER = 0x00;
+    private static final int HEADER = 6;
+    private static final int SCALE_BYTES = 4;
+
+    private final byte[] stored;
+    private final Format format;
+    private final int dimension;
+
+    private PackedVector(byte[] stored) {
+        if (stored.length < HEADER || stored[0] != MARKER) {
+            throw new IllegalStateException("Invalid packed vector header");
+        }
+        this.stored = stored;
+        this.format = Format.of(stored[1]);
+        this.dimension = ByteBuffer.wrap(stored, 2, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        int expected = HEADER + (format == Format.FLOAT32 ? dimension * Float.BYTES : SCALE_BYTES + dimension);
+        if (stored.length != expected) {
+            throw new IllegalStateException("Truncated packed vector: expected " + expected + " bytes");
+        }
+    }
+
+    public static PackedVector of(float[] vector, Format format) {
+        if (vector == null) {
+            return null;
+        }
+        return format == Format.INT8 ? int8(vector) : float32(vector);
+    }
+
+    public static PackedVector float32(float[] vector) {
+        ByteBuffer buffer = header(Format.FLOAT32, vector.length, vector.length * Float.BYTES);
+        buffer.asFloatBuffer().put(vector);
+        return new PackedVector(buffer.array());
+    }
+
+    /**
+     * 以最大絕對值 / 127 為 scale 做對稱量化（cosine 排序的誤差通常遠小於模型本身的雜訊）
+     */
+    public static PackedVector int8(float[] vector) {
+        float maxAbs = 0;
+        for (float v : vector) {
+            maxAbs = Math.max(maxAbs, Math.abs(v));
+        }
+        float scale = maxAbs == 0 ? 0 : maxAbs / 127f;
+        ByteBuffer buffer = header(Format.INT8, vector.length, SCALE_BYTES + vector.length);
+        buffer.putFloat(scale);
+        for (float v : vector) {
+            buffer.put(scale == 0 ? 0 : (byte) Math.round(v / scale));
+        }
+        return new PackedVector(buffer.array());
+    }
+
+    public static PackedVector fromStored(byte[] stored) {
+        return stored != null ? new PackedVector(stored) : null;
+    }
+
+    private static ByteBuffer header(Format format, int dimension, int bodyBytes) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER + bodyBytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MARKER).put(format.code).putInt(dimension);
+        return buffer;
+    }
+
+    public byte[] stored() {
+        return stored;
+    }
+
+    public Format format() {
+        return format;
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * 唯讀 float 檢視：FLOAT32 直接檢視儲存位元組（不複製），INT8 需先還原
+     */
+    public FloatBuffer asFloatBuffer() {
+        if (format == Format.FLOAT32) {
+            return body().asFloatBuffer().asReadOnlyBuffer();
+        }
+        return FloatBuffer.wrap(toFloatArray()).asReadOnlyBuffer();
+    }
+
+    /**
+     * 解成新的 float[]（建立索引或計算時使用）
+     */
+    public float[] toFloatArray() {
+        float[] out = new float[dimension];
+        if (format == Format.FLOAT32) {
+            body().asFloatBuffer().get(out);
+            return out;
+        }
+        float scale = body().getFloat();
+        for (int i = 0; i < dimension; i++) {
+            out[i] = stored[HEADER + SCALE_BYTES + i] * scale;
+        }
+        return out;
+    }
+
+    private ByteBuffer body() {
+        return ByteBuffer.wrap(stored, HEADER, stored.length - HEADER).slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof PackedVector other && Arrays.equals(stored, other.stored);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(stored);
+    }
+
+    @Override
+    public String toString() {
+        return "PackedVector[" + format + ", dim=" + dimension + "]";
+    }
+}
@@ -0,0 +1,25 @@
+package tw.bk.ai.entity.type;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.hibernate.annotations.Mutability;
+import org.hibernate.type.descriptor.java.Immutability;
+
+/**
+ * PackedVector 與 BLOB 欄位的轉換
+ * 載入時只包裝位元組；宣告為不可變，髒檢查只比較參考
+ */
+@Converter
+@Mutability(Immutability.class)
+public class PackedVectorConverter implements AttributeConverter<PackedVector, byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(PackedVector attribute) {
+        return attribute != null ? attribute.stored() : null;
+    }
+
+    @Override
+    public PackedVector convertToEntityAttribute(byte[] dbData) {
+        return PackedVector.fromStored(dbData);
+    }
+}
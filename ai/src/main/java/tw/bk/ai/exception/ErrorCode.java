@@ -14,6 +14,7 @@ public enum ErrorCode {
     VALIDATION_FAILED("VALIDATION_FAILED", "Validation failed"),
     INTERNAL_ERROR("INTERNAL_ERROR", "Internal server error"),
     BAD_REQUEST("BAD_REQUEST", "Bad request"),
+    SERVICE_BUSY("SERVICE_BUSY", "Service is busy, please try again later"),
 
     // ========== 認證相關 ==========
     AUTH_INVALID_CREDENTIALS("AUTH_INVALID_CREDENTIALS", "Invalid email or password"),
@@ -27,6 +28,13 @@ public enum ErrorCode {
     CHAT_ACCESS_DENIED("CHAT_ACCESS_DENIED", "Access to chat denied"),
     MESSAGE_NOT_FOUND("MESSAGE_NOT_FOUND", "Message not found"),
 
+    // ========== 知識庫相關 ==========
+    KNOWLEDGE_BASE_NOT_FOUND("KNOWLEDGE_BASE_NOT_FOUND", "Knowledge base not found"),
+    DOCUMENT_NOT_FOUND("DOCUMENT_NOT_FOUND", "Document not found"),
+
+    // ========== 背景工作相關 ==========
+    PURGE_JOB_NOT_FOUND("PURGE_JOB_NOT_FOUND", "Purge job not found"),
+
     // ========== LLM 相關 ==========
     LLM_TIMEOUT("LLM_TIMEOUT", "Model request timeout"),
     LLM_PROVIDER_ERROR("LLM_PROVIDER_ERROR", "LLM provider error"),
@@ -28,4 +28,16 @@ public class NotFoundException extends BizException {
     public static NotFoundException message(Long messageId) {
         return new NotFoundException(ErrorCode.MESSAGE_NOT_FOUND, "messageId=" + messageId);
     }
+
+    public static NotFoundException knowledgeBase(Long knowledgeBaseId) {
+        return new NotFoundException(ErrorCode.KNOWLEDGE_BASE_NOT_FOUND, "knowledgeBaseId=" + knowledgeBaseId);
+    }
+
+    public static NotFoundException document(Long documentId) {
+        return new NotFoundException(ErrorCode.DOCUMENT_NOT_FOUND, "documentId=" + documentId);
+    }
+
+    public static NotFoundException purgeJob(Long jobId) {
+        return new NotFoundException(ErrorCode.PURGE_JOB_NOT_FOUND, "jobId=" + jobId);
+    }
 }
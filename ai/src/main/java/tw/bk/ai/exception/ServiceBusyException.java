@@ -0,0 +1,15 @@
+package tw.bk.ai.exception;
+
+/**
+ * 服務忙碌異常（資源池已滿，稍後重試）
+ */
+public class ServiceBusyException extends BizException {
+
+    public ServiceBusyException() {
+        super(ErrorCode.SERVICE_BUSY);
+    }
+
+    public ServiceBusyException(String message) {
+        super(ErrorCode.SERVICE_BUSY, message);
+    }
+}
@@ -1,5 +1,6 @@
 package tw.bk.ai.filter;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -16,6 +17,7 @@ import org.springframework.web.filter.OncePerRequestFilter;
 import tw.bk.ai.config.AppProperties;
 import tw.bk.ai.security.JwtProvider;
 import tw.bk.ai.security.SecurityUserService;
+import tw.bk.ai.service.auth.TokenRevocationService;
 
 import java.io.IOException;
 import jakarta.servlet.http.Cookie;
@@ -32,6 +34,7 @@ public class JwtAuthFilter extends OncePerRequestFilter {
     private final JwtProvider jwtProvider;
     private final SecurityUserService securityUserService;
     private final AppProperties appProperties;
+    private final TokenRevocationService tokenRevocationService;
 
     private static final String AUTHORIZATION_HEADER = "Authorization";
     private static final String BEARER_PREFIX = "Bearer ";
@@ -44,8 +47,12 @@ public class JwtAuthFilter extends OncePerRequestFilter {
         try {
             String token = extractToken(request);
 
-            if (StringUtils.hasText(token) && jwtProvider.validateToken(token)) {
-                Long userId = jwtProvider.getUserIdFromToken(token);
+            Claims claims = StringUtils.hasText(token) ? jwtProvider.getValidClaims(token) : null;
+
+            // Refresh Token 不可存取 API；已撤銷的 jti 僅查記憶體集合
+            if (claims != null && !jwtProvider.isRefreshToken(claims)
+                    && !tokenRevocationService.isRevoked(claims.getId())) {
+                Long userId = Long.parseLong(claims.getSubject());
                 UserDetails userDetails = securityUserService.loadUserById(userId);
 
                 if (!userDetails.isEnabled()
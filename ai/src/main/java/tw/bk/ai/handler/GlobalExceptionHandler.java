@@ -135,8 +135,11 @@ public class GlobalExceptionHandler {
         return switch (errorCode) {
             case AUTH_INVALID_CREDENTIALS, AUTH_INVALID_TOKEN, AUTH_TOKEN_EXPIRED -> HttpStatus.UNAUTHORIZED;
             case AUTH_FORBIDDEN, CHAT_ACCESS_DENIED -> HttpStatus.FORBIDDEN;
-            case CHAT_NOT_FOUND, MESSAGE_NOT_FOUND, USER_NOT_FOUND -> HttpStatus.NOT_FOUND;
+            case CHAT_NOT_FOUND, MESSAGE_NOT_FOUND, USER_NOT_FOUND, KNOWLEDGE_BASE_NOT_FOUND, DOCUMENT_NOT_FOUND,
+                    PURGE_JOB_NOT_FOUND ->
+                    HttpStatus.NOT_FOUND;
             case RATE_LIMITED -> HttpStatus.TOO_MANY_REQUESTS;
+            case SERVICE_BUSY -> HttpStatus.SERVICE_UNAVAILABLE;
             case VALIDATION_FAILED, BAD_REQUEST -> HttpStatus.BAD_REQUEST;
             default -> HttpStatus.INTERNAL_SERVER_ERROR;
         };
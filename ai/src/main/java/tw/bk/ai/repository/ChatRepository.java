@@ -1,10 +1,18 @@
 package tw.bk.ai.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import tw.bk.ai.dto.chat.ChatResp;
 import tw.bk.ai.entity.Chat;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,12 +22,106 @@ import java.util.Optional;
 @Repository
 public interface ChatRepository extends JpaRepository<Chat, Long> {
 
-    List<Chat> findByUser_IdOrderByUpdatedAtDesc(Long userId);
+    /**
+     * hide / rename 宣告的 query space；不是任何實體的資料表，Hibernate 不會因此清除實體快取區域
+     */
+    String CHAT_STATE_SPACE = "chat_state";
 
-    Optional<Chat> findByIdAndUser_Id(Long id, Long userId);
+    /**
+     * 對話列表第一頁（只讀取 ChatResp 需要的欄位，走 (user_id, updated_at, id) 索引）
+     */
+    @Query("SELECT new tw.bk.ai.dto.chat.ChatResp(c.id, c.title, c.createdAt, c.updatedAt) FROM Chat c "
+            + "WHERE c.user.id = :userId "
+            + "ORDER BY c.updatedAt DESC, c.id DESC")
+    List<ChatResp> findChatPage(Long userId, Limit limit);
 
-    @Query("SELECT c FROM Chat c LEFT JOIN FETCH c.messages WHERE c.id = :chatId AND c.user.id = :userId")
-    Optional<Chat> findByIdAndUserIdWithMessages(Long chatId, Long userId);
+    /**
+     * 對話列表後續頁（keyset：接續 (updatedAt, id) 之後）
+     */
+    @Query("SELECT new tw.bk.ai.dto.chat.ChatResp(c.id, c.title, c.createdAt, c.updatedAt) FROM Chat c "
+            + "WHERE c.user.id = :userId "
+            + "AND (c.updatedAt < :updatedAt OR (c.updatedAt = :updatedAt AND c.id < :id)) "
+            + "ORDER BY c.updatedAt DESC, c.id DESC")
+    List<ChatResp> findChatPageAfter(Long userId, LocalDateTime updatedAt, Long id, Limit limit);
 
-    boolean existsByIdAndUser_Id(Long id, Long userId);
+    /**
+     * 對話詳情的標頭欄位（不建立受管實體）
+     */
+    @Query("SELECT new tw.bk.ai.dto.chat.ChatResp(c.id, c.title, c.createdAt, c.updatedAt) FROM Chat c "
+            + "WHERE c.id = :id AND c.user.id = :userId")
+    Optional<ChatResp> findRowByIdAndUserId(Long id, Long userId);
+
+    /**
+     * 取得使用者擁有的對話（以主鍵查詢，命中二級快取時不查資料庫）
+     * 快取是各節點本機的，archivedAt / deletedAt 可能是其他節點變更前的舊值；
+     * 依這兩個欄位做判斷時改用 findArchivedState、existsByIdAndUser_IdAndDeletedAtIsNull 或條件式 SQL
+     */
+    default Optional<Chat> findOwnedById(Long id, Long userId) {
+        return findById(id).filter(chat -> userId.equals(chat.getUserId()));
+    }
+
+    /**
+     * 對話目前是否封存（JPQL 直接查資料庫，不經二級快取；已刪除或非擁有者時為空）
+     */
+    @Query("SELECT CASE WHEN c.archivedAt IS NULL THEN false ELSE true END FROM Chat c "
+            + "WHERE c.id = :id AND c.user.id = :userId")
+    Optional<Boolean> findArchivedState(Long id, Long userId);
+
+    /**
+     * 對話目前是否封存（不檢查擁有者；呼叫端已驗證過存取權時使用）
+     */
+    boolean existsByIdAndArchivedAtIsNotNull(Long id);
+
+    /**
+     * 其中目前封存中（且未刪除）的對話 id（全文索引合併時保留封存訊息使用）
+     */
+    @Query("SELECT c.id FROM Chat c WHERE c.id IN :ids AND c.archivedAt IS NOT NULL")
+    List<Long> findArchivedIds(Collection<Long> ids);
+
+    /**
+     * 使用者封存中的對話標頭（搜尋命中不在熱資料表時，由封存資料補上）
+     */
+    @Query("SELECT new tw.bk.ai.dto.chat.ChatResp(c.id, c.title, c.createdAt, c.updatedAt) FROM Chat c "
+            + "WHERE c.id IN :ids AND c.user.id = :userId AND c.archivedAt IS NOT NULL")
+    List<ChatResp> findArchivedRows(Long userId, Collection<Long> ids);
+
+    /**
+     * 遞增並取得對話的訊息序號
+     * LAST_INSERT_ID(expr) 讓同一連線可立即讀回新值；列鎖確保同一對話內序號不重複
+     * 只更新未映射的 last_message_seq，以 query space 宣告影響範圍，避免 Hibernate 清空整個二級快取
+     * 已刪除的對話不更新（回傳 0），由資料庫列判斷，不依賴可能過期的快取實體
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "messages"))
+    @Query(value = "UPDATE chats SET last_message_seq = LAST_INSERT_ID(last_message_seq + 1) "
+            + "WHERE id = :chatId AND deleted_at IS NULL", nativeQuery = true)
+    int incrementMessageSeq(Long chatId);
+
+    @Query(value = "SELECT LAST_INSERT_ID()", nativeQuery = true)
+    long lastInsertId();
+
+    /**
+     * 使用者是否擁有未刪除的對話（直接查資料庫；快取實體可能漏掉其他節點的隱藏）
+     */
+    boolean existsByIdAndUser_IdAndDeletedAtIsNull(Long id, Long userId);
+
+    /**
+     * 標記刪除（隱藏）對話，實際資料由背景刪除工作清除
+     * 原生 SQL 並宣告不對應實體的 query space：JPQL 批次更新會鎖定並清空整個 Chat 快取區域，
+     * 這裡只由呼叫端於提交後移除該筆快取
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = CHAT_STATE_SPACE))
+    @Query(value = "UPDATE chats SET deleted_at = :now "
+            + "WHERE id = :id AND user_id = :userId AND deleted_at IS NULL", nativeQuery = true)
+    int hide(Long id, Long userId, LocalDateTime now);
+
+    /**
+     * 更新標題（條件式更新，已刪除的對話不受影響；快取處理同 hide）
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = CHAT_STATE_SPACE))
+    @Query(value = "UPDATE chats SET title = :title, updated_at = :now "
+            + "WHERE id = :id AND user_id = :userId AND deleted_at IS NULL", nativeQuery = true)
+    int rename(Long id, Long userId, String title, LocalDateTime now);
 }
@@ -1,6 +1,7 @@
 package tw.bk.ai.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import tw.bk.ai.entity.DocumentChunk;
 
@@ -15,4 +16,19 @@ public interface DocumentChunkRepository extends JpaRepository<DocumentChunk, Lo
     List<DocumentChunk> findByDocument_IdOrderByChunkIndexAsc(Long documentId);
 
     long countByDocument_Id(Long documentId);
+
+    @Query("SELECT MAX(c.id) FROM DocumentChunk c WHERE c.document.id = :documentId")
+    Long findMaxId(Long documentId);
+
+    /**
+     * 文件中 id 小於 beforeId 的切塊（重新匯入完成時要移除的舊版本）
+     */
+    @Query("SELECT c.id FROM DocumentChunk c WHERE c.document.id = :documentId AND c.id < :beforeId ORDER BY c.id")
+    List<Long> findIdsBefore(Long documentId, Long beforeId);
+
+    /**
+     * 文件中 id 不小於 fromId 的切塊（尚未發布的匯入結果）
+     */
+    @Query("SELECT c.id FROM DocumentChunk c WHERE c.document.id = :documentId AND c.id >= :fromId ORDER BY c.id")
+    List<Long> findIdsFrom(Long documentId, Long fromId);
 }
@@ -1,9 +1,14 @@
 package tw.bk.ai.repository;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import tw.bk.ai.entity.Document;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,4 +21,20 @@ public interface DocumentRepository extends JpaRepository<Document, Long> {
     List<Document> findByKnowledgeBase_IdOrderByUpdatedAtDesc(Long knowledgeBaseId);
 
     Optional<Document> findByIdAndKnowledgeBase_Id(Long id, Long knowledgeBaseId);
+
+    /**
+     * 待匯入或心跳逾時（處理節點中斷）的文件，已刪除的知識庫除外
+     */
+    @Query("SELECT d.id FROM Document d WHERE d.knowledgeBase.deletedAt IS NULL AND (d.status = 'PENDING' "
+            + "OR (d.status = 'PROCESSING' AND d.updatedAt < :staleBefore)) ORDER BY d.id")
+    List<Long> findIngestableIds(LocalDateTime staleBefore, Limit limit);
+
+    /**
+     * 認領文件（條件式更新，多節點下只有一個會成功）
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Document d SET d.status = 'PROCESSING', d.updatedAt = :now WHERE d.id = :id "
+            + "AND (d.status = 'PENDING' OR (d.status = 'PROCESSING' AND d.updatedAt < :staleBefore))")
+    int claimIngest(Long id, LocalDateTime now, LocalDateTime staleBefore);
 }
@@ -1,11 +1,16 @@
 package tw.bk.ai.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 import tw.bk.ai.entity.KnowledgeBase;
 
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Optional;
 
 /**
  * Knowledge base repository.
@@ -13,7 +18,19 @@ import java.util.Optional;
 @Repository
 public interface KnowledgeBaseRepository extends JpaRepository<KnowledgeBase, Long> {
 
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     List<KnowledgeBase> findByUser_IdOrderByUpdatedAtDesc(Long userId);
 
-    Optional<KnowledgeBase> findByIdAndUser_Id(Long id, Long userId);
+    /**
+     * Live ownership check read from the database (the cached entity may miss a hide done on another node).
+     */
+    boolean existsByIdAndUser_IdAndDeletedAtIsNull(Long id, Long userId);
+
+    /**
+     * Soft-hide a knowledge base; documents and chunks are removed by a background purge job.
+     */
+    @Modifying
+    @Query("UPDATE KnowledgeBase kb SET kb.deletedAt = :now "
+            + "WHERE kb.id = :id AND kb.user.id = :userId AND kb.deletedAt IS NULL")
+    int hide(Long id, Long userId, LocalDateTime now);
 }
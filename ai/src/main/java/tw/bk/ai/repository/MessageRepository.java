@@ -1,10 +1,18 @@
 package tw.bk.ai.repository;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import tw.bk.ai.entity.Message;
+import tw.bk.ai.repository.projection.MessageIndexRow;
+import tw.bk.ai.repository.projection.MessageMetadataRow;
+import tw.bk.ai.repository.projection.MessageRow;
+import tw.bk.ai.repository.projection.SearchHitRow;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * 訊息 Repository
@@ -12,7 +20,83 @@ import java.util.List;
 @Repository
 public interface MessageRepository extends JpaRepository<Message, Long> {
 
-    List<Message> findByChat_IdOrderByCreatedAtAsc(Long chatId);
+    String HAS_METADATA = "CASE WHEN m.metadata IS NOT NULL THEN true ELSE false END";
+
+    List<Message> findByChat_IdOrderBySeqAsc(Long chatId);
+
+    /**
+     * 對話全部訊息的投影（seq 遞增）
+     */
+    @Query("SELECT new tw.bk.ai.repository.projection.MessageRow("
+            + "m.id, m.seq, m.role, m.content, m.provider, m.model, m.tokenIn, m.tokenOut, "
+            + HAS_METADATA + ", m.createdAt) "
+            + "FROM Message m WHERE m.chat.id = :chatId ORDER BY m.seq ASC")
+    List<MessageRow> findRowsByChatId(Long chatId);
+
+    /**
+     * 最新一頁訊息（seq 遞減，走 (chat_id, seq) 唯一索引）
+     */
+    @Query("SELECT new tw.bk.ai.repository.projection.MessageRow("
+            + "m.id, m.seq, m.role, m.content, m.provider, m.model, m.tokenIn, m.tokenOut, "
+            + HAS_METADATA + ", m.createdAt) "
+            + "FROM Message m WHERE m.chat.id = :chatId ORDER BY m.seq DESC")
+    List<MessageRow> findLatestRows(Long chatId, Limit limit);
+
+    /**
+     * 指定 seq 之前的一頁訊息（seq 遞減）
+     */
+    @Query("SELECT new tw.bk.ai.repository.projection.MessageRow("
+            + "m.id, m.seq, m.role, m.content, m.provider, m.model, m.tokenIn, m.tokenOut, "
+            + HAS_METADATA + ", m.createdAt) "
+            + "FROM Message m WHERE m.chat.id = :chatId AND m.seq < :before ORDER BY m.seq DESC")
+    List<MessageRow> findRowsBefore(Long chatId, Long before, Limit limit);
+
+    /**
+     * 指定 seq 之後的訊息（seq 遞增，(chat_id, seq) 範圍掃描）
+     */
+    @Query("SELECT new tw.bk.ai.repository.projection.MessageRow("
+            + "m.id, m.seq, m.role, m.content, m.provider, m.model, m.tokenIn, m.tokenOut, "
+            + HAS_METADATA + ", m.createdAt) "
+            + "FROM Message m WHERE m.chat.id = :chatId AND m.seq > :after ORDER BY m.seq ASC")
+    List<MessageRow> findRowsAfter(Long chatId, Long after, Limit limit);
+
+    /**
+     * 對話目前最大 seq（只讀 (chat_id, seq) 索引）
+     */
+    @Query("SELECT MAX(m.seq) FROM Message m WHERE m.chat.id = :chatId")
+    Long findMaxSeq(Long chatId);
+
+    /**
+     * 按需讀取單則訊息的擴充資料（同時驗證對話擁有者）
+     */
+    @Query("SELECT new tw.bk.ai.repository.projection.MessageMetadataRow(m.id, m.metadata) "
+            + "FROM Message m WHERE m.id = :messageId AND m.chat.id = :chatId AND m.chat.user.id = :userId")
+    Optional<MessageMetadataRow> findMetadata(Long userId, Long chatId, Long messageId);
+
+    /**
+     * 全文索引：依 id 載入剛保存的訊息
+     */
+    @Query("SELECT new tw.bk.ai.repository.projection.MessageIndexRow(m.id, c.id, c.user.id, m.content) "
+            + "FROM Message m JOIN m.chat c WHERE m.id IN :ids")
+    List<MessageIndexRow> findIndexRowsByIds(Collection<Long> ids);
+
+    /**
+     * 全文索引：依遞增 id 追趕尚未索引的訊息（主鍵範圍掃描）
+     */
+    @Query("SELECT new tw.bk.ai.repository.projection.MessageIndexRow(m.id, c.id, c.user.id, m.content) "
+            + "FROM Message m JOIN m.chat c WHERE m.id > :afterId ORDER BY m.id ASC")
+    List<MessageIndexRow> findIndexRowsAfter(Long afterId, Limit limit);
+
+    @Query("SELECT m.id FROM Message m WHERE m.id IN :ids")
+    List<Long> findExistingIds(Collection<Long> ids);
+
+    /**
+     * 搜尋結果：只回傳屬於該使用者且仍在熱資料表的訊息（封存中的由 ChatSearchService 自封存資料補上）
+     */
+    @Query("SELECT new tw.bk.ai.repository.projection.SearchHitRow("
+            + "m.id, c.id, c.title, m.seq, m.role, m.content, m.createdAt) "
+            + "FROM Message m JOIN m.chat c WHERE m.id IN :ids AND c.user.id = :userId")
+    List<SearchHitRow> findSearchRows(Long userId, Collection<Long> ids);
 
     long countByChat_Id(Long chatId);
 }
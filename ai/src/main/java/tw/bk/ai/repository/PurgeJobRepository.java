@@ -0,0 +1,54 @@
+package tw.bk.ai.repository;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import tw.bk.ai.entity.PurgeJob;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 背景刪除工作 Repository
+ */
+@Repository
+public interface PurgeJobRepository extends JpaRepository<PurgeJob, Long> {
+
+    Optional<PurgeJob> findByIdAndUserId(Long id, Long userId);
+
+    /**
+     * 待執行或心跳逾時（執行節點中斷）的工作
+     */
+    @Query("SELECT j.id FROM PurgeJob j WHERE j.status = 'PENDING' "
+            + "OR (j.status = 'RUNNING' AND j.updatedAt < :staleBefore) ORDER BY j.id")
+    List<Long> findRunnableIds(LocalDateTime staleBefore, Limit limit);
+
+    /**
+     * 認領工作（條件式更新，多節點下只有一個會成功）
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE PurgeJob j SET j.status = 'RUNNING', j.attempts = j.attempts + 1, j.updatedAt = :now "
+            + "WHERE j.id = :id AND (j.status = 'PENDING' OR (j.status = 'RUNNING' AND j.updatedAt < :staleBefore))")
+    int claim(Long id, LocalDateTime now, LocalDateTime staleBefore);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE PurgeJob j SET j.totalRows = :totalRows, j.updatedAt = :now WHERE j.id = :id")
+    int updateTotal(Long id, long totalRows, LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE PurgeJob j SET j.deletedRows = j.deletedRows + :rows, j.updatedAt = :now WHERE j.id = :id")
+    int addProgress(Long id, long rows, LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE PurgeJob j SET j.status = :status, j.lastError = :error, j.updatedAt = :now, "
+            + "j.finishedAt = :finishedAt WHERE j.id = :id")
+    int finish(Long id, PurgeJob.PurgeStatus status, String error, LocalDateTime now, LocalDateTime finishedAt);
+}
@@ -0,0 +1,13 @@
+package tw.bk.ai.repository.projection;
+
+import tw.bk.ai.entity.type.CompressedText;
+
+/**
+ * 全文索引用的訊息投影（內容與所屬使用者）
+ */
+public record MessageIndexRow(
+        Long id,
+        Long chatId,
+        Long userId,
+        CompressedText content) {
+}
@@ -0,0 +1,11 @@
+package tw.bk.ai.repository.projection;
+
+import java.util.Map;
+
+/**
+ * 訊息擴充資料投影（只讀取 metadata_json）
+ */
+public record MessageMetadataRow(
+        Long id,
+        Map<String, Object> metadata) {
+}
@@ -0,0 +1,23 @@
+package tw.bk.ai.repository.projection;
+
+import tw.bk.ai.entity.Message;
+import tw.bk.ai.entity.type.CompressedText;
+
+import java.time.LocalDateTime;
+
+/**
+ * 訊息輕量投影（不含 metadata_json，不建立受管實體）
+ * hasMetadata 只判斷欄位是否為 NULL，實際內容由 {@link MessageMetadataRow} 按需讀取
+ */
+public record MessageRow(
+        Long id,
+        Long seq,
+        Message.MessageRole role,
+        CompressedText content,
+        String provider,
+        String model,
+        Integer tokenIn,
+        Integer tokenOut,
+        boolean hasMetadata,
+        LocalDateTime createdAt) {
+}
@@ -0,0 +1,19 @@
+package tw.bk.ai.repository.projection;
+
+import tw.bk.ai.entity.Message;
+import tw.bk.ai.entity.type.CompressedText;
+
+import java.time.LocalDateTime;
+
+/**
+ * 搜尋結果投影（訊息與所屬對話標題）
+ */
+public record SearchHitRow(
+        Long messageId,
+        Long chatId,
+        String chatTitle,
+        Long seq,
+        Message.MessageRole role,
+        CompressedText content,
+        LocalDateTime createdAt) {
+}
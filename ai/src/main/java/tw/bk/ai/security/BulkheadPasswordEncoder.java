@@ -0,0 +1,128 @@
+package tw.bk.ai.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import tw.bk.ai.exception.ServiceBusyException;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 隔離式密碼雜湊器
+ * BCrypt 運算交由專屬的有界執行緒池處理；池滿或排隊逾時即回 503，
+ * 避免登入/註冊尖峰佔滿處理對話流量的請求執行緒。
+ */
+@Slf4j
+public class BulkheadPasswordEncoder implements PasswordEncoder {
+
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int ABANDONED = 2;
+
+    private final BCryptPasswordEncoder delegate;
+    private final ThreadPoolTaskExecutor executor;
+    private final long maxQueueWaitMillis;
+
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Timer queueWaitTimer;
+    private final Counter rejectedCounter;
+
+    public BulkheadPasswordEncoder(int strength, ThreadPoolTaskExecutor executor, long maxQueueWaitMillis,
+            MeterRegistry meterRegistry) {
+        this.delegate = new BCryptPasswordEncoder(strength);
+        this.executor = executor;
+        this.maxQueueWaitMillis = maxQueueWaitMillis;
+
+        this.encodeTimer = Timer.builder("auth.password.hash")
+                .tag("op", "encode")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.matchesTimer = Timer.builder("auth.password.hash")
+                .tag("op", "matches")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.queueWaitTimer = Timer.builder("auth.password.queue.wait")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("auth.password.rejected")
+                .register(meterRegistry);
+        Gauge.builder("auth.password.queue.depth", executor, e -> e.getThreadPoolExecutor().getQueue().size())
+                .register(meterRegistry);
+        Gauge.builder("auth.password.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return submit(encodeTimer, () -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return submit(matchesTimer, () -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * 僅比對雜湊前綴中的 cost，不需進入執行緒池
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> T submit(Timer timer, Supplier<T> task) {
+        AtomicInteger state = new AtomicInteger(QUEUED);
+        long enqueuedAt = System.nanoTime();
+
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                // 呼叫端已放棄等待，直接略過以免浪費 CPU
+                if (!state.compareAndSet(QUEUED, RUNNING)) {
+                    return null;
+                }
+                queueWaitTimer.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+                return timer.record(task);
+            });
+        } catch (TaskRejectedException ex) {
+            rejectedCounter.increment();
+            log.warn("Password hash pool saturated, rejecting request");
+            throw new ServiceBusyException();
+        }
+
+        try {
+            try {
+                return future.get(maxQueueWaitMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                if (state.compareAndSet(QUEUED, ABANDONED)) {
+                    rejectedCounter.increment();
+                    log.warn("Password hash queue wait exceeded {} ms", maxQueueWaitMillis);
+                    throw new ServiceBusyException();
+                }
+                // 已開始運算，等待結果即可（單次 BCrypt 時間有上限）
+                return future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            state.compareAndSet(QUEUED, ABANDONED);
+            throw new ServiceBusyException();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Password hashing failed", ex.getCause());
+        }
+    }
+}
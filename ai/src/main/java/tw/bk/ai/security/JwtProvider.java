@@ -9,6 +9,7 @@ import org.springframework.stereotype.Component;
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
+import java.util.UUID;
 
 /**
  * JWT 工具類
@@ -18,13 +19,16 @@ import java.util.Date;
 @Component
 public class JwtProvider {
 
+    public static final String TYPE_ACCESS = "access";
+    public static final String TYPE_REFRESH = "refresh";
+
     private final SecretKey secretKey;
     private final long expiration;
     private final long refreshExpiration;
 
     public JwtProvider(
             @Value("${jwt.secret}") String secret,
-            @Value("${jwt.expiration:86400000}") long expiration,
+            @Value("${jwt.expiration:900000}") long expiration,
             @Value("${jwt.refresh-expiration:604800000}") long refreshExpiration) {
         this.secretKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
         this.expiration = expiration;
@@ -39,8 +43,10 @@ public class JwtProvider {
         Date expiryDate = new Date(now.getTime() + expiration);
 
         return Jwts.builder()
+                .id(UUID.randomUUID().toString())
                 .subject(userId.toString())
                 .claim("email", email)
+                .claim("type", TYPE_ACCESS)
                 .issuedAt(now)
                 .expiration(expiryDate)
                 .signWith(secretKey)
@@ -55,8 +61,9 @@ public class JwtProvider {
         Date expiryDate = new Date(now.getTime() + refreshExpiration);
 
         return Jwts.builder()
+                .id(UUID.randomUUID().toString())
                 .subject(userId.toString())
-                .claim("type", "refresh")
+                .claim("type", TYPE_REFRESH)
                 .issuedAt(now)
                 .expiration(expiryDate)
                 .signWith(secretKey)
@@ -83,9 +90,15 @@ public class JwtProvider {
      * 驗證 Token 是否有效
      */
     public boolean validateToken(String token) {
+        return getValidClaims(token) != null;
+    }
+
+    /**
+     * 驗證並解析 Token，無效時回傳 null（只解析一次簽章）
+     */
+    public Claims getValidClaims(String token) {
         try {
-            parseToken(token);
-            return true;
+            return parseToken(token);
         } catch (ExpiredJwtException ex) {
             log.warn("JWT token expired: {}", ex.getMessage());
         } catch (MalformedJwtException ex) {
@@ -94,8 +107,25 @@ public class JwtProvider {
             log.warn("Unsupported JWT token: {}", ex.getMessage());
         } catch (IllegalArgumentException ex) {
             log.warn("JWT claims string is empty: {}", ex.getMessage());
+        } catch (JwtException ex) {
+            log.warn("JWT signature invalid: {}", ex.getMessage());
         }
-        return false;
+        return null;
+    }
+
+    /**
+     * 是否為 Refresh Token（不可用於存取 API）
+     */
+    public boolean isRefreshToken(Claims claims) {
+        return TYPE_REFRESH.equals(claims.get("type", String.class));
+    }
+
+    public long getExpiration() {
+        return expiration;
+    }
+
+    public long getRefreshExpiration() {
+        return refreshExpiration;
     }
 
     /**
@@ -2,9 +2,12 @@ package tw.bk.ai.security;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 import tw.bk.ai.entity.User;
 import tw.bk.ai.repository.UserRepository;
 
@@ -13,7 +16,7 @@ import tw.bk.ai.repository.UserRepository;
  */
 @Service
 @RequiredArgsConstructor
-public class SecurityUserService implements UserDetailsService {
+public class SecurityUserService implements UserDetailsService, UserDetailsPasswordService {
 
     private final UserRepository userRepository;
 
@@ -31,4 +34,19 @@ public class SecurityUserService implements UserDetailsService {
 
         return JwtUserPrincipal.from(user);
     }
+
+    /**
+     * 登入成功後以新的 BCrypt cost 重新雜湊（由 DaoAuthenticationProvider 觸發）
+     */
+    @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        User user = userRepository.findByEmail(userDetails.getUsername())
+                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + userDetails.getUsername()));
+
+        user.setPasswordHash(newPassword);
+        user = userRepository.save(user);
+
+        return JwtUserPrincipal.from(user);
+    }
 }
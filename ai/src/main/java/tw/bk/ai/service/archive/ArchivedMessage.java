@@ -0,0 +1,31 @@
+package tw.bk.ai.service.archive;
+
+import tw.bk.ai.entity.Message;
+import tw.bk.ai.entity.type.CompressedText;
+import tw.bk.ai.repository.projection.MessageRow;
+
+import java.time.LocalDateTime;
+
+/**
+ * 封存中的單則訊息（保留原 id 與 seq，還原後游標與索引不受影響）
+ */
+public record ArchivedMessage(
+        Long id,
+        long seq,
+        String role,
+        String content,
+        String provider,
+        String model,
+        Integer tokenIn,
+        Integer tokenOut,
+        String metadataJson,
+        LocalDateTime createdAt) {
+
+    /**
+     * 轉為與熱資料查詢相同的投影，讓讀取路徑共用 DTO 轉換
+     */
+    public MessageRow toRow() {
+        return new MessageRow(id, seq, Message.MessageRole.valueOf(role), CompressedText.of(content),
+                provider, model, tokenIn, tokenOut, metadataJson != null, createdAt);
+    }
+}
@@ -0,0 +1,165 @@
+package tw.bk.ai.service.archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 封存資料編碼
+ * 格式：0x00 + 版本 + zlib deflate(訊息數 + 逐則二進位欄位)
+ * 整個對話一起壓縮，同一對話內重複的措辭與欄位值能共用字典，壓縮率遠高於逐則壓縮。
+ */
+final class ChatArchiveCodec {
+
+    private static final byte MARKER = 0x00;
+    private static final byte VERSION = 1;
+
+    private ChatArchiveCodec() {
+    }
+
+    /**
+     * 編碼結果（rawBytes 為壓縮前大小，供觀察壓縮率）
+     */
+    record Encoded(byte[] payload, long rawBytes) {
+    }
+
+    static Encoded encode(List<ArchivedMessage> messages) {
+        try {
+            ByteArrayOutputStream raw = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(raw);
+            out.writeInt(messages.size());
+            for (ArchivedMessage message : messages) {
+                out.writeLong(message.id());
+                out.writeLong(message.seq());
+                writeString(out, message.role());
+                writeString(out, message.content());
+                writeString(out, message.provider());
+                writeString(out, message.model());
+                writeInteger(out, message.tokenIn());
+                writeInteger(out, message.tokenOut());
+                writeString(out, message.metadataJson());
+                out.writeLong(message.createdAt().toEpochSecond(ZoneOffset.UTC));
+            }
+            out.flush();
+
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.size() / 4 + 16);
+            compressed.write(MARKER);
+            compressed.write(VERSION);
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            try (DeflaterOutputStream deflate = new DeflaterOutputStream(compressed, deflater)) {
+                raw.writeTo(deflate);
+            } finally {
+                deflater.end();
+            }
+            return new Encoded(compressed.toByteArray(), raw.size());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    static List<ArchivedMessage> decode(byte[] payload) {
+        List<ArchivedMessage> messages = new ArrayList<>();
+        try {
+            decode(new ByteArrayInputStream(payload), messages::add);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Corrupted chat archive", ex); // 收集到 List 不會拋出
+        }
+        return messages;
+    }
+
+    /**
+     * 邊解壓邊逐則交給 visitor，不保留已處理的訊息（匯出等大量讀取使用，記憶體不隨對話長度成長）
+     * 格式或內容損壞時拋出 IllegalStateException；visitor 的 IOException 原樣拋出
+     */
+    static void decode(InputStream payload, Visitor visitor) throws IOException {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(payload))) {
+            int count = readHeader(payload, in);
+            for (int i = 0; i < count; i++) {
+                visitor.visit(readMessage(in));
+            }
+        }
+    }
+
+    /**
+     * 逐則處理封存訊息
+     */
+    @FunctionalInterface
+    interface Visitor {
+        void visit(ArchivedMessage message) throws IOException;
+    }
+
+    private static int readHeader(InputStream payload, DataInputStream in) {
+        try {
+            if (payload.read() != MARKER || payload.read() != VERSION) {
+                throw new IllegalStateException("Unknown chat archive format");
+            }
+            return in.readInt();
+        } catch (IOException ex) {
+            throw new IllegalStateException("Corrupted chat archive", ex);
+        }
+    }
+
+    private static ArchivedMessage readMessage(DataInputStream in) {
+        try {
+            return new ArchivedMessage(
+                    in.readLong(),
+                    in.readLong(),
+                    readString(in),
+                    readString(in),
+                    readString(in),
+                    readString(in),
+                    readInteger(in),
+                    readInteger(in),
+                    readString(in),
+                    LocalDateTime.ofEpochSecond(in.readLong(), 0, ZoneOffset.UTC));
+        } catch (IOException ex) {
+            throw new IllegalStateException("Corrupted chat archive", ex);
+        }
+    }
+
+    /**
+     * 長度前綴的 UTF-8（-1 表示 null；不用 writeUTF 以免受 64KB 限制）
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+}
@@ -0,0 +1,437 @@
+package tw.bk.ai.service.archive;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tw.bk.ai.config.AppProperties;
+import tw.bk.ai.entity.Chat;
+import tw.bk.ai.entity.type.CompressedText;
+import tw.bk.ai.repository.ChatRepository;
+import tw.bk.ai.repository.MessageRepository;
+import tw.bk.ai.repository.projection.MessageRow;
+import tw.bk.ai.service.chat.MessageSavedEvent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 對話冷熱分層服務
+ * 排程將閒置超過 idleDays 的對話整批移出 messages（壓縮成 chat_archives 單列），讓熱資料表維持精簡。
+ * 讀取時若對話已封存，直接由封存資料回應並在背景還原；寫入（送出新訊息）前則同步還原。
+ */
+@Slf4j
+@Service
+public class ChatArchiveService {
+
+    private static final String SELECT_IDLE_CHATS = """
+            SELECT id FROM chats
+            WHERE updated_at < ? AND archived_at IS NULL AND deleted_at IS NULL
+              AND last_message_seq BETWEEN 1 AND ?
+              AND (rehydrated_at IS NULL OR rehydrated_at < ?)
+              AND id > ?
+            ORDER BY id LIMIT ?""";
+    private static final String CLAIM_ARCHIVE = """
+            UPDATE chats SET archived_at = ?, updated_at = updated_at
+            WHERE id = ? AND updated_at < ? AND archived_at IS NULL AND deleted_at IS NULL
+              AND (rehydrated_at IS NULL OR rehydrated_at < ?)""";
+    private static final String SELECT_MESSAGES = """
+            SELECT id, seq, role, content, provider, model, token_in, token_out, metadata_json, created_at
+            FROM messages WHERE chat_id = ? ORDER BY seq""";
+    private static final String INSERT_ARCHIVE = """
+            INSERT INTO chat_archives (chat_id, message_count, max_seq, raw_bytes, payload, archived_at)
+            VALUES (?, ?, ?, ?, ?, ?)""";
+    private static final String DELETE_MESSAGES = "DELETE FROM messages WHERE chat_id = ?";
+
+    private static final String CLAIM_REHYDRATE = """
+            UPDATE chats SET archived_at = NULL, rehydrated_at = ?, updated_at = updated_at
+            WHERE id = ? AND archived_at IS NOT NULL""";
+    private static final String SELECT_ARCHIVED_AT = "SELECT archived_at FROM chat_archives WHERE chat_id = ?";
+    private static final String SELECT_PAYLOAD = "SELECT archived_at, payload FROM chat_archives WHERE chat_id = ?";
+    private static final String INSERT_MESSAGE = """
+            INSERT INTO messages (id, chat_id, seq, role, content, provider, model, token_in, token_out, metadata_json,
+                                  created_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)""";
+    private static final String DELETE_ARCHIVE = "DELETE FROM chat_archives WHERE chat_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ChatRepository chatRepository;
+    private final MessageRepository messageRepository;
+    private final EntityManagerFactory entityManagerFactory;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+    private final AppProperties appProperties;
+    private final TaskExecutor archiveExecutor;
+
+    private final Set<Long> rehydrating = ConcurrentHashMap.newKeySet();
+    /**
+     * 解碼後的封存內容（LRU；以封存列的 archived_at 驗證，其他節點重新封存 / 還原後自然失效）
+     */
+    private final Map<Long, DecodedArchive> decoded;
+
+    private final Counter archivedCounter;
+    private final Counter rehydratedCounter;
+    private final Counter coldReadCounter;
+    private final DistributionSummary messagesSummary;
+    private final DistributionSummary compressionSummary;
+
+    public ChatArchiveService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+            ChatRepository chatRepository, MessageRepository messageRepository,
+            EntityManagerFactory entityManagerFactory, ApplicationEventPublisher eventPublisher,
+            ObjectMapper objectMapper, AppProperties appProperties,
+            @Qualifier("archiveExecutor") TaskExecutor archiveExecutor, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chatRepository = chatRepository;
+        this.messageRepository = messageRepository;
+        this.entityManagerFactory = entityManagerFactory;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.appProperties = appProperties;
+        this.archiveExecutor = archiveExecutor;
+        int decodedCacheSize = appProperties.getArchive().getDecodedCacheSize();
+        this.decoded = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, DecodedArchive> eldest) {
+                return size() > decodedCacheSize;
+            }
+        };
+
+        this.archivedCounter = Counter.builder("chat.archive.archived").register(meterRegistry);
+        this.rehydratedCounter = Counter.builder("chat.archive.rehydrated").register(meterRegistry);
+        this.coldReadCounter = Counter.builder("chat.archive.cold.reads").register(meterRegistry);
+        this.messagesSummary = DistributionSummary.builder("chat.archive.messages").register(meterRegistry);
+        this.compressionSummary = DistributionSummary.builder("chat.archive.compression.ratio")
+                .register(meterRegistry);
+    }
+
+    // ========== 封存 ==========
+
+    /**
+     * 掃描閒置對話並逐一封存（每個對話一個交易，單次執行有上限）
+     */
+    @Scheduled(fixedDelayString = "${app.archive.run-millis:3600000}")
+    public void archiveIdleChats() {
+        AppProperties.Archive config = appProperties.getArchive();
+        if (!config.isEnabled()) {
+            return;
+        }
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusDays(config.getIdleDays()));
+
+        int archived = 0;
+        long afterId = 0;
+        List<Long> ids;
+        do {
+            ids = jdbcTemplate.queryForList(SELECT_IDLE_CHATS, Long.class, cutoff, config.getMaxMessagesPerChat(),
+                    cutoff, afterId, config.getBatchSize());
+            for (Long chatId : ids) {
+                afterId = chatId;
+                try {
+                    if (archiveChat(chatId, cutoff)) {
+                        archived++;
+                    }
+                } catch (RuntimeException ex) {
+                    log.error("Failed to archive chat {}: {}", chatId, ex.getMessage(), ex);
+                }
+                if (archived >= config.getMaxChatsPerRun()) {
+                    log.info("Archived {} idle chats (run limit reached)", archived);
+                    return;
+                }
+            }
+        } while (ids.size() == config.getBatchSize());
+
+        if (archived > 0) {
+            log.info("Archived {} idle chats", archived);
+        }
+    }
+
+    /**
+     * 封存單一對話：先以條件式 UPDATE 取得對話列鎖（期間新訊息的 seq 配置會等待），
+     * 再寫入封存列並刪除熱資料；任一步失敗整筆回滾
+     */
+    private boolean archiveChat(Long chatId, Timestamp cutoff) {
+        Boolean done = transactionTemplate.execute(status -> {
+            if (jdbcTemplate.update(CLAIM_ARCHIVE, Timestamp.valueOf(LocalDateTime.now()), chatId, cutoff, cutoff) == 0) {
+                return false;
+            }
+            List<ArchivedMessage> messages = jdbcTemplate.query(SELECT_MESSAGES, this::mapMessage, chatId);
+            ChatArchiveCodec.Encoded encoded = ChatArchiveCodec.encode(messages);
+            long maxSeq = messages.isEmpty() ? 0 : messages.get(messages.size() - 1).seq();
+            jdbcTemplate.update(INSERT_ARCHIVE, ps -> {
+                ps.setLong(1, chatId);
+                ps.setInt(2, messages.size());
+                ps.setLong(3, maxSeq);
+                ps.setLong(4, encoded.rawBytes());
+                ps.setBytes(5, encoded.payload());
+                ps.setTimestamp(6, Timestamp.valueOf(LocalDateTime.now()));
+            });
+            jdbcTemplate.update(DELETE_MESSAGES, chatId);
+            evictAfterCommit(chatId);
+
+            messagesSummary.record(messages.size());
+            if (encoded.payload().length > 0) {
+                compressionSummary.record((double) encoded.rawBytes() / encoded.payload().length);
+            }
+            log.debug("Chat {} archived: {} messages, {} -> {} bytes",
+                    chatId, messages.size(), encoded.rawBytes(), encoded.payload().length);
+            return true;
+        });
+        if (Boolean.TRUE.equals(done)) {
+            archivedCounter.increment();
+            return true;
+        }
+        return false;
+    }
+
+    // ========== 讀取 ==========
+
+    /**
+     * 對話是否已封存（查資料庫；二級快取中的 archivedAt 可能是其他節點封存 / 還原前的舊值）
+     */
+    public boolean isArchived(Long chatId) {
+        return chatRepository.existsByIdAndArchivedAtIsNotNull(chatId);
+    }
+
+    /**
+     * 讀取封存對話的全部訊息（seq 遞增），並排程背景還原
+     * 封存後才寫入的少量熱資料一併合併，確保結果完整
+     */
+    public List<MessageRow> findRows(Long chatId) {
+        coldReadCounter.increment();
+        List<MessageRow> rows = new ArrayList<>();
+        for (ArchivedMessage message : findArchived(chatId)) {
+            rows.add(message.toRow());
+        }
+        rows.addAll(messageRepository.findRowsByChatId(chatId));
+        rows.sort(Comparator.comparing(MessageRow::seq));
+        requestRehydrate(chatId);
+        return rows;
+    }
+
+    /**
+     * 讀取封存訊息的擴充資料
+     */
+    public Optional<Map<String, Object>> findMetadata(Long chatId, Long messageId) {
+        for (ArchivedMessage message : findArchived(chatId)) {
+            if (message.id().equals(messageId)) {
+                requestRehydrate(chatId);
+                return Optional.of(parseMetadata(message.metadataJson()));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * 讀取封存列並解碼（不觸發還原；結果放入解碼快取，匯出改用 forEachArchived）
+     * 長對話分頁讀取時每頁都會呼叫：先只查 archived_at，與快取相同即沿用已解碼的內容
+     */
+    public List<ArchivedMessage> findArchived(Long chatId) {
+        List<Timestamp> stamps = jdbcTemplate.queryForList(SELECT_ARCHIVED_AT, Timestamp.class, chatId);
+        if (stamps.isEmpty()) {
+            forgetDecoded(chatId);
+            return List.of();
+        }
+        DecodedArchive cached;
+        synchronized (decoded) {
+            cached = decoded.get(chatId);
+        }
+        if (cached != null && cached.archivedAt().equals(stamps.get(0))) {
+            return cached.messages();
+        }
+
+        List<DecodedArchive> rows = jdbcTemplate.query(SELECT_PAYLOAD, (rs, rowNum) -> new DecodedArchive(
+                rs.getTimestamp("archived_at"), List.copyOf(ChatArchiveCodec.decode(rs.getBytes("payload")))),
+                chatId);
+        if (rows.isEmpty()) {
+            forgetDecoded(chatId);
+            return List.of();
+        }
+        DecodedArchive archive = rows.get(0);
+        synchronized (decoded) {
+            decoded.put(chatId, archive);
+        }
+        return archive.messages();
+    }
+
+    /**
+     * 邊解壓邊逐則交給 visitor（不觸發還原、不經過也不寫入解碼快取；匯出使用）
+     * 記憶體只需壓縮後的封存列與當下一則訊息，大量匯出也不會擠掉互動讀取的快取
+     */
+    public void forEachArchived(Long chatId, ArchivedMessageVisitor visitor) throws IOException {
+        try {
+            jdbcTemplate.query(SELECT_PAYLOAD, (ResultSet rs) -> {
+                try (InputStream payload = rs.getBinaryStream("payload")) {
+                    ChatArchiveCodec.decode(payload, visitor::visit);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }, chatId);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * forEachArchived 的逐則處理（可拋出寫出時的 IOException）
+     */
+    @FunctionalInterface
+    public interface ArchivedMessageVisitor {
+        void visit(ArchivedMessage message) throws IOException;
+    }
+
+    // ========== 還原 ==========
+
+    /**
+     * 同步還原（加入呼叫端交易；送出新訊息前使用，確保上下文完整）
+     * 是否需要還原由條件式 UPDATE 依資料庫狀態決定，未封存時只是一次不影響任何列的 UPDATE
+     */
+    public void rehydrate(Long chatId) {
+        transactionTemplate.executeWithoutResult(status -> doRehydrate(chatId));
+    }
+
+    /**
+     * 背景還原（讀取封存資料後呼叫；同一對話同時只排一次）
+     */
+    public void requestRehydrate(Long chatId) {
+        if (!rehydrating.add(chatId)) {
+            return;
+        }
+        try {
+            archiveExecutor.execute(() -> {
+                try {
+                    rehydrate(chatId);
+                } catch (RuntimeException ex) {
+                    log.error("Failed to rehydrate chat {}: {}", chatId, ex.getMessage(), ex);
+                } finally {
+                    rehydrating.remove(chatId);
+                }
+            });
+        } catch (TaskRejectedException ex) {
+            // 佇列已滿：下次存取時再試，期間讀取仍可由封存資料回應
+            rehydrating.remove(chatId);
+            log.warn("Archive executor saturated, rehydration of chat {} deferred", chatId);
+        }
+    }
+
+    private void doRehydrate(Long chatId) {
+        if (jdbcTemplate.update(CLAIM_REHYDRATE, Timestamp.valueOf(LocalDateTime.now()), chatId) == 0) {
+            return;
+        }
+        List<ArchivedMessage> messages = findArchived(chatId);
+        List<Object[]> batch = new ArrayList<>(messages.size());
+        for (ArchivedMessage message : messages) {
+            batch.add(new Object[] {
+                    message.id(),
+                    chatId,
+                    message.seq(),
+                    message.role(),
+                    CompressedText.of(message.content()).stored(),
+                    message.provider(),
+                    message.model(),
+                    message.tokenIn(),
+                    message.tokenOut(),
+                    message.metadataJson(),
+                    Timestamp.valueOf(message.createdAt())
+            });
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_MESSAGE, batch, new int[] {
+                    Types.BIGINT, Types.BIGINT, Types.BIGINT, Types.VARCHAR, Types.LONGVARBINARY, Types.VARCHAR,
+                    Types.VARCHAR, Types.INTEGER, Types.INTEGER, Types.VARCHAR, Types.TIMESTAMP
+            });
+        }
+        jdbcTemplate.update(DELETE_ARCHIVE, chatId);
+        forgetDecoded(chatId);
+        evictAfterCommit(chatId);
+
+        // 全文索引合併在還原前後判斷時可能已移除這些訊息，提交後重新送入（重複的索引由查詢去重、合併時清除）
+        for (ArchivedMessage message : messages) {
+            eventPublisher.publishEvent(new MessageSavedEvent(message.id(), chatId));
+        }
+        rehydratedCounter.increment();
+        log.debug("Chat {} rehydrated: {} messages", chatId, messages.size());
+    }
+
+    // ========== 共用 ==========
+
+    private void forgetDecoded(Long chatId) {
+        synchronized (decoded) {
+            decoded.remove(chatId);
+        }
+    }
+
+    /**
+     * chats 列以 SQL 更新，二級快取需另行清除；提交後再清一次，避免期間被讀回舊值
+     */
+    private void evictAfterCommit(Long chatId) {
+        entityManagerFactory.getCache().evict(Chat.class, chatId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    entityManagerFactory.getCache().evict(Chat.class, chatId);
+                }
+            });
+        }
+    }
+
+    private ArchivedMessage mapMessage(ResultSet rs, int rowNum) throws SQLException {
+        return new ArchivedMessage(
+                rs.getLong("id"),
+                rs.getLong("seq"),
+                rs.getString("role"),
+                CompressedText.fromStored(rs.getBytes("content")).text(),
+                rs.getString("provider"),
+                rs.getString("model"),
+                rs.getObject("token_in", Integer.class),
+                rs.getObject("token_out", Integer.class),
+                rs.getString("metadata_json"),
+                rs.getTimestamp("created_at").toLocalDateTime());
+    }
+
+    private record DecodedArchive(Timestamp archivedAt, List<ArchivedMessage> messages) {
+    }
+
+    private Map<String, Object> parseMetadata(String json) {
+        if (json == null) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(json, new TypeReference<>() {
+            });
+        } catch (JsonProcessingException ex) {
+            log.warn("Unreadable archived metadata: {}", ex.getMessage());
+            return Map.of();
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package tw.bk.ai.service.auth;
 
+import io.jsonwebtoken.Claims;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -28,11 +30,12 @@ public class AuthService {
     private final PasswordEncoder passwordEncoder;
     private final JwtProvider jwtProvider;
     private final AuthenticationManager authenticationManager;
+    private final TokenRevocationService tokenRevocationService;
 
     /**
      * 使用者註冊
+     * 不包在交易內：雜湊在專屬執行緒池進行，等待期間不應佔用資料庫連線
      */
-    @Transactional
     public AuthMeResp register(RegisterReq req) {
         // 檢查 Email 是否已存在
         if (userRepository.existsByEmail(req.getEmail())) {
@@ -47,19 +50,21 @@ public class AuthService {
                 .status(User.UserStatus.ACTIVE)
                 .build();
 
-        user = userRepository.save(user);
+        try {
+            user = userRepository.save(user);
+        } catch (DataIntegrityViolationException ex) {
+            // 併發註冊同一 Email，由唯一鍵擋下
+            throw AuthException.userExists(req.getEmail());
+        }
         log.info("User registered: {}", user.getEmail());
 
-        // 生成 Token
-        String token = jwtProvider.generateToken(user.getId(), user.getEmail());
-
-        return AuthMeResp.from(user, token);
+        return issueTokens(user);
     }
 
     /**
      * 使用者登入
+     * 同 register，不包在交易內以免排隊雜湊時佔用連線
      */
-    @Transactional(readOnly = true)
     public AuthMeResp login(LoginReq req) {
         // 驗證密碼
         authenticationManager.authenticate(
@@ -71,10 +76,42 @@ public class AuthService {
 
         log.info("User logged in: {}", user.getEmail());
 
-        // 生成 Token
-        String token = jwtProvider.generateToken(user.getId(), user.getEmail());
+        return issueTokens(user);
+    }
 
-        return AuthMeResp.from(user, token);
+    /**
+     * 以 Refresh Token 換發新的 Access / Refresh Token（輪替）
+     * 舊的 Refresh Token 立即撤銷；若已撤銷過則視為重放，拒絕換發
+     */
+    public AuthMeResp refresh(String refreshToken) {
+        Claims claims = refreshToken != null ? jwtProvider.getValidClaims(refreshToken) : null;
+        if (claims == null || !jwtProvider.isRefreshToken(claims)) {
+            throw AuthException.invalidToken();
+        }
+
+        Long userId = Long.parseLong(claims.getSubject());
+        if (tokenRevocationService.isRevoked(claims.getId())
+                || !tokenRevocationService.revoke(claims.getId(), userId, JwtProvider.TYPE_REFRESH,
+                        claims.getExpiration())) {
+            log.warn("Refresh token reuse detected for user: {}", userId);
+            throw AuthException.invalidToken();
+        }
+
+        User user = userRepository.findById(userId)
+                .orElseThrow(AuthException::invalidToken);
+        if (user.getStatus() != User.UserStatus.ACTIVE) {
+            throw AuthException.forbidden();
+        }
+
+        return issueTokens(user);
+    }
+
+    /**
+     * 登出：撤銷目前的 Access Token 與 Refresh Token
+     */
+    public void logout(String accessToken, String refreshToken) {
+        revokeQuietly(accessToken);
+        revokeQuietly(refreshToken);
     }
 
     /**
@@ -87,4 +124,24 @@ public class AuthService {
 
         return AuthMeResp.from(user);
     }
+
+    private AuthMeResp issueTokens(User user) {
+        String token = jwtProvider.generateToken(user.getId(), user.getEmail());
+        String refreshToken = jwtProvider.generateRefreshToken(user.getId());
+        return AuthMeResp.from(user, token, refreshToken);
+    }
+
+    private void revokeQuietly(String token) {
+        if (token == null || token.isBlank()) {
+            return;
+        }
+        Claims claims = jwtProvider.getValidClaims(token);
+        if (claims == null) {
+            // 已過期或無效的 Token 本身就不能再使用
+            return;
+        }
+        String type = jwtProvider.isRefreshToken(claims) ? JwtProvider.TYPE_REFRESH : JwtProvider.TYPE_ACCESS;
+        tokenRevocationService.revoke(claims.getId(), Long.parseLong(claims.getSubject()), type,
+                claims.getExpiration());
+    }
 }
@@ -0,0 +1,138 @@
+package tw.bk.ai.service.auth;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import tw.bk.ai.config.AppProperties;
+import tw.bk.ai.entity.RevokedToken;
+import tw.bk.ai.repository.RevokedTokenRepository;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token 撤銷清單
+ * 以記憶體中的 jti 集合判斷撤銷（請求路徑上不查 DB），
+ * 並定期從 revoked_tokens 以遞增 id 增量同步其他節點的撤銷紀錄。
+ * AUTO_INCREMENT id 的配發順序不等於 commit 順序：較小 id 可能在較大 id 已被讀過之後才 commit。
+ * 因此每次同步不從最新位置開始，而是從 overlap 期間內最早一次同步的起點重讀，
+ * 晚 commit 的紀錄在該期間內一定會被補上（以本機單調時鐘計時，不受節點間時鐘偏差影響）。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TokenRevocationService {
+
+    private static final int SYNC_BATCH_SIZE = 1000;
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final AppProperties appProperties;
+
+    /**
+     * jti -> 過期時間（epoch millis），過期後即可移除
+     */
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+    private long lastSyncedId = 0L;
+
+    /**
+     * overlap 期間內各次同步的起點（由舊到新），受 this 保護
+     */
+    private final Deque<SyncPoint> syncPoints = new ArrayDeque<>();
+
+    /**
+     * 是否已撤銷（純記憶體查詢）
+     */
+    public boolean isRevoked(String jti) {
+        return jti != null && revoked.containsKey(jti);
+    }
+
+    /**
+     * 撤銷 Token
+     *
+     * @return true 表示本次寫入成功；false 表示該 jti 早已被撤銷（可用於偵測 refresh token 重放）
+     */
+    public boolean revoke(String jti, Long userId, String tokenType, Date expiresAt) {
+        if (jti == null) {
+            return false;
+        }
+
+        RevokedToken token = RevokedToken.builder()
+                .jti(jti)
+                .userId(userId)
+                .tokenType(tokenType)
+                .expiresAt(LocalDateTime.ofInstant(expiresAt.toInstant(), ZoneId.systemDefault()))
+                .build();
+
+        try {
+            revokedTokenRepository.saveAndFlush(token);
+        } catch (DataIntegrityViolationException ex) {
+            revoked.put(jti, expiresAt.getTime());
+            return false;
+        }
+
+        revoked.put(jti, expiresAt.getTime());
+        return true;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        sync();
+        log.info("Token revocation set loaded: {} entries", revoked.size());
+    }
+
+    /**
+     * 增量同步其他節點寫入的撤銷紀錄（含 overlap 重讀），並清除已過期項目
+     */
+    @Scheduled(fixedDelayString = "${app.jwt.revocation-sync-millis:5000}")
+    public synchronized void sync() {
+        long startedAt = System.nanoTime();
+        long overlap = TimeUnit.MILLISECONDS.toNanos(appProperties.getJwt().getRevocationSyncOverlapMillis());
+        syncPoints.addLast(new SyncPoint(startedAt, lastSyncedId));
+        while (startedAt - syncPoints.peekFirst().startedAt() > overlap) {
+            syncPoints.pollFirst();
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        long cursor = syncPoints.peekFirst().fromId();
+        List<RevokedToken> batch;
+        do {
+            batch = revokedTokenRepository.findByIdGreaterThanAndExpiresAtAfterOrderByIdAsc(
+                    cursor, now, PageRequest.of(0, SYNC_BATCH_SIZE));
+            for (RevokedToken token : batch) {
+                revoked.put(token.getJti(),
+                        token.getExpiresAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+                cursor = token.getId();
+                lastSyncedId = Math.max(lastSyncedId, cursor);
+            }
+        } while (batch.size() == SYNC_BATCH_SIZE);
+
+        long nowMillis = System.currentTimeMillis();
+        revoked.values().removeIf(expiresAt -> expiresAt < nowMillis);
+    }
+
+    /**
+     * 清除資料表中已過期的撤銷紀錄（過期 Token 本身已無效）
+     */
+    @Scheduled(cron = "${app.jwt.revocation-cleanup-cron:0 0 * * * *}")
+    public void cleanup() {
+        int deleted = revokedTokenRepository.deleteExpired(LocalDateTime.now());
+        if (deleted > 0) {
+            log.info("Purged {} expired revoked tokens", deleted);
+        }
+    }
+
+    private record SyncPoint(long startedAt, long fromId) {
+    }
+}
@@ -1,20 +1,37 @@
 package tw.bk.ai.service.chat;
 
+import jakarta.persistence.EntityManagerFactory;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import tw.bk.ai.dto.chat.ChatCreateReq;
+import tw.bk.ai.dto.common.CursorPageResp;
 import tw.bk.ai.dto.chat.ChatDetailResp;
 import tw.bk.ai.dto.chat.ChatResp;
+import tw.bk.ai.dto.chat.MessageResp;
+import tw.bk.ai.dto.purge.PurgeJobResp;
 import tw.bk.ai.entity.Chat;
+import tw.bk.ai.entity.PurgeJob;
 import tw.bk.ai.entity.User;
+import tw.bk.ai.exception.BizException;
+import tw.bk.ai.exception.ErrorCode;
 import tw.bk.ai.exception.NotFoundException;
 import tw.bk.ai.repository.ChatRepository;
+import tw.bk.ai.repository.MessageRepository;
 import tw.bk.ai.repository.UserRepository;
-
+import tw.bk.ai.repository.projection.MessageRow;
+import tw.bk.ai.service.archive.ChatArchiveService;
+import tw.bk.ai.service.purge.PurgeService;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * 對話服務
@@ -26,6 +43,17 @@ public class ChatService {
 
     private final ChatRepository chatRepository;
     private final UserRepository userRepository;
+    private final MessageRepository messageRepository;
+    private final PurgeService purgeService;
+    private final ChatArchiveService chatArchiveService;
+    private final EntityManagerFactory entityManagerFactory;
+
+    private static final int MAX_PAGE_SIZE = 100;
+
+    /**
+     * 新對話的預設標題（首輪回覆完成後由背景產生正式標題取代）
+     */
+    public static final String DEFAULT_TITLE = "New Chat";
 
     /**
      * 建立新對話
@@ -37,7 +65,7 @@ public class ChatService {
 
         Chat chat = Chat.builder()
                 .user(user)
-                .title(req.getTitle() != null ? req.getTitle() : "New Chat")
+                .title(req.getTitle() != null ? req.getTitle() : DEFAULT_TITLE)
                 .build();
 
         chat = chatRepository.save(chat);
@@ -47,36 +75,94 @@ public class ChatService {
     }
 
     /**
-     * 取得使用者的對話列表
+     * 取得使用者的對話列表（依 updatedAt, id 遞減的 keyset 分頁）
+     *
+     * @param cursor 上一頁回傳的 nextCursor，第一頁為 null
+     * @param limit  每頁筆數（1 ~ 100）
      */
     @Transactional(readOnly = true)
-    public List<ChatResp> getChatList(Long userId) {
-        return chatRepository.findByUser_IdOrderByUpdatedAtDesc(userId).stream()
-                .map(ChatResp::from)
-                .collect(Collectors.toList());
+    public CursorPageResp<ChatResp> getChatList(Long userId, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // 多取一筆判斷是否還有下一頁
+        Limit fetchLimit = Limit.of(pageSize + 1);
+
+        List<ChatResp> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = chatRepository.findChatPage(userId, fetchLimit);
+        } else {
+            ChatCursor position = ChatCursor.decode(cursor);
+            rows = chatRepository.findChatPageAfter(userId, position.updatedAt(), position.id(), fetchLimit);
+        }
+
+        if (rows.size() <= pageSize) {
+            return CursorPageResp.of(rows, null);
+        }
+
+        List<ChatResp> page = rows.subList(0, pageSize);
+        ChatResp last = page.get(pageSize - 1);
+        return CursorPageResp.of(page, new ChatCursor(last.getUpdatedAt(), last.getId()).encode());
     }
 
     /**
-     * 取得對話詳情（含訊息）
+     * 取得對話詳情（含最新一頁訊息）
+     *
+     * @param before 只取 seq 小於此值的訊息（載入更早訊息），null 表示最新一頁
+     * @param limit  每頁訊息數（1 ~ 100）
      */
     @Transactional(readOnly = true)
-    public ChatDetailResp getChatDetail(Long userId, Long chatId) {
-        Chat chat = chatRepository.findByIdAndUserIdWithMessages(chatId, userId)
+    public ChatDetailResp getChatDetail(Long userId, Long chatId, Long before, int limit) {
+        ChatResp chat = chatRepository.findRowByIdAndUserId(chatId, userId)
                 .orElseThrow(() -> NotFoundException.chat(chatId));
 
-        return ChatDetailResp.from(chat);
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        Limit fetchLimit = Limit.of(pageSize + 1);
+        List<MessageRow> rows;
+        if (chatArchiveService.isArchived(chatId)) {
+            rows = archivedPage(chatId, before, pageSize + 1);
+        } else {
+            rows = before == null
+                    ? messageRepository.findLatestRows(chatId, fetchLimit)
+                    : messageRepository.findRowsBefore(chatId, before, fetchLimit);
+        }
+
+        boolean hasMore = rows.size() > pageSize;
+        List<MessageResp> messages = new ArrayList<>(Math.min(rows.size(), pageSize));
+        // 查詢為 seq 遞減，回傳時轉為遞增
+        for (int i = Math.min(rows.size(), pageSize) - 1; i >= 0; i--) {
+            messages.add(MessageResp.from(rows.get(i)));
+        }
+
+        return ChatDetailResp.from(chat, messages, hasMore);
+    }
+
+    /**
+     * 封存對話的一頁訊息（與熱資料查詢相同：seq 遞減、最多 fetchSize 筆）
+     */
+    private List<MessageRow> archivedPage(Long chatId, Long before, int fetchSize) {
+        List<MessageRow> all = chatArchiveService.findRows(chatId);
+        List<MessageRow> page = new ArrayList<>(Math.min(all.size(), fetchSize));
+        for (int i = all.size() - 1; i >= 0 && page.size() < fetchSize; i--) {
+            MessageRow row = all.get(i);
+            if (before == null || row.seq() < before) {
+                page.add(row);
+            }
+        }
+        return page;
     }
 
     /**
      * 刪除對話
+     * 立即隱藏對話，訊息由背景工作分批清除
      */
     @Transactional
-    public void deleteChat(Long userId, Long chatId) {
-        Chat chat = chatRepository.findByIdAndUser_Id(chatId, userId)
-                .orElseThrow(() -> NotFoundException.chat(chatId));
-
-        chatRepository.delete(chat);
-        log.info("Chat deleted: {} by user: {}", chatId, userId);
+    public PurgeJobResp deleteChat(Long userId, Long chatId) {
+        if (chatRepository.hide(chatId, userId, LocalDateTime.now()) == 0) {
+            throw NotFoundException.chat(chatId);
+        }
+        evictAfterCommit(chatId);
+
+        log.info("Chat hidden: {} by user: {}", chatId, userId);
+        return purgeService.schedule(PurgeJob.TargetType.CHAT, chatId, userId);
     }
 
     /**
@@ -84,12 +170,49 @@ public class ChatService {
      */
     @Transactional
     public ChatResp updateChatTitle(Long userId, Long chatId, String title) {
-        Chat chat = chatRepository.findByIdAndUser_Id(chatId, userId)
+        if (chatRepository.rename(chatId, userId, title, LocalDateTime.now()) == 0) {
+            throw NotFoundException.chat(chatId);
+        }
+        evictAfterCommit(chatId);
+        return chatRepository.findRowByIdAndUserId(chatId, userId)
                 .orElseThrow(() -> NotFoundException.chat(chatId));
+    }
 
-        chat.setTitle(title);
-        chat = chatRepository.save(chat);
+    /**
+     * hide / rename 以原生 SQL 更新，只移除該筆二級快取；提交後再清一次，避免期間被讀回舊值
+     */
+    private void evictAfterCommit(Long chatId) {
+        entityManagerFactory.getCache().evict(Chat.class, chatId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    entityManagerFactory.getCache().evict(Chat.class, chatId);
+                }
+            });
+        }
+    }
 
-        return ChatResp.from(chat);
+    /**
+     * 對話列表游標：最後一筆的 (updatedAt, id)，以 Base64URL 編碼對外不透明
+     */
+    private record ChatCursor(LocalDateTime updatedAt, Long id) {
+
+        String encode() {
+            String raw = updatedAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static ChatCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int sep = raw.lastIndexOf('|');
+                return new ChatCursor(
+                        LocalDateTime.parse(raw.substring(0, sep)),
+                        Long.parseLong(raw.substring(sep + 1)));
+            } catch (RuntimeException ex) {
+                throw new BizException(ErrorCode.BAD_REQUEST, "Invalid cursor");
+            }
+        }
     }
 }
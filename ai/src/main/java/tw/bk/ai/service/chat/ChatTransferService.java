@@ -0,0 +1,387 @@
+package tw.bk.ai.service.chat;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tw.bk.ai.config.AppProperties;
+import tw.bk.ai.dto.chat.ChatImportResp;
+import tw.bk.ai.dto.chat.ChatTransferRecord;
+import tw.bk.ai.entity.Message;
+import tw.bk.ai.entity.id.TimeOrderedIds;
+import tw.bk.ai.entity.type.CompressedText;
+import tw.bk.ai.exception.BizException;
+import tw.bk.ai.exception.ErrorCode;
+import tw.bk.ai.exception.NotFoundException;
+import tw.bk.ai.exception.ServiceBusyException;
+import tw.bk.ai.repository.ChatRepository;
+import tw.bk.ai.service.archive.ArchivedMessage;
+import tw.bk.ai.service.archive.ChatArchiveService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 對話匯出 / 匯入
+ * - 匯出：逐對話以 forward-only cursor 讀取訊息並直接寫出 NDJSON，不經實體與 DTO 集合
+ * - 匯入：以 Jackson 串流逐行解析，訊息以 JDBC 批次寫入
+ * 兩者記憶體用量皆與歷史長度無關。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChatTransferService {
+
+    private static final int CHAT_PAGE_SIZE = 100;
+    private static final int FLUSH_EVERY = 200;
+
+    private static final String SELECT_CHAT = """
+            SELECT id, title, created_at, updated_at FROM chats WHERE id = ? AND user_id = ? AND deleted_at IS NULL""";
+    private static final String SELECT_CHAT_PAGE = """
+            SELECT id, title, created_at, updated_at FROM chats
+            WHERE user_id = ? AND id > ? AND deleted_at IS NULL ORDER BY id LIMIT ?""";
+    private static final String SELECT_MESSAGES = """
+            SELECT seq, role, content, provider, model, token_in, token_out, metadata_json, created_at
+            FROM messages WHERE chat_id = ? ORDER BY seq""";
+    private static final String INSERT_CHAT = """
+            INSERT INTO chats (user_id, title, created_at, updated_at) VALUES (?, ?, ?, ?)""";
+    private static final String INSERT_MESSAGE = """
+            INSERT INTO messages (id, chat_id, seq, role, content, provider, model, token_in, token_out, metadata_json,
+                                  created_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)""";
+    private static final String UPDATE_LAST_SEQ = """
+            UPDATE chats SET last_message_seq = ?, updated_at = updated_at WHERE id = ?""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final PlatformTransactionManager transactionManager;
+    private final ChatRepository chatRepository;
+    private final ChatArchiveService chatArchiveService;
+    private final AppProperties appProperties;
+
+    private Semaphore exportPermits;
+
+    @PostConstruct
+    void init() {
+        exportPermits = new Semaphore(appProperties.getTransfer().getMaxConcurrentExports());
+    }
+
+    /**
+     * 建立匯出串流（同時進行的匯出數有上限，每個匯出佔用一條連線直到完成）
+     *
+     * @param chatId 只匯出單一對話；null 表示全部對話
+     */
+    public StreamingResponseBody export(Long userId, Long chatId) {
+        // 以資料庫判斷：快取命中時不套用 deleted_at 條件，可能漏掉其他節點的隱藏
+        if (chatId != null && !chatRepository.existsByIdAndUser_IdAndDeletedAtIsNull(chatId, userId)) {
+            throw NotFoundException.chat(chatId);
+        }
+        if (!exportPermits.tryAcquire()) {
+            throw new ServiceBusyException("Too many exports in progress");
+        }
+
+        return out -> {
+            try {
+                TransactionTemplate tx = new TransactionTemplate(transactionManager);
+                tx.setReadOnly(true);
+                // 單一唯讀交易：整份匯出為同一個一致性快照
+                tx.executeWithoutResult(status -> writeExport(userId, chatId, out));
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            } finally {
+                exportPermits.release();
+            }
+        };
+    }
+
+    private void writeExport(Long userId, Long chatId, OutputStream out) {
+        ObjectWriter writer = objectMapper.writerFor(ChatTransferRecord.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            long chats = 0;
+            long messages = 0;
+
+            if (chatId != null) {
+                for (ChatTransferRecord chat : jdbcTemplate.query(SELECT_CHAT, this::mapChat, chatId, userId)) {
+                    messages += writeChat(writer, generator, chat);
+                    chats++;
+                }
+            } else {
+                long afterId = 0;
+                List<ChatTransferRecord> page;
+                do {
+                    page = jdbcTemplate.query(SELECT_CHAT_PAGE, this::mapChat, userId, afterId, CHAT_PAGE_SIZE);
+                    for (ChatTransferRecord chat : page) {
+                        messages += writeChat(writer, generator, chat);
+                        chats++;
+                        afterId = chat.getId();
+                    }
+                } while (page.size() == CHAT_PAGE_SIZE);
+            }
+            generator.flush();
+            log.info("Exported {} chats / {} messages for user: {}", chats, messages, userId);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * 寫出一個對話與其所有訊息
+     */
+    private long writeChat(ObjectWriter writer, JsonGenerator generator, ChatTransferRecord chat) throws IOException {
+        writeLine(writer, generator, chat);
+
+        long[] count = {0};
+        // 封存訊息的 seq 一律小於封存後才寫入的熱資料，先輸出即維持順序；匯出不觸發還原
+        // 逐則解壓並寫出，不經解碼快取，記憶體不隨對話長度成長
+        chatArchiveService.forEachArchived(chat.getId(), message -> {
+            writeLine(writer, generator, mapArchived(message, chat.getId()));
+            if (++count[0] % FLUSH_EVERY == 0) {
+                generator.flush();
+            }
+        });
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(SELECT_MESSAGES,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // 搭配連線參數 useCursorFetch=true，以伺服器端 cursor 分批取回
+            ps.setFetchSize(appProperties.getTransfer().getExportFetchSize());
+            ps.setLong(1, chat.getId());
+            return ps;
+        }, (ResultSet rs) -> {
+            try {
+                writeLine(writer, generator, mapMessage(rs, chat.getId()));
+                if (++count[0] % FLUSH_EVERY == 0) {
+                    generator.flush();
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        return count[0];
+    }
+
+    private void writeLine(ObjectWriter writer, JsonGenerator generator, ChatTransferRecord record) throws IOException {
+        writer.writeValue(generator, record);
+        generator.writeRaw('\n');
+    }
+
+    private ChatTransferRecord mapChat(ResultSet rs, int rowNum) throws SQLException {
+        return ChatTransferRecord.builder()
+                .type(ChatTransferRecord.TYPE_CHAT)
+                .id(rs.getLong("id"))
+                .title(rs.getString("title"))
+                .createdAt(toLocalDateTime(rs.getTimestamp("created_at")))
+                .updatedAt(toLocalDateTime(rs.getTimestamp("updated_at")))
+                .build();
+    }
+
+    private ChatTransferRecord mapMessage(ResultSet rs, Long chatId) throws SQLException, IOException {
+        String metadata = rs.getString("metadata_json");
+        return ChatTransferRecord.builder()
+                .type(ChatTransferRecord.TYPE_MESSAGE)
+                .chatId(chatId)
+                .seq(rs.getLong("seq"))
+                .role(rs.getString("role"))
+                .content(CompressedText.fromStored(rs.getBytes("content")).text())
+                .provider(rs.getString("provider"))
+                .model(rs.getString("model"))
+                .tokenIn(rs.getObject("token_in", Integer.class))
+                .tokenOut(rs.getObject("token_out", Integer.class))
+                .metadata(metadata != null ? objectMapper.readTree(metadata) : null)
+                .createdAt(toLocalDateTime(rs.getTimestamp("created_at")))
+                .build();
+    }
+
+    private ChatTransferRecord mapArchived(ArchivedMessage message, Long chatId) throws IOException {
+        return ChatTransferRecord.builder()
+                .type(ChatTransferRecord.TYPE_MESSAGE)
+                .chatId(chatId)
+                .seq(message.seq())
+                .role(message.role())
+                .content(message.content())
+                .provider(message.provider())
+                .model(message.model())
+                .tokenIn(message.tokenIn())
+                .tokenOut(message.tokenOut())
+                .metadata(message.metadataJson() != null ? objectMapper.readTree(message.metadataJson()) : null)
+                .createdAt(message.createdAt())
+                .build();
+    }
+
+    /**
+     * 匯入 NDJSON（格式同匯出）：每個 type=chat 建立新對話，其後的 type=message 依序寫入該對話
+     * 整份匯入在同一交易中，任何一行有誤即全部回滾
+     */
+    @Transactional
+    public ChatImportResp importChats(Long userId, InputStream in) throws IOException {
+        ImportState state = new ImportState(userId, appProperties.getTransfer().getImportBatchSize());
+
+        try (MappingIterator<ChatTransferRecord> records = objectMapper.readerFor(ChatTransferRecord.class)
+                .readValues(in)) {
+            while (records.hasNextValue()) {
+                ChatTransferRecord record = records.nextValue();
+                if (ChatTransferRecord.TYPE_CHAT.equals(record.getType())) {
+                    state.startChat(record);
+                } else if (ChatTransferRecord.TYPE_MESSAGE.equals(record.getType())) {
+                    state.addMessage(record);
+                } else {
+                    throw new BizException(ErrorCode.BAD_REQUEST, "Unknown record type: " + record.getType());
+                }
+            }
+        } catch (JsonProcessingException ex) {
+            throw new BizException(ErrorCode.BAD_REQUEST, "Malformed import line: " + ex.getOriginalMessage());
+        }
+        state.finishChat();
+
+        log.info("Imported {} chats / {} messages for user: {}", state.chats, state.messages, userId);
+        return ChatImportResp.builder()
+                .importedChats(state.chats)
+                .importedMessages(state.messages)
+                .build();
+    }
+
+    /**
+     * 匯入進度：目前的對話與尚未送出的訊息批次（批次大小固定）
+     */
+    private final class ImportState {
+
+        private final Long userId;
+        private final int batchSize;
+        private final List<Object[]> batch;
+
+        private Long chatId;
+        private Long sourceChatId;
+        private long seq;
+        private long chats;
+        private long messages;
+
+        ImportState(Long userId, int batchSize) {
+            this.userId = userId;
+            this.batchSize = batchSize;
+            this.batch = new ArrayList<>(batchSize);
+        }
+
+        void startChat(ChatTransferRecord record) {
+            finishChat();
+
+            LocalDateTime createdAt = record.getCreatedAt() != null ? record.getCreatedAt() : LocalDateTime.now();
+            LocalDateTime updatedAt = record.getUpdatedAt() != null ? record.getUpdatedAt() : createdAt;
+            String title = record.getTitle() != null ? truncate(record.getTitle(), 255) : "Imported Chat";
+
+            KeyHolder keys = new GeneratedKeyHolder();
+            jdbcTemplate.update(con -> {
+                PreparedStatement ps = con.prepareStatement(INSERT_CHAT, Statement.RETURN_GENERATED_KEYS);
+                ps.setLong(1, userId);
+                ps.setString(2, title);
+                ps.setTimestamp(3, Timestamp.valueOf(createdAt));
+                ps.setTimestamp(4, Timestamp.valueOf(updatedAt));
+                return ps;
+            }, keys);
+
+            chatId = keys.getKey().longValue();
+            sourceChatId = record.getId();
+            seq = 0;
+            chats++;
+        }
+
+        void addMessage(ChatTransferRecord record) throws JsonProcessingException {
+            if (chatId == null) {
+                throw new BizException(ErrorCode.BAD_REQUEST, "Message record before any chat record");
+            }
+            if (record.getChatId() != null && sourceChatId != null && !record.getChatId().equals(sourceChatId)) {
+                throw new BizException(ErrorCode.BAD_REQUEST,
+                        "Message for chat " + record.getChatId() + " must follow its chat record");
+            }
+            if (record.getContent() == null) {
+                throw new BizException(ErrorCode.BAD_REQUEST, "Message content is required");
+            }
+            if (record.getContent().length() > appProperties.getTransfer().getMaxImportContentLength()) {
+                throw new BizException(ErrorCode.BAD_REQUEST, "Message content is too long");
+            }
+
+            batch.add(new Object[] {
+                    TimeOrderedIds.next(),
+                    chatId,
+                    ++seq,
+                    parseRole(record.getRole()).name(),
+                    CompressedText.of(record.getContent()).stored(),
+                    record.getProvider() != null ? truncate(record.getProvider(), 50) : null,
+                    record.getModel() != null ? truncate(record.getModel(), 100) : null,
+                    record.getTokenIn(),
+                    record.getTokenOut(),
+                    record.getMetadata() != null && !record.getMetadata().isNull()
+                            ? objectMapper.writeValueAsString(record.getMetadata()) : null,
+                    Timestamp.valueOf(record.getCreatedAt() != null ? record.getCreatedAt() : LocalDateTime.now())
+            });
+            messages++;
+            if (batch.size() >= batchSize) {
+                flushBatch();
+            }
+        }
+
+        void finishChat() {
+            if (chatId == null) {
+                return;
+            }
+            flushBatch();
+            jdbcTemplate.update(UPDATE_LAST_SEQ, seq, chatId);
+            chatId = null;
+        }
+
+        private void flushBatch() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            // 連線參數 rewriteBatchedStatements=true 會改寫為多值 INSERT
+            jdbcTemplate.batchUpdate(INSERT_MESSAGE, batch, new int[] {
+                    Types.BIGINT, Types.BIGINT, Types.BIGINT, Types.VARCHAR, Types.LONGVARBINARY, Types.VARCHAR, Types.VARCHAR,
+                    Types.INTEGER, Types.INTEGER, Types.VARCHAR, Types.TIMESTAMP
+            });
+            batch.clear();
+        }
+    }
+
+    private static Message.MessageRole parseRole(String role) {
+        try {
+            return Message.MessageRole.valueOf(role.toLowerCase(Locale.ROOT));
+        } catch (RuntimeException ex) {
+            throw new BizException(ErrorCode.BAD_REQUEST, "Invalid message role: " + role);
+        }
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value.length() <= maxLength ? value : value.substring(0, maxLength);
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+
+}
@@ -0,0 +1,7 @@
+package tw.bk.ai.service.chat;
+
+/**
+ * 訊息已保存事件（交易提交後由監聽者處理，例如全文索引）
+ */
+public record MessageSavedEvent(Long messageId, Long chatId) {
+}
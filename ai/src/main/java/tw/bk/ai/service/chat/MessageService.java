@@ -2,16 +2,23 @@ package tw.bk.ai.service.chat;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import tw.bk.ai.dto.chat.MessageResp;
+import tw.bk.ai.dto.chat.MessageSyncResp;
 import tw.bk.ai.entity.Chat;
 import tw.bk.ai.entity.Message;
 import tw.bk.ai.exception.NotFoundException;
 import tw.bk.ai.repository.ChatRepository;
 import tw.bk.ai.repository.MessageRepository;
+import tw.bk.ai.repository.projection.MessageMetadataRow;
+import tw.bk.ai.repository.projection.MessageRow;
+import tw.bk.ai.service.archive.ChatArchiveService;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 訊息服務
@@ -23,22 +30,31 @@ public class MessageService {
 
     private final MessageRepository messageRepository;
     private final ChatRepository chatRepository;
+    private final ChatArchiveService chatArchiveService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private static final int MAX_SYNC_PAGE_SIZE = 200;
 
     /**
      * 保存使用者訊息
      */
     @Transactional
     public Message saveUserMessage(Long userId, Long chatId, String content) {
-        Chat chat = chatRepository.findByIdAndUser_Id(chatId, userId)
+        Chat chat = chatRepository.findOwnedById(chatId, userId)
                 .orElseThrow(() -> NotFoundException.chat(chatId));
+        // 封存中的對話先在同一交易內還原，後續組上下文才讀得到完整歷史
+        // 不看快取中的 archivedAt（可能是其他節點封存前的舊值），一律執行條件式還原
+        chatArchiveService.rehydrate(chatId);
 
         Message message = Message.builder()
                 .chat(chat)
+                .seq(nextSeq(chatId))
                 .role(Message.MessageRole.user)
                 .content(content)
                 .build();
 
         message = messageRepository.save(message);
+        eventPublisher.publishEvent(new MessageSavedEvent(message.getId(), chatId));
         log.debug("User message saved: {} in chat: {}", message.getId(), chatId);
 
         return message;
@@ -55,6 +71,7 @@ public class MessageService {
 
         Message message = Message.builder()
                 .chat(chat)
+                .seq(nextSeq(chatId))
                 .role(Message.MessageRole.assistant)
                 .content(content)
                 .provider(provider)
@@ -64,17 +81,18 @@ public class MessageService {
                 .build();
 
         message = messageRepository.save(message);
+        eventPublisher.publishEvent(new MessageSavedEvent(message.getId(), chatId));
         log.debug("Assistant message saved: {} in chat: {}", message.getId(), chatId);
 
         return message;
     }
 
     /**
-     * 取得對話的所有訊息
+     * 取得對話的所有訊息（熱資料；呼叫端須先經 saveUserMessage 還原封存）
      */
     @Transactional(readOnly = true)
     public List<Message> getMessages(Long chatId) {
-        return messageRepository.findByChat_IdOrderByCreatedAtAsc(chatId);
+        return messageRepository.findByChat_IdOrderBySeqAsc(chatId);
     }
 
     /**
@@ -82,8 +100,97 @@ public class MessageService {
      */
     @Transactional(readOnly = true)
     public List<MessageResp> getMessageResponses(Long chatId) {
-        return messageRepository.findByChat_IdOrderByCreatedAtAsc(chatId).stream()
+        List<MessageRow> rows = chatArchiveService.isArchived(chatId)
+                ? chatArchiveService.findRows(chatId)
+                : messageRepository.findRowsByChatId(chatId);
+        return rows.stream()
                 .map(MessageResp::from)
                 .toList();
-}
+    }
+
+    /**
+     * 按需取得單則訊息的擴充資料（列表與詳情只回傳 hasMetadata）
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getMessageMetadata(Long userId, Long chatId, Long messageId) {
+        MessageMetadataRow row = messageRepository.findMetadata(userId, chatId, messageId).orElse(null);
+        if (row != null) {
+            return row.metadata() != null ? row.metadata() : Map.of();
+        }
+        if (chatRepository.findArchivedState(chatId, userId).orElse(false)) {
+            return chatArchiveService.findMetadata(chatId, messageId)
+                    .orElseThrow(() -> NotFoundException.message(messageId));
+        }
+        throw NotFoundException.message(messageId);
+    }
+
+    /**
+     * 增量同步：回傳 seq 大於 after 的訊息與目前的 high-water mark
+     * 無新訊息時只讀索引取得最大 seq，不觸及訊息內容
+     */
+    @Transactional(readOnly = true)
+    public MessageSyncResp syncMessages(Long userId, Long chatId, long after, int limit) {
+        boolean archived = chatRepository.findArchivedState(chatId, userId)
+                .orElseThrow(() -> NotFoundException.chat(chatId));
+        if (archived) {
+            return syncArchived(chatId, after, limit);
+        }
+
+        Long maxSeq = messageRepository.findMaxSeq(chatId);
+        long highWaterMark = maxSeq != null ? maxSeq : 0L;
+        if (highWaterMark <= after) {
+            return MessageSyncResp.builder()
+                    .chatId(chatId)
+                    .messages(List.of())
+                    .highWaterMark(highWaterMark)
+                    .hasMore(false)
+                    .build();
+        }
+
+        int pageSize = Math.max(1, Math.min(limit, MAX_SYNC_PAGE_SIZE));
+        List<MessageResp> messages = messageRepository.findRowsAfter(chatId, after, Limit.of(pageSize)).stream()
+                .map(MessageResp::from)
+                .toList();
+        long lastSeq = messages.isEmpty() ? after : messages.get(messages.size() - 1).getSeq();
+
+        return MessageSyncResp.builder()
+                .chatId(chatId)
+                .messages(messages)
+                .highWaterMark(highWaterMark)
+                .hasMore(lastSeq < highWaterMark)
+                .build();
+    }
+
+    /**
+     * 封存對話的增量同步（由封存資料回應，背景還原）
+     */
+    private MessageSyncResp syncArchived(Long chatId, long after, int limit) {
+        List<MessageRow> rows = chatArchiveService.findRows(chatId);
+        long highWaterMark = rows.isEmpty() ? 0L : rows.get(rows.size() - 1).seq();
+        int pageSize = Math.max(1, Math.min(limit, MAX_SYNC_PAGE_SIZE));
+        List<MessageResp> messages = rows.stream()
+                .filter(row -> row.seq() > after)
+                .limit(pageSize)
+                .map(MessageResp::from)
+                .toList();
+        long lastSeq = messages.isEmpty() ? after : messages.get(messages.size() - 1).getSeq();
+
+        return MessageSyncResp.builder()
+                .chatId(chatId)
+                .messages(messages)
+                .highWaterMark(highWaterMark)
+                .hasMore(lastSeq < highWaterMark)
+                .build();
+    }
+
+    /**
+     * 配置下一個訊息序號（需在寫入交易內呼叫，對話列鎖持有到交易結束）
+     * 對話已被刪除（可能是其他節點，快取尚未得知）時拒絕寫入
+     */
+    private long nextSeq(Long chatId) {
+        if (chatRepository.incrementMessageSeq(chatId) == 0) {
+            throw NotFoundException.chat(chatId);
+        }
+        return chatRepository.lastInsertId();
+    }
 }
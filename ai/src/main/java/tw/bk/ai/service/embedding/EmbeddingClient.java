@@ -0,0 +1,39 @@
+package tw.bk.ai.service.embedding;
+
+import java.util.List;
+
+/**
+ * 向量嵌入客戶端介面
+ * 用於隔離不同供應商的實作差異（Port/Adapter 模式）
+ */
+public interface EmbeddingClient {
+
+    /**
+     * 批次產生向量嵌入
+     * 實作自行依供應商限制拆批，呼叫端可一次傳入任意數量
+     *
+     * @param texts 文字清單
+     * @return 向量清單（順序與輸入相同）
+     */
+    List<float[]> embed(List<String> texts);
+
+    /**
+     * 有期限的批次嵌入（查詢路徑）：實作不應在期限後仍重試或等待退避
+     * 預設直接呼叫 embed，適用於不做遠端呼叫的實作
+     *
+     * @param deadlineNanos System.nanoTime() 基準的期限
+     */
+    default List<float[]> embed(List<String> texts, long deadlineNanos) {
+        return embed(texts);
+    }
+
+    /**
+     * 取得供應商名稱
+     */
+    String getProviderName();
+
+    /**
+     * 取得模型名稱
+     */
+    String getModel();
+}
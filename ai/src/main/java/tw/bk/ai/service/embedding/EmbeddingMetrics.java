@@ -0,0 +1,41 @@
+package tw.bk.ai.service.embedding;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 嵌入呼叫的指標（每次供應商呼叫記錄一次）
+ * - embedding.batch：每批延遲（tag：provider、outcome）
+ * - embedding.texts / embedding.tokens：吞吐量（以 rate 換算每秒筆數 / token 數）
+ */
+@Component
+@RequiredArgsConstructor
+public class EmbeddingMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    public void record(String provider, int texts, long tokens, long nanos, boolean success) {
+        Timer.builder("embedding.batch")
+                .tag("provider", provider)
+                .tag("outcome", success ? "success" : "error")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        if (!success) {
+            return;
+        }
+        Counter.builder("embedding.texts")
+                .tag("provider", provider)
+                .register(meterRegistry)
+                .increment(texts);
+        Counter.builder("embedding.tokens")
+                .tag("provider", provider)
+                .register(meterRegistry)
+                .increment(tokens);
+    }
+}
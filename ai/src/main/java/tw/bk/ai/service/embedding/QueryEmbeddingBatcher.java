@@ -0,0 +1,161 @@
+package tw.bk.ai.service.embedding;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Component;
+import tw.bk.ai.config.AppProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 查詢向量的微批次合併
+ * 同時進行的檢索各自只需嵌入一句問題，逐一呼叫供應商會產生大量小請求。
+ * 這裡把請求收集到湊滿 queryBatchSize 筆或等待滿 queryMaxWaitMillis（以先到者為準），
+ * 再以一次 EmbeddingClient.embed 送出，結果逐一完成各呼叫者的 future。
+ * 每個 future 另有 queryDeadlineMillis 的硬性期限：逾時即以 TimeoutException 結束，
+ * 送出前已逾時的請求不再納入批次。
+ */
+@Slf4j
+@Component
+public class QueryEmbeddingBatcher {
+
+    private final ObjectProvider<EmbeddingClient> embeddingClient;
+    private final AppProperties appProperties;
+    private final TaskExecutor queryEmbeddingExecutor;
+
+    private final Object lock = new Object();
+    private List<PendingQuery> pending = new ArrayList<>(); // 受 lock 保護
+
+    private final DistributionSummary batchSizeSummary;
+    private final Timer waitTimer;
+    private final Counter timeoutCounter;
+    private final Counter failedCounter;
+
+    public QueryEmbeddingBatcher(ObjectProvider<EmbeddingClient> embeddingClient, AppProperties appProperties,
+            @Qualifier("queryEmbeddingExecutor") TaskExecutor queryEmbeddingExecutor, MeterRegistry meterRegistry) {
+        this.embeddingClient = embeddingClient;
+        this.appProperties = appProperties;
+        this.queryEmbeddingExecutor = queryEmbeddingExecutor;
+        this.batchSizeSummary = DistributionSummary.builder("embedding.query.batch.size")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("embedding.query.latency")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.timeoutCounter = Counter.builder("embedding.query.timeout").register(meterRegistry);
+        this.failedCounter = Counter.builder("embedding.query.failed").register(meterRegistry);
+    }
+
+    /**
+     * 取得單一查詢的向量（不阻塞）；於期限內未完成時以 TimeoutException 結束
+     */
+    public CompletableFuture<float[]> embed(String query) {
+        AppProperties.Embedding config = appProperties.getEmbedding();
+        PendingQuery request = new PendingQuery(query, new CompletableFuture<>(), System.nanoTime());
+        request.future()
+                .orTimeout(config.getQueryDeadlineMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((vector, ex) -> {
+                    waitTimer.record(System.nanoTime() - request.enqueuedAt(), TimeUnit.NANOSECONDS);
+                    if (ex instanceof TimeoutException) {
+                        timeoutCounter.increment();
+                    }
+                });
+
+        List<PendingQuery> full = null;
+        List<PendingQuery> opened = null;
+        synchronized (lock) {
+            pending.add(request);
+            if (pending.size() >= Math.max(1, config.getQueryBatchSize())) {
+                full = pending;
+                pending = new ArrayList<>();
+            } else if (pending.size() == 1) {
+                opened = pending;
+            }
+        }
+
+        if (full != null) {
+            dispatch(full);
+        } else if (opened != null) {
+            // 批次的第一筆負責排定最長等待；屆時批次若已因湊滿送出則略過
+            List<PendingQuery> batch = opened;
+            CompletableFuture.delayedExecutor(config.getQueryMaxWaitMillis(), TimeUnit.MILLISECONDS)
+                    .execute(() -> flush(batch));
+        }
+        return request.future();
+    }
+
+    private void flush(List<PendingQuery> batch) {
+        synchronized (lock) {
+            if (pending != batch) {
+                return;
+            }
+            pending = new ArrayList<>();
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(List<PendingQuery> batch) {
+        try {
+            queryEmbeddingExecutor.execute(() -> send(batch));
+        } catch (TaskRejectedException ex) {
+            fail(batch, ex);
+        }
+    }
+
+    private void send(List<PendingQuery> batch) {
+        List<PendingQuery> live = batch.stream()
+                .filter(request -> !request.future().isDone())
+                .toList();
+        if (live.isEmpty()) {
+            return;
+        }
+        try {
+            EmbeddingClient client = embeddingClient.getIfAvailable();
+            if (client == null) {
+                throw new IllegalStateException("No embedding client configured");
+            }
+            batchSizeSummary.record(live.size());
+            // 以批次中最晚的期限呼叫：供應商不會在所有呼叫者都已逾時後仍退避重試
+            long deadline = live.stream().mapToLong(PendingQuery::enqueuedAt).max().getAsLong()
+                    + TimeUnit.MILLISECONDS.toNanos(appProperties.getEmbedding().getQueryDeadlineMillis());
+            List<float[]> vectors = client.embed(live.stream().map(PendingQuery::query).toList(), deadline);
+            if (vectors == null || vectors.size() != live.size()) {
+                throw new IllegalStateException("Embedding provider returned "
+                        + (vectors == null ? 0 : vectors.size()) + " vectors for " + live.size() + " queries");
+            }
+            for (int i = 0; i < live.size(); i++) {
+                live.get(i).future().complete(vectors.get(i));
+            }
+        } catch (RuntimeException ex) {
+            // 任何錯誤都立即結束整批，不讓呼叫者等到期限才以逾時收場
+            log.warn("Query embedding failed for {} queries: {}", live.size(), ex.getMessage());
+            fail(live, ex);
+        }
+    }
+
+    /**
+     * 以例外結束尚未完成的 future（已逾時或已完成者不重複計入失敗）
+     */
+    private void fail(List<PendingQuery> batch, Throwable ex) {
+        int failed = 0;
+        for (PendingQuery request : batch) {
+            if (request.future().completeExceptionally(ex)) {
+                failed++;
+            }
+        }
+        failedCounter.increment(failed);
+    }
+
+    private record PendingQuery(String query, CompletableFuture<float[]> future, long enqueuedAt) {
+    }
+}
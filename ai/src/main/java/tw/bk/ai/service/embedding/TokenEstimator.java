@@ -0,0 +1,54 @@
+package tw.bk.ai.service.embedding;
+
+/**
+ * Token 數估算（不依賴特定 tokenizer）
+ * 中日韓字元約一字一 token，其他文字約四個字元一 token；只用於拆批與統計，會略為高估。
+ */
+public final class TokenEstimator {
+
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            if (isCjk(codePoint)) {
+                cjk++;
+            } else {
+                other++;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return cjk + (other + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    /**
+     * 估算超過 maxTokens 時依比例截斷
+     */
+    public static String truncate(String text, int maxTokens) {
+        int tokens = estimate(text);
+        if (tokens <= maxTokens) {
+            return text;
+        }
+        int end = (int) ((long) text.length() * maxTokens / tokens);
+        if (end > 0 && Character.isHighSurrogate(text.charAt(end - 1))) {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
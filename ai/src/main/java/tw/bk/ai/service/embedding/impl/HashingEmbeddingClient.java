@@ -0,0 +1,103 @@
+package tw.bk.ai.service.embedding.impl;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import tw.bk.ai.config.AppProperties;
+import tw.bk.ai.service.embedding.EmbeddingClient;
+import tw.bk.ai.service.embedding.EmbeddingMetrics;
+import tw.bk.ai.service.embedding.TokenEstimator;
+import tw.bk.ai.service.search.CjkBigramTokenizer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 本機雜湊向量（feature hashing），不需外部服務
+ * 以全文檢索相同的切詞結果，每個詞雜湊到一個維度並依雜湊位元決定正負號，最後做 L2 正規化。
+ * 結果只取決於文字與維度（跨 JVM、跨節點相同），適合測試、基準量測與離線開發；
+ * 語意能力僅止於詞彙重疊，正式環境請改用 openai。
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.embedding.provider", havingValue = "local", matchIfMissing = true)
+public class HashingEmbeddingClient implements EmbeddingClient {
+
+    private static final int DEFAULT_DIMENSIONS = 384;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final AppProperties appProperties;
+    private final EmbeddingMetrics metrics;
+
+    @Override
+    public List<float[]> embed(List<String> texts) {
+        long start = System.nanoTime();
+        int dimensions = dimensions();
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        long tokens = 0;
+        for (String text : texts) {
+            vectors.add(embed(text, dimensions));
+            tokens += TokenEstimator.estimate(text);
+        }
+        metrics.record(getProviderName(), texts.size(), tokens, System.nanoTime() - start, true);
+        return vectors;
+    }
+
+    private static float[] embed(String text, int dimensions) {
+        float[] vector = new float[dimensions];
+        if (text == null) {
+            return vector;
+        }
+        for (String token : CjkBigramTokenizer.tokenize(text)) {
+            long hash = mix(fnv1a(token));
+            int index = (int) Long.remainderUnsigned(hash >>> 1, dimensions);
+            vector[index] += (hash & 1) == 0 ? 1f : -1f;
+        }
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    private static long fnv1a(String token) {
+        long hash = FNV_OFFSET;
+        for (byte b : token.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * 64 位元終混（splitmix64），讓低位元也均勻分布
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private int dimensions() {
+        Integer dimensions = appProperties.getEmbedding().getDimensions();
+        return dimensions != null && dimensions > 0 ? dimensions : DEFAULT_DIMENSIONS;
+    }
+
+    @Override
+    public String getProviderName() {
+        return "local";
+    }
+
+    @Override
+    public String getModel() {
+        return "hashing-" + dimensions();
+    }
+}
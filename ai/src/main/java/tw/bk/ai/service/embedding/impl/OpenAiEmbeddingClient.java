@@ -0,0 +1,309 @@
+package tw.bk.ai.service.embedding.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import tw.bk.ai.config.AppProperties;
+import tw.bk.ai.service.embedding.EmbeddingClient;
+import tw.bk.ai.service.embedding.EmbeddingMetrics;
+import tw.bk.ai.service.embedding.TokenEstimator;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * OpenAI 相容的 Embeddings API 客戶端（POST {baseUrl}/embeddings）
+ * - 共用一個 HttpClient，連線（HTTP/1.1 keep-alive 或 HTTP/2）於呼叫間重用
+ * - 依估算 token 數與筆數上限拆批；請求因過大被拒（413 / token 上限）時對半拆開重送，
+ *   並縮小之後的每批 token 上限，成功後再逐步放大回設定值
+ * - 429 / 5xx / 連線錯誤依 Retry-After 或指數退避重試；有期限的呼叫（查詢）只在退避後仍來得及時重試，
+ *   請求逾時也不超過剩餘時間，避免一次 429 讓查詢執行緒睡過後續批次的期限
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.embedding.provider", havingValue = "openai")
+public class OpenAiEmbeddingClient implements EmbeddingClient {
+
+    private static final int MIN_BATCH_TOKENS = 256;
+    private static final long BASE_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 10_000;
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final ObjectMapper objectMapper;
+    private final AppProperties appProperties;
+    private final EmbeddingMetrics metrics;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    /**
+     * 目前的每批 token 上限（被拒時縮小、成功時回升）
+     */
+    private final AtomicInteger batchTokens;
+
+    public OpenAiEmbeddingClient(ObjectMapper objectMapper, AppProperties appProperties, EmbeddingMetrics metrics) {
+        this.objectMapper = objectMapper;
+        this.appProperties = appProperties;
+        this.metrics = metrics;
+        this.batchTokens = new AtomicInteger(appProperties.getEmbedding().getMaxBatchTokens());
+    }
+
+    @Override
+    public List<float[]> embed(List<String> texts) {
+        return embed(texts, NO_DEADLINE);
+    }
+
+    @Override
+    public List<float[]> embed(List<String> texts, long deadlineNanos) {
+        AppProperties.Embedding config = appProperties.getEmbedding();
+        List<String> inputs = texts.stream()
+                .map(text -> TokenEstimator.truncate(text == null || text.isEmpty() ? " " : text,
+                        config.getMaxInputTokens()))
+                .toList();
+
+        List<float[]> vectors = new ArrayList<>(inputs.size());
+        int from = 0;
+        while (from < inputs.size()) {
+            int budget = batchTokens.get();
+            int to = from;
+            int tokens = 0;
+            while (to < inputs.size() && to - from < config.getMaxBatchSize()) {
+                int estimate = TokenEstimator.estimate(inputs.get(to));
+                if (to > from && tokens + estimate > budget) {
+                    break;
+                }
+                tokens += estimate;
+                to++;
+            }
+            vectors.addAll(embedAdaptive(inputs.subList(from, to), tokens, deadlineNanos));
+            from = to;
+        }
+        return vectors;
+    }
+
+    private List<float[]> embedAdaptive(List<String> batch, int tokens, long deadlineNanos) {
+        try {
+            List<float[]> vectors = request(batch, tokens, deadlineNanos);
+            int max = appProperties.getEmbedding().getMaxBatchTokens();
+            batchTokens.updateAndGet(current -> Math.min(max, current + Math.max(1, max / 16)));
+            return vectors;
+        } catch (BatchTooLargeException ex) {
+            if (batch.size() == 1) {
+                throw new IllegalStateException("Embedding input rejected as too large: " + ex.getMessage());
+            }
+            batchTokens.updateAndGet(current -> Math.max(MIN_BATCH_TOKENS, Math.min(current, tokens / 2)));
+            log.warn("Embedding batch of {} texts (~{} tokens) rejected as too large, splitting", batch.size(), tokens);
+
+            int mid = batch.size() / 2;
+            List<String> head = batch.subList(0, mid);
+            List<String> tail = batch.subList(mid, batch.size());
+            List<float[]> vectors = new ArrayList<>(batch.size());
+            vectors.addAll(embedAdaptive(head, estimate(head), deadlineNanos));
+            vectors.addAll(embedAdaptive(tail, estimate(tail), deadlineNanos));
+            return vectors;
+        }
+    }
+
+    private List<float[]> request(List<String> batch, int tokens, long deadlineNanos) {
+        AppProperties.Embedding config = appProperties.getEmbedding();
+        String payload = buildPayload(batch);
+
+        int attempts = Math.max(1, config.getMaxAttempts());
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(config.getBaseUrl() + "/embeddings"))
+                    .timeout(requestTimeout(config, start, deadlineNanos))
+                    .header("Authorization", "Bearer " + config.getApiKey())
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(payload))
+                    .build();
+            HttpResponse<String> response;
+            try {
+                response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            } catch (IOException ex) {
+                metrics.record(getProviderName(), batch.size(), tokens, System.nanoTime() - start, false);
+                long wait = backoffMillis(attempt, null);
+                if (attempt >= attempts || !fitsBefore(wait, deadlineNanos)) {
+                    throw new IllegalStateException("Embedding request failed: " + ex.getMessage(), ex);
+                }
+                sleep(wait);
+                continue;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Embedding request interrupted", ex);
+            }
+
+            int status = response.statusCode();
+            if (status >= 200 && status < 300) {
+                EmbeddingResponse parsed = parse(response.body(), batch.size());
+                metrics.record(getProviderName(), batch.size(), parsed.promptTokens() > 0 ? parsed.promptTokens() : tokens,
+                        System.nanoTime() - start, true);
+                return parsed.vectors();
+            }
+            metrics.record(getProviderName(), batch.size(), tokens, System.nanoTime() - start, false);
+            if (isTooLarge(status, response.body())) {
+                throw new BatchTooLargeException("status " + status);
+            }
+            if ((status == 429 || status >= 500) && attempt < attempts) {
+                long wait = backoffMillis(attempt, response.headers().firstValue("Retry-After").orElse(null));
+                if (fitsBefore(wait, deadlineNanos)) {
+                    sleep(wait);
+                    continue;
+                }
+            }
+            log.error("Embedding API error: status={}, body={}", status, abbreviate(response.body()));
+            throw new IllegalStateException("Embedding request failed with status " + status);
+        }
+    }
+
+    /**
+     * 請求逾時：設定值與期限剩餘時間取小者；已過期限時不再送出
+     */
+    private static Duration requestTimeout(AppProperties.Embedding config, long now, long deadlineNanos) {
+        Duration timeout = Duration.ofSeconds(config.getTimeoutSeconds());
+        if (deadlineNanos == NO_DEADLINE) {
+            return timeout;
+        }
+        long remaining = deadlineNanos - now;
+        if (remaining <= 0) {
+            throw new IllegalStateException("Embedding deadline expired before request");
+        }
+        return remaining < timeout.toNanos() ? Duration.ofNanos(remaining) : timeout;
+    }
+
+    private static boolean fitsBefore(long waitMillis, long deadlineNanos) {
+        return deadlineNanos == NO_DEADLINE
+                || System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis) < deadlineNanos;
+    }
+
+    private String buildPayload(List<String> batch) {
+        AppProperties.Embedding config = appProperties.getEmbedding();
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("model", config.getModel());
+        payload.put("input", batch);
+        payload.put("encoding_format", "float");
+        if (config.getDimensions() != null) {
+            payload.put("dimensions", config.getDimensions());
+        }
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to build embedding payload", ex);
+        }
+    }
+
+    private EmbeddingResponse parse(String body, int expected) {
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(body);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Invalid embedding response", ex);
+        }
+        JsonNode data = root.path("data");
+        if (!data.isArray() || data.size() != expected) {
+            throw new IllegalStateException("Embedding response has " + data.size() + " vectors for " + expected + " inputs");
+        }
+        float[][] vectors = new float[expected][];
+        for (int i = 0; i < data.size(); i++) {
+            JsonNode item = data.get(i);
+            int index = item.path("index").asInt(i);
+            JsonNode embedding = item.path("embedding");
+            if (index < 0 || index >= expected || !embedding.isArray()) {
+                throw new IllegalStateException("Invalid embedding item at position " + i);
+            }
+            // 筆數已與輸入相同，不重複的 index 即代表每一格都有值
+            if (vectors[index] != null) {
+                throw new IllegalStateException("Duplicate embedding index " + index + " at position " + i);
+            }
+            float[] vector = new float[embedding.size()];
+            for (int d = 0; d < vector.length; d++) {
+                vector[d] = (float) embedding.get(d).asDouble();
+            }
+            vectors[index] = vector;
+        }
+        return new EmbeddingResponse(Arrays.asList(vectors), root.path("usage").path("prompt_tokens").asLong(0));
+    }
+
+    /**
+     * 413，或 400 且錯誤訊息指出超過 token / 輸入上限
+     */
+    private static boolean isTooLarge(int status, String body) {
+        if (status == 413) {
+            return true;
+        }
+        if (status != 400 || body == null) {
+            return false;
+        }
+        String lower = body.toLowerCase(Locale.ROOT);
+        return lower.contains("too large") || lower.contains("too many tokens") || lower.contains("context length")
+                || lower.contains("tokens per request");
+    }
+
+    private static long backoffMillis(int attempt, String retryAfter) {
+        long millis = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (attempt - 1));
+        if (retryAfter != null) {
+            try {
+                millis = Math.min(MAX_BACKOFF_MILLIS, Long.parseLong(retryAfter.trim()) * 1000);
+            } catch (NumberFormatException ignored) {
+                // HTTP 日期格式時沿用指數退避
+            }
+        }
+        return millis;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Embedding request interrupted", ex);
+        }
+    }
+
+    private static int estimate(List<String> batch) {
+        int tokens = 0;
+        for (String text : batch) {
+            tokens += TokenEstimator.estimate(text);
+        }
+        return tokens;
+    }
+
+    private static String abbreviate(String body) {
+        return body != null && body.length() > 500 ? body.substring(0, 500) : body;
+    }
+
+    @Override
+    public String getProviderName() {
+        return "openai";
+    }
+
+    @Override
+    public String getModel() {
+        return appProperties.getEmbedding().getModel();
+    }
+
+    private record EmbeddingResponse(List<float[]> vectors, long promptTokens) {
+    }
+
+    private static class BatchTooLargeException extends RuntimeException {
+
+        BatchTooLargeException(String message) {
+            super(message);
+        }
+    }
+}
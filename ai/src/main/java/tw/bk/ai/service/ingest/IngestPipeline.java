@@ -0,0 +1,241 @@
+package tw.bk.ai.service.ingest;
+
+import io.micrometer.core.instrument.Timer;
+import tw.bk.ai.service.embedding.EmbeddingClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 單一文件的三段式處理管線：切塊（呼叫端執行緒）→ 嵌入（embedThreads 條）→ 寫入（一條）
+ * 段與段之間以有界佇列相接，下游較慢時上游阻塞（背壓），記憶體用量與檔案大小無關。
+ * 嵌入可能亂序完成，寫入端依批次序號重排後依序寫入，檢查點因此一定是連續前綴。
+ * 任一段失敗即中止全部並由 run() 拋出。
+ */
+final class IngestPipeline {
+
+    private static final long POLL_MILLIS = 100;
+    private static final Batch END = new Batch(-1, List.of(), null);
+
+    private final Executor executor;
+    private final EmbeddingClient embeddingClient;
+    private final int batchSize;
+    private final int embedThreads;
+    private final Timer embedTimer;
+
+    private final BlockingQueue<Batch> embedQueue;
+    private final BlockingQueue<Batch> writeQueue;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * @param embeddingClient 未設定時跳過嵌入，只寫入文字切塊
+     */
+    IngestPipeline(Executor executor, EmbeddingClient embeddingClient, int batchSize, int embedThreads,
+            int queueCapacity, Timer embedTimer) {
+        this.executor = executor;
+        this.embeddingClient = embeddingClient;
+        this.batchSize = Math.max(1, batchSize);
+        this.embedThreads = Math.max(1, embedThreads);
+        this.embedTimer = embedTimer;
+        this.embedQueue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.writeQueue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+    }
+
+    /**
+     * 執行至檔案結尾
+     *
+     * @param firstIndex 第一個切塊的序號（由檢查點接續）
+     * @return 本次寫入的切塊數
+     */
+    int run(TextChunker chunker, int firstIndex, BatchWriter writer) throws Exception {
+        List<CompletableFuture<Void>> stages = new ArrayList<>(embedThreads);
+        CompletableFuture<Integer> written;
+        try {
+            for (int i = 0; i < embedThreads; i++) {
+                stages.add(CompletableFuture.runAsync(guarded(this::embedLoop), executor));
+            }
+            written = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return writeLoop(writer);
+                } catch (Throwable ex) {
+                    fail(ex);
+                    return 0;
+                }
+            }, executor);
+        } catch (RuntimeException ex) {
+            // 執行緒池不足：已啟動的段看到失敗後自行結束
+            fail(ex);
+            throw ex;
+        }
+
+        try {
+            read(chunker, firstIndex);
+        } catch (Throwable ex) {
+            fail(ex);
+        }
+        for (int i = 0; i < embedThreads && failure.get() == null; i++) {
+            put(embedQueue, END);
+        }
+
+        int count;
+        try {
+            CompletableFuture.allOf(stages.toArray(CompletableFuture[]::new)).join();
+            count = written.join();
+        } catch (CompletionException ex) {
+            fail(ex.getCause());
+            count = 0;
+        }
+        Throwable error = failure.get();
+        if (error instanceof Exception ex) {
+            throw ex;
+        }
+        if (error != null) {
+            throw new IllegalStateException("Ingest pipeline failed", error);
+        }
+        return count;
+    }
+
+    private void read(TextChunker chunker, int firstIndex) throws Exception {
+        long seq = 0;
+        int index = firstIndex;
+        List<Draft> drafts = new ArrayList<>(batchSize);
+        TextChunker.Chunk chunk;
+        while (failure.get() == null && (chunk = chunker.next()) != null) {
+            drafts.add(new Draft(index++, chunk.offset(), chunk.nextOffset(), chunk.text()));
+            if (drafts.size() == batchSize) {
+                put(embedQueue, new Batch(seq++, drafts, null));
+                drafts = new ArrayList<>(batchSize);
+            }
+        }
+        if (!drafts.isEmpty()) {
+            put(embedQueue, new Batch(seq, drafts, null));
+        }
+    }
+
+    private void embedLoop() throws Exception {
+        while (true) {
+            Batch batch = take(embedQueue);
+            if (batch == null) {
+                return;
+            }
+            if (batch == END) {
+                put(writeQueue, END);
+                return;
+            }
+            put(writeQueue, new Batch(batch.seq(), batch.drafts(), embed(batch.drafts())));
+        }
+    }
+
+    private List<float[]> embed(List<Draft> drafts) {
+        if (embeddingClient == null) {
+            return null;
+        }
+        List<String> texts = drafts.stream().map(Draft::text).toList();
+        List<float[]> vectors = embedTimer.record(() -> embeddingClient.embed(texts));
+        if (vectors == null || vectors.size() != texts.size()) {
+            throw new IllegalStateException("Embedding provider returned "
+                    + (vectors == null ? 0 : vectors.size()) + " vectors for " + texts.size() + " texts");
+        }
+        return vectors;
+    }
+
+    private int writeLoop(BatchWriter writer) throws Exception {
+        TreeMap<Long, Batch> pending = new TreeMap<>();
+        long nextSeq = 0;
+        int ended = 0;
+        int count = 0;
+        while (ended < embedThreads) {
+            Batch batch = take(writeQueue);
+            if (batch == null) {
+                return count;
+            }
+            if (batch == END) {
+                ended++;
+                continue;
+            }
+            pending.put(batch.seq(), batch);
+            while (!pending.isEmpty() && pending.firstKey() == nextSeq) {
+                Batch next = pending.pollFirstEntry().getValue();
+                writer.write(next);
+                count += next.drafts().size();
+                nextSeq++;
+            }
+        }
+        if (!pending.isEmpty()) {
+            throw new IllegalStateException("Ingest pipeline ended with " + pending.size() + " unwritten batches");
+        }
+        return count;
+    }
+
+    /**
+     * 放入佇列；已失敗時放棄
+     */
+    private void put(BlockingQueue<Batch> queue, Batch batch) throws InterruptedException {
+        while (failure.get() == null) {
+            if (queue.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 取出；已失敗時回傳 null
+     */
+    private Batch take(BlockingQueue<Batch> queue) throws InterruptedException {
+        while (failure.get() == null) {
+            Batch batch = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (batch != null) {
+                return batch;
+            }
+        }
+        return null;
+    }
+
+    private Runnable guarded(Stage stage) {
+        return () -> {
+            try {
+                stage.run();
+            } catch (Throwable ex) {
+                fail(ex);
+            }
+        };
+    }
+
+    private void fail(Throwable ex) {
+        failure.compareAndSet(null, ex);
+    }
+
+    @FunctionalInterface
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    @FunctionalInterface
+    interface BatchWriter {
+        void write(Batch batch) throws Exception;
+    }
+
+    /**
+     * @param nextOffset 下一個切塊的起始字元位置
+     */
+    record Draft(int index, long offset, long nextOffset, String text) {
+    }
+
+    /**
+     * @param vectors 與 drafts 對應的向量；未嵌入時為 null
+     */
+    record Batch(long seq, List<Draft> drafts, List<float[]> vectors) {
+
+        Draft last() {
+            return drafts.get(drafts.size() - 1);
+        }
+    }
+}
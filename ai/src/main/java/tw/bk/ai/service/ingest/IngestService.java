@@ -0,0 +1,431 @@
+package tw.bk.ai.service.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tw.bk.ai.config.AppProperties;
+import tw.bk.ai.entity.Document;
+import tw.bk.ai.entity.DocumentChunk;
+import tw.bk.ai.entity.type.PackedVector;
+import tw.bk.ai.exception.NotFoundException;
+import tw.bk.ai.repository.DocumentChunkRepository;
+import tw.bk.ai.repository.DocumentRepository;
+import tw.bk.ai.service.embedding.EmbeddingClient;
+import tw.bk.ai.service.vector.VectorIndexService;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文件匯入服務
+ * 定時認領 PENDING（或心跳逾時的 PROCESSING）文件，以 IngestPipeline 串流切塊、批次嵌入、批次寫入。
+ * 每批切塊與檢查點（metadata_json.ingest）在同一交易提交，中斷後由下一個切塊接續，不會重複或遺漏。
+ * 切塊寫入後先暫存於向量索引，文件完成時才發布；重新匯入期間舊版本切塊持續可查詢，完成時一次切換。
+ * 目前支援純文字類檔案（text/*、JSON、XML、Markdown 等），其他格式標記為 FAILED。
+ */
+@Slf4j
+@Service
+public class IngestService {
+
+    private static final String METADATA_KEY = "ingest";
+    private static final int MAX_ERROR_LENGTH = 500;
+    private static final int DELETE_BATCH_SIZE = 1000;
+    private static final Set<String> TEXT_MIME_TYPES = Set.of(
+            "application/json", "application/xml", "application/x-yaml", "application/yaml",
+            "application/x-ndjson", "application/csv");
+    private static final Set<String> TEXT_EXTENSIONS = Set.of(
+            "txt", "md", "markdown", "csv", "tsv", "json", "jsonl", "xml", "yaml", "yml", "html", "htm", "log");
+
+    private final DocumentRepository documentRepository;
+    private final DocumentChunkRepository documentChunkRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final AppProperties appProperties;
+    private final TaskExecutor ingestExecutor;
+    private final ObjectProvider<EmbeddingClient> embeddingClient;
+    private final VectorIndexService vectorIndexService;
+
+    private final Semaphore slots;
+    private final Set<Long> running = ConcurrentHashMap.newKeySet();
+
+    private final Counter chunksCounter;
+    private final Timer embedTimer;
+    private final Timer writeTimer;
+    private final MeterRegistry meterRegistry;
+
+    public IngestService(DocumentRepository documentRepository, DocumentChunkRepository documentChunkRepository,
+            EntityManager entityManager, PlatformTransactionManager transactionManager, AppProperties appProperties,
+            @Qualifier("ingestExecutor") TaskExecutor ingestExecutor, ObjectProvider<EmbeddingClient> embeddingClient,
+            VectorIndexService vectorIndexService, MeterRegistry meterRegistry) {
+        this.documentRepository = documentRepository;
+        this.documentChunkRepository = documentChunkRepository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.appProperties = appProperties;
+        this.ingestExecutor = ingestExecutor;
+        this.embeddingClient = embeddingClient;
+        this.vectorIndexService = vectorIndexService;
+        this.slots = new Semaphore(Math.max(1, appProperties.getIngest().getConcurrentDocuments()));
+
+        this.meterRegistry = meterRegistry;
+        this.chunksCounter = Counter.builder("ingest.chunks")
+                .register(meterRegistry);
+        this.embedTimer = Timer.builder("ingest.embed")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.writeTimer = Timer.builder("ingest.write")
+                .register(meterRegistry);
+        Gauge.builder("ingest.active", running, Set::size)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 認領待處理文件（每個空閒名額一份）
+     */
+    @Scheduled(fixedDelayString = "${app.ingest.poll-millis:5000}")
+    public void poll() {
+        if (!appProperties.getIngest().isEnabled() || slots.availablePermits() == 0) {
+            return;
+        }
+        List<Long> ids = documentRepository.findIngestableIds(staleBefore(), Limit.of(slots.availablePermits()));
+        for (Long id : ids) {
+            if (!slots.tryAcquire()) {
+                return;
+            }
+            if (running.contains(id) || documentRepository.claimIngest(id, LocalDateTime.now(), staleBefore()) == 0) {
+                slots.release();
+                continue;
+            }
+            running.add(id);
+            try {
+                ingestExecutor.execute(() -> {
+                    try {
+                        ingest(id);
+                    } finally {
+                        running.remove(id);
+                        slots.release();
+                    }
+                });
+            } catch (TaskRejectedException ex) {
+                // 維持 PROCESSING，心跳逾時後重新認領
+                running.remove(id);
+                slots.release();
+                log.warn("Ingest executor saturated, document {} deferred", id);
+            }
+        }
+    }
+
+    private void ingest(Long documentId) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "completed";
+        try {
+            Source source = transactionTemplate.execute(status -> {
+                Document document = entityManager.find(Document.class, documentId);
+                return document != null ? Source.of(document) : null;
+            });
+            if (source == null) {
+                outcome = "aborted";
+                return;
+            }
+            if (!isText(source)) {
+                outcome = "failed";
+                fail(documentId, "Unsupported file type: " + source.mimeType());
+                return;
+            }
+
+            Path path = Path.of(source.filePath());
+            if (!Files.isRegularFile(path)) {
+                outcome = "failed";
+                fail(documentId, "File not found");
+                return;
+            }
+
+            long started = System.nanoTime();
+            AppProperties.Ingest config = appProperties.getIngest();
+            IngestPipeline pipeline = new IngestPipeline(ingestExecutor, embeddingClient.getIfAvailable(),
+                    config.getEmbedBatchSize(), config.getEmbedThreads(), config.getQueueCapacity(), embedTimer);
+            int written;
+            try (Reader reader = open(path, source.nextOffset())) {
+                TextChunker chunker = new TextChunker(reader, source.nextOffset(), config.getChunkChars(),
+                        config.getChunkOverlapChars());
+                Checkpoint[] checkpoint = {new Checkpoint(source.nextIndex(), source.nextOffset())};
+                written = pipeline.run(chunker, source.nextIndex(),
+                        batch -> checkpoint[0] = write(documentId, checkpoint[0], batch));
+                complete(documentId, checkpoint[0]);
+            }
+
+            double seconds = Math.max(1e-3, (System.nanoTime() - started) / 1e9);
+            log.info("Document {} ingested: {} chunks this run ({} chunks/s)", documentId, written,
+                    String.format(Locale.ROOT, "%.1f", written / seconds));
+        } catch (OwnershipLostException ex) {
+            outcome = "aborted";
+            log.info("Ingest of document {} aborted: {}", documentId, ex.getMessage());
+        } catch (Exception ex) {
+            outcome = "failed";
+            log.error("Ingest of document {} failed: {}", documentId, ex.getMessage(), ex);
+            fail(documentId, ex.getMessage());
+        } finally {
+            sample.stop(meterRegistry.timer("ingest.document", "outcome", outcome));
+        }
+    }
+
+    /**
+     * 寫入一批切塊並推進檢查點（同一交易）
+     * 以列鎖確認檢查點仍是本執行緒上次寫入的值，避免逾時後被重新認領時兩邊重複寫入
+     */
+    private Checkpoint write(Long documentId, Checkpoint expected, IngestPipeline.Batch batch) {
+        long startNanos = System.nanoTime();
+        PackedVector.Format format = appProperties.getEmbedding().getStorageFormat();
+        List<DocumentChunk> chunks = transactionTemplate.execute(status -> {
+            Document document = entityManager.find(Document.class, documentId, LockModeType.PESSIMISTIC_WRITE);
+            if (document == null || document.getStatus() != Document.DocumentStatus.PROCESSING) {
+                throw new OwnershipLostException("document removed or no longer processing");
+            }
+            if (!expected.equals(Checkpoint.of(document.getMetadata()))) {
+                throw new OwnershipLostException("checkpoint advanced by another worker");
+            }
+
+            List<DocumentChunk> batchChunks = new ArrayList<>(batch.drafts().size());
+            for (int i = 0; i < batch.drafts().size(); i++) {
+                IngestPipeline.Draft draft = batch.drafts().get(i);
+                float[] vector = batch.vectors() != null ? batch.vectors().get(i) : null;
+                batchChunks.add(DocumentChunk.builder()
+                        .document(document)
+                        .chunkIndex(draft.index())
+                        .content(draft.text())
+                        .embedding(PackedVector.of(vector, format))
+                        .metadata(Map.of("offset", draft.offset()))
+                        .build());
+            }
+            documentChunkRepository.saveAll(batchChunks);
+
+            IngestPipeline.Draft last = batch.last();
+            document.setChunkCount(last.index() + 1);
+            document.setMetadata(withProgress(document.getMetadata(),
+                    new Checkpoint(last.index() + 1, last.nextOffset()), null));
+            return batchChunks;
+        });
+
+        Long knowledgeBaseId = chunks.get(0).getDocument().getKnowledgeBaseId();
+        for (int i = 0; i < chunks.size(); i++) {
+            vectorIndexService.stage(knowledgeBaseId, documentId, chunks.get(i).getId(),
+                    batch.vectors() != null ? batch.vectors().get(i) : null, batch.drafts().get(i).text());
+        }
+        chunksCounter.increment(chunks.size());
+        writeTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+
+        IngestPipeline.Draft last = batch.last();
+        return new Checkpoint(last.index() + 1, last.nextOffset());
+    }
+
+    /**
+     * 標記完成；重新匯入時同一交易刪除舊版本切塊，提交後新版本與舊版本的移除在索引中一次生效
+     */
+    private void complete(Long documentId, Checkpoint checkpoint) {
+        Published published = transactionTemplate.execute(status -> {
+            Document document = entityManager.find(Document.class, documentId, LockModeType.PESSIMISTIC_WRITE);
+            if (document == null || !checkpoint.equals(Checkpoint.of(document.getMetadata()))) {
+                throw new OwnershipLostException("checkpoint advanced by another worker");
+            }
+            List<Long> replaced = List.of();
+            if (document.getReingestFromChunkId() != null) {
+                replaced = documentChunkRepository.findIdsBefore(documentId, document.getReingestFromChunkId());
+                deleteChunks(replaced);
+                document.setReingestFromChunkId(null);
+            }
+            Map<String, Object> metadata = withProgress(document.getMetadata(), checkpoint, null);
+            progressOf(metadata).put("completed_at", LocalDateTime.now().toString());
+            document.setMetadata(metadata);
+            document.setChunkCount(checkpoint.nextIndex());
+            document.setStatus(Document.DocumentStatus.COMPLETED);
+            return new Published(document.getKnowledgeBaseId(), replaced);
+        });
+        vectorIndexService.publish(published.knowledgeBaseId(), documentId, published.replaced());
+    }
+
+    /**
+     * 重新匯入文件（例如原始檔案更新後）
+     * 目前發布的切塊在新版本完成前持續可查詢；已發布過的文件記下重新匯入起點，完成時才刪除舊版本，
+     * 未完成的前一次匯入結果（從未發布）則直接刪除。處理中的匯入會因檢查點改變而中止。
+     */
+    public void reprocess(Long documentId) {
+        Published discarded = transactionTemplate.execute(status -> {
+            Document document = entityManager.find(Document.class, documentId, LockModeType.PESSIMISTIC_WRITE);
+            if (document == null) {
+                throw NotFoundException.document(documentId);
+            }
+            List<Long> unpublished;
+            if (document.getStatus() == Document.DocumentStatus.COMPLETED) {
+                // 起點取目前版本的最大 id + 1，不受各節點時鐘差異影響
+                unpublished = List.of();
+                Long maxChunkId = documentChunkRepository.findMaxId(documentId);
+                document.setReingestFromChunkId(maxChunkId != null ? maxChunkId + 1 : null);
+            } else {
+                Long publishedBefore = document.getReingestFromChunkId();
+                unpublished = documentChunkRepository.findIdsFrom(documentId,
+                        publishedBefore != null ? publishedBefore : 0L);
+                deleteChunks(unpublished);
+            }
+            Map<String, Object> metadata = withProgress(document.getMetadata(), new Checkpoint(0, 0), null);
+            progressOf(metadata).put("reprocess_requested_at", LocalDateTime.now().toString());
+            document.setMetadata(metadata);
+            document.setStatus(Document.DocumentStatus.PENDING);
+            return new Published(document.getKnowledgeBaseId(), unpublished);
+        });
+        vectorIndexService.remove(discarded.knowledgeBaseId(), discarded.replaced());
+        log.info("Document {} queued for re-ingestion ({} unpublished chunks discarded)", documentId,
+                discarded.replaced().size());
+    }
+
+    private void deleteChunks(List<Long> chunkIds) {
+        for (int from = 0; from < chunkIds.size(); from += DELETE_BATCH_SIZE) {
+            documentChunkRepository.deleteAllByIdInBatch(
+                    chunkIds.subList(from, Math.min(chunkIds.size(), from + DELETE_BATCH_SIZE)));
+        }
+    }
+
+    private void fail(Long documentId, String error) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                Document document = entityManager.find(Document.class, documentId);
+                if (document == null) {
+                    return;
+                }
+                document.setMetadata(withProgress(document.getMetadata(), Checkpoint.of(document.getMetadata()),
+                        abbreviate(error)));
+                document.setStatus(Document.DocumentStatus.FAILED);
+            });
+        } catch (RuntimeException ex) {
+            log.error("Failed to mark document {} as failed: {}", documentId, ex.getMessage());
+        }
+    }
+
+    /**
+     * 以 UTF-8 串流讀取並跳到檢查點；無效位元組以替代字元處理
+     */
+    private Reader open(Path path, long offset) throws IOException {
+        Reader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(path),
+                StandardCharsets.UTF_8.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE)));
+        long remaining = offset;
+        while (remaining > 0) {
+            long skipped = reader.skip(remaining);
+            if (skipped <= 0) {
+                break;
+            }
+            remaining -= skipped;
+        }
+        return reader;
+    }
+
+    private boolean isText(Source source) {
+        String mimeType = source.mimeType();
+        if (mimeType != null && !mimeType.isBlank()) {
+            String type = mimeType.toLowerCase(Locale.ROOT).split(";")[0].trim();
+            return type.startsWith("text/") || TEXT_MIME_TYPES.contains(type);
+        }
+        String fileName = source.fileName();
+        int dot = fileName != null ? fileName.lastIndexOf('.') : -1;
+        return dot >= 0 && TEXT_EXTENSIONS.contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private static Map<String, Object> withProgress(Map<String, Object> metadata, Checkpoint checkpoint,
+            String error) {
+        Map<String, Object> copy = metadata != null ? new LinkedHashMap<>(metadata) : new LinkedHashMap<>();
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("next_chunk_index", checkpoint.nextIndex());
+        progress.put("next_offset", checkpoint.nextOffset());
+        progress.put("updated_at", LocalDateTime.now().toString());
+        if (error != null) {
+            progress.put("error", error);
+        }
+        copy.put(METADATA_KEY, progress);
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> progressOf(Map<String, Object> metadata) {
+        return (Map<String, Object>) metadata.get(METADATA_KEY);
+    }
+
+    private LocalDateTime staleBefore() {
+        return LocalDateTime.now().minusSeconds(appProperties.getIngest().getStaleAfterSeconds());
+    }
+
+    private static String abbreviate(String message) {
+        if (message == null) {
+            return "Unknown error";
+        }
+        return message.length() <= MAX_ERROR_LENGTH ? message : message.substring(0, MAX_ERROR_LENGTH);
+    }
+
+    /**
+     * 檢查點：下一個切塊的序號與起始字元位置
+     */
+    private record Checkpoint(int nextIndex, long nextOffset) {
+
+        static Checkpoint of(Map<String, Object> metadata) {
+            Object progress = metadata != null ? metadata.get(METADATA_KEY) : null;
+            if (progress instanceof Map<?, ?> map
+                    && map.get("next_chunk_index") instanceof Number index
+                    && map.get("next_offset") instanceof Number offset) {
+                return new Checkpoint(index.intValue(), offset.longValue());
+            }
+            return new Checkpoint(0, 0);
+        }
+    }
+
+    private record Source(String fileName, String filePath, String mimeType, int nextIndex, long nextOffset) {
+
+        static Source of(Document document) {
+            Checkpoint checkpoint = Checkpoint.of(document.getMetadata());
+            return new Source(document.getFileName(), document.getFilePath(), document.getMimeType(),
+                    checkpoint.nextIndex(), checkpoint.nextOffset());
+        }
+    }
+
+    /**
+     * 完成或重新匯入時涉及的切塊
+     *
+     * @param replaced 被取代或捨棄（已刪除）的切塊
+     */
+    private record Published(Long knowledgeBaseId, List<Long> replaced) {
+    }
+
+    private static class OwnershipLostException extends RuntimeException {
+
+        OwnershipLostException(String message) {
+            super(message);
+        }
+    }
+}
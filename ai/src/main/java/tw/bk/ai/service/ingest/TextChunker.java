@@ -0,0 +1,113 @@
+package tw.bk.ai.service.ingest;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * 串流文字切塊器
+ * 只保留一個切塊加讀取緩衝的字元於記憶體；切點優先選段落、換行、句末標點，找不到才硬切。
+ * 相鄰切塊重疊 overlapChars 個字元。切塊結果只取決於起始位置，因此可由檢查點（nextOffset）重新開始。
+ */
+final class TextChunker {
+
+    private static final int READ_BUFFER = 8192;
+    private static final String SENTENCE_ENDS = "。！？；.!?;";
+
+    private final Reader reader;
+    private final int chunkChars;
+    private final int overlapChars;
+    private final char[] buffer = new char[READ_BUFFER];
+    private final StringBuilder window = new StringBuilder();
+
+    private long windowOffset;
+    private boolean eof;
+
+    /**
+     * @param reader      已跳過 startOffset 個字元的 Reader
+     * @param startOffset 起始字元位置
+     */
+    TextChunker(Reader reader, long startOffset, int chunkChars, int overlapChars) {
+        if (chunkChars < 16) {
+            throw new IllegalArgumentException("Chunk size too small: " + chunkChars);
+        }
+        this.reader = reader;
+        this.windowOffset = startOffset;
+        this.chunkChars = chunkChars;
+        // 切點至少在半個切塊之後，重疊限制在四分之一內以確保每次前進
+        this.overlapChars = Math.max(0, Math.min(overlapChars, chunkChars / 4));
+    }
+
+    /**
+     * 下一個切塊；讀完時回傳 null
+     */
+    Chunk next() throws IOException {
+        while (true) {
+            fill();
+            if (window.isEmpty()) {
+                return null;
+            }
+            int cut = eof && window.length() <= chunkChars ? window.length() : cutPoint();
+            boolean last = eof && cut == window.length();
+            int advance = last ? cut : cut - overlapChars;
+
+            long offset = windowOffset;
+            String text = window.substring(0, cut).strip();
+            window.delete(0, advance);
+            windowOffset += advance;
+            if (!text.isEmpty()) {
+                return new Chunk(offset, windowOffset, text);
+            }
+        }
+    }
+
+    private void fill() throws IOException {
+        while (!eof && window.length() < chunkChars) {
+            int read = reader.read(buffer);
+            if (read < 0) {
+                eof = true;
+            } else {
+                window.append(buffer, 0, read);
+            }
+        }
+    }
+
+    private int cutPoint() {
+        int max = Math.min(chunkChars, window.length());
+        int min = max / 2;
+        int cut = lastIndexOf("\n\n", min, max);
+        if (cut < 0) {
+            cut = lastIndexOf("\n", min, max);
+        }
+        if (cut < 0) {
+            for (int i = max; i > min && cut < 0; i--) {
+                if (SENTENCE_ENDS.indexOf(window.charAt(i - 1)) >= 0) {
+                    cut = i;
+                }
+            }
+        }
+        if (cut < 0) {
+            cut = max;
+        }
+        // 不拆開 surrogate pair
+        if (cut < window.length() && Character.isHighSurrogate(window.charAt(cut - 1))) {
+            cut--;
+        }
+        return cut;
+    }
+
+    /**
+     * 分隔字串結尾落在 (min, max] 內的最後位置
+     */
+    private int lastIndexOf(String separator, int min, int max) {
+        int index = window.lastIndexOf(separator, max - separator.length());
+        int end = index + separator.length();
+        return index >= 0 && end > min ? end : -1;
+    }
+
+    /**
+     * @param offset     切塊起始字元位置
+     * @param nextOffset 下一個切塊的起始位置（檢查點）
+     */
+    record Chunk(long offset, long nextOffset, String text) {
+    }
+}
@@ -0,0 +1,59 @@
+package tw.bk.ai.service.kb;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tw.bk.ai.dto.purge.PurgeJobResp;
+import tw.bk.ai.entity.PurgeJob;
+import tw.bk.ai.exception.NotFoundException;
+import tw.bk.ai.repository.DocumentRepository;
+import tw.bk.ai.repository.KnowledgeBaseRepository;
+import tw.bk.ai.service.ingest.IngestService;
+import tw.bk.ai.service.purge.PurgeService;
+
+import java.time.LocalDateTime;
+
+/**
+ * 知識庫服務
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class KnowledgeBaseService {
+
+    private final KnowledgeBaseRepository knowledgeBaseRepository;
+    private final DocumentRepository documentRepository;
+    private final PurgeService purgeService;
+    private final IngestService ingestService;
+
+    /**
+     * 刪除知識庫
+     * 立即隱藏知識庫，文件與切塊由背景工作分批清除
+     */
+    @Transactional
+    public PurgeJobResp deleteKnowledgeBase(Long userId, Long knowledgeBaseId) {
+        if (knowledgeBaseRepository.hide(knowledgeBaseId, userId, LocalDateTime.now()) == 0) {
+            throw NotFoundException.knowledgeBase(knowledgeBaseId);
+        }
+
+        log.info("Knowledge base hidden: {} by user: {}", knowledgeBaseId, userId);
+        return purgeService.schedule(PurgeJob.TargetType.KNOWLEDGE_BASE, knowledgeBaseId, userId);
+    }
+
+    /**
+     * 重新匯入知識庫中的文件（例如原始檔案更新後）
+     * 新版本完成前目前的切塊持續可查詢，完成時才刪除
+     */
+    public void reprocessDocument(Long userId, Long knowledgeBaseId, Long documentId) {
+        if (!knowledgeBaseRepository.existsByIdAndUser_IdAndDeletedAtIsNull(knowledgeBaseId, userId)) {
+            throw NotFoundException.knowledgeBase(knowledgeBaseId);
+        }
+        if (documentRepository.findByIdAndKnowledgeBase_Id(documentId, knowledgeBaseId).isEmpty()) {
+            throw NotFoundException.document(documentId);
+        }
+
+        ingestService.reprocess(documentId);
+        log.info("Document {} reprocess requested by user: {}", documentId, userId);
+    }
+}
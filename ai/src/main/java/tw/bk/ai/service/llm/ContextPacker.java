@@ -0,0 +1,158 @@
+package tw.bk.ai.service.llm;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import tw.bk.ai.config.AppProperties;
+import tw.bk.ai.entity.Message;
+import tw.bk.ai.service.embedding.TokenEstimator;
+import tw.bk.ai.service.retrieval.RetrievedChunk;
+import tw.bk.ai.service.search.CjkBigramTokenizer;
+import tw.bk.ai.vo.chat.StreamEventVo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Prompt 內容打包器
+ * 檢索切塊與對話歷史共用同一個 prompt token 預算（app.llm.prompt-token-budget）：
+ * - 系統提示與本輪問題一定保留，其餘預算由 context 與歷史分配
+ * - context 最多佔 max-context-share；歷史用不完的份額也讓給 context
+ * - 切塊依融合分數貪婪放入，與已選切塊重疊（切塊重疊區、重複上傳的文件）達門檻者略過
+ * - 歷史由新到舊放入，放不下即停止，保持對話連續
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ContextPacker {
+
+    /**
+     * 每則訊息的角色與分隔開銷（估計值）
+     */
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private final PromptBuilder promptBuilder;
+    private final AppProperties appProperties;
+
+    /**
+     * @param messages 對話歷史（最後一則為本輪使用者訊息）
+     * @param chunks   檢索結果（依分數由高到低）
+     */
+    public PackedContext pack(List<Message> messages, List<RetrievedChunk> chunks) {
+        if (messages.isEmpty()) {
+            return new PackedContext(messages, null, List.of());
+        }
+        Message question = messages.get(messages.size() - 1);
+        int budget = appProperties.getLlm().getPromptTokenBudget()
+                - promptBuilder.systemPromptTokens() - cost(question);
+
+        List<Message> history = messages.subList(0, messages.size() - 1);
+        int historyTokens = 0;
+        for (Message message : history) {
+            historyTokens += cost(message);
+        }
+        double share = appProperties.getRetrieval().getMaxContextShare();
+        int contextBudget = Math.max(0, budget - Math.min(historyTokens, (int) (budget * (1 - share))));
+
+        List<RetrievedChunk> selected = select(chunks, contextBudget);
+        String context = promptBuilder.formatContext(selected);
+        int contextTokens = TokenEstimator.estimate(context);
+
+        // 歷史由新到舊放入剩餘預算
+        int remaining = budget - contextTokens;
+        Deque<Message> kept = new ArrayDeque<>();
+        for (int i = history.size() - 1; i >= 0; i--) {
+            int tokens = cost(history.get(i));
+            if (tokens > remaining) {
+                break;
+            }
+            remaining -= tokens;
+            kept.addFirst(history.get(i));
+        }
+        kept.addLast(question);
+
+        if (selected.size() < sizeOf(chunks) || kept.size() < messages.size()) {
+            log.debug("Prompt packed: {}/{} chunks ({} tokens), {}/{} messages, budget {}",
+                    selected.size(), sizeOf(chunks), contextTokens, kept.size(), messages.size(), budget);
+        }
+        List<StreamEventVo.Citation> citations = selected.stream()
+                .map(chunk -> new StreamEventVo.Citation(chunk.documentId(), chunk.chunkId(), chunk.title(),
+                        chunk.pageNumber()))
+                .toList();
+        return new PackedContext(new ArrayList<>(kept), context, citations);
+    }
+
+    /**
+     * 依分數貪婪選取切塊：放不下的略過（後面較短的仍可能放得下），重複的略過
+     */
+    private List<RetrievedChunk> select(List<RetrievedChunk> chunks, int budget) {
+        if (chunks == null || chunks.isEmpty() || budget <= 0) {
+            return List.of();
+        }
+        double threshold = appProperties.getRetrieval().getDuplicateThreshold();
+        List<RetrievedChunk> selected = new ArrayList<>();
+        List<Set<String>> selectedTerms = new ArrayList<>();
+        int used = 0;
+        for (RetrievedChunk chunk : chunks) {
+            int tokens = TokenEstimator.estimate(promptBuilder.sourceTag(chunk))
+                    + TokenEstimator.estimate(chunk.content()) + 2;
+            if (used + tokens > budget) {
+                continue;
+            }
+            Set<String> terms = new HashSet<>(CjkBigramTokenizer.tokenize(chunk.content()));
+            if (isDuplicate(terms, selectedTerms, threshold)) {
+                continue;
+            }
+            selected.add(chunk);
+            selectedTerms.add(terms);
+            used += tokens;
+        }
+        return selected;
+    }
+
+    /**
+     * 與任一已選切塊的包含度（交集 / 較小集合）達門檻即視為重複；
+     * 相鄰切塊只共用重疊區，包含度低，不受影響
+     */
+    private static boolean isDuplicate(Set<String> terms, List<Set<String>> selected, double threshold) {
+        if (terms.isEmpty()) {
+            return true;
+        }
+        for (Set<String> other : selected) {
+            Set<String> smaller = terms.size() <= other.size() ? terms : other;
+            Set<String> larger = smaller == terms ? other : terms;
+            int common = 0;
+            for (String term : smaller) {
+                if (larger.contains(term)) {
+                    common++;
+                }
+            }
+            if (common >= threshold * smaller.size()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int cost(Message message) {
+        return TokenEstimator.estimate(message.getContent()) + MESSAGE_OVERHEAD_TOKENS;
+    }
+
+    private static int sizeOf(List<RetrievedChunk> chunks) {
+        return chunks != null ? chunks.size() : 0;
+    }
+
+    /**
+     * 打包結果
+     *
+     * @param messages  保留的對話歷史（含本輪問題）
+     * @param context   格式化後的 context（無切塊時為 null）
+     * @param citations 實際放入 prompt 的來源，於 meta 事件送出
+     */
+    public record PackedContext(List<Message> messages, String context, List<StreamEventVo.Citation> citations) {
+    }
+}
@@ -1,5 +1,7 @@
 package tw.bk.ai.service.llm;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -7,6 +9,7 @@ import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import tw.bk.ai.config.AppProperties;
+import tw.bk.ai.datasource.DataSourceRouting;
 import tw.bk.ai.dto.chat.MessageSendReq;
 import tw.bk.ai.entity.Message;
 import tw.bk.ai.exception.BizException;
@@ -14,12 +17,19 @@ import tw.bk.ai.exception.ErrorCode;
 import tw.bk.ai.result.Result;
 import tw.bk.ai.service.chat.MessageService;
 import tw.bk.ai.service.ratelimit.RateLimitService;
+import tw.bk.ai.service.retrieval.RetrievalService;
+import tw.bk.ai.service.retrieval.RetrievedChunk;
+import tw.bk.ai.service.title.TitleGenerationService;
 import tw.bk.ai.service.usage.UsageLogService;
 import tw.bk.ai.vo.chat.StreamEventVo;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import reactor.core.Disposable;
 
@@ -32,14 +42,25 @@ import reactor.core.Disposable;
 @RequiredArgsConstructor
 public class LlmService {
 
+    /**
+     * 回覆序號不超過此值時送入標題佇列（首輪；容許首輪失敗後重送一次）
+     */
+    private static final long TITLE_SOURCE_MAX_SEQ = 4;
+
     private final LlmClient llmClient;
     private final PromptBuilder promptBuilder;
+    private final ContextPacker contextPacker;
     private final MessageService messageService;
     private final AppProperties appProperties;
     private final RateLimitService rateLimitService;
     private final UsageLogService usageLogService;
+    private final TitleGenerationService titleGenerationService;
+    private final RetrievalService retrievalService;
+    private final MeterRegistry meterRegistry;
     @Qualifier("llmTaskExecutor")
     private final TaskExecutor llmTaskExecutor;
+    @Qualifier("preflightExecutor")
+    private final TaskExecutor preflightExecutor;
 
     /**
      * 串流生成回覆
@@ -54,17 +75,18 @@ public class LlmService {
             StringBuilder fullResponse = new StringBuilder();
             AtomicReference<int[]> usageRef = new AtomicReference<>();
 
-            try {
-                rateLimitService.check(userId);
+            long startNanos = System.nanoTime();
+            AtomicBoolean firstDelta = new AtomicBoolean(true);
 
-                // 保存使用者訊息
-                messageService.saveUserMessage(userId, chatId, req.getContent());
-
-                // 取得對話歷史
-                List<Message> messages = messageService.getMessages(chatId);
+            try {
+                // 前置階段：限流後，保存訊息、讀取歷史、知識庫檢索並行；切塊與歷史共用 token 預算
+                ContextPacker.PackedContext packed = preflight(userId, chatId, req, startNanos);
+                List<Map<String, String>> prompt = promptBuilder.build(packed.messages(), packed.context());
 
-                // 建構 prompt
-                List<Map<String, String>> prompt = promptBuilder.build(messages);
+                // 引用來源先於第一個 delta 送出，前端可在回覆串流時即顯示
+                if (req.getKnowledgeBaseId() != null) {
+                    sendEvent(emitter, "meta", StreamEventVo.meta(packed.citations()));
+                }
 
                 // 取得參數
                 String model = req.getModel() != null ? req.getModel() : appProperties.getLlm().getModel();
@@ -77,6 +99,12 @@ public class LlmService {
                         .doOnNext(event -> {
                             try {
                                 if (event.getDelta() != null && !event.getDelta().isEmpty()) {
+                                    if (firstDelta.compareAndSet(true, false)) {
+                                        Timer.builder("llm.first_token")
+                                                .publishPercentiles(0.5, 0.95, 0.99)
+                                                .register(meterRegistry)
+                                                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                                    }
                                     fullResponse.append(event.getDelta());
                                     sendEvent(emitter, "delta", StreamEventVo.delta(event.getDelta()));
                                 }
@@ -115,6 +143,15 @@ public class LlmService {
                                         inputTokens,
                                         outputTokens);
 
+                                // 前端隨即同步訊息，暫時將此使用者的讀取導向主庫以讀回剛寫入的回覆
+                                DataSourceRouting.markWritten(userId);
+
+                                if (assistantMessage.getSeq() != null
+                                        && assistantMessage.getSeq() <= TITLE_SOURCE_MAX_SEQ) {
+                                    titleGenerationService.enqueue(chatId, req.getContent(),
+                                            fullResponse.toString());
+                                }
+
                                 // 發送完成事件
                                 sendEvent(emitter, "done", StreamEventVo.done(inputTokens, outputTokens));
                                 emitter.complete();
@@ -152,6 +189,82 @@ public class LlmService {
         return emitter;
     }
 
+    /**
+     * 串流前置階段（首個 token 之前的關鍵路徑）
+     * 限流先行（被拒時不寫入）；保存使用者訊息、讀取歷史、知識庫檢索三者並行，任一失敗即取消其餘。
+     * 三者都會使用資料庫連線，取消時不中斷（中斷 JDBC 呼叫可能損壞連線池中的連線），
+     * 範圍關閉時等待其結束（寫入已提交或回滾）後才回報失敗。
+     * 歷史與寫入並行讀取，可能讀不到剛寫入的訊息，因此以序號合併：取序號小於本則的歷史再接上本則；
+     * 序號在對話內連續，若較早的序號有缺漏（例如封存對話正由寫入交易還原）則在寫入後於主庫重讀；
+     * 還原與否由寫入交易依資料庫狀態決定，寫入提交後熱資料必定完整。
+     * 各階段耗時記入 llm.preflight{stage}。
+     */
+    private ContextPacker.PackedContext preflight(Long userId, Long chatId, MessageSendReq req, long startNanos)
+            throws Exception {
+        try (PreflightScope scope = new PreflightScope(preflightExecutor)) {
+            long stageStart = System.nanoTime();
+            rateLimitService.check(userId);
+            scope.record("rate_limit", System.nanoTime() - stageStart);
+
+            // 前置執行緒沒有 SecurityContext，寫入後明確標記，串流失敗時後續讀取仍走主庫
+            FutureTask<Message> saved = scope.forkUninterruptible("save", () -> {
+                Message message = messageService.saveUserMessage(userId, chatId, req.getContent());
+                DataSourceRouting.markWritten(userId);
+                return message;
+            });
+            FutureTask<List<Message>> history = scope.forkUninterruptible("history",
+                    () -> DataSourceRouting.onPrimary(() -> messageService.getMessages(chatId)));
+            FutureTask<List<RetrievedChunk>> retrieved = req.getKnowledgeBaseId() == null ? null
+                    : scope.forkUninterruptible("retrieval",
+                            () -> retrievalService.retrieve(userId, req.getKnowledgeBaseId(), req.getContent()));
+            scope.join();
+
+            List<Message> messages = mergeHistory(chatId, history.get(), saved.get(), scope);
+
+            stageStart = System.nanoTime();
+            ContextPacker.PackedContext packed = contextPacker.pack(messages,
+                    retrieved != null ? retrieved.get() : List.of());
+            scope.record("pack", System.nanoTime() - stageStart);
+            scope.record("total", System.nanoTime() - startNanos);
+
+            Map<String, Long> timings = scope.timings();
+            timings.forEach((stage, nanos) -> Timer.builder("llm.preflight")
+                    .tag("stage", stage)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry)
+                    .record(nanos, TimeUnit.NANOSECONDS));
+            if (log.isDebugEnabled()) {
+                log.debug("Preflight for chat {}: {}", chatId, formatTimings(timings));
+            }
+            return packed;
+        }
+    }
+
+    private List<Message> mergeHistory(Long chatId, List<Message> history, Message saved, PreflightScope scope) {
+        long seq = saved.getSeq();
+        List<Message> merged = new ArrayList<>(history.size() + 1);
+        for (Message message : history) {
+            if (message.getSeq() < seq) {
+                merged.add(message);
+            }
+        }
+        if (merged.size() < seq - 1) {
+            long start = System.nanoTime();
+            List<Message> reloaded = DataSourceRouting.onPrimary(() -> messageService.getMessages(chatId));
+            scope.record("history_reload", System.nanoTime() - start);
+            return reloaded.stream().filter(message -> message.getSeq() <= seq).toList();
+        }
+        merged.add(saved);
+        return merged;
+    }
+
+    private static String formatTimings(Map<String, Long> timings) {
+        StringBuilder text = new StringBuilder();
+        timings.forEach((stage, nanos) -> text.append(text.isEmpty() ? "" : ", ")
+                .append(stage).append('=').append(TimeUnit.NANOSECONDS.toMillis(nanos)).append("ms"));
+        return text.toString();
+    }
+
     private void sendEvent(SseEmitter emitter, String eventName, StreamEventVo data) throws IOException {
         emitter.send(SseEmitter.event()
                 .name(eventName)
@@ -0,0 +1,197 @@
+package tw.bk.ai.service.llm;
+
+import org.springframework.core.task.TaskExecutor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 串流前置階段的並行範圍（仿 StructuredTaskScope.ShutdownOnFailure，Java 21 該 API 仍為 preview）
+ * - fork 的子任務並行執行，各自記錄耗時
+ * - 任一子任務失敗即取消其餘子任務，join 拋出最先發生的例外；
+ *   以 forkUninterruptible 建立的子任務（交易寫入）取消時不中斷，避免中斷 JDBC 呼叫而損壞連線池中的連線
+ * - close 時取消尚未開始的子任務並等待已開始的子任務結束，子任務不會比範圍活得久：
+ *   失敗回報給呼叫端時，寫入交易已提交或回滾
+ */
+final class PreflightScope implements AutoCloseable {
+
+    private final TaskExecutor executor;
+    private final List<Subtask<?>> forks = new ArrayList<>();
+    private final Map<String, Long> timings = new LinkedHashMap<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    PreflightScope(TaskExecutor executor) {
+        this.executor = executor;
+    }
+
+    <T> FutureTask<T> fork(String stage, Callable<T> task) {
+        return fork(stage, task, true);
+    }
+
+    /**
+     * 取消時不中斷執行中的子任務（交易寫入），close 會等待其自然結束
+     */
+    <T> FutureTask<T> forkUninterruptible(String stage, Callable<T> task) {
+        return fork(stage, task, false);
+    }
+
+    private <T> FutureTask<T> fork(String stage, Callable<T> task, boolean interruptible) {
+        Subtask<T> future = new Subtask<>(interruptible, () -> {
+            long start = System.nanoTime();
+            try {
+                return task.call();
+            } finally {
+                record(stage, System.nanoTime() - start);
+            }
+        });
+        synchronized (forks) {
+            forks.add(future);
+        }
+        if (failure.get() != null) {
+            future.cancel();
+        } else {
+            executor.execute(future);
+        }
+        return future;
+    }
+
+    /**
+     * 等待所有子任務完成；任一失敗時拋出其例外（未檢查例外原樣拋出）
+     */
+    void join() throws Exception {
+        for (FutureTask<?> future : snapshot()) {
+            try {
+                future.get();
+            } catch (CancellationException | ExecutionException ex) {
+                break;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                fail(ex);
+                break;
+            }
+        }
+        Throwable cause = failure.get();
+        if (cause instanceof Exception ex) {
+            throw ex;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+    }
+
+    /**
+     * 各階段耗時（奈秒，依完成順序）
+     */
+    Map<String, Long> timings() {
+        synchronized (timings) {
+            return new LinkedHashMap<>(timings);
+        }
+    }
+
+    void record(String stage, long nanos) {
+        synchronized (timings) {
+            timings.put(stage, nanos);
+        }
+    }
+
+    private void fail(Throwable ex) {
+        if (failure.compareAndSet(null, ex)) {
+            cancelAll();
+        }
+    }
+
+    private void cancelAll() {
+        snapshot().forEach(Subtask::cancel);
+    }
+
+    private List<Subtask<?>> snapshot() {
+        synchronized (forks) {
+            return List.copyOf(forks);
+        }
+    }
+
+    /**
+     * 取消未完成的子任務並等待已開始者結束；等待期間被中斷時保留中斷旗標，仍等到子任務結束
+     */
+    @Override
+    public void close() {
+        cancelAll();
+        boolean interrupted = false;
+        for (Subtask<?> future : snapshot()) {
+            while (true) {
+                try {
+                    future.awaitSettled();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 子任務：例外先完成自身再取消其他子任務，不會中斷自己的執行緒
+     * FutureTask 被取消時立即回報完成，實際執行可能仍在進行，因此另以 settled 記錄執行真正結束
+     */
+    private final class Subtask<T> extends FutureTask<T> {
+
+        private final Thread owner = Thread.currentThread();
+        private final boolean interruptible;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CountDownLatch settled = new CountDownLatch(1);
+
+        Subtask(boolean interruptible, Callable<T> callable) {
+            super(callable);
+            this.interruptible = interruptible;
+        }
+
+        void cancel() {
+            cancel(interruptible);
+        }
+
+        /**
+         * 等待執行結束；尚未開始者直接標記為不再執行
+         */
+        void awaitSettled() throws InterruptedException {
+            if (claimed.compareAndSet(false, true)) {
+                settled.countDown();
+                return;
+            }
+            settled.await();
+        }
+
+        @Override
+        protected void setException(Throwable ex) {
+            super.setException(ex);
+            fail(ex);
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return; // 範圍已關閉
+            }
+            try {
+                super.run();
+            } finally {
+                settled.countDown();
+            }
+            // 執行緒池滿載時在呼叫端執行緒上跑，被取消留下的中斷旗標不能帶回串流執行緒
+            if (Thread.currentThread() == owner && isCancelled()) {
+                Thread.interrupted();
+            }
+        }
+    }
+}
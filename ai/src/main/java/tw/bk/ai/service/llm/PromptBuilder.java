@@ -3,6 +3,8 @@ package tw.bk.ai.service.llm;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 import tw.bk.ai.entity.Message;
+import tw.bk.ai.service.embedding.TokenEstimator;
+import tw.bk.ai.service.retrieval.RetrievedChunk;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -52,6 +54,8 @@ public class PromptBuilder {
                - 仍不足時，請要求使用者提供更多資訊或確認版本
             """;
 
+    private static final int SYSTEM_PROMPT_TOKENS = TokenEstimator.estimate(DEFAULT_SYSTEM_PROMPT);
+
     /**
      * 從訊息實體列表建構 prompt
      */
@@ -84,6 +88,38 @@ public class PromptBuilder {
         return prompt;
     }
 
+    /**
+     * 將檢索到的切塊格式化為 context
+     * 每段前標註系統提示要求的來源格式，模型引用時可直接沿用
+     */
+    public String formatContext(List<RetrievedChunk> chunks) {
+        if (chunks == null || chunks.isEmpty()) {
+            return null;
+        }
+        StringBuilder context = new StringBuilder();
+        for (RetrievedChunk chunk : chunks) {
+            context.append(sourceTag(chunk)).append('\n')
+                    .append(chunk.content().strip()).append("\n\n");
+        }
+        return context.toString().stripTrailing();
+    }
+
+    /**
+     * [來源: title p.N #chunkId]；缺頁碼時省略 p.N，缺標題時改用 doc:docId
+     */
+    String sourceTag(RetrievedChunk chunk) {
+        String title = chunk.title() != null && !chunk.title().isBlank() ? chunk.title() : "doc:" + chunk.documentId();
+        String page = chunk.pageNumber() != null ? " p." + chunk.pageNumber() : "";
+        return "[來源: " + title + page + " #" + chunk.chunkId() + "]";
+    }
+
+    /**
+     * 系統提示的估算 token 數（打包 prompt 時先行扣除）
+     */
+    int systemPromptTokens() {
+        return SYSTEM_PROMPT_TOKENS;
+    }
+
     /**
      * 從原始訊息列表建構（用於直接傳入）
      */
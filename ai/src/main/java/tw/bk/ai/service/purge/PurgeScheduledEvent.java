@@ -0,0 +1,7 @@
+package tw.bk.ai.service.purge;
+
+/**
+ * 刪除工作已建立事件（交易提交後才開始執行）
+ */
+public record PurgeScheduledEvent(Long jobId) {
+}
@@ -0,0 +1,211 @@
+package tw.bk.ai.service.purge;
+
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import tw.bk.ai.config.AppProperties;
+import tw.bk.ai.dto.purge.PurgeJobResp;
+import tw.bk.ai.entity.Chat;
+import tw.bk.ai.entity.KnowledgeBase;
+import tw.bk.ai.entity.PurgeJob;
+import tw.bk.ai.exception.NotFoundException;
+import tw.bk.ai.repository.PurgeJobRepository;
+import tw.bk.ai.service.vector.VectorIndexService;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 背景刪除服務
+ * 對話 / 知識庫刪除時只標記隱藏並建立工作；本服務於背景以固定大小的 DELETE ... LIMIT
+ * 分批清除子資料（每批獨立提交），最後刪除父列。進度寫入 purge_jobs 供查詢。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PurgeService {
+
+    private static final int DOCUMENT_PAGE_SIZE = 100;
+    private static final int RECOVER_LIMIT = 20;
+
+    private static final String COUNT_MESSAGES = "SELECT COUNT(*) FROM messages WHERE chat_id = ?";
+    private static final String DELETE_MESSAGES = "DELETE FROM messages WHERE chat_id = ? LIMIT ?";
+    private static final String DELETE_CHAT = "DELETE FROM chats WHERE id = ? AND deleted_at IS NOT NULL";
+
+    private static final String COUNT_KB_ROWS = """
+            SELECT (SELECT COUNT(*) FROM documents WHERE knowledge_base_id = ?)
+                 + (SELECT COUNT(*) FROM document_chunks dc JOIN documents d ON d.id = dc.document_id
+                    WHERE d.knowledge_base_id = ?)""";
+    private static final String SELECT_DOCUMENT_IDS = """
+            SELECT id FROM documents WHERE knowledge_base_id = ? ORDER BY id LIMIT ?""";
+    private static final String DELETE_CHUNKS = "DELETE FROM document_chunks WHERE document_id = ? LIMIT ?";
+    private static final String DELETE_DOCUMENT = "DELETE FROM documents WHERE id = ?";
+    private static final String DELETE_KNOWLEDGE_BASE = "DELETE FROM knowledge_bases WHERE id = ? AND deleted_at IS NOT NULL";
+
+    private final PurgeJobRepository purgeJobRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final AppProperties appProperties;
+    private final TaskExecutor purgeExecutor;
+    private final EntityManagerFactory entityManagerFactory;
+    private final VectorIndexService vectorIndexService;
+
+    /**
+     * 建立刪除工作（與隱藏動作在同一交易，提交後才開始執行）
+     */
+    @Transactional
+    public PurgeJobResp schedule(PurgeJob.TargetType targetType, Long targetId, Long userId) {
+        PurgeJob job = purgeJobRepository.save(PurgeJob.builder()
+                .targetType(targetType)
+                .targetId(targetId)
+                .userId(userId)
+                .build());
+        eventPublisher.publishEvent(new PurgeScheduledEvent(job.getId()));
+        log.info("Purge job {} scheduled for {} {}", job.getId(), targetType, targetId);
+        return PurgeJobResp.from(job);
+    }
+
+    /**
+     * 查詢刪除工作進度
+     */
+    @Transactional(readOnly = true)
+    public PurgeJobResp getJob(Long userId, Long jobId) {
+        return purgeJobRepository.findByIdAndUserId(jobId, userId)
+                .map(PurgeJobResp::from)
+                .orElseThrow(() -> NotFoundException.purgeJob(jobId));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onScheduled(PurgeScheduledEvent event) {
+        submit(event.jobId());
+    }
+
+    /**
+     * 補執行遺漏或中斷（心跳逾時）的工作
+     */
+    @Scheduled(fixedDelayString = "${app.purge.recover-millis:60000}")
+    public void recover() {
+        List<Long> ids = purgeJobRepository.findRunnableIds(staleBefore(), Limit.of(RECOVER_LIMIT));
+        ids.forEach(this::submit);
+    }
+
+    private void submit(Long jobId) {
+        try {
+            purgeExecutor.execute(() -> run(jobId));
+        } catch (TaskRejectedException ex) {
+            // 佇列已滿，交由 recover() 稍後補執行
+            log.warn("Purge executor saturated, job {} deferred", jobId);
+        }
+    }
+
+    private void run(Long jobId) {
+        if (purgeJobRepository.claim(jobId, LocalDateTime.now(), staleBefore()) == 0) {
+            return;
+        }
+        PurgeJob job = purgeJobRepository.findById(jobId).orElse(null);
+        if (job == null) {
+            return;
+        }
+
+        try {
+            switch (job.getTargetType()) {
+                case CHAT -> purgeChat(job);
+                case KNOWLEDGE_BASE -> purgeKnowledgeBase(job);
+            }
+            LocalDateTime now = LocalDateTime.now();
+            purgeJobRepository.finish(jobId, PurgeJob.PurgeStatus.COMPLETED, null, now, now);
+            log.info("Purge job {} completed for {} {}", jobId, job.getTargetType(), job.getTargetId());
+        } catch (RuntimeException ex) {
+            // claim() 已遞增 attempts，重讀的 job 即為本次嘗試的次數
+            log.error("Purge job {} failed (attempt {}): {}", jobId, job.getAttempts(), ex.getMessage(), ex);
+            boolean exhausted = job.getAttempts() >= appProperties.getPurge().getMaxAttempts();
+            LocalDateTime now = LocalDateTime.now();
+            purgeJobRepository.finish(jobId,
+                    exhausted ? PurgeJob.PurgeStatus.FAILED : PurgeJob.PurgeStatus.PENDING,
+                    abbreviate(ex.getMessage()), now, exhausted ? now : null);
+        }
+    }
+
+    private void purgeChat(PurgeJob job) {
+        Long chatId = job.getTargetId();
+        Long total = jdbcTemplate.queryForObject(COUNT_MESSAGES, Long.class, chatId);
+        purgeJobRepository.updateTotal(job.getId(), (total != null ? total : 0L) + 1, LocalDateTime.now());
+
+        deleteInBatches(job.getId(), DELETE_MESSAGES, chatId);
+        int deleted = jdbcTemplate.update(DELETE_CHAT, chatId);
+        entityManagerFactory.getCache().evict(Chat.class, chatId);
+        purgeJobRepository.addProgress(job.getId(), deleted, LocalDateTime.now());
+    }
+
+    private void purgeKnowledgeBase(PurgeJob job) {
+        Long knowledgeBaseId = job.getTargetId();
+        Long total = jdbcTemplate.queryForObject(COUNT_KB_ROWS, Long.class, knowledgeBaseId, knowledgeBaseId);
+        purgeJobRepository.updateTotal(job.getId(), (total != null ? total : 0L) + 1, LocalDateTime.now());
+
+        List<Long> documentIds;
+        do {
+            documentIds = jdbcTemplate.queryForList(SELECT_DOCUMENT_IDS, Long.class, knowledgeBaseId,
+                    DOCUMENT_PAGE_SIZE);
+            for (Long documentId : documentIds) {
+                deleteInBatches(job.getId(), DELETE_CHUNKS, documentId);
+                int deleted = jdbcTemplate.update(DELETE_DOCUMENT, documentId);
+                purgeJobRepository.addProgress(job.getId(), deleted, LocalDateTime.now());
+            }
+        } while (documentIds.size() == DOCUMENT_PAGE_SIZE);
+
+        int deleted = jdbcTemplate.update(DELETE_KNOWLEDGE_BASE, knowledgeBaseId);
+        entityManagerFactory.getCache().evict(KnowledgeBase.class, knowledgeBaseId);
+        vectorIndexService.drop(knowledgeBaseId);
+        purgeJobRepository.addProgress(job.getId(), deleted, LocalDateTime.now());
+    }
+
+    /**
+     * 重複執行 DELETE ... LIMIT 直到刪完；每批自動提交，鎖與 undo log 都只涵蓋一批
+     */
+    private void deleteInBatches(Long jobId, String sql, Long parentId) {
+        AppProperties.Purge config = appProperties.getPurge();
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(sql, parentId, config.getBatchSize());
+            if (deleted > 0) {
+                purgeJobRepository.addProgress(jobId, deleted, LocalDateTime.now());
+                pause(config.getPauseMillis());
+            }
+        } while (deleted == config.getBatchSize());
+    }
+
+    /**
+     * 批次間稍作停頓，降低對線上查詢與複製延遲的影響
+     */
+    private void pause(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Purge interrupted", ex);
+        }
+    }
+
+    private LocalDateTime staleBefore() {
+        return LocalDateTime.now().minusSeconds(appProperties.getPurge().getStaleAfterSeconds());
+    }
+
+    private static String abbreviate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() <= 500 ? message : message.substring(0, 500);
+    }
+}
@@ -0,0 +1,231 @@
+package tw.bk.ai.service.retrieval;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import tw.bk.ai.config.AppProperties;
+import tw.bk.ai.entity.type.CompressedText;
+import tw.bk.ai.exception.NotFoundException;
+import tw.bk.ai.repository.KnowledgeBaseRepository;
+import tw.bk.ai.service.embedding.EmbeddingClient;
+import tw.bk.ai.service.embedding.QueryEmbeddingBatcher;
+import tw.bk.ai.service.vector.VectorHit;
+import tw.bk.ai.service.vector.VectorIndexService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 知識庫混合檢索
+ * BM25（詞彙）與向量（語意）兩個檢索器並行執行，以 Reciprocal Rank Fusion 融合：
+ * 分數 = Σ 1 / (rrfK + 排名)，只看排名，不需校準兩種分數。
+ * 整體受延遲預算限制：逾時或失敗的檢索器以空結果參與融合（例如索引首次載入中），不拖慢回覆。
+ */
+@Slf4j
+@Service
+public class RetrievalService {
+
+    private static final String SELECT_CHUNKS = """
+            SELECT dc.id, dc.document_id, dc.chunk_index, dc.page_number, dc.content, d.file_name
+            FROM document_chunks dc JOIN documents d ON d.id = dc.document_id
+            WHERE d.knowledge_base_id = ? AND dc.id IN (%s)""";
+
+    private final KnowledgeBaseRepository knowledgeBaseRepository;
+    private final VectorIndexService vectorIndexService;
+    private final ObjectProvider<EmbeddingClient> embeddingClient;
+    private final QueryEmbeddingBatcher queryEmbeddingBatcher;
+    private final JdbcTemplate jdbcTemplate;
+    private final AppProperties appProperties;
+    private final TaskExecutor retrievalExecutor;
+    private final MeterRegistry meterRegistry;
+    private final Timer retrieveTimer;
+
+    public RetrievalService(KnowledgeBaseRepository knowledgeBaseRepository, VectorIndexService vectorIndexService,
+            ObjectProvider<EmbeddingClient> embeddingClient, QueryEmbeddingBatcher queryEmbeddingBatcher,
+            JdbcTemplate jdbcTemplate, AppProperties appProperties,
+            @Qualifier("retrievalExecutor") TaskExecutor retrievalExecutor, MeterRegistry meterRegistry) {
+        this.knowledgeBaseRepository = knowledgeBaseRepository;
+        this.vectorIndexService = vectorIndexService;
+        this.embeddingClient = embeddingClient;
+        this.queryEmbeddingBatcher = queryEmbeddingBatcher;
+        this.jdbcTemplate = jdbcTemplate;
+        this.appProperties = appProperties;
+        this.retrievalExecutor = retrievalExecutor;
+        this.meterRegistry = meterRegistry;
+        this.retrieveTimer = Timer.builder("retrieval.latency")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 檢索使用者知識庫中與問題最相關的切塊（依融合分數排序）
+     */
+    public List<RetrievedChunk> retrieve(Long userId, Long knowledgeBaseId, String query) {
+        return retrieve(userId, knowledgeBaseId, query, appProperties.getRetrieval().getTopK());
+    }
+
+    public List<RetrievedChunk> retrieve(Long userId, Long knowledgeBaseId, String query, int k) {
+        // 以資料庫判斷：快取命中時不套用 deleted_at 條件，可能漏掉其他節點的隱藏
+        if (!knowledgeBaseRepository.existsByIdAndUser_IdAndDeletedAtIsNull(knowledgeBaseId, userId)) {
+            throw NotFoundException.knowledgeBase(knowledgeBaseId);
+        }
+        if (query == null || query.isBlank() || k <= 0) {
+            return List.of();
+        }
+        return retrieveTimer.record(() -> fuseAndLoad(knowledgeBaseId, query, k));
+    }
+
+    private List<RetrievedChunk> fuseAndLoad(Long knowledgeBaseId, String query, int k) {
+        AppProperties.Retrieval config = appProperties.getRetrieval();
+        int candidates = Math.max(k, config.getCandidates());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getBudgetMillis());
+
+        CompletableFuture<List<VectorHit>> lexical = submit(
+                () -> vectorIndexService.searchLexical(knowledgeBaseId, query, candidates));
+        // 查詢向量經微批次與其他並行檢索合併成一次嵌入呼叫
+        CompletableFuture<List<VectorHit>> semantic = embeddingClient.getIfAvailable() == null
+                ? CompletableFuture.completedFuture(List.of())
+                : queryEmbeddingBatcher.embed(query).thenApplyAsync(
+                        vector -> vectorIndexService.search(knowledgeBaseId, vector, candidates, null),
+                        retrievalExecutor);
+
+        List<VectorHit> lexicalHits = await(lexical, deadline, "lexical");
+        List<VectorHit> vectorHits = await(semantic, deadline, "vector");
+
+        Map<Long, Fused> fused = new HashMap<>();
+        int rrfK = config.getRrfK();
+        for (int i = 0; i < lexicalHits.size(); i++) {
+            int rank = i + 1;
+            fused.computeIfAbsent(lexicalHits.get(i).chunkId(), Fused::new).addLexical(rank, rrfK);
+        }
+        for (int i = 0; i < vectorHits.size(); i++) {
+            int rank = i + 1;
+            fused.computeIfAbsent(vectorHits.get(i).chunkId(), Fused::new).addVector(rank, rrfK);
+        }
+        if (fused.isEmpty()) {
+            return List.of();
+        }
+
+        // 多取一些：其他節點刪除的切塊可能仍在本機索引中，由資料庫過濾
+        List<Fused> ranked = fused.values().stream()
+                .sorted(Comparator.comparingDouble(Fused::score).reversed())
+                .limit(k * 2L)
+                .toList();
+        return load(knowledgeBaseId, ranked, k);
+    }
+
+    private List<RetrievedChunk> load(Long knowledgeBaseId, List<Fused> ranked, int k) {
+        Map<Long, Fused> byId = new LinkedHashMap<>();
+        ranked.forEach(f -> byId.put(f.chunkId, f));
+        List<Object> args = new ArrayList<>(ranked.size() + 1);
+        args.add(knowledgeBaseId);
+        args.addAll(byId.keySet());
+        String sql = SELECT_CHUNKS.formatted(String.join(",", Collections.nCopies(byId.size(), "?")));
+
+        Map<Long, RetrievedChunk> rows = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            long chunkId = rs.getLong("id");
+            Fused f = byId.get(chunkId);
+            CompressedText content = CompressedText.fromStored(rs.getBytes("content"));
+            rows.put(chunkId, new RetrievedChunk(chunkId, rs.getLong("document_id"), rs.getString("file_name"),
+                    rs.getObject("page_number", Integer.class), rs.getInt("chunk_index"),
+                    content != null ? content.text() : "", f.score, f.lexicalRank, f.vectorRank));
+        }, args.toArray());
+
+        List<RetrievedChunk> result = new ArrayList<>(k);
+        for (Long chunkId : byId.keySet()) {
+            RetrievedChunk chunk = rows.get(chunkId);
+            if (chunk != null) {
+                result.add(chunk);
+                if (result.size() == k) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private CompletableFuture<List<VectorHit>> submit(Supplier<List<VectorHit>> retriever) {
+        try {
+            return CompletableFuture.supplyAsync(retriever, retrievalExecutor);
+        } catch (RejectedExecutionException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    /**
+     * 等待檢索器到期限為止；逾時或失敗時回傳空結果並記錄
+     */
+    private List<VectorHit> await(CompletableFuture<List<VectorHit>> future, long deadline, String retriever) {
+        try {
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            return future.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            degraded(retriever, "timeout");
+            log.warn("Retrieval {} exceeded the latency budget, continuing without it", retriever);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof TimeoutException) {
+                degraded(retriever, "timeout");
+                log.warn("Retrieval {} exceeded its deadline, continuing without it", retriever);
+                return List.of();
+            }
+            degraded(retriever, "error");
+            log.warn("Retrieval {} failed, continuing without it: {}", retriever, ex.getCause().getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            degraded(retriever, "interrupted");
+        }
+        return List.of();
+    }
+
+    private void degraded(String retriever, String reason) {
+        meterRegistry.counter("retrieval.degraded", "retriever", retriever, "reason", reason).increment();
+    }
+
+    /**
+     * 單一切塊的融合狀態
+     */
+    private static final class Fused {
+
+        private final long chunkId;
+        private double score;
+        private Integer lexicalRank;
+        private Integer vectorRank;
+
+        Fused(long chunkId) {
+            this.chunkId = chunkId;
+        }
+
+        void addLexical(int rank, int rrfK) {
+            lexicalRank = rank;
+            score += 1.0 / (rrfK + rank);
+        }
+
+        void addVector(int rank, int rrfK) {
+            vectorRank = rank;
+            score += 1.0 / (rrfK + rank);
+        }
+
+        double score() {
+            return score;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package tw.bk.ai.service.retrieval;
+
+/**
+ * 檢索結果（融合後的切塊）
+ *
+ * @param score       RRF 融合分數
+ * @param lexicalRank BM25 排名（1 起算），未命中為 null
+ * @param vectorRank  向量排名（1 起算），未命中為 null
+ */
+public record RetrievedChunk(
+        long chunkId,
+        long documentId,
+        String title,
+        Integer pageNumber,
+        int chunkIndex,
+        String content,
+        double score,
+        Integer lexicalRank,
+        Integer vectorRank) {
+}
@@ -0,0 +1,417 @@
+package tw.bk.ai.service.search;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import tw.bk.ai.config.AppProperties;
+import tw.bk.ai.entity.id.TimeOrderedIds;
+import tw.bk.ai.repository.ChatRepository;
+import tw.bk.ai.repository.MessageRepository;
+import tw.bk.ai.repository.projection.MessageIndexRow;
+import tw.bk.ai.service.chat.MessageSavedEvent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * 對話全文檢索的本機倒排索引
+ * - 每位使用者一組區段（目錄 {indexDir}/{userId}），新訊息先進 MemTable，定量 / 定時寫出為 mmap 區段
+ * - 訊息保存後（交易提交）由事件喚醒單一索引執行緒；另以遞增 id 輪詢補上其他節點或事件遺漏的訊息
+ * - manifest 記錄已寫出的最大訊息 id，重啟後由此接續
+ * - 訊息 id 跨節點只大致依時間排序，輪詢時回推 reorderWindowMillis 重讀，並略過視窗內已索引的 id
+ * 索引可能含有已刪除的訊息，查詢結果需再經資料庫過濾；合併區段時才會清除（封存中對話的訊息保留）。
+ * 閒置超過 idleEvictMinutes 的使用者索引由索引執行緒釋放，下次查詢或寫入時再由磁碟開啟。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChatSearchIndex {
+
+    private static final int BATCH_SIZE = 500;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final String MANIFEST = "manifest.properties";
+    private static final String LAST_INDEXED_ID = "last-indexed-id";
+
+    private final AppProperties appProperties;
+    private final MessageRepository messageRepository;
+    private final ChatRepository chatRepository;
+    private final TaskExecutor searchIndexExecutor;
+
+    private final Map<Long, UserIndex> users = new ConcurrentHashMap<>();
+    private final Queue<Long> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile boolean started;
+
+    // 以下欄位只由索引執行緒存取
+    private long lastIndexedId;
+    /**
+     * 重讀視窗內已索引的訊息 id（視窗外的自動清除）
+     */
+    private final NavigableSet<Long> recentIds = new TreeSet<>();
+    private long lastFlushAt = System.currentTimeMillis();
+    private int unflushedDocs;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        try {
+            Files.createDirectories(indexDir());
+            lastIndexedId = readManifest();
+        } catch (IOException ex) {
+            log.error("Failed to open search index at {}: {}", indexDir(), ex.getMessage());
+            return;
+        }
+        started = true;
+        log.info("Search index opened at {}, resuming after message id {}", indexDir(), lastIndexedId);
+        requestDrain();
+    }
+
+    /**
+     * 訊息保存並提交後排入索引佇列（不在請求執行緒上切詞）
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageSaved(MessageSavedEvent event) {
+        pending.add(event.messageId());
+        requestDrain();
+    }
+
+    @Scheduled(fixedDelayString = "${app.search.sync-millis:2000}")
+    public void tick() {
+        requestDrain();
+    }
+
+    /**
+     * 以 BM25 排序查詢使用者的訊息
+     * 優先依命中的詞數排序（二元組查詢近似片語比對），其次為分數
+     */
+    List<Hit> search(Long userId, List<String> terms, int limit) {
+        List<SearchSegment> segments = userIndex(userId).snapshot();
+
+        long docCount = 0;
+        long totalLength = 0;
+        for (SearchSegment segment : segments) {
+            docCount += segment.docCount();
+            totalLength += segment.totalLength();
+        }
+        if (docCount == 0) {
+            return List.of();
+        }
+        double avgLength = (double) totalLength / docCount;
+
+        double[] idf = new double[terms.size()];
+        for (int t = 0; t < terms.size(); t++) {
+            int df = 0;
+            for (SearchSegment segment : segments) {
+                df += segment.docFrequency(terms.get(t));
+            }
+            idf[t] = df == 0 ? 0 : Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+        }
+
+        // 同一訊息可能暫時同時存在於多個區段（重複索引），取分數較高者
+        Map<Long, Hit> best = new HashMap<>();
+        for (SearchSegment segment : segments) {
+            Map<Long, Hit> local = new HashMap<>();
+            for (int t = 0; t < terms.size(); t++) {
+                if (idf[t] == 0) {
+                    continue;
+                }
+                double weight = idf[t];
+                segment.forEachPosting(terms.get(t), (messageId, chatId, docLength, tf) -> {
+                    double norm = tf * (K1 + 1) / (tf + K1 * (1 - B + B * docLength / avgLength));
+                    local.merge(messageId, new Hit(messageId, chatId, weight * norm, 1), Hit::combine);
+                });
+            }
+            local.forEach((messageId, hit) -> best.merge(messageId, hit, Hit::better));
+        }
+
+        return best.values().stream()
+                .sorted(Comparator.comparingInt(Hit::matchedTerms).thenComparingDouble(Hit::score).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    record Hit(long messageId, long chatId, double score, int matchedTerms) {
+
+        Hit combine(Hit other) {
+            return new Hit(messageId, chatId, score + other.score, matchedTerms + other.matchedTerms);
+        }
+
+        Hit better(Hit other) {
+            if (matchedTerms != other.matchedTerms) {
+                return matchedTerms > other.matchedTerms ? this : other;
+            }
+            return score >= other.score ? this : other;
+        }
+    }
+
+    // ========== 索引執行緒 ==========
+
+    private void requestDrain() {
+        if (!started || !draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            searchIndexExecutor.execute(this::drain);
+        } catch (TaskRejectedException ex) {
+            draining.set(false);
+        }
+    }
+
+    private void drain() {
+        try {
+            indexPending();
+            indexNew();
+            flushIfDue();
+            evictIdle();
+        } catch (RuntimeException | IOException ex) {
+            log.error("Search indexing failed: {}", ex.getMessage(), ex);
+        } finally {
+            draining.set(false);
+        }
+        if (!pending.isEmpty()) {
+            requestDrain();
+        }
+    }
+
+    private void indexPending() {
+        List<Long> ids = new ArrayList<>(BATCH_SIZE);
+        Long id;
+        while ((id = pending.poll()) != null) {
+            ids.add(id);
+            if (ids.size() == BATCH_SIZE) {
+                messageRepository.findIndexRowsByIds(ids).forEach(this::index);
+                ids.clear();
+            }
+        }
+        if (!ids.isEmpty()) {
+            messageRepository.findIndexRowsByIds(ids).forEach(this::index);
+        }
+    }
+
+    /**
+     * 以遞增 id 補上尚未索引的訊息（啟動追趕、其他節點寫入）
+     * 其他節點時鐘較慢或交易較晚提交時，新訊息的 id 可能小於已索引的最大 id，因此由回推的位置重讀
+     */
+    private void indexNew() throws IOException {
+        long cursor = TimeOrderedIds.rewind(lastIndexedId, appProperties.getId().getReorderWindowMillis());
+        recentIds.headSet(cursor, true).clear();
+        List<MessageIndexRow> rows;
+        do {
+            rows = messageRepository.findIndexRowsAfter(cursor, Limit.of(BATCH_SIZE));
+            for (MessageIndexRow row : rows) {
+                index(row);
+                cursor = row.id();
+                lastIndexedId = Math.max(lastIndexedId, row.id());
+            }
+            if (unflushedDocs >= appProperties.getSearch().getFlushDocs()) {
+                flush();
+            }
+        } while (rows.size() == BATCH_SIZE);
+    }
+
+    private void index(MessageIndexRow row) {
+        if (!recentIds.add(row.id())) {
+            return;
+        }
+        List<String> tokens = CjkBigramTokenizer.tokenize(row.content().text());
+        if (userIndex(row.userId()).mem().add(row.id(), row.chatId(), tokens)) {
+            unflushedDocs++;
+        }
+    }
+
+    private void flushIfDue() throws IOException {
+        AppProperties.Search config = appProperties.getSearch();
+        boolean full = unflushedDocs >= config.getFlushDocs();
+        boolean stale = unflushedDocs > 0 && System.currentTimeMillis() - lastFlushAt >= config.getFlushIntervalMillis();
+        if (full || stale) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        for (UserIndex user : users.values()) {
+            user.flush();
+        }
+        writeManifest(lastIndexedId);
+        log.debug("Search index flushed {} messages, last indexed id {}", unflushedDocs, lastIndexedId);
+        unflushedDocs = 0;
+        lastFlushAt = System.currentTimeMillis();
+
+        for (UserIndex user : users.values()) {
+            if (user.segments().size() > appProperties.getSearch().getMaxSegments()) {
+                merge(user);
+            }
+        }
+    }
+
+    /**
+     * 釋放閒置的使用者索引（只釋放已全部寫出者；與寫入同在索引執行緒，不會和 MemTable 寫入競爭）
+     * 進行中的查詢仍持有舊快照，不受影響
+     */
+    private void evictIdle() {
+        long idleBefore = System.currentTimeMillis()
+                - TimeUnit.MINUTES.toMillis(appProperties.getSearch().getIdleEvictMinutes());
+        int evicted = 0;
+        for (Map.Entry<Long, UserIndex> entry : users.entrySet()) {
+            UserIndex user = entry.getValue();
+            if (user.lastAccess() < idleBefore && !user.hasUnflushed() && users.remove(entry.getKey(), user)) {
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            log.debug("Evicted {} idle user search indexes, {} remain loaded", evicted, users.size());
+        }
+    }
+
+    /**
+     * 合併最新的一串區段（大小相近者一起合併，避免每次重寫最大的區段），
+     * 同時去除重複索引與已刪除的訊息
+     */
+    private void merge(UserIndex user) throws IOException {
+        List<IndexSegment> segments = user.segments();
+        int from = segments.size() - 2;
+        long docs = segments.get(from).docCount() + segments.get(from + 1).docCount();
+        while (from > 0 && segments.get(from - 1).docCount() <= docs * 4L) {
+            from--;
+            docs += segments.get(from).docCount();
+        }
+        List<IndexSegment> sources = segments.subList(from, segments.size());
+
+        Map<Long, Integer> owner = new HashMap<>();
+        Map<Long, Long> chatOf = new HashMap<>();
+        for (int i = 0; i < sources.size(); i++) {
+            int source = i;
+            sources.get(i).forEachDocument((messageId, chatId) -> {
+                owner.put(messageId, source);
+                chatOf.put(messageId, chatId);
+            });
+        }
+        Set<Long> live = liveIds(chatOf);
+
+        MemTable merged = new MemTable();
+        for (int i = 0; i < sources.size(); i++) {
+            int source = i;
+            sources.get(i).forEachTerm((term, messageId, chatId, docLength, tf) -> {
+                if (owner.get(messageId) == source && live.contains(messageId)) {
+                    merged.addPosting(messageId, chatId, docLength, term, tf);
+                }
+            });
+        }
+        user.replace(sources, merged);
+        log.debug("Merged {} search segments into one with {} messages", sources.size(), merged.docCount());
+    }
+
+    /**
+     * 仍應保留在索引中的訊息：熱資料表中存在，或所屬對話封存中（封存只搬移儲存位置，仍可搜尋）
+     * 先查訊息再查對話：期間被封存的訊息在第一步仍存在；期間被還原的對話，還原提交後會重新送入索引
+     */
+    private Set<Long> liveIds(Map<Long, Long> chatOf) {
+        Set<Long> live = existingIds(chatOf.keySet());
+        Set<Long> missingChats = new HashSet<>();
+        chatOf.forEach((messageId, chatId) -> {
+            if (!live.contains(messageId)) {
+                missingChats.add(chatId);
+            }
+        });
+        if (missingChats.isEmpty()) {
+            return live;
+        }
+        Set<Long> archived = inBatches(missingChats, chatRepository::findArchivedIds);
+        chatOf.forEach((messageId, chatId) -> {
+            if (archived.contains(chatId)) {
+                live.add(messageId);
+            }
+        });
+        return live;
+    }
+
+    private Set<Long> existingIds(Set<Long> ids) {
+        return inBatches(ids, messageRepository::findExistingIds);
+    }
+
+    private static Set<Long> inBatches(Set<Long> ids, Function<List<Long>, List<Long>> query) {
+        Set<Long> found = new HashSet<>(ids.size());
+        List<Long> batch = new ArrayList<>(BATCH_SIZE);
+        for (Long id : ids) {
+            batch.add(id);
+            if (batch.size() == BATCH_SIZE) {
+                found.addAll(query.apply(batch));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            found.addAll(query.apply(batch));
+        }
+        return found;
+    }
+
+    // ========== 檔案 ==========
+
+    private UserIndex userIndex(Long userId) {
+        UserIndex user = users.computeIfAbsent(userId, id -> {
+            try {
+                return UserIndex.load(indexDir().resolve(String.valueOf(id)));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        user.touch();
+        return user;
+    }
+
+    private Path indexDir() {
+        return Paths.get(appProperties.getSearch().getIndexDir());
+    }
+
+    private long readManifest() throws IOException {
+        Path manifest = indexDir().resolve(MANIFEST);
+        if (!Files.exists(manifest)) {
+            return 0L;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(manifest)) {
+            properties.load(in);
+        }
+        return Long.parseLong(properties.getProperty(LAST_INDEXED_ID, "0"));
+    }
+
+    private void writeManifest(long indexedId) throws IOException {
+        Path manifest = indexDir().resolve(MANIFEST);
+        Path tmp = indexDir().resolve(MANIFEST + ".tmp");
+        Properties properties = new Properties();
+        properties.setProperty(LAST_INDEXED_ID, String.valueOf(indexedId));
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            properties.store(out, null);
+        }
+        Files.move(tmp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,155 @@
+package tw.bk.ai.service.search;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tw.bk.ai.dto.chat.ChatResp;
+import tw.bk.ai.dto.chat.ChatSearchHitResp;
+import tw.bk.ai.entity.Message;
+import tw.bk.ai.entity.type.CompressedText;
+import tw.bk.ai.exception.BizException;
+import tw.bk.ai.exception.ErrorCode;
+import tw.bk.ai.repository.ChatRepository;
+import tw.bk.ai.repository.MessageRepository;
+import tw.bk.ai.repository.projection.SearchHitRow;
+import tw.bk.ai.service.archive.ArchivedMessage;
+import tw.bk.ai.service.archive.ChatArchiveService;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 對話搜尋服務
+ * 由本機倒排索引取得排序後的候選訊息，再以資料庫驗證擁有者並產生內容片段（封存中的對話由封存資料產生）
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChatSearchService {
+
+    private static final int MAX_QUERY_LENGTH = 200;
+    private static final int MAX_LIMIT = 50;
+    private static final int SNIPPET_RADIUS = 60;
+
+    private final ChatSearchIndex chatSearchIndex;
+    private final MessageRepository messageRepository;
+    private final ChatRepository chatRepository;
+    private final ChatArchiveService chatArchiveService;
+
+    /**
+     * 搜尋使用者所有對話中的訊息
+     */
+    @Transactional(readOnly = true)
+    public List<ChatSearchHitResp> search(Long userId, String query, int limit) {
+        if (query == null || query.isBlank()) {
+            throw new BizException(ErrorCode.BAD_REQUEST, "Query must not be blank");
+        }
+        if (query.length() > MAX_QUERY_LENGTH) {
+            throw new BizException(ErrorCode.BAD_REQUEST, "Query is too long");
+        }
+
+        List<String> terms = CjkBigramTokenizer.tokenize(query).stream().distinct().toList();
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+
+        int size = Math.max(1, Math.min(limit, MAX_LIMIT));
+        // 多取一些候選，扣除索引中尚未清除的已刪除訊息
+        List<ChatSearchIndex.Hit> hits = chatSearchIndex.search(userId, terms, size * 2);
+        if (hits.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, SearchHitRow> rows = messageRepository
+                .findSearchRows(userId, hits.stream().map(ChatSearchIndex.Hit::messageId).toList())
+                .stream()
+                .collect(Collectors.toMap(SearchHitRow::messageId, Function.identity()));
+        addArchivedRows(userId, hits, rows);
+
+        List<ChatSearchHitResp> results = new ArrayList<>(size);
+        for (ChatSearchIndex.Hit hit : hits) {
+            SearchHitRow row = rows.get(hit.messageId());
+            if (row == null) {
+                continue;
+            }
+            results.add(ChatSearchHitResp.builder()
+                    .chatId(row.chatId())
+                    .chatTitle(row.chatTitle())
+                    .messageId(row.messageId())
+                    .seq(row.seq())
+                    .role(row.role().name())
+                    .snippet(snippet(row.content().text(), terms))
+                    .score(hit.score())
+                    .createdAt(row.createdAt())
+                    .build());
+            if (results.size() == size) {
+                break;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 熱資料表中找不到的命中，若所屬對話封存中則由封存資料補上（不觸發還原，解碼結果走封存服務的快取）
+     */
+    private void addArchivedRows(Long userId, List<ChatSearchIndex.Hit> hits, Map<Long, SearchHitRow> rows) {
+        Set<Long> chatIds = new HashSet<>();
+        for (ChatSearchIndex.Hit hit : hits) {
+            if (!rows.containsKey(hit.messageId())) {
+                chatIds.add(hit.chatId());
+            }
+        }
+        if (chatIds.isEmpty()) {
+            return;
+        }
+        Set<Long> wanted = hits.stream()
+                .filter(hit -> !rows.containsKey(hit.messageId()))
+                .map(ChatSearchIndex.Hit::messageId)
+                .collect(Collectors.toSet());
+        for (ChatResp chat : chatRepository.findArchivedRows(userId, chatIds)) {
+            for (ArchivedMessage message : chatArchiveService.findArchived(chat.getId())) {
+                if (wanted.contains(message.id())) {
+                    rows.put(message.id(), new SearchHitRow(message.id(), chat.getId(), chat.getTitle(),
+                            message.seq(), Message.MessageRole.valueOf(message.role()),
+                            CompressedText.of(message.content()), message.createdAt()));
+                }
+            }
+        }
+    }
+
+    /**
+     * 擷取第一個命中詞附近的內容
+     */
+    static String snippet(String content, List<String> terms) {
+        String lower = content.toLowerCase(Locale.ROOT);
+        int position = -1;
+        int length = 0;
+        for (String term : terms) {
+            int index = lower.indexOf(term);
+            if (index >= 0 && (position < 0 || index < position)) {
+                position = index;
+                length = term.length();
+            }
+        }
+        position = Math.max(position, 0);
+
+        int start = Math.max(0, position - SNIPPET_RADIUS);
+        int end = Math.min(content.length(), position + length + SNIPPET_RADIUS);
+        if (start > 0 && Character.isLowSurrogate(content.charAt(start))) {
+            start--;
+        }
+        if (end < content.length() && Character.isLowSurrogate(content.charAt(end))) {
+            end++;
+        }
+
+        String text = content.substring(start, end).replaceAll("\\s+", " ").strip();
+        return (start > 0 ? "…" : "") + text + (end < content.length() ? "…" : "");
+    }
+}
@@ -0,0 +1,77 @@
+package tw.bk.ai.service.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 中日韓二元切詞器
+ * - 英數字：以連續字母 / 數字為一個詞，轉小寫
+ * - 中日韓：連續字元切成重疊的二元組（「資料庫」→「資料」「料庫」），單一字元則保留單字
+ * 先做 NFKC 正規化，全形英數與半形視為相同。
+ */
+public final class CjkBigramTokenizer {
+
+    /**
+     * 過長的英數詞（例如 base64、雜湊）截斷，避免詞典膨脹
+     */
+    private static final int MAX_TOKEN_LENGTH = 32;
+
+    private CjkBigramTokenizer() {
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder word = new StringBuilder();
+        int prevCjk = -1;
+
+        int i = 0;
+        while (i < normalized.length()) {
+            int cp = normalized.codePointAt(i);
+            i += Character.charCount(cp);
+
+            if (isCjk(cp)) {
+                flushWord(word, tokens);
+                if (prevCjk >= 0) {
+                    tokens.add(new StringBuilder(4).appendCodePoint(prevCjk).appendCodePoint(cp).toString());
+                } else if (i >= normalized.length() || !isCjk(normalized.codePointAt(i))) {
+                    // 孤立的單一字元
+                    tokens.add(new String(Character.toChars(cp)));
+                }
+                prevCjk = cp;
+            } else {
+                prevCjk = -1;
+                if (Character.isLetterOrDigit(cp)) {
+                    if (word.length() < MAX_TOKEN_LENGTH) {
+                        word.appendCodePoint(cp);
+                    }
+                } else {
+                    flushWord(word, tokens);
+                }
+            }
+        }
+        flushWord(word, tokens);
+        return tokens;
+    }
+
+    static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    private static void flushWord(StringBuilder word, List<String> tokens) {
+        if (!word.isEmpty()) {
+            tokens.add(word.toString());
+            word.setLength(0);
+        }
+    }
+}
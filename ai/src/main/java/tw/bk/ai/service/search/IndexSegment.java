@@ -0,0 +1,239 @@
+package tw.bk.ai.service.search;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 不可變的磁碟區段，以 mmap 唯讀存取（不佔用 heap）
+ *
+ * 檔案格式（big-endian）：
+ * <pre>
+ * header     : magic(int) version(int) docCount(int) termCount(int) totalLength(long) termDataLength(long)
+ * doc table  : docCount  x [messageId(long) chatId(long) length(int)]
+ * term table : termCount x [termOffset(int) termLength(int) postingIndex(int) docFrequency(int)]，依 UTF-8 位元組排序
+ * term data  : 詞的 UTF-8 位元組
+ * postings   : [docOrdinal(int) termFrequency(int)]
+ * </pre>
+ */
+final class IndexSegment implements SearchSegment {
+
+    private static final int MAGIC = 0x43534731; // "CSG1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int DOC_ENTRY_SIZE = 20;
+    private static final int TERM_ENTRY_SIZE = 16;
+    private static final int POSTING_SIZE = 8;
+
+    private final Path path;
+    private final long generation;
+    private final MappedByteBuffer buffer;
+    private final int docCount;
+    private final int termCount;
+    private final long totalLength;
+    private final int termTableOffset;
+    private final int termDataOffset;
+    private final int postingsOffset;
+
+    private IndexSegment(Path path, long generation, MappedByteBuffer buffer) {
+        this.path = path;
+        this.generation = generation;
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalStateException("Not a search segment: " + path);
+        }
+        this.docCount = buffer.getInt(8);
+        this.termCount = buffer.getInt(12);
+        this.totalLength = buffer.getLong(16);
+        long termDataLength = buffer.getLong(24);
+        this.termTableOffset = HEADER_SIZE + docCount * DOC_ENTRY_SIZE;
+        this.termDataOffset = termTableOffset + termCount * TERM_ENTRY_SIZE;
+        this.postingsOffset = Math.toIntExact(termDataOffset + termDataLength);
+    }
+
+    static IndexSegment open(Path path, long generation) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // 對應建立後即可關閉 channel，mapping 仍有效
+            return new IndexSegment(path, generation, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * 將 MemTable 寫成區段檔（先寫暫存檔再原子改名）
+     */
+    static IndexSegment write(Path path, long generation, MemTable table) throws IOException {
+        Map<String, MemTable.Postings> postings = table.postings();
+        byte[][] terms = new byte[postings.size()][];
+        int index = 0;
+        long termDataLength = 0;
+        for (String term : postings.keySet()) {
+            terms[index] = term.getBytes(StandardCharsets.UTF_8);
+            termDataLength += terms[index].length;
+            index++;
+        }
+        Arrays.sort(terms, Arrays::compareUnsigned);
+
+        int docCount = table.docCount();
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream file = Files.newOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(docCount);
+            out.writeInt(terms.length);
+            out.writeLong(table.totalLength());
+            out.writeLong(termDataLength);
+
+            for (int ordinal = 0; ordinal < docCount; ordinal++) {
+                out.writeLong(table.messageId(ordinal));
+                out.writeLong(table.chatId(ordinal));
+                out.writeInt(table.length(ordinal));
+            }
+
+            int termOffset = 0;
+            int postingIndex = 0;
+            for (byte[] term : terms) {
+                MemTable.Postings list = postings.get(new String(term, StandardCharsets.UTF_8));
+                out.writeInt(termOffset);
+                out.writeInt(term.length);
+                out.writeInt(postingIndex);
+                out.writeInt(list.size);
+                termOffset += term.length;
+                postingIndex += list.size;
+            }
+
+            for (byte[] term : terms) {
+                out.write(term);
+            }
+
+            for (byte[] term : terms) {
+                MemTable.Postings list = postings.get(new String(term, StandardCharsets.UTF_8));
+                for (int i = 0; i < list.size; i++) {
+                    out.writeInt(list.ordinals[i]);
+                    out.writeInt(list.frequencies[i]);
+                }
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return open(path, generation);
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    @Override
+    public int docCount() {
+        return docCount;
+    }
+
+    @Override
+    public long totalLength() {
+        return totalLength;
+    }
+
+    @Override
+    public int docFrequency(String term) {
+        int entry = findTerm(term.getBytes(StandardCharsets.UTF_8));
+        return entry >= 0 ? buffer.getInt(entry + 12) : 0;
+    }
+
+    @Override
+    public void forEachPosting(String term, PostingVisitor visitor) {
+        int entry = findTerm(term.getBytes(StandardCharsets.UTF_8));
+        if (entry >= 0) {
+            visitPostings(entry, visitor);
+        }
+    }
+
+    /**
+     * 依序走訪所有詞與 posting（合併區段用）
+     */
+    void forEachTerm(TermVisitor visitor) {
+        for (int i = 0; i < termCount; i++) {
+            int entry = termTableOffset + i * TERM_ENTRY_SIZE;
+            byte[] bytes = new byte[buffer.getInt(entry + 4)];
+            buffer.get(termDataOffset + buffer.getInt(entry), bytes);
+            String term = new String(bytes, StandardCharsets.UTF_8);
+            visitPostings(entry, (messageId, chatId, docLength, tf) ->
+                    visitor.visit(term, messageId, chatId, docLength, tf));
+        }
+    }
+
+    /**
+     * 走訪所有文件的 messageId 與 chatId
+     */
+    void forEachDocument(DocumentVisitor visitor) {
+        for (int ordinal = 0; ordinal < docCount; ordinal++) {
+            int doc = HEADER_SIZE + ordinal * DOC_ENTRY_SIZE;
+            visitor.visit(buffer.getLong(doc), buffer.getLong(doc + 8));
+        }
+    }
+
+    private void visitPostings(int entry, PostingVisitor visitor) {
+        int start = postingsOffset + buffer.getInt(entry + 8) * POSTING_SIZE;
+        int count = buffer.getInt(entry + 12);
+        for (int i = 0; i < count; i++) {
+            int position = start + i * POSTING_SIZE;
+            int doc = HEADER_SIZE + buffer.getInt(position) * DOC_ENTRY_SIZE;
+            visitor.visit(buffer.getLong(doc), buffer.getLong(doc + 8), buffer.getInt(doc + 16),
+                    buffer.getInt(position + 4));
+        }
+    }
+
+    /**
+     * 在詞表中二分搜尋，回傳詞條目位置；找不到回傳 -1
+     */
+    private int findTerm(byte[] term) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = termTableOffset + mid * TERM_ENTRY_SIZE;
+            int cmp = compare(termDataOffset + buffer.getInt(entry), buffer.getInt(entry + 4), term);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private int compare(int offset, int length, byte[] term) {
+        int n = Math.min(length, term.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = Byte.compareUnsigned(buffer.get(offset + i), term[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, term.length);
+    }
+
+    @FunctionalInterface
+    interface TermVisitor {
+        void visit(String term, long messageId, long chatId, int docLength, int termFrequency);
+    }
+
+    @FunctionalInterface
+    interface DocumentVisitor {
+        void visit(long messageId, long chatId);
+    }
+}
@@ -0,0 +1,128 @@
+package tw.bk.ai.service.search;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 記憶體中的可寫區段，累積新訊息直到寫出成磁碟區段
+ * 寫入（索引執行緒）與查詢（請求執行緒）以物件鎖互斥
+ */
+final class MemTable implements SearchSegment {
+
+    private final Map<Long, Integer> ordinals = new HashMap<>();
+    private final Map<String, Postings> postings = new HashMap<>();
+
+    private long[] messageIds = new long[64];
+    private long[] chatIds = new long[64];
+    private int[] lengths = new int[64];
+    private int docCount;
+    private long totalLength;
+
+    /**
+     * 加入一則訊息；同一訊息重複加入時略過
+     */
+    synchronized boolean add(long messageId, long chatId, List<String> tokens) {
+        if (ordinals.containsKey(messageId) || tokens.isEmpty()) {
+            return false;
+        }
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokens) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        int ordinal = addDoc(messageId, chatId, tokens.size());
+        frequencies.forEach((term, tf) -> postings.computeIfAbsent(term, t -> new Postings()).add(ordinal, tf));
+        return true;
+    }
+
+    /**
+     * 合併區段時直接加入單筆 posting
+     */
+    synchronized void addPosting(long messageId, long chatId, int docLength, String term, int termFrequency) {
+        Integer ordinal = ordinals.get(messageId);
+        if (ordinal == null) {
+            ordinal = addDoc(messageId, chatId, docLength);
+        }
+        postings.computeIfAbsent(term, t -> new Postings()).add(ordinal, termFrequency);
+    }
+
+    private int addDoc(long messageId, long chatId, int length) {
+        if (docCount == messageIds.length) {
+            int capacity = docCount * 2;
+            messageIds = Arrays.copyOf(messageIds, capacity);
+            chatIds = Arrays.copyOf(chatIds, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        int ordinal = docCount++;
+        messageIds[ordinal] = messageId;
+        chatIds[ordinal] = chatId;
+        lengths[ordinal] = length;
+        totalLength += length;
+        ordinals.put(messageId, ordinal);
+        return ordinal;
+    }
+
+    @Override
+    public synchronized int docCount() {
+        return docCount;
+    }
+
+    @Override
+    public synchronized long totalLength() {
+        return totalLength;
+    }
+
+    @Override
+    public synchronized int docFrequency(String term) {
+        Postings list = postings.get(term);
+        return list != null ? list.size : 0;
+    }
+
+    @Override
+    public synchronized void forEachPosting(String term, PostingVisitor visitor) {
+        Postings list = postings.get(term);
+        if (list == null) {
+            return;
+        }
+        for (int i = 0; i < list.size; i++) {
+            int ordinal = list.ordinals[i];
+            visitor.visit(messageIds[ordinal], chatIds[ordinal], lengths[ordinal], list.frequencies[i]);
+        }
+    }
+
+    // ========== 寫出區段用（僅索引執行緒在凍結後呼叫） ==========
+
+    long messageId(int ordinal) {
+        return messageIds[ordinal];
+    }
+
+    long chatId(int ordinal) {
+        return chatIds[ordinal];
+    }
+
+    int length(int ordinal) {
+        return lengths[ordinal];
+    }
+
+    Map<String, Postings> postings() {
+        return postings;
+    }
+
+    static final class Postings {
+
+        int[] ordinals = new int[4];
+        int[] frequencies = new int[4];
+        int size;
+
+        void add(int ordinal, int frequency) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            ordinals[size] = ordinal;
+            frequencies[size] = frequency;
+            size++;
+        }
+    }
+}
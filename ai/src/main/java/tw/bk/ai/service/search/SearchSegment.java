@@ -0,0 +1,23 @@
+package tw.bk.ai.service.search;
+
+/**
+ * 倒排索引區段（記憶體中的 MemTable 或磁碟上的 IndexSegment）
+ */
+interface SearchSegment {
+
+    int docCount();
+
+    /**
+     * 所有文件的詞數總和（BM25 平均長度用）
+     */
+    long totalLength();
+
+    int docFrequency(String term);
+
+    void forEachPosting(String term, PostingVisitor visitor);
+
+    @FunctionalInterface
+    interface PostingVisitor {
+        void visit(long messageId, long chatId, int docLength, int termFrequency);
+    }
+}
@@ -0,0 +1,152 @@
+package tw.bk.ai.service.search;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 單一使用者的索引：可寫 MemTable + 依世代排序的磁碟區段
+ * 只有索引執行緒會修改；查詢端透過 snapshot() 無鎖讀取
+ * 閒置後由 ChatSearchIndex 釋放：不再持有區段參照，mmap 於 GC 回收 buffer 時解除對應
+ */
+@Slf4j
+final class UserIndex {
+
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final String SEGMENT_SUFFIX = ".idx";
+
+    private final Path dir;
+    private volatile MemTable mem = new MemTable();
+    /**
+     * 寫出中的 MemTable，寫出完成前仍供查詢
+     */
+    private volatile MemTable flushing;
+    private volatile List<IndexSegment> segments;
+    private long nextGeneration;
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    private UserIndex(Path dir, List<IndexSegment> segments, long nextGeneration) {
+        this.dir = dir;
+        this.segments = segments;
+        this.nextGeneration = nextGeneration;
+    }
+
+    /**
+     * 載入目錄中既有的區段（清除寫到一半的暫存檔）
+     */
+    static UserIndex load(Path dir) throws IOException {
+        List<IndexSegment> segments = new ArrayList<>();
+        long maxGeneration = 0;
+        if (Files.isDirectory(dir)) {
+            List<Path> files;
+            try (Stream<Path> stream = Files.list(dir)) {
+                files = stream.toList();
+            }
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.deleteIfExists(file);
+                } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    long generation = Long.parseLong(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                    segments.add(IndexSegment.open(file, generation));
+                    maxGeneration = Math.max(maxGeneration, generation);
+                }
+            }
+            segments.sort(Comparator.comparingLong(IndexSegment::generation));
+        }
+        return new UserIndex(dir, List.copyOf(segments), maxGeneration + 1);
+    }
+
+    void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+
+    long lastAccess() {
+        return lastAccess;
+    }
+
+    /**
+     * 是否有尚未寫出的文件（釋放前必須先寫出，否則需重新由資料庫補回）
+     */
+    boolean hasUnflushed() {
+        return mem.docCount() > 0 || flushing != null;
+    }
+
+    MemTable mem() {
+        return mem;
+    }
+
+    List<IndexSegment> segments() {
+        return segments;
+    }
+
+    /**
+     * 查詢用快照：依 mem → flushing → segments 的順序讀取，
+     * 配合 flush() 的寫入順序，保證每筆文件至少出現在其中一處
+     */
+    List<SearchSegment> snapshot() {
+        MemTable currentMem = mem;
+        MemTable currentFlushing = flushing;
+        List<IndexSegment> currentSegments = segments;
+
+        List<SearchSegment> result = new ArrayList<>(currentSegments.size() + 2);
+        result.add(currentMem);
+        if (currentFlushing != null) {
+            result.add(currentFlushing);
+        }
+        result.addAll(currentSegments);
+        return result;
+    }
+
+    /**
+     * 將 MemTable 寫成新區段
+     */
+    void flush() throws IOException {
+        MemTable table = mem;
+        if (table.docCount() == 0) {
+            return;
+        }
+        flushing = table;
+        mem = new MemTable();
+
+        Files.createDirectories(dir);
+        IndexSegment segment = IndexSegment.write(nextSegmentPath(), nextGeneration++, table);
+        List<IndexSegment> updated = new ArrayList<>(segments);
+        updated.add(segment);
+        segments = List.copyOf(updated);
+        flushing = null;
+    }
+
+    /**
+     * 以合併結果取代來源區段，並刪除舊檔
+     */
+    void replace(List<IndexSegment> sources, MemTable merged) throws IOException {
+        IndexSegment segment = IndexSegment.write(nextSegmentPath(), nextGeneration++, merged);
+
+        List<IndexSegment> updated = new ArrayList<>(segments);
+        int position = updated.indexOf(sources.get(0));
+        updated.removeAll(sources);
+        updated.add(position, segment);
+        segments = List.copyOf(updated);
+
+        for (IndexSegment source : sources) {
+            try {
+                // mmap 在檔案刪除後仍有效，進行中的查詢不受影響
+                Files.deleteIfExists(source.path());
+            } catch (IOException ex) {
+                log.warn("Failed to delete merged search segment {}: {}", source.path(), ex.getMessage());
+            }
+        }
+    }
+
+    private Path nextSegmentPath() {
+        return dir.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, nextGeneration, SEGMENT_SUFFIX));
+    }
+}
@@ -0,0 +1,272 @@
+package tw.bk.ai.service.title;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import jakarta.persistence.EntityManagerFactory;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import tw.bk.ai.config.AppProperties;
+import tw.bk.ai.entity.Chat;
+import tw.bk.ai.service.chat.ChatService;
+import tw.bk.ai.service.llm.LlmClient;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 對話標題背景產生服務
+ * 首輪回覆完成後將對話放入佇列；累積到 batchSize 或等待超過 maxDelay 時，
+ * 以單次 LlmClient.chat 為整批對話產生標題（JSON 輸出對應 chatId），再批次寫回。
+ */
+@Slf4j
+@Service
+public class TitleGenerationService {
+
+    private static final String SELECT_UNTITLED = """
+            SELECT id FROM chats WHERE id IN (:ids) AND title = :title AND deleted_at IS NULL""";
+    private static final String UPDATE_TITLE = """
+            UPDATE chats SET title = ?, updated_at = updated_at
+            WHERE id = ? AND title = ? AND deleted_at IS NULL""";
+
+    private static final String SYSTEM_PROMPT = """
+            你是對話標題產生器。使用者訊息是一個 JSON 陣列，每個元素是一段對話的開頭（id、user、assistant）。
+            請為每段對話產生一個簡短標題：
+            1) 不超過 20 個字，使用與對話相同的語言
+            2) 不加引號、句號或表情符號
+            3) 只輸出 JSON 陣列，格式為 [{"id": <id>, "title": "<標題>"}]，每個 id 恰好一筆，不要輸出其他文字
+            """;
+
+    private static final int TOKENS_PER_TITLE = 40;
+
+    private final LlmClient llmClient;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final AppProperties appProperties;
+    private final TaskExecutor titleExecutor;
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final BlockingQueue<TitleRequest> queue;
+    private final Set<Long> queuedChatIds = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private final DistributionSummary batchSizeSummary;
+    private final Timer llmTimer;
+    private final Counter generatedCounter;
+    private final Counter droppedCounter;
+    private final Counter failedCounter;
+
+    public TitleGenerationService(LlmClient llmClient, JdbcTemplate jdbcTemplate,
+            NamedParameterJdbcTemplate namedJdbcTemplate, ObjectMapper objectMapper, AppProperties appProperties,
+            @Qualifier("titleExecutor") TaskExecutor titleExecutor, EntityManagerFactory entityManagerFactory,
+            MeterRegistry meterRegistry) {
+        this.llmClient = llmClient;
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.appProperties = appProperties;
+        this.titleExecutor = titleExecutor;
+        this.entityManagerFactory = entityManagerFactory;
+        this.queue = new ArrayBlockingQueue<>(appProperties.getTitle().getQueueCapacity());
+
+        this.batchSizeSummary = DistributionSummary.builder("chat.title.batch.size")
+                .register(meterRegistry);
+        this.llmTimer = Timer.builder("chat.title.llm")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.generatedCounter = Counter.builder("chat.title.generated").register(meterRegistry);
+        this.droppedCounter = Counter.builder("chat.title.dropped").register(meterRegistry);
+        this.failedCounter = Counter.builder("chat.title.failed").register(meterRegistry);
+        meterRegistry.gauge("chat.title.queue.depth", queue, BlockingQueue::size);
+    }
+
+    /**
+     * 將完成首輪問答的對話加入標題佇列（不阻塞；佇列已滿時直接略過，保留預設標題）
+     */
+    public void enqueue(Long chatId, String userContent, String assistantContent) {
+        AppProperties.Title config = appProperties.getTitle();
+        if (!config.isEnabled() || !queuedChatIds.add(chatId)) {
+            return;
+        }
+
+        TitleRequest request = new TitleRequest(chatId, truncate(userContent, config.getMaxInputChars()),
+                truncate(assistantContent, config.getMaxInputChars()), System.currentTimeMillis());
+        if (!queue.offer(request)) {
+            queuedChatIds.remove(chatId);
+            droppedCounter.increment();
+            log.debug("Title queue full, chat {} keeps default title", chatId);
+            return;
+        }
+
+        if (queue.size() >= config.getBatchSize()) {
+            submitDrain();
+        }
+    }
+
+    /**
+     * 定期排空：確保未湊滿一批的對話最多等待 maxDelay
+     */
+    @Scheduled(fixedDelayString = "${app.title.tick-millis:1000}")
+    public void tick() {
+        TitleRequest head = queue.peek();
+        if (head != null
+                && System.currentTimeMillis() - head.enqueuedAt() >= appProperties.getTitle().getMaxDelayMillis()) {
+            submitDrain();
+        }
+    }
+
+    private void submitDrain() {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            titleExecutor.execute(this::drain);
+        } catch (TaskRejectedException ex) {
+            draining.set(false);
+        }
+    }
+
+    private void drain() {
+        try {
+            int batchSize = appProperties.getTitle().getBatchSize();
+            List<TitleRequest> batch = new ArrayList<>(batchSize);
+            while (queue.drainTo(batch, batchSize) > 0) {
+                try {
+                    process(batch);
+                } catch (RuntimeException ex) {
+                    failedCounter.increment(batch.size());
+                    log.warn("Title generation failed for {} chats: {}", batch.size(), ex.getMessage());
+                } finally {
+                    batch.forEach(request -> queuedChatIds.remove(request.chatId()));
+                    batch.clear();
+                }
+            }
+        } finally {
+            draining.set(false);
+        }
+    }
+
+    private void process(List<TitleRequest> batch) {
+        // 使用者可能已自行命名或刪除對話，先過濾掉
+        Set<Long> untitled = new HashSet<>(namedJdbcTemplate.queryForList(SELECT_UNTITLED,
+                new MapSqlParameterSource()
+                        .addValue("ids", batch.stream().map(TitleRequest::chatId).toList())
+                        .addValue("title", ChatService.DEFAULT_TITLE),
+                Long.class));
+        List<TitleRequest> pending = batch.stream()
+                .filter(request -> untitled.contains(request.chatId()))
+                .toList();
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        batchSizeSummary.record(pending.size());
+        AppProperties.Title config = appProperties.getTitle();
+        String model = config.getModel() != null ? config.getModel() : llmClient.getDefaultModel();
+        List<Map<String, String>> prompt = List.of(
+                Map.of("role", "system", "content", SYSTEM_PROMPT),
+                Map.of("role", "user", "content", toJson(pending)));
+
+        String reply = llmTimer.record(() -> llmClient.chat(prompt, model, 0.2,
+                pending.size() * TOKENS_PER_TITLE + TOKENS_PER_TITLE));
+
+        Map<Long, String> titles = parseTitles(reply, untitled, config.getMaxTitleLength());
+        if (titles.size() < pending.size()) {
+            failedCounter.increment(pending.size() - titles.size());
+            log.debug("Title reply covered {} of {} chats", titles.size(), pending.size());
+        }
+        if (titles.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> args = new ArrayList<>(titles.size());
+        titles.forEach((chatId, title) -> args.add(new Object[] { title, chatId, ChatService.DEFAULT_TITLE }));
+        jdbcTemplate.batchUpdate(UPDATE_TITLE, args);
+        // JDBC 更新不經過 Hibernate，需自行移除二級快取中的舊標題
+        titles.keySet().forEach(chatId -> entityManagerFactory.getCache().evict(Chat.class, chatId));
+        generatedCounter.increment(titles.size());
+        log.info("Generated titles for {} chats", titles.size());
+    }
+
+    private String toJson(List<TitleRequest> pending) {
+        List<Map<String, Object>> items = new ArrayList<>(pending.size());
+        for (TitleRequest request : pending) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", request.chatId());
+            item.put("user", request.userContent());
+            item.put("assistant", request.assistantContent());
+            items.add(item);
+        }
+        try {
+            return objectMapper.writeValueAsString(items);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Failed to serialize title batch", ex);
+        }
+    }
+
+    /**
+     * 解析模型輸出的 JSON 陣列；容忍 code fence 或前後多餘文字，只接受本批的 chatId
+     */
+    private Map<Long, String> parseTitles(String reply, Set<Long> expected, int maxLength) {
+        Map<Long, String> titles = new HashMap<>();
+        if (reply == null) {
+            return titles;
+        }
+        int start = reply.indexOf('[');
+        int end = reply.lastIndexOf(']');
+        if (start < 0 || end <= start) {
+            log.warn("Title reply is not a JSON array");
+            return titles;
+        }
+
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(reply.substring(start, end + 1));
+        } catch (JsonProcessingException ex) {
+            log.warn("Title reply is not valid JSON: {}", ex.getOriginalMessage());
+            return titles;
+        }
+        for (JsonNode node : root) {
+            long chatId = node.path("id").asLong(-1);
+            String title = sanitize(node.path("title").asText(""), maxLength);
+            if (expected.contains(chatId) && !title.isEmpty()) {
+                titles.put(chatId, title);
+            }
+        }
+        return titles;
+    }
+
+    private static String sanitize(String title, int maxLength) {
+        String cleaned = title.replaceAll("\\s+", " ")
+                .replaceAll("^[\\s\"'「『“]+|[\\s\"'」』”。.]+$", "");
+        return cleaned.length() <= maxLength ? cleaned : cleaned.substring(0, maxLength);
+    }
+
+    private static String truncate(String text, int maxChars) {
+        if (text == null) {
+            return "";
+        }
+        return text.length() <= maxChars ? text : text.substring(0, maxChars);
+    }
+}
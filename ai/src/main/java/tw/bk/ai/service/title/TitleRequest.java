@@ -0,0 +1,7 @@
+package tw.bk.ai.service.title;
+
+/**
+ * 待產生標題的對話（首輪問答內容）
+ */
+record TitleRequest(Long chatId, String userContent, String assistantContent, long enqueuedAt) {
+}
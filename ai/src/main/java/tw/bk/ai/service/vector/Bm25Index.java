@@ -0,0 +1,313 @@
+package tw.bk.ai.service.vector;
+
+import tw.bk.ai.service.search.CjkBigramTokenizer;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.LongPredicate;
+
+/**
+ * 記憶體內 BM25 詞彙索引（單一知識庫）
+ * 切詞與全文檢索相同（英數詞 + 中日韓二元組），可命中錯誤碼、識別字與中文專有名詞等向量檢索容易漏掉的內容。
+ * 只保存倒排表與文件長度，不保存原文；刪除以墓碑標記。
+ * 不做內部同步：建構期間只由單一寫入端修改，經 IndexGeneration 發布後不再變動，查詢不需加鎖。
+ */
+final class Bm25Index {
+
+    private static final int MAX_QUERY_TERMS = 64;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final double k1;
+    private final double b;
+
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final Map<Long, Integer> docsById = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private long[] chunkIds = new long[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int size;
+    private int deletedCount;
+    private long totalLength;
+
+    Bm25Index(double k1, double b) {
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    void add(long chunkId, String text) {
+        List<String> tokens = CjkBigramTokenizer.tokenize(text);
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokens) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+
+        if (docsById.containsKey(chunkId)) {
+            return;
+        }
+        if (size == chunkIds.length) {
+            chunkIds = Arrays.copyOf(chunkIds, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+        }
+        int doc = size++;
+        chunkIds[doc] = chunkId;
+        lengths[doc] = tokens.size();
+        totalLength += tokens.size();
+        docsById.put(chunkId, doc);
+        frequencies.forEach((term, tf) -> postings.computeIfAbsent(term, t -> new Postings()).add(doc, tf));
+    }
+
+    boolean remove(long chunkId) {
+        Integer doc = docsById.remove(chunkId);
+        if (doc == null) {
+            return false;
+        }
+        deleted.set(doc);
+        deletedCount++;
+        return true;
+    }
+
+    boolean contains(long chunkId) {
+        return docsById.containsKey(chunkId);
+    }
+
+    /**
+     * 查詢字串切詞（去除重複，最多 MAX_QUERY_TERMS 個）
+     */
+    static List<String> queryTerms(String query) {
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(CjkBigramTokenizer.tokenize(query)));
+        return terms.size() > MAX_QUERY_TERMS ? terms.subList(0, MAX_QUERY_TERMS) : terms;
+    }
+
+    /**
+     * 文件數（含墓碑，與倒排表長度一致）
+     */
+    int documentCount() {
+        return size;
+    }
+
+    long totalLength() {
+        return totalLength;
+    }
+
+    int documentFrequency(String term) {
+        Postings list = postings.get(term);
+        return list != null ? list.size : 0;
+    }
+
+    /**
+     * 依 BM25 分數取前 k 個切塊（分數由高到低）
+     * idf 與平均長度由呼叫端以所有區段合計，分數才能跨區段比較。
+     *
+     * @param idf      與 terms 對應的 idf
+     * @param excluded 不列入結果的 id，可為 null
+     */
+    List<VectorHit> search(List<String> terms, double[] idf, double avgLength, int k, LongPredicate excluded) {
+        if (terms.isEmpty() || k <= 0 || size == deletedCount) {
+            return List.of();
+        }
+        float[] scores = null;
+        int[] touched = null;
+        int touchedCount = 0;
+
+        for (int t = 0; t < terms.size(); t++) {
+            Postings list = postings.get(terms.get(t));
+            if (list == null) {
+                continue;
+            }
+            if (scores == null) {
+                scores = new float[size];
+                touched = new int[Math.min(size, 1024)];
+            }
+            for (int i = 0; i < list.size; i++) {
+                int doc = list.docs[i];
+                int tf = list.frequencies[i];
+                double norm = tf * (k1 + 1) / (tf + k1 * (1 - b + b * lengths[doc] / avgLength));
+                if (scores[doc] == 0) {
+                    if (touchedCount == touched.length) {
+                        touched = Arrays.copyOf(touched, Math.min(size, touchedCount * 2));
+                    }
+                    touched[touchedCount++] = doc;
+                }
+                scores[doc] += (float) (idf[t] * norm);
+            }
+        }
+        if (scores == null) {
+            return List.of();
+        }
+
+        PriorityQueue<VectorHit> top = new PriorityQueue<>(k + 1,
+                (x, y) -> Float.compare(x.score(), y.score()));
+        for (int i = 0; i < touchedCount; i++) {
+            int doc = touched[i];
+            if (deleted.get(doc) || (excluded != null && excluded.test(chunkIds[doc]))) {
+                continue;
+            }
+            float score = scores[doc];
+            if (top.size() < k) {
+                top.add(new VectorHit(chunkIds[doc], score));
+            } else if (score > top.peek().score()) {
+                top.poll();
+                top.add(new VectorHit(chunkIds[doc], score));
+            }
+        }
+        List<VectorHit> hits = new ArrayList<>(top);
+        hits.sort((x, y) -> Float.compare(y.score(), x.score()));
+        return hits;
+    }
+
+    int liveCount() {
+        return size - deletedCount;
+    }
+
+    /**
+     * 合併多個索引為一個新索引（不需原文，直接搬移倒排表）
+     * 同一 id 只保留第一個來源中的文件；墓碑與 excluded 內的 id 不搬移。
+     */
+    static Bm25Index merge(List<Bm25Index> sources, LongPredicate excluded, double k1, double b) {
+        Bm25Index merged = new Bm25Index(k1, b);
+        for (Bm25Index source : sources) {
+            int[] mapping = new int[source.size];
+            for (int doc = 0; doc < source.size; doc++) {
+                long chunkId = source.chunkIds[doc];
+                if (source.deleted.get(doc) || excluded.test(chunkId) || merged.docsById.containsKey(chunkId)) {
+                    mapping[doc] = -1;
+                    continue;
+                }
+                if (merged.size == merged.chunkIds.length) {
+                    merged.chunkIds = Arrays.copyOf(merged.chunkIds, merged.size * 2);
+                    merged.lengths = Arrays.copyOf(merged.lengths, merged.size * 2);
+                }
+                int target = merged.size++;
+                merged.chunkIds[target] = chunkId;
+                merged.lengths[target] = source.lengths[doc];
+                merged.totalLength += source.lengths[doc];
+                merged.docsById.put(chunkId, target);
+                mapping[doc] = target;
+            }
+            source.postings.forEach((term, list) -> {
+                Postings target = null;
+                for (int i = 0; i < list.size; i++) {
+                    int doc = mapping[list.docs[i]];
+                    if (doc < 0) {
+                        continue;
+                    }
+                    if (target == null) {
+                        target = merged.postings.computeIfAbsent(term, t -> new Postings());
+                    }
+                    target.add(doc, list.frequencies[i]);
+                }
+            });
+        }
+        return merged;
+    }
+
+    /**
+     * 寫出倒排表與文件表
+     * 格式：size deletedCount totalLength(long)，每個文件 [chunkId(long) length(int) deleted(byte)]，
+     * 接著 termCount 與每個詞 [byteLength(int) UTF-8 count(int) 每筆 [doc(int) frequency(int)]]
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        out.writeInt(deletedCount);
+        out.writeLong(totalLength);
+        for (int doc = 0; doc < size; doc++) {
+            out.writeLong(chunkIds[doc]);
+            out.writeInt(lengths[doc]);
+            out.writeBoolean(deleted.get(doc));
+        }
+        out.writeInt(postings.size());
+        for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+            byte[] term = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            Postings list = entry.getValue();
+            out.writeInt(term.length);
+            out.write(term);
+            out.writeInt(list.size);
+            for (int i = 0; i < list.size; i++) {
+                out.writeInt(list.docs[i]);
+                out.writeInt(list.frequencies[i]);
+            }
+        }
+    }
+
+    /**
+     * 由 writeTo 的內容還原（讀取位置前進到結構結尾）
+     */
+    static Bm25Index readFrom(ByteBuffer in, double k1, double b) {
+        Bm25Index index = new Bm25Index(k1, b);
+        int size = in.getInt();
+        index.size = size;
+        index.deletedCount = in.getInt();
+        index.totalLength = in.getLong();
+        int capacity = Math.max(size, INITIAL_CAPACITY);
+        index.chunkIds = new long[capacity];
+        index.lengths = new int[capacity];
+        for (int doc = 0; doc < size; doc++) {
+            long chunkId = in.getLong();
+            index.chunkIds[doc] = chunkId;
+            index.lengths[doc] = in.getInt();
+            if (in.get() != 0) {
+                index.deleted.set(doc);
+            } else {
+                index.docsById.put(chunkId, doc);
+            }
+        }
+        int termCount = in.getInt();
+        byte[] buffer = new byte[64];
+        for (int t = 0; t < termCount; t++) {
+            int length = in.getInt();
+            if (length > buffer.length) {
+                buffer = new byte[length];
+            }
+            in.get(buffer, 0, length);
+            String term = new String(buffer, 0, length, StandardCharsets.UTF_8);
+            int count = in.getInt();
+            Postings list = new Postings(count);
+            for (int i = 0; i < count; i++) {
+                list.docs[i] = in.getInt();
+                list.frequencies[i] = in.getInt();
+            }
+            list.size = count;
+            index.postings.put(term, list);
+        }
+        return index;
+    }
+
+    /**
+     * 單一詞的倒排表（文件序號遞增）
+     */
+    private static final class Postings {
+
+        private int[] docs;
+        private int[] frequencies;
+        private int size;
+
+        Postings() {
+            this(4);
+        }
+
+        Postings(int capacity) {
+            docs = new int[Math.max(capacity, 4)];
+            frequencies = new int[Math.max(capacity, 4)];
+        }
+
+        void add(int doc, int frequency) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            docs[size] = doc;
+            frequencies[size] = frequency;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package tw.bk.ai.service.vector;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * 快照之後的索引異動記錄（只附加）
+ * 資料庫輪詢只能以遞增 id 補上新切塊，補不回刪除與既有切塊的向量更新，這些異動記在這裡，
+ * 載入時接在快照之後重播。寫入不 fsync，於每次維護時 flush；當機遺失的尾端只影響刪除
+ * （查詢結果本來就會經資料庫過濾）與下次快照前的重讀量。
+ *
+ * 每筆記錄：length(int) crc32(int) payload，payload 為
+ * ADD [type(byte) chunkId(long) dimension(int，-1 為無向量) vector(float...) textLength(int，-1 為無) UTF-8]
+ * 或 REMOVE [type(byte) chunkId(long)]；重播遇到不完整或校驗失敗的記錄即停止。
+ */
+final class ChangeLog implements Closeable {
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final int RECORD_HEADER = Integer.BYTES * 2;
+
+    private final FileChannel channel;
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+    private final DataOutputStream payload = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+
+    private ChangeLog(FileChannel channel) {
+        this.channel = channel;
+        OutputStream stream = Channels.newOutputStream(channel);
+        this.out = new DataOutputStream(new BufferedOutputStream(stream, 16 * 1024));
+    }
+
+    /**
+     * 開啟記錄供附加；validLength 之後的內容（重播時判定為不完整的尾端）先截斷
+     */
+    static ChangeLog open(Path file, long validLength) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() > validLength) {
+                channel.truncate(validLength);
+            }
+            channel.position(validLength);
+            return new ChangeLog(channel);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    void add(long chunkId, float[] vector, String text) throws IOException {
+        record.reset();
+        payload.writeByte(ADD);
+        payload.writeLong(chunkId);
+        if (vector != null) {
+            payload.writeInt(vector.length);
+            for (float v : vector) {
+                payload.writeFloat(v);
+            }
+        } else {
+            payload.writeInt(-1);
+        }
+        if (text != null) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            payload.writeInt(bytes.length);
+            payload.write(bytes);
+        } else {
+            payload.writeInt(-1);
+        }
+        append();
+    }
+
+    void remove(long chunkId) throws IOException {
+        record.reset();
+        payload.writeByte(REMOVE);
+        payload.writeLong(chunkId);
+        append();
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void append() throws IOException {
+        crc.reset();
+        crc.update(record.toByteArray(), 0, record.size());
+        out.writeInt(record.size());
+        out.writeInt((int) crc.getValue());
+        record.writeTo(out);
+    }
+
+    /**
+     * 依序重播記錄
+     *
+     * @return 有效內容的長度（之後為不完整的尾端）；檔案不存在時為 0
+     */
+    static long replay(Path file, Visitor visitor) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        CRC32 checksum = new CRC32();
+        int position = 0;
+        int limit = buffer.capacity();
+        while (limit - position >= RECORD_HEADER) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > limit - position - RECORD_HEADER) {
+                break;
+            }
+            ByteBuffer entry = buffer.slice(position + RECORD_HEADER, length);
+            checksum.reset();
+            checksum.update(entry.duplicate());
+            if ((int) checksum.getValue() != buffer.getInt(position + Integer.BYTES)) {
+                break;
+            }
+            byte type = entry.get();
+            long chunkId = entry.getLong();
+            if (type == ADD) {
+                int dimension = entry.getInt();
+                float[] vector = null;
+                if (dimension >= 0) {
+                    vector = new float[dimension];
+                    entry.asFloatBuffer().get(vector);
+                    entry.position(entry.position() + dimension * Float.BYTES);
+                }
+                int textLength = entry.getInt();
+                String text = null;
+                if (textLength >= 0) {
+                    byte[] bytes = new byte[textLength];
+                    entry.get(bytes);
+                    text = new String(bytes, StandardCharsets.UTF_8);
+                }
+                visitor.add(chunkId, vector, text);
+            } else if (type == REMOVE) {
+                visitor.remove(chunkId);
+            } else {
+                break;
+            }
+            position += RECORD_HEADER + length;
+        }
+        return position;
+    }
+
+    interface Visitor {
+
+        void add(long chunkId, float[] vector, String text);
+
+        void remove(long chunkId);
+    }
+}
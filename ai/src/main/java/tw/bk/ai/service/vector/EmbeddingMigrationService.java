@@ -0,0 +1,127 @@
+package tw.bk.ai.service.vector;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import tw.bk.ai.config.AppProperties;
+import tw.bk.ai.entity.type.PackedVector;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 舊 JSON 向量（document_chunks.embedding_vector）轉為緊湊二進位（embedding）
+ * 舊欄位存在時，排程每次轉換有限批數；每批一個多列 UPDATE 並清空舊欄位，可隨時中斷、重啟後接續。
+ * 全部轉換完成後記錄 log，即可依 upgrade.sql 刪除舊欄位。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EmbeddingMigrationService {
+
+    private static final String LEGACY_TABLE = "document_chunks";
+    private static final String LEGACY_COLUMN = "embedding_vector";
+
+    private static final String SELECT_LEGACY = """
+            SELECT dc.id, d.knowledge_base_id, dc.embedding_vector FROM document_chunks dc
+            JOIN documents d ON d.id = dc.document_id
+            WHERE dc.embedding IS NULL AND dc.embedding_vector IS NOT NULL AND dc.id > ?
+            ORDER BY dc.id LIMIT ?""";
+    private static final String UPDATE_EMBEDDING = """
+            UPDATE document_chunks SET embedding = ?, embedding_vector = NULL WHERE id = ? AND embedding IS NULL""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final AppProperties appProperties;
+    private final VectorIndexService vectorIndexService;
+    private final MeterRegistry meterRegistry;
+
+    // 以下欄位只由排程執行緒存取
+    private Boolean legacyColumnPresent;
+    private long afterId;
+    private long migrated;
+
+    @Scheduled(fixedDelayString = "${app.embedding.migration-millis:10000}")
+    public void migrate() {
+        if (legacyColumnPresent == null) {
+            legacyColumnPresent = hasLegacyColumn();
+        }
+        if (!legacyColumnPresent) {
+            return;
+        }
+
+        AppProperties.Embedding config = appProperties.getEmbedding();
+        for (int batch = 0; batch < config.getMigrationBatchesPerRun(); batch++) {
+            List<LegacyRow> rows = jdbcTemplate.query(SELECT_LEGACY, (rs, rowNum) -> new LegacyRow(
+                    rs.getLong("id"), rs.getLong("knowledge_base_id"), rs.getString("embedding_vector")),
+                    afterId, config.getMigrationBatchSize());
+            if (rows.isEmpty()) {
+                legacyColumnPresent = false;
+                log.info("Embedding migration complete ({} rows converted); column {}.{} can be dropped",
+                        migrated, LEGACY_TABLE, LEGACY_COLUMN);
+                return;
+            }
+            convert(rows, config.getStorageFormat());
+            afterId = rows.get(rows.size() - 1).id();
+        }
+    }
+
+    private void convert(List<LegacyRow> rows, PackedVector.Format format) {
+        List<LegacyRow> converted = new ArrayList<>(rows.size());
+        List<float[]> vectors = new ArrayList<>(rows.size());
+        List<Object[]> updates = new ArrayList<>(rows.size());
+        for (LegacyRow row : rows) {
+            float[] vector = parse(row);
+            if (vector == null) {
+                continue;
+            }
+            converted.add(row);
+            vectors.add(vector);
+            updates.add(new Object[] {PackedVector.of(vector, format).stored(), row.id()});
+        }
+        if (updates.isEmpty()) {
+            return;
+        }
+        // 連線參數 rewriteBatchedStatements=true 時整批送出
+        jdbcTemplate.batchUpdate(UPDATE_EMBEDDING, updates);
+
+        // 已載入的索引只以遞增 id 追新切塊，補不到這些舊切塊，直接加入
+        for (int i = 0; i < converted.size(); i++) {
+            LegacyRow row = converted.get(i);
+            vectorIndexService.add(row.knowledgeBaseId(), row.id(), vectors.get(i));
+        }
+        migrated += updates.size();
+        meterRegistry.counter("vector.embedding.migrated").increment(updates.size());
+    }
+
+    private float[] parse(LegacyRow row) {
+        try {
+            float[] vector = objectMapper.readValue(row.json(), float[].class);
+            return vector.length > 0 ? vector : null;
+        } catch (JsonProcessingException ex) {
+            log.warn("Chunk {} has an unreadable embedding, skipped: {}", row.id(), ex.getMessage());
+            return null;
+        }
+    }
+
+    private boolean hasLegacyColumn() {
+        Boolean present = jdbcTemplate.execute((ConnectionCallback<Boolean>) con -> {
+            DatabaseMetaData metaData = con.getMetaData();
+            try (ResultSet rs = metaData.getColumns(con.getCatalog(), null, LEGACY_TABLE, LEGACY_COLUMN)) {
+                return rs.next();
+            }
+        });
+        return Boolean.TRUE.equals(present);
+    }
+
+    private record LegacyRow(long id, long knowledgeBaseId, String json) {
+    }
+}
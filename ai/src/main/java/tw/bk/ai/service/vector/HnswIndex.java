@@ -0,0 +1,601 @@
+package tw.bk.ai.service.vector;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.LongPredicate;
+
+/**
+ * 記憶體內 HNSW（Hierarchical Navigable Small World）近似最近鄰索引
+ * - 向量於加入時正規化，以 1 - 內積作為距離（等同 cosine）
+ * - 鄰居選擇採論文的啟發式（Algorithm 4），保留方向多樣的鄰居以維持召回率
+ * - 刪除只標記墓碑：仍可作為搜尋路徑，但不會出現在結果中；比例過高時由呼叫端重建
+ * 不做內部同步：建構期間只由單一寫入端修改，經 IndexGeneration 發布後不再變動，查詢不需加鎖。
+ */
+final class HnswIndex {
+
+    private final int dimension;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random;
+
+    private final Map<Long, Integer> nodesById = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private long[] ids = new long[256];
+    private float[][] vectors = new float[256][];
+    private int[][][] links = new int[256][][]; // links[node][level] = {count, neighbor...}
+    private int size;
+    private int deletedCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    private final ThreadLocal<Visited> visited = ThreadLocal.withInitial(Visited::new);
+
+    HnswIndex(int dimension, int m, int efConstruction, long seed) {
+        if (dimension <= 0 || m < 2 || efConstruction < 1) {
+            throw new IllegalArgumentException("Invalid HNSW parameters");
+        }
+        this.dimension = dimension;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levelMultiplier = 1 / Math.log(m);
+        this.random = new SplittableRandom(seed);
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    int m() {
+        return m;
+    }
+
+    int efConstruction() {
+        return efConstruction;
+    }
+
+    /**
+     * 有效（未刪除）向量數
+     */
+    int liveCount() {
+        return size - deletedCount;
+    }
+
+    /**
+     * 墓碑比例（決定是否重建）
+     */
+    double deletedRatio() {
+        return size == 0 ? 0 : (double) deletedCount / size;
+    }
+
+    boolean contains(long id) {
+        return nodesById.containsKey(id);
+    }
+
+    /**
+     * 加入向量；同一 id 已存在時以新向量取代（舊節點轉為墓碑）
+     */
+    void add(long id, float[] vector) {
+        float[] normalized = normalize(vector);
+        Integer existing = nodesById.get(id);
+        if (existing != null) {
+            markDeleted(existing);
+        }
+        insert(id, normalized);
+    }
+
+    boolean remove(long id) {
+        Integer node = nodesById.get(id);
+        if (node == null) {
+            return false;
+        }
+        markDeleted(node);
+        return true;
+    }
+
+    /**
+     * 查詢最相近的 k 筆（分數為 cosine 相似度，遞減排序）
+     *
+     * @param ef       搜尋寬度（越大召回率越高、越慢），小於 k 時以 k 計
+     * @param excluded 不列入結果的 id（仍用於擴展路徑），可為 null
+     */
+    List<VectorHit> search(float[] query, int k, int ef, LongPredicate excluded) {
+        if (k <= 0) {
+            return List.of();
+        }
+        float[] q = normalize(query);
+        if (entryPoint < 0 || size == deletedCount) {
+            return List.of();
+        }
+        int current = entryPoint;
+        float currentDistance = distance(q, vectors[current]);
+        for (int level = maxLevel; level > 0; level--) {
+            int[] best = greedy(q, current, currentDistance, level);
+            current = best[0];
+            currentDistance = Float.intBitsToFloat(best[1]);
+        }
+        NodeHeap results = searchLayer(q, current, Math.max(ef, k), 0, true, excluded);
+        while (results.size() > k) {
+            results.poll();
+        }
+        VectorHit[] hits = new VectorHit[results.size()];
+        for (int i = hits.length - 1; i >= 0; i--) {
+            long top = results.poll();
+            hits[i] = new VectorHit(ids[NodeHeap.node(top)], 1 - NodeHeap.distance(top));
+        }
+        return Arrays.asList(hits);
+    }
+
+    /**
+     * 依加入順序走訪有效向量（重建索引用）
+     */
+    void forEachLive(VectorConsumer consumer) {
+        for (int node = 0; node < size; node++) {
+            if (!deleted.get(node)) {
+                consumer.accept(ids[node], vectors[node]);
+            }
+        }
+    }
+
+    // ========== 快照 ==========
+
+    /**
+     * 寫出完整圖結構（向量已正規化，讀回後不需重建）
+     * 格式：dimension m efConstruction size deletedCount entryPoint maxLevel，
+     * 接著每個節點 [id(long) deleted(byte) vector(float x dimension) levels(int) 每層 [count(int) neighbor(int...)]]
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(dimension);
+        out.writeInt(m);
+        out.writeInt(efConstruction);
+        out.writeInt(size);
+        out.writeInt(deletedCount);
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+        ByteBuffer scratch = ByteBuffer.allocate(dimension * Float.BYTES);
+        for (int node = 0; node < size; node++) {
+            out.writeLong(ids[node]);
+            out.writeBoolean(deleted.get(node));
+            scratch.clear();
+            scratch.asFloatBuffer().put(vectors[node]);
+            out.write(scratch.array());
+            out.writeInt(links[node].length);
+            for (int[] list : links[node]) {
+                out.writeInt(list[0]);
+                for (int i = 1; i <= list[0]; i++) {
+                    out.writeInt(list[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 由 writeTo 的內容還原（讀取位置前進到結構結尾）
+     */
+    static HnswIndex readFrom(ByteBuffer in, long seed) {
+        int dimension = in.getInt();
+        int m = in.getInt();
+        int efConstruction = in.getInt();
+        HnswIndex index = new HnswIndex(dimension, m, efConstruction, seed);
+        int size = in.getInt();
+        int capacity = Math.max(size, 256);
+        index.ids = new long[capacity];
+        index.vectors = new float[capacity][];
+        index.links = new int[capacity][][];
+        index.size = size;
+        index.deletedCount = in.getInt();
+        index.entryPoint = in.getInt();
+        index.maxLevel = in.getInt();
+        for (int node = 0; node < size; node++) {
+            long id = in.getLong();
+            index.ids[node] = id;
+            if (in.get() != 0) {
+                index.deleted.set(node);
+            } else {
+                index.nodesById.put(id, node);
+            }
+            float[] vector = new float[dimension];
+            in.asFloatBuffer().get(vector);
+            in.position(in.position() + dimension * Float.BYTES);
+            index.vectors[node] = vector;
+            int levels = in.getInt();
+            int[][] nodeLinks = new int[levels][];
+            for (int level = 0; level < levels; level++) {
+                int count = in.getInt();
+                int[] list = new int[index.maxNeighbors(level) + 1];
+                list[0] = count;
+                in.asIntBuffer().get(list, 1, count);
+                in.position(in.position() + count * Integer.BYTES);
+                nodeLinks[level] = list;
+            }
+            index.links[node] = nodeLinks;
+        }
+        return index;
+    }
+
+    @FunctionalInterface
+    interface VectorConsumer {
+        void accept(long id, float[] vector);
+    }
+
+    // ========== 建構 ==========
+
+    private void insert(long id, float[] vector) {
+        int node = allocate(id, vector);
+        int level = randomLevel();
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[maxNeighbors(l) + 1];
+        }
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int current = entryPoint;
+        float currentDistance = distance(vector, vectors[current]);
+        for (int l = maxLevel; l > level; l--) {
+            int[] best = greedy(vector, current, currentDistance, l);
+            current = best[0];
+            currentDistance = Float.intBitsToFloat(best[1]);
+        }
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            NodeHeap candidates = searchLayer(vector, current, efConstruction, l, false, null);
+            long[] sorted = candidates.drainAscending();
+            int[] selected = selectNeighbors(vector, sorted, m);
+            for (int neighbor : selected) {
+                append(links[node][l], neighbor);
+                connect(neighbor, node, l);
+            }
+            current = NodeHeap.node(sorted[0]);
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    private int allocate(long id, float[] vector) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            vectors = Arrays.copyOf(vectors, capacity);
+            links = Arrays.copyOf(links, capacity);
+        }
+        int node = size++;
+        ids[node] = id;
+        vectors[node] = vector;
+        nodesById.put(id, node);
+        return node;
+    }
+
+    private void markDeleted(int node) {
+        nodesById.remove(ids[node]);
+        deleted.set(node);
+        deletedCount++;
+    }
+
+    /**
+     * 將 node 加入 neighbor 的鄰居清單；超出上限時以啟發式重新挑選
+     */
+    private void connect(int neighbor, int node, int level) {
+        int[] list = links[neighbor][level];
+        if (list[0] < list.length - 1) {
+            append(list, node);
+            return;
+        }
+        float[] base = vectors[neighbor];
+        long[] candidates = new long[list[0] + 1];
+        for (int i = 0; i < list[0]; i++) {
+            int n = list[i + 1];
+            candidates[i] = NodeHeap.encode(distance(base, vectors[n]), n);
+        }
+        candidates[list[0]] = NodeHeap.encode(distance(base, vectors[node]), node);
+        Arrays.sort(candidates);
+        int[] selected = selectNeighbors(base, candidates, maxNeighbors(level));
+        list[0] = 0;
+        for (int n : selected) {
+            append(list, n);
+        }
+    }
+
+    /**
+     * 啟發式鄰居選擇：候選依距離遞增，只保留「比任何已選鄰居更接近基準點」的候選；
+     * 不足 max 時再以被略過的候選補滿
+     */
+    private int[] selectNeighbors(float[] base, long[] ascending, int max) {
+        if (ascending.length <= max) {
+            int[] all = new int[ascending.length];
+            for (int i = 0; i < ascending.length; i++) {
+                all[i] = NodeHeap.node(ascending[i]);
+            }
+            return all;
+        }
+        int[] selected = new int[max];
+        int count = 0;
+        List<Integer> pruned = new ArrayList<>();
+        for (long candidate : ascending) {
+            if (count == max) {
+                break;
+            }
+            int c = NodeHeap.node(candidate);
+            float toBase = NodeHeap.distance(candidate);
+            boolean diverse = true;
+            for (int i = 0; i < count; i++) {
+                if (distance(vectors[c], vectors[selected[i]]) < toBase) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[count++] = c;
+            } else {
+                pruned.add(c);
+            }
+        }
+        for (int i = 0; i < pruned.size() && count < max; i++) {
+            selected[count++] = pruned.get(i);
+        }
+        return count == max ? selected : Arrays.copyOf(selected, count);
+    }
+
+    // ========== 搜尋 ==========
+
+    /**
+     * 上層貪婪下降：回傳 {最近節點, 距離的 float bits}
+     */
+    private int[] greedy(float[] q, int start, float startDistance, int level) {
+        int current = start;
+        float currentDistance = startDistance;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] list = links[current][level];
+            for (int i = 1; i <= list[0]; i++) {
+                int n = list[i];
+                float d = distance(q, vectors[n]);
+                if (d < currentDistance) {
+                    current = n;
+                    currentDistance = d;
+                    changed = true;
+                }
+            }
+        }
+        return new int[] {current, Float.floatToIntBits(currentDistance)};
+    }
+
+    /**
+     * 單層 best-first 搜尋，回傳最多 ef 筆的最大堆積（堆頂為目前最遠者）
+     *
+     * @param liveOnly 結果只收未刪除且未被排除的節點（墓碑仍用於擴展路徑）
+     */
+    private NodeHeap searchLayer(float[] q, int entry, int ef, int level, boolean liveOnly, LongPredicate excluded) {
+        Visited seen = visited.get();
+        seen.reset(size);
+        NodeHeap candidates = new NodeHeap(ef * 2, false);
+        NodeHeap results = new NodeHeap(ef + 1, true);
+
+        float entryDistance = distance(q, vectors[entry]);
+        seen.mark(entry);
+        candidates.add(NodeHeap.encode(entryDistance, entry));
+        if (!liveOnly || isResult(entry, excluded)) {
+            results.add(NodeHeap.encode(entryDistance, entry));
+        }
+
+        while (candidates.size() > 0) {
+            long closest = candidates.poll();
+            if (results.size() >= ef && NodeHeap.distance(closest) > NodeHeap.distance(results.peek())) {
+                break;
+            }
+            int[] list = links[NodeHeap.node(closest)][level];
+            for (int i = 1; i <= list[0]; i++) {
+                int n = list[i];
+                if (!seen.mark(n)) {
+                    continue;
+                }
+                float d = distance(q, vectors[n]);
+                if (results.size() < ef || d < NodeHeap.distance(results.peek())) {
+                    candidates.add(NodeHeap.encode(d, n));
+                    if (liveOnly && !isResult(n, excluded)) {
+                        continue;
+                    }
+                    results.add(NodeHeap.encode(d, n));
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    // ========== 工具 ==========
+
+    private boolean isResult(int node, LongPredicate excluded) {
+        return !deleted.get(node) && (excluded == null || !excluded.test(ids[node]));
+    }
+
+    private int randomLevel() {
+        double r = random.nextDouble();
+        return (int) (-Math.log(Math.max(r, Double.MIN_VALUE)) * levelMultiplier);
+    }
+
+    private int maxNeighbors(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private static void append(int[] list, int node) {
+        list[++list[0]] = node;
+    }
+
+    private float[] normalize(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected dimension " + dimension + " but got " + vector.length);
+        }
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float[] out = new float[dimension];
+        if (norm == 0) {
+            return out;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < dimension; i++) {
+            out[i] = vector[i] * scale;
+        }
+        return out;
+    }
+
+    /**
+     * 1 - 內積（向量已正規化）；下限 0 以維持浮點編碼的排序性
+     * 四路累加打破相依鏈，讓 JIT 能以 SIMD 平行計算
+     */
+    private static float distance(float[] a, float[] b) {
+        float s0 = 0;
+        float s1 = 0;
+        float s2 = 0;
+        float s3 = 0;
+        int i = 0;
+        int bound = a.length & ~3;
+        for (; i < bound; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < a.length; i++) {
+            s0 += a[i] * b[i];
+        }
+        return Math.max(0f, 1 - ((s0 + s1) + (s2 + s3)));
+    }
+
+    /**
+     * 以 epoch 標記的走訪集合（每個執行緒一份，避免每次查詢配置大陣列）
+     */
+    private static final class Visited {
+        private int[] marks = new int[0];
+        private int epoch;
+
+        void reset(int capacity) {
+            if (marks.length < capacity) {
+                marks = new int[Math.max(capacity, marks.length * 2)];
+                epoch = 0;
+            }
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        /**
+         * 標記節點；回傳是否為第一次走訪
+         */
+        boolean mark(int node) {
+            if (marks[node] == epoch) {
+                return false;
+            }
+            marks[node] = epoch;
+            return true;
+        }
+    }
+
+    /**
+     * 以 long 編碼（距離 float bits << 32 | 節點）的二元堆積，避免裝箱
+     * 距離非負，float bits 的整數順序與數值順序一致
+     */
+    static final class NodeHeap {
+        private long[] heap;
+        private int size;
+        private final boolean max;
+
+        NodeHeap(int capacity, boolean max) {
+            this.heap = new long[Math.max(capacity, 4)];
+            this.max = max;
+        }
+
+        static long encode(float distance, int node) {
+            return ((long) Float.floatToIntBits(distance) << 32) | (node & 0xFFFFFFFFL);
+        }
+
+        static int node(long entry) {
+            return (int) entry;
+        }
+
+        static float distance(long entry) {
+            return Float.intBitsToFloat((int) (entry >>> 32));
+        }
+
+        int size() {
+            return size;
+        }
+
+        long peek() {
+            return heap[0];
+        }
+
+        void add(long entry) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(entry, heap[parent])) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = entry;
+        }
+
+        long poll() {
+            long top = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && before(heap[child + 1], heap[child])) {
+                    child++;
+                }
+                if (!before(heap[child], last)) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return top;
+        }
+
+        /**
+         * 依距離遞增排序取出全部元素
+         */
+        long[] drainAscending() {
+            long[] out = Arrays.copyOf(heap, size);
+            size = 0;
+            Arrays.sort(out);
+            return out;
+        }
+
+        private boolean before(long a, long b) {
+            return max ? a > b : a < b;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package tw.bk.ai.service.vector;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 知識庫索引的一個世代（不可變）
+ * - 由多個封存區段組成（由舊到新），每個區段是一組建構完成後不再修改的 HNSW 與 BM25 索引
+ * - 刪除不修改區段，而是產生帶有新墓碑集合的下一個世代
+ * 寫入端在旁建構新區段後以單一參照替換發布；查詢只讀取當下的世代，全程不加鎖也不會被寫入阻塞。
+ * 舊世代沒有查詢再引用時即由 GC 回收（區段資料都在 heap 內，不持有檔案或 mmap）。
+ */
+final class IndexGeneration {
+
+    static final IndexGeneration EMPTY = new IndexGeneration(0, List.of(), Set.of());
+
+    private final long number;
+    private final List<Segment> segments;
+    private final Set<Long> removed;
+
+    IndexGeneration(long number, List<Segment> segments, Set<Long> removed) {
+        this.number = number;
+        this.segments = List.copyOf(segments);
+        this.removed = Set.copyOf(removed);
+    }
+
+    long number() {
+        return number;
+    }
+
+    List<Segment> segments() {
+        return segments;
+    }
+
+    Set<Long> removed() {
+        return removed;
+    }
+
+    /**
+     * 向量維度（以第一個有向量的區段為準）；尚無向量時為 0
+     */
+    int dimension() {
+        for (Segment segment : segments) {
+            if (segment.vectors() != null) {
+                return segment.vectors().dimension();
+            }
+        }
+        return 0;
+    }
+
+    boolean contains(long chunkId) {
+        if (removed.contains(chunkId)) {
+            return false;
+        }
+        for (Segment segment : segments) {
+            if (segment.lexical().contains(chunkId)
+                    || (segment.vectors() != null && segment.vectors().contains(chunkId))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    long liveCount() {
+        long count = 0;
+        for (Segment segment : segments) {
+            if (segment.vectors() != null) {
+                count += segment.vectors().liveCount();
+            }
+        }
+        for (Long chunkId : removed) {
+            for (Segment segment : segments) {
+                if (segment.vectors() != null && segment.vectors().contains(chunkId)) {
+                    count--;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 墓碑（含區段內與世代墓碑）佔全部文件的比例
+     */
+    double deletedRatio() {
+        long total = 0;
+        long live = 0;
+        for (Segment segment : segments) {
+            total += segment.lexical().documentCount();
+            live += segment.lexical().liveCount();
+        }
+        return total == 0 ? 0 : (double) (total - live + removed.size()) / total;
+    }
+
+    // ========== 查詢 ==========
+
+    /**
+     * 各區段分別搜尋後合併；同一 id 出現在多個區段時取最高分
+     */
+    List<VectorHit> search(float[] query, int k, int ef) {
+        List<List<VectorHit>> results = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            HnswIndex vectors = segment.vectors();
+            if (vectors != null && vectors.dimension() == query.length) {
+                results.add(vectors.search(query, k, ef, removed.isEmpty() ? null : removed::contains));
+            }
+        }
+        return merge(results, k);
+    }
+
+    /**
+     * 以所有區段合計的文件數、文件頻率與平均長度計算 idf，各區段分數才能直接比較
+     */
+    List<VectorHit> searchLexical(String query, int k) {
+        List<String> terms = Bm25Index.queryTerms(query);
+        if (terms.isEmpty() || segments.isEmpty()) {
+            return List.of();
+        }
+        long documents = 0;
+        long totalLength = 0;
+        long[] frequencies = new long[terms.size()];
+        for (Segment segment : segments) {
+            Bm25Index lexical = segment.lexical();
+            documents += lexical.documentCount();
+            totalLength += lexical.totalLength();
+            for (int t = 0; t < terms.size(); t++) {
+                frequencies[t] += lexical.documentFrequency(terms.get(t));
+            }
+        }
+        if (documents == 0) {
+            return List.of();
+        }
+        double[] idf = new double[terms.size()];
+        for (int t = 0; t < terms.size(); t++) {
+            idf[t] = Math.log(1 + (documents - frequencies[t] + 0.5) / (frequencies[t] + 0.5));
+        }
+        double avgLength = Math.max(1.0, (double) totalLength / documents);
+
+        List<List<VectorHit>> results = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            results.add(segment.lexical().search(terms, idf, avgLength, k,
+                    removed.isEmpty() ? null : removed::contains));
+        }
+        return merge(results, k);
+    }
+
+    private static List<VectorHit> merge(List<List<VectorHit>> results, int k) {
+        if (results.size() == 1) {
+            return results.get(0);
+        }
+        Map<Long, VectorHit> best = new HashMap<>();
+        for (List<VectorHit> hits : results) {
+            for (VectorHit hit : hits) {
+                best.merge(hit.chunkId(), hit, (x, y) -> x.score() >= y.score() ? x : y);
+            }
+        }
+        return best.values().stream()
+                .sorted((x, y) -> Float.compare(y.score(), x.score()))
+                .limit(k)
+                .toList();
+    }
+
+    // ========== 產生下一個世代 ==========
+
+    /**
+     * 加入新區段，並可同時移除被取代的切塊（例如重新匯入文件的舊版本）
+     */
+    IndexGeneration withSegment(Segment segment, Collection<Long> replaced) {
+        List<Segment> next = new ArrayList<>(segments);
+        next.add(segment);
+        return new IndexGeneration(number + 1, next, union(replaced));
+    }
+
+    IndexGeneration withRemoved(Collection<Long> chunkIds) {
+        return new IndexGeneration(number + 1, segments, union(chunkIds));
+    }
+
+    /**
+     * 以合併結果取代指定的區段（位置為第一個被取代者），合併期間發布的區段與墓碑保留；
+     * 已不在任何區段中的墓碑一併清除
+     */
+    IndexGeneration withMerged(List<Segment> inputs, Segment merged) {
+        List<Segment> next = new ArrayList<>(segments.size());
+        boolean placed = false;
+        for (Segment segment : segments) {
+            if (!inputs.contains(segment)) {
+                next.add(segment);
+            } else if (!placed) {
+                next.add(merged);
+                placed = true;
+            }
+        }
+        IndexGeneration candidate = new IndexGeneration(number + 1, next, Set.of());
+        Set<Long> stillPresent = new HashSet<>();
+        for (Long chunkId : removed) {
+            if (candidate.contains(chunkId)) {
+                stillPresent.add(chunkId);
+            }
+        }
+        return new IndexGeneration(number + 1, next, stillPresent);
+    }
+
+    private Set<Long> union(Collection<Long> chunkIds) {
+        if (chunkIds.isEmpty()) {
+            return removed;
+        }
+        Set<Long> next = new HashSet<>(removed);
+        next.addAll(chunkIds);
+        return next;
+    }
+
+    /**
+     * 封存區段
+     *
+     * @param vectors 可為 null（區段內沒有向量）
+     */
+    record Segment(HnswIndex vectors, Bm25Index lexical) {
+
+        /**
+         * 區段大小（以詞彙索引的文件數計，含墓碑）
+         */
+        int size() {
+            return lexical.documentCount();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package tw.bk.ai.service.vector;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 知識庫索引快照：每個世代一個不可變檔案（{dir}/snapshot-{generation}.bin），
+ * 其後的異動記在同世代的 changes-{generation}.log（見 {@link ChangeLog}）
+ * 讀取時以 mmap 唯讀對應，直接還原 HNSW 圖與倒排表，不需重新切詞、建圖或讀取資料庫。
+ *
+ * 檔案格式（big-endian，version 2；version 1 為單一區段、無世代墓碑）：
+ * <pre>
+ * header  : magic(int) version(int) knowledgeBaseId(long) lastChunkId(long) segmentCount(int)
+ * segment : hasVectors(byte) HnswIndex.writeTo（hasVectors 時） Bm25Index.writeTo，依區段順序重複
+ * removed : count(int) chunkId(long...)
+ * trailer : crc32(long)，涵蓋 header 至 removed 結尾
+ * </pre>
+ */
+final class IndexSnapshot {
+
+    private static final int MAGIC = 0x56534E31; // "VSN1"
+    private static final int VERSION = 2;
+    private static final int SINGLE_SEGMENT_VERSION = 1;
+    private static final Pattern SNAPSHOT_FILE = Pattern.compile("snapshot-(\\d+)\\.bin");
+
+    private IndexSnapshot() {
+    }
+
+    static Path snapshotFile(Path dir, long generation) {
+        return dir.resolve("snapshot-" + generation + ".bin");
+    }
+
+    static Path logFile(Path dir, long generation) {
+        return dir.resolve("changes-" + generation + ".log");
+    }
+
+    /**
+     * 目錄中最新的快照世代
+     */
+    static Optional<Long> latestGeneration(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return Optional.empty();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(file -> SNAPSHOT_FILE.matcher(file.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Long.parseLong(matcher.group(1)))
+                    .max(Comparator.naturalOrder());
+        }
+    }
+
+    /**
+     * 寫出快照（先寫暫存檔再原子改名）；世代不可變，寫出期間不影響查詢與發布
+     */
+    static void write(Path file, long knowledgeBaseId, long lastChunkId, IndexGeneration generation)
+            throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream stream = Files.newOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(
+                    new CheckedOutputStream(new BufferedOutputStream(stream, 64 * 1024), crc));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(knowledgeBaseId);
+            out.writeLong(lastChunkId);
+            out.writeInt(generation.segments().size());
+            for (IndexGeneration.Segment segment : generation.segments()) {
+                out.writeBoolean(segment.vectors() != null);
+                if (segment.vectors() != null) {
+                    segment.vectors().writeTo(out);
+                }
+                segment.lexical().writeTo(out);
+            }
+            out.writeInt(generation.removed().size());
+            for (Long chunkId : generation.removed()) {
+                out.writeLong(chunkId);
+            }
+            out.flush();
+            // trailer 不納入 CRC，直接寫到底層串流
+            DataOutputStream trailer = new DataOutputStream(stream);
+            trailer.writeLong(crc.getValue());
+            trailer.flush();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 以 mmap 讀回快照；檔案損毀或不屬於此知識庫時拋出 IOException
+     */
+    static Restored read(Path file, long knowledgeBaseId, double k1, double b) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int length = buffer.capacity();
+        int version = length >= Long.BYTES * 3 ? buffer.getInt(4) : -1;
+        if (version < 0 || buffer.getInt(0) != MAGIC || (version != VERSION && version != SINGLE_SEGMENT_VERSION)) {
+            throw new IOException("Not an index snapshot: " + file);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(0, length - Long.BYTES));
+        if (crc.getValue() != buffer.getLong(length - Long.BYTES)) {
+            throw new IOException("Index snapshot checksum mismatch: " + file);
+        }
+        if (buffer.getLong(8) != knowledgeBaseId) {
+            throw new IOException("Index snapshot belongs to knowledge base " + buffer.getLong(8) + ": " + file);
+        }
+
+        ByteBuffer in = buffer.slice(0, length - Long.BYTES);
+        in.position(16);
+        long lastChunkId = in.getLong();
+        try {
+            int segmentCount = version == SINGLE_SEGMENT_VERSION ? 1 : in.getInt();
+            List<IndexGeneration.Segment> segments = new ArrayList<>(segmentCount);
+            for (int i = 0; i < segmentCount; i++) {
+                HnswIndex vectors = in.get() != 0 ? HnswIndex.readFrom(in, knowledgeBaseId) : null;
+                segments.add(new IndexGeneration.Segment(vectors, Bm25Index.readFrom(in, k1, b)));
+            }
+            int removedCount = version == SINGLE_SEGMENT_VERSION ? 0 : in.getInt();
+            Set<Long> removed = new HashSet<>(removedCount);
+            for (int i = 0; i < removedCount; i++) {
+                removed.add(in.getLong());
+            }
+            return new Restored(segments, removed, lastChunkId);
+        } catch (RuntimeException ex) {
+            throw new IOException("Corrupt index snapshot " + file + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * 刪除指定世代以外的快照與異動記錄
+     */
+    static void deleteOtherGenerations(Path dir, long keep) throws IOException {
+        List<Path> stale;
+        try (Stream<Path> files = Files.list(dir)) {
+            String snapshot = snapshotFile(dir, keep).getFileName().toString();
+            String log = logFile(dir, keep).getFileName().toString();
+            stale = files.filter(file -> {
+                String name = file.getFileName().toString();
+                return !name.equals(snapshot) && !name.equals(log);
+            }).toList();
+        }
+        for (Path file : stale) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * 刪除整個知識庫的快照目錄
+     */
+    static void deleteAll(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            files = walk.sorted(Comparator.reverseOrder()).toList();
+        }
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    record Restored(List<IndexGeneration.Segment> segments, Set<Long> removed, long lastChunkId) {
+    }
+}
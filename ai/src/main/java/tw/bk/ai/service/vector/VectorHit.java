@@ -0,0 +1,10 @@
+package tw.bk.ai.service.vector;
+
+/**
+ * 向量查詢結果
+ *
+ * @param chunkId 文件區塊 ID
+ * @param score   cosine 相似度（-1 ~ 1，越大越相近）
+ */
+public record VectorHit(long chunkId, float score) {
+}
@@ -0,0 +1,996 @@
+package tw.bk.ai.service.vector;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import tw.bk.ai.config.AppProperties;
+import tw.bk.ai.entity.Document;
+import tw.bk.ai.entity.id.TimeOrderedIds;
+import tw.bk.ai.entity.type.CompressedText;
+import tw.bk.ai.entity.type.PackedVector;
+import tw.bk.ai.exception.BizException;
+import tw.bk.ai.exception.ErrorCode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 知識庫向量索引服務
+ * - 每個知識庫一組記憶體內 HNSW 向量索引與 BM25 詞彙索引，第一次查詢時由 document_chunks 一併載入
+ * - 索引以不可變的世代（IndexGeneration）發布：寫入端在旁建構新區段，完成後以單一參照替換；
+ *   查詢只讀取當下的世代，不加鎖也不會看到建構到一半的狀態
+ * - 匯入中的文件切塊先暫存在各自的區段，文件完成時才發布（重新匯入時同時移除舊版本切塊），
+ *   其他節點以文件狀態判斷是否發布
+ * - 以遞增 id 輪詢補上其他節點或遺漏的切塊；切塊 id 跨節點只大致依時間排序、且可能晚於較大 id 提交，
+ *   每個知識庫各自記錄已掃描位置，輪詢時回推 reorderWindowMillis 重讀，並略過視窗內已讀過的 id
+ * - 區段過多或墓碑比例過高時於背景合併；每個知識庫各自一個合併工作，在獨立的執行緒池執行，
+ *   大型知識庫重建圖時不會延誤其他知識庫的輪詢、快照與釋放
+ * - 第一次查詢時於背景執行緒載入，載入完成前查詢回傳空結果（檢索以另一個檢索器或降級回應），不佔用檢索預算
+ * - 閒置索引定時釋放
+ * - 索引定時寫成本機快照（{snapshotDir}/{知識庫 id}），之後的異動記入異動記錄；
+ *   重啟或釋放後再次查詢時以 mmap 讀回快照，只需向資料庫補讀快照之後的切塊
+ * 各節點各自維護索引，其他節點刪除的切塊可能暫留，查詢結果需再經資料庫過濾。
+ */
+@Slf4j
+@Service
+public class VectorIndexService {
+
+    private static final int PAGE_SIZE = 1000;
+    private static final int MAX_EF = 1000;
+
+    /**
+     * 已發布：文件匯入完成，或為重新匯入中文件的舊版本切塊
+     */
+    private static final String SELECT_KB_CHUNKS = """
+            SELECT dc.id, dc.document_id, dc.embedding, dc.content,
+                   CASE WHEN d.status = 'COMPLETED' OR dc.id < d.reingest_from_chunk_id THEN 1 ELSE 0 END AS published
+            FROM document_chunks dc
+            JOIN documents d ON d.id = dc.document_id
+            WHERE d.knowledge_base_id = ? AND dc.id > ?
+            ORDER BY dc.id LIMIT ?""";
+    private static final String SELECT_DOCUMENT_STATES =
+            "SELECT id, status, reingest_from_chunk_id FROM documents WHERE id IN (%s)";
+    private static final String SELECT_REPLACED_CHUNKS =
+            "SELECT id FROM document_chunks WHERE document_id = ? AND id < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AppProperties appProperties;
+    private final TaskExecutor vectorIndexExecutor;
+    private final TaskExecutor vectorMergeExecutor;
+
+    private final Map<Long, KnowledgeBaseIndex> indexes = new ConcurrentHashMap<>();
+    private final AtomicBoolean maintaining = new AtomicBoolean();
+
+    private final Timer searchTimer;
+    private final Timer lexicalSearchTimer;
+    private final Timer loadTimer;
+    private final Timer snapshotTimer;
+    private final Timer mergeTimer;
+
+    public VectorIndexService(JdbcTemplate jdbcTemplate, AppProperties appProperties,
+            @Qualifier("vectorIndexExecutor") TaskExecutor vectorIndexExecutor,
+            @Qualifier("vectorMergeExecutor") TaskExecutor vectorMergeExecutor, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.appProperties = appProperties;
+        this.vectorIndexExecutor = vectorIndexExecutor;
+        this.vectorMergeExecutor = vectorMergeExecutor;
+
+        this.searchTimer = Timer.builder("vector.search")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.lexicalSearchTimer = Timer.builder("vector.lexical.search")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.loadTimer = Timer.builder("vector.index.load")
+                .register(meterRegistry);
+        this.snapshotTimer = Timer.builder("vector.index.snapshot")
+                .register(meterRegistry);
+        this.mergeTimer = Timer.builder("vector.index.merge")
+                .register(meterRegistry);
+        Gauge.builder("vector.index.loaded", indexes, Map::size)
+                .register(meterRegistry);
+        Gauge.builder("vector.index.vectors", indexes, map -> map.values().stream()
+                        .mapToLong(KnowledgeBaseIndex::liveCount)
+                        .sum())
+                .register(meterRegistry);
+        Gauge.builder("vector.index.segments", indexes, map -> map.values().stream()
+                        .mapToInt(holder -> holder.generation().segments().size())
+                        .sum())
+                .register(meterRegistry);
+    }
+
+    /**
+     * 查詢知識庫內最相近的切塊（呼叫端負責驗證知識庫擁有者）
+     * 索引尚未載入時排程背景載入並回傳空結果
+     *
+     * @param ef 搜尋寬度；null 時使用預設值
+     */
+    public List<VectorHit> search(Long knowledgeBaseId, float[] query, int k, Integer ef) {
+        AppProperties.Vector config = appProperties.getVector();
+        KnowledgeBaseIndex holder = indexes.computeIfAbsent(knowledgeBaseId, KnowledgeBaseIndex::new);
+        IndexGeneration generation = holder.ensureLoaded().generation();
+        int dimension = generation.dimension();
+        if (dimension == 0) {
+            return List.of();
+        }
+        if (query.length != dimension) {
+            throw new BizException(ErrorCode.BAD_REQUEST,
+                    "Query dimension " + query.length + " does not match index dimension " + dimension);
+        }
+        int limit = Math.max(1, Math.min(k, config.getMaxK()));
+        int width = Math.max(1, Math.min(ef != null ? ef : config.getEfSearch(), MAX_EF));
+        return searchTimer.record(() -> generation.search(query, limit, width));
+    }
+
+    /**
+     * 以 BM25 查詢知識庫內詞彙最相符的切塊（呼叫端負責驗證知識庫擁有者）
+     * 索引尚未載入時排程背景載入並回傳空結果
+     */
+    public List<VectorHit> searchLexical(Long knowledgeBaseId, String query, int k) {
+        KnowledgeBaseIndex holder = indexes.computeIfAbsent(knowledgeBaseId, KnowledgeBaseIndex::new);
+        IndexGeneration generation = holder.ensureLoaded().generation();
+        if (query == null || query.isBlank()) {
+            return List.of();
+        }
+        int limit = Math.max(1, Math.min(k, appProperties.getVector().getMaxK()));
+        return lexicalSearchTimer.record(() -> generation.searchLexical(query, limit));
+    }
+
+    /**
+     * 既有切塊補上向量後呼叫（例如舊資料轉換）；於下次維護時發布
+     */
+    public void add(Long knowledgeBaseId, long chunkId, float[] vector) {
+        KnowledgeBaseIndex holder = indexes.get(knowledgeBaseId);
+        if (holder != null) {
+            holder.update(chunkId, vector);
+        }
+    }
+
+    /**
+     * 匯入中的切塊寫入後呼叫（交易提交後）；暫存於文件自己的區段，publish() 前查詢看不到
+     * 索引尚未載入時略過，載入時會依文件狀態讀入
+     *
+     * @param vector 可為 null（未嵌入）
+     */
+    public void stage(Long knowledgeBaseId, Long documentId, long chunkId, float[] vector, String text) {
+        KnowledgeBaseIndex holder = indexes.get(knowledgeBaseId);
+        if (holder != null) {
+            holder.stage(documentId, chunkId, vector, text);
+        }
+    }
+
+    /**
+     * 文件匯入完成（交易提交後）呼叫：暫存的區段與舊版本切塊的移除以單一世代替換一次生效
+     *
+     * @param replaced 重新匯入時被取代（已刪除）的舊版本切塊
+     */
+    public void publish(Long knowledgeBaseId, Long documentId, Collection<Long> replaced) {
+        KnowledgeBaseIndex holder = indexes.get(knowledgeBaseId);
+        if (holder != null) {
+            holder.publish(documentId, replaced);
+        }
+    }
+
+    /**
+     * 切塊刪除後呼叫
+     */
+    public void remove(Long knowledgeBaseId, Collection<Long> chunkIds) {
+        KnowledgeBaseIndex holder = indexes.get(knowledgeBaseId);
+        if (holder != null && !chunkIds.isEmpty()) {
+            holder.remove(chunkIds);
+        }
+    }
+
+    /**
+     * 知識庫刪除後釋放整個索引並刪除快照
+     */
+    public void drop(Long knowledgeBaseId) {
+        KnowledgeBaseIndex holder = indexes.remove(knowledgeBaseId);
+        if (holder != null) {
+            holder.close();
+        }
+        try {
+            IndexSnapshot.deleteAll(snapshotDir(knowledgeBaseId));
+        } catch (IOException ex) {
+            log.warn("Failed to delete index snapshot for knowledge base {}: {}", knowledgeBaseId, ex.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.vector.sync-millis:5000}")
+    public void tick() {
+        if (indexes.isEmpty() || !maintaining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            vectorIndexExecutor.execute(this::maintain);
+        } catch (TaskRejectedException ex) {
+            maintaining.set(false);
+        }
+    }
+
+    // ========== 背景維護 ==========
+
+    private void maintain() {
+        try {
+            catchUp();
+            resolveStaged();
+            merge();
+            persist();
+            evictIdle();
+        } catch (RuntimeException ex) {
+            log.error("Vector index maintenance failed: {}", ex.getMessage(), ex);
+        } finally {
+            maintaining.set(false);
+        }
+    }
+
+    /**
+     * 以遞增 id 補上已載入索引缺少的切塊；已發布文件的切塊每次輪詢合成一個區段發布
+     * 每個知識庫由自己的掃描位置回推重讀視窗開始，晚提交的較小 id（含其他節點時鐘較慢時配發的）不會被跳過
+     */
+    private void catchUp() {
+        long window = appProperties.getId().getReorderWindowMillis();
+        for (KnowledgeBaseIndex holder : indexes.values()) {
+            if (!holder.isLoaded()) {
+                continue;
+            }
+            long scanned = holder.rescanFrom(window);
+            List<ChunkRow> page;
+            do {
+                page = jdbcTemplate.query(SELECT_KB_CHUNKS, chunkRowMapper(holder.knowledgeBaseId),
+                        holder.knowledgeBaseId, scanned, PAGE_SIZE);
+                if (!page.isEmpty()) {
+                    holder.catchUp(page);
+                    scanned = page.get(page.size() - 1).chunkId();
+                }
+            } while (page.size() == PAGE_SIZE);
+            holder.advance(scanned);
+        }
+    }
+
+    /**
+     * 依文件狀態處理暫存區段：已完成（含其他節點匯入的文件）即發布，失敗或已刪除即捨棄
+     * 重新匯入中的文件先記下舊版本切塊（完成時才會被刪除），發布時一併移除
+     */
+    private void resolveStaged() {
+        Map<KnowledgeBaseIndex, Set<Long>> pending = new HashMap<>();
+        for (KnowledgeBaseIndex holder : indexes.values()) {
+            Set<Long> documentIds = holder.stagedDocumentIds();
+            if (!documentIds.isEmpty()) {
+                pending.put(holder, documentIds);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Long> documentIds = pending.values().stream().flatMap(Set::stream).distinct().toList();
+        Map<Long, DocumentState> states = new HashMap<>();
+        for (int from = 0; from < documentIds.size(); from += PAGE_SIZE) {
+            List<Long> slice = documentIds.subList(from, Math.min(documentIds.size(), from + PAGE_SIZE));
+            String sql = SELECT_DOCUMENT_STATES.formatted(String.join(",", Collections.nCopies(slice.size(), "?")));
+            jdbcTemplate.query(sql, rs -> {
+                long reingestFrom = rs.getLong("reingest_from_chunk_id");
+                states.put(rs.getLong("id"), new DocumentState(rs.getString("status"),
+                        rs.wasNull() ? null : reingestFrom));
+            }, slice.toArray());
+        }
+        pending.forEach((holder, ids) -> {
+            for (Long documentId : ids) {
+                DocumentState state = states.get(documentId);
+                if (state != null && state.reingestFromChunkId() != null && !holder.hasReplaced(documentId)) {
+                    holder.replaces(documentId, jdbcTemplate.queryForList(SELECT_REPLACED_CHUNKS, Long.class,
+                            documentId, state.reingestFromChunkId()));
+                }
+            }
+            holder.resolveStaged(ids, states);
+        });
+    }
+
+    /**
+     * 區段數超過上限時合併較小的區段（保留最大的一個）；墓碑比例過高時合併全部區段
+     * 只排程合併工作，不等待完成
+     */
+    private void merge() {
+        AppProperties.Vector config = appProperties.getVector();
+        for (KnowledgeBaseIndex holder : indexes.values()) {
+            holder.scheduleMerge(Math.max(2, config.getMaxSegments()), config.getCompactDeletedRatio());
+        }
+    }
+
+    /**
+     * 釋放閒置索引；釋放前寫出最新快照，下次查詢可直接由快照還原
+     */
+    private void evictIdle() {
+        long idleBefore = System.currentTimeMillis()
+                - TimeUnit.MINUTES.toMillis(appProperties.getVector().getIdleEvictMinutes());
+        for (Map.Entry<Long, KnowledgeBaseIndex> entry : indexes.entrySet()) {
+            KnowledgeBaseIndex holder = entry.getValue();
+            if (holder.lastAccess() < idleBefore && indexes.remove(entry.getKey(), holder)) {
+                holder.persist(true);
+                holder.close();
+            }
+        }
+    }
+
+    private void persist() {
+        for (KnowledgeBaseIndex holder : indexes.values()) {
+            holder.persist(false);
+        }
+    }
+
+    // ========== 載入 ==========
+
+    /**
+     * 先由最新快照與異動記錄還原，再由資料庫補上快照之後的切塊（由快照位置回推重讀視窗）；
+     * 沒有（或無法讀取）快照時全部由資料庫載入
+     * 未發布文件（匯入中）的切塊依文件分別暫存，不進入世代
+     * 掃描位置只取本知識庫實際讀到的最大 id，重讀視窗內的 id 交給之後的輪詢略過
+     */
+    private LoadedIndexes load(Long knowledgeBaseId) {
+        long startedAt = System.nanoTime();
+        IndexGeneration generation = IndexGeneration.EMPTY;
+        IndexBuilder tail = new IndexBuilder(knowledgeBaseId, 0);
+        long afterId = 0;
+        long snapshotGeneration = 0;
+        long logLength = 0;
+        int logRecords = 0;
+        if (appProperties.getVector().isSnapshotEnabled()) {
+            Path dir = snapshotDir(knowledgeBaseId);
+            try {
+                Optional<Long> latest = IndexSnapshot.latestGeneration(dir);
+                if (latest.isPresent()) {
+                    AppProperties.Vector config = appProperties.getVector();
+                    IndexSnapshot.Restored restored = IndexSnapshot.read(
+                            IndexSnapshot.snapshotFile(dir, latest.get()), knowledgeBaseId,
+                            config.getBm25K1(), config.getBm25B());
+                    generation = new IndexGeneration(1, restored.segments(), restored.removed());
+                    tail = new IndexBuilder(knowledgeBaseId, generation.dimension());
+                    logLength = ChangeLog.replay(IndexSnapshot.logFile(dir, latest.get()), tail);
+                    logRecords = tail.changes;
+                    generation = generation.withRemoved(tail.removed);
+                    afterId = TimeOrderedIds.rewind(restored.lastChunkId(),
+                            appProperties.getId().getReorderWindowMillis());
+                    snapshotGeneration = latest.get();
+                }
+            } catch (IOException | RuntimeException ex) {
+                log.warn("Index snapshot for knowledge base {} unusable, loading from database: {}",
+                        knowledgeBaseId, ex.getMessage());
+                generation = IndexGeneration.EMPTY;
+                tail = new IndexBuilder(knowledgeBaseId, 0);
+                afterId = 0;
+                snapshotGeneration = 0;
+                logLength = 0;
+                logRecords = 0;
+            }
+        }
+
+        int rows = 0;
+        IndexBuilder published = tail;
+        Map<Long, IndexBuilder> staged = new HashMap<>();
+        NavigableSet<Long> recentIds = new TreeSet<>();
+        long window = appProperties.getId().getReorderWindowMillis();
+        List<ChunkRow> page;
+        do {
+            page = jdbcTemplate.query(SELECT_KB_CHUNKS, chunkRowMapper(knowledgeBaseId),
+                    knowledgeBaseId, afterId, PAGE_SIZE);
+            for (ChunkRow row : page) {
+                afterId = row.chunkId();
+                recentIds.add(row.chunkId());
+                if (generation.contains(row.chunkId())) {
+                    continue;
+                }
+                IndexBuilder builder = row.published() ? published : staged.computeIfAbsent(row.documentId(),
+                        id -> new IndexBuilder(knowledgeBaseId, published.dimension()));
+                builder.add(row.chunkId(), row.vector(), row.text());
+            }
+            recentIds.headSet(TimeOrderedIds.rewind(afterId, window), true).clear();
+            rows += page.size();
+        } while (page.size() == PAGE_SIZE);
+        if (!published.isEmpty()) {
+            generation = generation.withSegment(published.seal(), List.of());
+        }
+
+        long lastChunkId = afterId;
+        loadTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        int skipped = published.skipped + staged.values().stream().mapToInt(builder -> builder.skipped).sum();
+        log.info("Vector index loaded for knowledge base {}: {} vectors{} in {} segments, {} staged documents "
+                        + "in {} ms ({})",
+                knowledgeBaseId, generation.liveCount(),
+                skipped > 0 ? " (" + skipped + " skipped: dimension mismatch)" : "",
+                generation.segments().size(), staged.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt),
+                snapshotGeneration > 0
+                        ? "snapshot " + snapshotGeneration + " + " + logRecords + " logged changes + " + rows + " rows"
+                        : rows + " rows from database");
+        return new LoadedIndexes(generation, staged, lastChunkId, recentIds, snapshotGeneration, logLength, rows);
+    }
+
+    private Path snapshotDir(Long knowledgeBaseId) {
+        return Paths.get(appProperties.getVector().getSnapshotDir()).resolve(String.valueOf(knowledgeBaseId));
+    }
+
+    private HnswIndex newIndex(Long knowledgeBaseId, int dimension) {
+        AppProperties.Vector config = appProperties.getVector();
+        return new HnswIndex(dimension, config.getM(), config.getEfConstruction(), knowledgeBaseId);
+    }
+
+    private Bm25Index newLexicalIndex() {
+        AppProperties.Vector config = appProperties.getVector();
+        return new Bm25Index(config.getBm25K1(), config.getBm25B());
+    }
+
+    private static RowMapper<ChunkRow> chunkRowMapper(Long knowledgeBaseId) {
+        return (rs, rowNum) -> new ChunkRow(rs.getLong("id"), rs.getLong("document_id"), knowledgeBaseId,
+                decode(rs.getBytes("embedding")), text(rs.getBytes("content")), rs.getBoolean("published"));
+    }
+
+    private static float[] decode(byte[] stored) {
+        PackedVector vector = PackedVector.fromStored(stored);
+        return vector != null && vector.dimension() > 0 ? vector.toFloatArray() : null;
+    }
+
+    private static String text(byte[] stored) {
+        CompressedText content = CompressedText.fromStored(stored);
+        return content != null ? content.text() : null;
+    }
+
+    private record ChunkRow(long chunkId, long documentId, long knowledgeBaseId, float[] vector, String text,
+            boolean published) {
+    }
+
+    private record DocumentState(String status, Long reingestFromChunkId) {
+
+        /**
+         * 暫存的切塊是否已可發布：文件已完成，或這些切塊已成為重新匯入中文件的舊版本
+         */
+        boolean publishes(long maxChunkId) {
+            return Document.DocumentStatus.COMPLETED.name().equals(status)
+                    || (reingestFromChunkId != null && maxChunkId < reingestFromChunkId);
+        }
+
+        boolean discards() {
+            return Document.DocumentStatus.FAILED.name().equals(status);
+        }
+    }
+
+    private record LoadedIndexes(IndexGeneration generation, Map<Long, IndexBuilder> staged, long lastChunkId,
+            NavigableSet<Long> recentIds, long snapshotGeneration, long logLength, int rowsSinceSnapshot) {
+    }
+
+    /**
+     * 在旁建構一個區段（載入、暫存的文件、待發布的更新共用同一套加入規則）；封存後不再修改
+     */
+    private final class IndexBuilder implements ChangeLog.Visitor {
+
+        private final Long knowledgeBaseId;
+        private final int dimension;
+        private HnswIndex index;
+        private final Bm25Index lexical = newLexicalIndex();
+        private final Set<Long> removed = new HashSet<>();
+        private int skipped;
+        private int changes;
+        private long minChunkId = Long.MAX_VALUE;
+        private long maxChunkId;
+
+        /**
+         * @param dimension 向量維度（與既有區段一致）；0 時由第一個向量決定
+         */
+        IndexBuilder(Long knowledgeBaseId, int dimension) {
+            this.knowledgeBaseId = knowledgeBaseId;
+            this.dimension = dimension;
+        }
+
+        int dimension() {
+            return index != null ? index.dimension() : dimension;
+        }
+
+        boolean isEmpty() {
+            return lexical.documentCount() == 0 && index == null;
+        }
+
+        @Override
+        public void add(long chunkId, float[] vector, String text) {
+            changes++;
+            minChunkId = Math.min(minChunkId, chunkId);
+            maxChunkId = Math.max(maxChunkId, chunkId);
+            if (text != null) {
+                lexical.add(chunkId, text);
+            }
+            if (vector == null) {
+                return;
+            }
+            if (index == null) {
+                index = newIndex(knowledgeBaseId, dimension > 0 ? dimension : vector.length);
+            }
+            if (vector.length != index.dimension()) {
+                skipped++;
+                return;
+            }
+            if (!index.contains(chunkId)) {
+                index.add(chunkId, vector);
+            }
+        }
+
+        @Override
+        public void remove(long chunkId) {
+            changes++;
+            removed.add(chunkId);
+            if (index != null) {
+                index.remove(chunkId);
+            }
+            lexical.remove(chunkId);
+        }
+
+        IndexGeneration.Segment seal() {
+            return new IndexGeneration.Segment(index, lexical);
+        }
+    }
+
+    /**
+     * 單一知識庫的索引狀態
+     * 目前的世代以 volatile 參照發布，查詢直接讀取、不加鎖；
+     * 載入（於背景執行緒）、暫存、發布、合併結果的替換與快照以物件鎖串行，合併本身在鎖外建構
+     */
+    private final class KnowledgeBaseIndex {
+
+        private final Long knowledgeBaseId;
+        private volatile boolean loaded;
+        private final AtomicBoolean loading = new AtomicBoolean();
+        private final AtomicBoolean merging = new AtomicBoolean();
+        private volatile IndexGeneration generation = IndexGeneration.EMPTY;
+        private volatile long lastChunkId;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        // 以下欄位受物件鎖保護
+        private IndexBuilder pending; // 已發布切塊的更新與新切塊，於維護時發布
+        private final Map<Long, IndexBuilder> staged = new HashMap<>(); // 文件 id → 尚未發布的切塊
+        private final Map<Long, List<Long>> replaced = new HashMap<>(); // 文件 id → 發布時移除的舊版本切塊
+        private NavigableSet<Long> recentIds = new TreeSet<>(); // 重讀視窗內已讀過的切塊 id
+        private ChangeLog changeLog;
+        private long changesSinceSnapshot;
+        private boolean snapshotStale;
+        private boolean closed;
+
+        KnowledgeBaseIndex(Long knowledgeBaseId) {
+            this.knowledgeBaseId = knowledgeBaseId;
+        }
+
+        boolean isLoaded() {
+            return loaded;
+        }
+
+        long lastChunkId() {
+            return lastChunkId;
+        }
+
+        long lastAccess() {
+            return lastAccess;
+        }
+
+        long liveCount() {
+            return generation.liveCount();
+        }
+
+        IndexGeneration generation() {
+            return generation;
+        }
+
+        /**
+         * 尚未載入時排程背景載入（同一索引同時只排一次），不等待完成
+         */
+        KnowledgeBaseIndex ensureLoaded() {
+            lastAccess = System.currentTimeMillis();
+            if (!loaded && loading.compareAndSet(false, true)) {
+                try {
+                    vectorIndexExecutor.execute(this::loadInBackground);
+                } catch (TaskRejectedException ex) {
+                    // 佇列已滿：下次查詢時再試
+                    loading.set(false);
+                    log.warn("Vector index executor saturated, loading knowledge base {} deferred", knowledgeBaseId);
+                }
+            }
+            return this;
+        }
+
+        private void loadInBackground() {
+            try {
+                synchronized (this) {
+                    if (loaded || closed) {
+                        return;
+                    }
+                    LoadedIndexes loadedIndexes = load(knowledgeBaseId);
+                    generation = loadedIndexes.generation();
+                    staged.putAll(loadedIndexes.staged());
+                    lastChunkId = loadedIndexes.lastChunkId();
+                    recentIds = loadedIndexes.recentIds();
+                    changesSinceSnapshot = loadedIndexes.rowsSinceSnapshot();
+                    snapshotStale = loadedIndexes.snapshotGeneration() == 0;
+                    if (!snapshotStale) {
+                        openChangeLog(loadedIndexes.snapshotGeneration(), loadedIndexes.logLength());
+                    }
+                    loaded = true;
+                }
+            } catch (RuntimeException ex) {
+                log.error("Failed to load vector index for knowledge base {}: {}", knowledgeBaseId, ex.getMessage(),
+                        ex);
+            } finally {
+                loading.set(false);
+            }
+        }
+
+        synchronized void update(long chunkId, float[] vector) {
+            if (!loaded) {
+                return;
+            }
+            pending().add(chunkId, vector, null);
+            changesSinceSnapshot++;
+            // 高於已掃描 id 的切塊重啟後會由資料庫補讀，只需記錄既有切塊的更新
+            if (changeLog != null && chunkId <= lastChunkId) {
+                try {
+                    changeLog.add(chunkId, vector, null);
+                } catch (IOException ex) {
+                    changeLogFailed(ex);
+                }
+            }
+        }
+
+        synchronized void stage(Long documentId, long chunkId, float[] vector, String text) {
+            if (loaded && chunkId > TimeOrderedIds.rewind(lastChunkId, appProperties.getId().getReorderWindowMillis())
+                    && !recentIds.add(chunkId)) {
+                return; // 輪詢已讀入
+            }
+            if (loaded && !generation.contains(chunkId)) {
+                staged.computeIfAbsent(documentId, id -> new IndexBuilder(knowledgeBaseId, generation.dimension()))
+                        .add(chunkId, vector, text);
+            }
+        }
+
+        synchronized void publish(Long documentId, Collection<Long> replacedChunkIds) {
+            if (!loaded) {
+                return;
+            }
+            IndexBuilder builder = staged.remove(documentId);
+            Set<Long> removed = new HashSet<>(replacedChunkIds);
+            List<Long> captured = replaced.remove(documentId);
+            if (captured != null) {
+                removed.addAll(captured);
+            }
+            if (builder == null && removed.isEmpty()) {
+                return;
+            }
+            generation = builder != null && !builder.isEmpty()
+                    ? generation.withSegment(builder.seal(), removed)
+                    : generation.withRemoved(removed);
+            logRemoved(removed);
+            changesSinceSnapshot += (builder != null ? builder.changes : 0) + removed.size();
+            log.debug("Document {} published to index of knowledge base {}: {} chunks, {} replaced, generation {}",
+                    documentId, knowledgeBaseId, builder != null ? builder.changes : 0, removed.size(),
+                    generation.number());
+        }
+
+        /**
+         * 本輪輪詢的起點：已掃描位置回推重讀視窗，並清除視窗外的已讀 id
+         */
+        synchronized long rescanFrom(long windowMillis) {
+            long cursor = TimeOrderedIds.rewind(lastChunkId, windowMillis);
+            recentIds.headSet(cursor, true).clear();
+            return cursor;
+        }
+
+        synchronized void catchUp(List<ChunkRow> rows) {
+            if (!loaded) {
+                return;
+            }
+            for (ChunkRow row : rows) {
+                if (!recentIds.add(row.chunkId()) || generation.contains(row.chunkId())) {
+                    continue;
+                }
+                if (row.published()) {
+                    pending().add(row.chunkId(), row.vector(), row.text());
+                    changesSinceSnapshot++;
+                } else {
+                    staged.computeIfAbsent(row.documentId(),
+                                    id -> new IndexBuilder(knowledgeBaseId, generation.dimension()))
+                            .add(row.chunkId(), row.vector(), row.text());
+                }
+            }
+        }
+
+        /**
+         * 推進輪詢位置並發布這一輪累積的切塊
+         */
+        synchronized void advance(long scannedId) {
+            lastChunkId = Math.max(lastChunkId, scannedId);
+            publishPending();
+        }
+
+        synchronized Set<Long> stagedDocumentIds() {
+            return new HashSet<>(staged.keySet());
+        }
+
+        synchronized boolean hasReplaced(Long documentId) {
+            return replaced.containsKey(documentId);
+        }
+
+        synchronized void replaces(Long documentId, List<Long> chunkIds) {
+            if (staged.containsKey(documentId)) {
+                replaced.put(documentId, chunkIds);
+            }
+        }
+
+        synchronized void resolveStaged(Set<Long> documentIds, Map<Long, DocumentState> states) {
+            for (Long documentId : documentIds) {
+                IndexBuilder builder = staged.get(documentId);
+                if (builder == null) {
+                    continue;
+                }
+                DocumentState state = states.get(documentId);
+                if (state != null && state.publishes(builder.maxChunkId)) {
+                    publish(documentId, List.of());
+                } else if (state == null || state.discards()) {
+                    staged.remove(documentId);
+                    replaced.remove(documentId);
+                    log.debug("Staged chunks of document {} discarded ({})", documentId,
+                            state != null ? state.status() : "deleted");
+                }
+            }
+        }
+
+        synchronized void remove(Collection<Long> chunkIds) {
+            if (!loaded) {
+                return;
+            }
+            generation = generation.withRemoved(chunkIds);
+            for (IndexBuilder builder : staged.values()) {
+                chunkIds.forEach(builder::remove);
+            }
+            if (pending != null) {
+                chunkIds.forEach(pending::remove);
+            }
+            changesSinceSnapshot += chunkIds.size();
+            logRemoved(chunkIds);
+        }
+
+        /**
+         * 需要合併時排程背景合併（同一索引同時只排一次），不等待完成
+         */
+        void scheduleMerge(int maxSegments, double deletedRatio) {
+            if (!loaded || mergeInputs(generation, maxSegments, deletedRatio) == null
+                    || !merging.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                vectorMergeExecutor.execute(() -> {
+                    try {
+                        mergeIfNeeded(maxSegments, deletedRatio);
+                    } catch (RuntimeException ex) {
+                        log.error("Failed to merge index segments for knowledge base {}: {}", knowledgeBaseId,
+                                ex.getMessage(), ex);
+                    } finally {
+                        merging.set(false);
+                    }
+                });
+            } catch (TaskRejectedException ex) {
+                // 佇列已滿：下次維護時再試
+                merging.set(false);
+                log.warn("Vector merge executor saturated, merging knowledge base {} deferred", knowledgeBaseId);
+            }
+        }
+
+        /**
+         * 墓碑比例過高時為全部區段，區段過多時為最大區段以外的區段；不需合併時回傳 null
+         */
+        private List<IndexGeneration.Segment> mergeInputs(IndexGeneration current, int maxSegments,
+                double deletedRatio) {
+            List<IndexGeneration.Segment> segments = current.segments();
+            if (current.deletedRatio() > deletedRatio) {
+                return segments;
+            }
+            if (segments.size() > maxSegments) {
+                IndexGeneration.Segment largest = segments.stream()
+                        .max(Comparator.comparingInt(IndexGeneration.Segment::size))
+                        .orElseThrow();
+                return segments.stream().filter(segment -> segment != largest).toList();
+            }
+            return null;
+        }
+
+        /**
+         * 在鎖外合併區段，完成後以合併結果替換；合併期間發布的區段與刪除不受影響，
+         * 索引於合併期間被釋放時捨棄結果
+         */
+        private void mergeIfNeeded(int maxSegments, double deletedRatio) {
+            IndexGeneration current = generation;
+            List<IndexGeneration.Segment> inputs = mergeInputs(current, maxSegments, deletedRatio);
+            if (inputs == null) {
+                return;
+            }
+
+            long startedAt = System.nanoTime();
+            IndexGeneration.Segment merged = mergeSegments(inputs, current.removed());
+            synchronized (this) {
+                if (closed || !loaded) {
+                    return;
+                }
+                generation = generation.withMerged(inputs, merged);
+                snapshotStale = true;
+            }
+            mergeTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            log.info("Index segments merged for knowledge base {}: {} -> 1 ({} vectors, {} segments total)",
+                    knowledgeBaseId, inputs.size(), merged.vectors() != null ? merged.vectors().liveCount() : 0,
+                    generation.segments().size());
+        }
+
+        /**
+         * 由新到舊搬移有效內容，同一 id 以最新區段為準
+         */
+        private IndexGeneration.Segment mergeSegments(List<IndexGeneration.Segment> inputs, Set<Long> removed) {
+            List<IndexGeneration.Segment> newestFirst = new ArrayList<>(inputs);
+            Collections.reverse(newestFirst);
+            HnswIndex vectors = null;
+            for (IndexGeneration.Segment segment : newestFirst) {
+                HnswIndex source = segment.vectors();
+                if (source == null) {
+                    continue;
+                }
+                if (vectors == null) {
+                    vectors = new HnswIndex(source.dimension(), source.m(), source.efConstruction(),
+                            knowledgeBaseId);
+                }
+                HnswIndex target = vectors;
+                if (source.dimension() == target.dimension()) {
+                    source.forEachLive((id, vector) -> {
+                        if (!removed.contains(id) && !target.contains(id)) {
+                            target.add(id, vector);
+                        }
+                    });
+                }
+            }
+            AppProperties.Vector config = appProperties.getVector();
+            Bm25Index lexical = Bm25Index.merge(newestFirst.stream().map(IndexGeneration.Segment::lexical).toList(),
+                    removed::contains, config.getBm25K1(), config.getBm25B());
+            return new IndexGeneration.Segment(vectors, lexical);
+        }
+
+        /**
+         * flush 異動記錄；快照過舊（從未寫出、合併過，或異動數達門檻）時寫出新世代並換新異動記錄
+         * 快照的輪詢位置不超過暫存中最小的切塊，重啟後由資料庫重新讀入尚未發布的文件
+         *
+         * @param force 有任何異動即寫出（釋放索引前）
+         */
+        synchronized void persist(boolean force) {
+            if (!loaded || closed || !appProperties.getVector().isSnapshotEnabled()) {
+                return;
+            }
+            publishPending();
+            if (changeLog != null) {
+                try {
+                    changeLog.flush();
+                } catch (IOException ex) {
+                    changeLogFailed(ex);
+                }
+            }
+            boolean due = snapshotStale
+                    || changesSinceSnapshot >= appProperties.getVector().getSnapshotMinChanges()
+                    || (force && changesSinceSnapshot > 0);
+            if (!due) {
+                return;
+            }
+            long startedAt = System.nanoTime();
+            Path dir = snapshotDir(knowledgeBaseId);
+            long position = lastChunkId;
+            for (IndexBuilder builder : staged.values()) {
+                position = Math.min(position, builder.minChunkId - 1);
+            }
+            try {
+                Files.createDirectories(dir);
+                long snapshotGeneration = IndexSnapshot.latestGeneration(dir).orElse(0L) + 1;
+                IndexSnapshot.write(IndexSnapshot.snapshotFile(dir, snapshotGeneration), knowledgeBaseId, position,
+                        generation);
+                closeChangeLog();
+                openChangeLog(snapshotGeneration, 0);
+                IndexSnapshot.deleteOtherGenerations(dir, snapshotGeneration);
+                changesSinceSnapshot = 0;
+                snapshotStale = false;
+                snapshotTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                log.debug("Index snapshot {} written for knowledge base {}", snapshotGeneration, knowledgeBaseId);
+            } catch (IOException ex) {
+                log.warn("Failed to write index snapshot for knowledge base {}: {}", knowledgeBaseId, ex.getMessage());
+            }
+        }
+
+        /**
+         * 釋放前呼叫；之後不再寫入快照與異動記錄
+         */
+        synchronized void close() {
+            closeChangeLog();
+            staged.clear();
+            replaced.clear();
+            recentIds.clear();
+            pending = null;
+            closed = true;
+        }
+
+        private IndexBuilder pending() {
+            if (pending == null) {
+                pending = new IndexBuilder(knowledgeBaseId, generation.dimension());
+            }
+            return pending;
+        }
+
+        private void publishPending() {
+            if (pending != null && !pending.isEmpty()) {
+                generation = generation.withSegment(pending.seal(), List.of());
+            }
+            pending = null;
+        }
+
+        private void logRemoved(Collection<Long> chunkIds) {
+            if (changeLog == null || chunkIds.isEmpty()) {
+                return;
+            }
+            try {
+                for (Long chunkId : chunkIds) {
+                    changeLog.remove(chunkId);
+                }
+            } catch (IOException ex) {
+                changeLogFailed(ex);
+            }
+        }
+
+        private void openChangeLog(long snapshotGeneration, long validLength) {
+            try {
+                changeLog = ChangeLog.open(IndexSnapshot.logFile(snapshotDir(knowledgeBaseId), snapshotGeneration),
+                        validLength);
+            } catch (IOException ex) {
+                changeLogFailed(ex);
+            }
+        }
+
+        private void closeChangeLog() {
+            if (changeLog != null) {
+                try {
+                    changeLog.close();
+                } catch (IOException ex) {
+                    log.warn("Failed to close index change log for knowledge base {}: {}", knowledgeBaseId,
+                            ex.getMessage());
+                }
+                changeLog = null;
+            }
+        }
+
+        /**
+         * 異動記錄無法寫入時改為盡快寫出完整快照
+         */
+        private void changeLogFailed(IOException ex) {
+            log.warn("Index change log for knowledge base {} unavailable: {}", knowledgeBaseId, ex.getMessage());
+            closeChangeLog();
+            snapshotStale = true;
+        }
+    }
+}
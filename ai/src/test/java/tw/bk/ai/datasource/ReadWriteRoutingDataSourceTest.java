@@ -0,0 +1,153 @@
+package tw.bk.ai.datasource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+import tw.bk.ai.entity.User;
+import tw.bk.ai.security.JwtUserPrincipal;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 讀寫分流：以兩個本機 H2 資料庫分別扮演主庫與副本，
+ * 每個資料庫的 node 表記錄自己的名稱，藉此判斷查詢實際落在哪一個
+ */
+class ReadWriteRoutingDataSourceTest {
+
+    private static final String LAG_QUERY = "SELECT seconds FROM replica_lag";
+    private static final long MAX_LAG_SECONDS = 5;
+    private static final AtomicLong USER_IDS = new AtomicLong(1_000_000);
+
+    private JdbcTemplate primary;
+    private JdbcTemplate replica;
+    private ReplicaHealthMonitor monitor;
+    private JdbcTemplate routed;
+    private TransactionTemplate readWrite;
+    private TransactionTemplate readOnly;
+
+    @BeforeEach
+    void setUp() {
+        String suffix = UUID.randomUUID().toString();
+        DataSource primaryDataSource = h2("primary-" + suffix);
+        DataSource replicaDataSource = h2("replica-" + suffix);
+        primary = new JdbcTemplate(primaryDataSource);
+        replica = new JdbcTemplate(replicaDataSource);
+        primary.execute("CREATE TABLE node (name VARCHAR(20))");
+        primary.update("INSERT INTO node VALUES ('primary')");
+        replica.execute("CREATE TABLE node (name VARCHAR(20))");
+        replica.update("INSERT INTO node VALUES ('replica')");
+        replica.execute("CREATE TABLE replica_lag (seconds BIGINT)");
+        replica.update("INSERT INTO replica_lag VALUES (0)");
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        List<ReplicaNode> replicas = List.of(new ReplicaNode("replica-0", replicaDataSource));
+        monitor = new ReplicaHealthMonitor(replicas, LAG_QUERY, MAX_LAG_SECONDS, 2, meterRegistry);
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primaryDataSource, replicas,
+                meterRegistry);
+        routing.afterPropertiesSet();
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+
+        routed = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        DataSourceRouting.configure(60_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        DataSourceRouting.configure(5000);
+    }
+
+    @Test
+    void readOnlyTransactionsGoToReplicaAndWritesToPrimary() {
+        assertEquals("replica", readOnly.execute(status -> currentNode()));
+        assertEquals("primary", readWrite.execute(status -> currentNode()));
+        assertEquals("primary", currentNode()); // 交易外視為寫入
+    }
+
+    @Test
+    void onPrimaryPinsReadOnlyTransactions() {
+        assertEquals("primary", DataSourceRouting.onPrimary(() -> readOnly.execute(status -> currentNode())));
+        // 巢狀釘選結束後恢復分流
+        assertEquals("primary", DataSourceRouting.onPrimary(
+                () -> DataSourceRouting.onPrimary(() -> readOnly.execute(status -> currentNode()))));
+        assertEquals("replica", readOnly.execute(status -> currentNode()));
+    }
+
+    @Test
+    void userReadsOwnWritesFromPrimaryDuringStickyPeriod() {
+        long writer = USER_IDS.addAndGet(2); // 黏著記錄為全域狀態，每個測試使用不同的使用者
+        authenticate(writer);
+        assertEquals("replica", readOnly.execute(status -> currentNode()));
+
+        readWrite.executeWithoutResult(status -> routed.update("UPDATE node SET name = name"));
+        assertEquals("primary", readOnly.execute(status -> currentNode()));
+
+        authenticate(writer + 1); // 其他使用者不受影響
+        assertEquals("replica", readOnly.execute(status -> currentNode()));
+
+        authenticate(writer);
+        DataSourceRouting.configure(0); // 黏著期間結束
+        assertEquals("replica", readOnly.execute(status -> currentNode()));
+    }
+
+    @Test
+    void laggingReplicaFallsBackToPrimaryUntilItCatchesUp() {
+        replica.update("UPDATE replica_lag SET seconds = ?", MAX_LAG_SECONDS + 10);
+        monitor.checkAll();
+        assertEquals("primary", readOnly.execute(status -> currentNode()));
+
+        replica.update("UPDATE replica_lag SET seconds = 1");
+        monitor.checkAll();
+        assertEquals("replica", readOnly.execute(status -> currentNode()));
+
+        replica.execute("DROP TABLE replica_lag"); // 延遲查詢失敗同樣視為不健康
+        monitor.checkAll();
+        assertEquals("primary", readOnly.execute(status -> currentNode()));
+    }
+
+    @Test
+    void withoutReplicasReadOnlyTransactionsStayOnPrimary() {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary.getDataSource(), List.of(),
+                new SimpleMeterRegistry());
+        routing.afterPropertiesSet();
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+        TransactionTemplate readOnlyPrimary = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        readOnlyPrimary.setReadOnly(true);
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+
+        assertEquals("primary", readOnlyPrimary.execute(
+                status -> jdbc.queryForObject("SELECT name FROM node", String.class)));
+    }
+
+    private String currentNode() {
+        return routed.queryForObject("SELECT name FROM node", String.class);
+    }
+
+    private static void authenticate(long userId) {
+        JwtUserPrincipal principal = new JwtUserPrincipal(userId, userId + "@example.com", "", "user",
+                User.UserStatus.ACTIVE);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+    }
+
+    private static DataSource h2(String name) {
+        return new SimpleDriverDataSource(new org.h2.Driver(), "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+    }
+}
@@ -0,0 +1,101 @@
+package tw.bk.ai.service.auth;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import tw.bk.ai.config.AppProperties;
+import tw.bk.ai.entity.RevokedToken;
+import tw.bk.ai.repository.RevokedTokenRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 撤銷清單同步：id 配發順序與 commit 順序不同時不可漏掉紀錄
+ */
+class TokenRevocationServiceTest {
+
+    /**
+     * 模擬 revoked_tokens 中已 commit（其他節點可見）的列
+     */
+    private final List<RevokedToken> committed = new CopyOnWriteArrayList<>();
+    private final AppProperties appProperties = new AppProperties();
+    private TokenRevocationService service;
+
+    @BeforeEach
+    void setUp() {
+        RevokedTokenRepository repository = mock(RevokedTokenRepository.class);
+        when(repository.findByIdGreaterThanAndExpiresAtAfterOrderByIdAsc(anyLong(), any(), any()))
+                .thenAnswer(invocation -> {
+                    long afterId = invocation.getArgument(0);
+                    LocalDateTime now = invocation.getArgument(1);
+                    Pageable page = invocation.getArgument(2);
+                    return committed.stream()
+                            .filter(token -> token.getId() > afterId && token.getExpiresAt().isAfter(now))
+                            .sorted((a, b) -> Long.compare(a.getId(), b.getId()))
+                            .limit(page.getPageSize())
+                            .toList();
+                });
+        service = new TokenRevocationService(repository, appProperties);
+    }
+
+    @Test
+    void lowerIdCommittedAfterHigherIdIsStillSynced() {
+        commit(1, "jti-1");
+        commit(3, "jti-3"); // id 2 已配發但其交易尚未 commit
+        service.sync();
+        assertTrue(service.isRevoked("jti-1"));
+        assertTrue(service.isRevoked("jti-3"));
+        assertFalse(service.isRevoked("jti-2"));
+
+        commit(2, "jti-2");
+        service.sync();
+        assertTrue(service.isRevoked("jti-2"));
+    }
+
+    @Test
+    void lateCommitIsFoundAfterSeveralSyncsWithinOverlap() {
+        commit(10, "jti-10");
+        service.sync();
+        commit(12, "jti-12");
+        service.sync();
+        commit(14, "jti-14");
+        service.sync();
+
+        commit(11, "jti-11");
+        service.sync();
+        assertTrue(service.isRevoked("jti-11"));
+    }
+
+    @Test
+    void lateCommitOutsideOverlapIsNoLongerRescanned() {
+        appProperties.getJwt().setRevocationSyncOverlapMillis(0);
+        commit(1, "jti-1");
+        commit(3, "jti-3");
+        service.sync();
+        service.sync();
+
+        commit(2, "jti-2");
+        service.sync();
+        assertFalse(service.isRevoked("jti-2"));
+    }
+
+    private void commit(long id, String jti) {
+        committed.add(RevokedToken.builder()
+                .id(id)
+                .jti(jti)
+                .userId(1L)
+                .tokenType("refresh")
+                .expiresAt(LocalDateTime.now().plusDays(1))
+                .revokedAt(LocalDateTime.now())
+                .build());
+    }
+}
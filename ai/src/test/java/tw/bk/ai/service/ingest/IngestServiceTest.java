@@ -0,0 +1,213 @@
+package tw.bk.ai.service.ingest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import tw.bk.ai.config.AppProperties;
+import tw.bk.ai.entity.Document;
+import tw.bk.ai.entity.DocumentChunk;
+import tw.bk.ai.entity.KnowledgeBase;
+import tw.bk.ai.entity.User;
+import tw.bk.ai.repository.DocumentChunkRepository;
+import tw.bk.ai.repository.DocumentRepository;
+import tw.bk.ai.repository.KnowledgeBaseRepository;
+import tw.bk.ai.repository.UserRepository;
+import tw.bk.ai.service.embedding.EmbeddingClient;
+import tw.bk.ai.service.vector.VectorIndexService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 文件匯入：由檢查點接續，以及重新匯入完成時刪除舊版本切塊（H2，MySQL 相容模式）
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:ingest;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=VALUE,USER",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // 匯入在背景執行緒以各自的交易寫入
+class IngestServiceTest {
+
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private KnowledgeBaseRepository knowledgeBaseRepository;
+    @Autowired
+    private DocumentRepository documentRepository;
+    @Autowired
+    private DocumentChunkRepository documentChunkRepository;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path dir;
+
+    private final VectorIndexService vectorIndexService = mock(VectorIndexService.class);
+    private ThreadPoolTaskExecutor executor;
+    private IngestService ingestService;
+    private KnowledgeBase knowledgeBase;
+
+    @BeforeEach
+    void setUp() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getIngest().setChunkChars(200);
+        appProperties.getIngest().setChunkOverlapChars(20);
+        appProperties.getIngest().setEmbedBatchSize(4);
+        appProperties.getIngest().setConcurrentDocuments(1);
+
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.initialize();
+        @SuppressWarnings("unchecked")
+        ObjectProvider<EmbeddingClient> noEmbeddings = mock(ObjectProvider.class);
+        ingestService = new IngestService(documentRepository, documentChunkRepository, entityManager,
+                transactionManager, appProperties, executor, noEmbeddings, vectorIndexService,
+                new SimpleMeterRegistry());
+
+        User user = userRepository.save(User.builder()
+                .email(UUID.randomUUID() + "@example.com")
+                .passwordHash("x")
+                .displayName("tester")
+                .build());
+        knowledgeBase = knowledgeBaseRepository.save(KnowledgeBase.builder().user(user).name("kb").build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void resumesFromCheckpointWithoutRewritingEarlierChunks() throws Exception {
+        Path file = write("source.txt", text("first", 60));
+        Document full = ingest(document(file, null));
+        List<DocumentChunk> fullChunks = documentChunkRepository.findByDocument_IdOrderByChunkIndexAsc(full.getId());
+        assertTrue(fullChunks.size() > 10);
+
+        // 模擬寫完前 5 個切塊後中斷：檢查點指向第 5 個切塊的起點
+        int resumeIndex = 5;
+        long resumeOffset = ((Number) fullChunks.get(resumeIndex).getMetadata().get("offset")).longValue();
+        Document resumed = ingest(document(file, Map.of("ingest",
+                Map.of("next_chunk_index", resumeIndex, "next_offset", resumeOffset))));
+
+        List<DocumentChunk> resumedChunks = documentChunkRepository
+                .findByDocument_IdOrderByChunkIndexAsc(resumed.getId());
+        assertEquals(Document.DocumentStatus.COMPLETED, resumed.getStatus());
+        assertEquals(fullChunks.size(), resumed.getChunkCount());
+        assertEquals(fullChunks.size() - resumeIndex, resumedChunks.size());
+        for (int i = 0; i < resumedChunks.size(); i++) {
+            DocumentChunk expected = fullChunks.get(i + resumeIndex);
+            assertEquals(expected.getChunkIndex(), resumedChunks.get(i).getChunkIndex());
+            assertEquals(expected.getContent(), resumedChunks.get(i).getContent());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reprocessKeepsOldChunksUntilCompletionThenDeletesThem() throws Exception {
+        Path file = write("source.txt", text("old", 30));
+        Document document = ingest(document(file, null));
+        List<Long> oldIds = chunkIds(document.getId());
+        assertTrue(oldIds.size() > 1);
+
+        Files.writeString(file, text("new", 40));
+        ingestService.reprocess(document.getId());
+
+        Document pending = documentRepository.findById(document.getId()).orElseThrow();
+        assertEquals(Document.DocumentStatus.PENDING, pending.getStatus());
+        assertEquals(oldIds, chunkIds(document.getId())); // 新版本完成前舊版本仍在
+
+        Document reprocessed = ingest(pending);
+        List<DocumentChunk> chunks = documentChunkRepository.findByDocument_IdOrderByChunkIndexAsc(document.getId());
+        assertEquals(Document.DocumentStatus.COMPLETED, reprocessed.getStatus());
+        assertEquals(chunks.size(), reprocessed.getChunkCount());
+        assertTrue(chunks.stream().allMatch(chunk -> chunk.getContent().contains("new")));
+        assertTrue(chunks.stream().noneMatch(chunk -> oldIds.contains(chunk.getId())));
+
+        ArgumentCaptor<Collection<Long>> replaced = ArgumentCaptor.forClass(Collection.class);
+        verify(vectorIndexService, times(2))
+                .publish(eq(knowledgeBase.getId()), eq(document.getId()), replaced.capture());
+        assertEquals(List.of(), List.copyOf(replaced.getAllValues().get(0)));
+        assertEquals(oldIds, List.copyOf(replaced.getAllValues().get(1)));
+    }
+
+    private Document document(Path file, Map<String, Object> metadata) {
+        return documentRepository.save(Document.builder()
+                .knowledgeBase(knowledgeBase)
+                .fileName(file.getFileName().toString())
+                .filePath(file.toString())
+                .mimeType("text/plain")
+                .metadata(metadata)
+                .build());
+    }
+
+    /**
+     * 認領並等待文件處理結束
+     */
+    private Document ingest(Document document) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            ingestService.poll();
+            Document current = documentRepository.findById(document.getId()).orElseThrow();
+            if (current.getStatus() == Document.DocumentStatus.COMPLETED
+                    || current.getStatus() == Document.DocumentStatus.FAILED) {
+                return current;
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("Document " + document.getId() + " was not ingested in time");
+    }
+
+    private List<Long> chunkIds(Long documentId) {
+        return documentChunkRepository.findByDocument_IdOrderByChunkIndexAsc(documentId).stream()
+                .map(DocumentChunk::getId)
+                .toList();
+    }
+
+    private Path write(String name, String content) throws Exception {
+        Path file = dir.resolve(name);
+        Files.writeString(file, content);
+        return file;
+    }
+
+    private static String text(String word, int sentences) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < sentences; i++) {
+            text.append(word).append(" sentence number ").append(i).append(" ends here.");
+            text.append(i % 5 == 4 ? "\n\n" : " ");
+        }
+        return text.toString();
+    }
+}
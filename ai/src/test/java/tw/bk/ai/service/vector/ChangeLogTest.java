@@ -0,0 +1,111 @@
+package tw.bk.ai.service.vector;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 異動記錄：依序重播，遇到不完整或校驗失敗的尾端即停止，重新開啟時截斷尾端後繼續附加
+ */
+class ChangeLogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysRecordsInOrder() throws IOException {
+        Path file = dir.resolve("changes-1.log");
+        try (ChangeLog log = ChangeLog.open(file, 0)) {
+            log.add(1, new float[] {0.5f, -1f, 2f}, "第一段 text");
+            log.add(2, null, "lexical only");
+            log.add(3, new float[] {1f, 0f, 0f}, null);
+            log.remove(1);
+        }
+
+        Recorder recorder = new Recorder();
+        long valid = ChangeLog.replay(file, recorder);
+
+        assertEquals(Files.size(file), valid);
+        assertEquals(List.of("add 1 [0.5, -1.0, 2.0] 第一段 text", "add 2 null lexical only",
+                "add 3 [1.0, 0.0, 0.0] null", "remove 1"), recorder.records);
+    }
+
+    @Test
+    void missingLogReplaysNothing() throws IOException {
+        Recorder recorder = new Recorder();
+
+        assertEquals(0, ChangeLog.replay(dir.resolve("changes-9.log"), recorder));
+        assertEquals(List.of(), recorder.records);
+    }
+
+    @Test
+    void stopsAtTruncatedTailAndResumesAfterIt() throws IOException {
+        Path file = dir.resolve("changes-1.log");
+        try (ChangeLog log = ChangeLog.open(file, 0)) {
+            log.remove(1);
+            log.remove(2);
+        }
+        long complete = Files.size(file);
+        try (ChangeLog log = ChangeLog.open(file, complete)) {
+            log.add(3, new float[] {1f, 2f}, "partly written");
+        }
+        byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, content.length - 5));
+
+        Recorder recorder = new Recorder();
+        long valid = ChangeLog.replay(file, recorder);
+        assertEquals(complete, valid);
+        assertEquals(List.of("remove 1", "remove 2"), recorder.records);
+
+        try (ChangeLog log = ChangeLog.open(file, valid)) {
+            log.remove(4);
+        }
+        Recorder resumed = new Recorder();
+        assertEquals(Files.size(file), ChangeLog.replay(file, resumed));
+        assertEquals(List.of("remove 1", "remove 2", "remove 4"), resumed.records);
+    }
+
+    @Test
+    void stopsAtCorruptRecord() throws IOException {
+        Path file = dir.resolve("changes-1.log");
+        try (ChangeLog log = ChangeLog.open(file, 0)) {
+            log.remove(1);
+        }
+        long first = Files.size(file);
+        try (ChangeLog log = ChangeLog.open(file, first)) {
+            log.add(2, new float[] {1f}, "corrupted");
+            log.remove(3);
+        }
+        byte[] content = Files.readAllBytes(file);
+        content[(int) first + 12] ^= 0x01; // 第二筆記錄 payload 內的位元
+        Files.write(file, content);
+
+        Recorder recorder = new Recorder();
+
+        assertEquals(first, ChangeLog.replay(file, recorder));
+        assertEquals(List.of("remove 1"), recorder.records);
+    }
+
+    private static final class Recorder implements ChangeLog.Visitor {
+
+        private final List<String> records = new ArrayList<>();
+
+        @Override
+        public void add(long chunkId, float[] vector, String text) {
+            records.add("add " + chunkId + " " + (vector != null ? Arrays.toString(vector) : null) + " " + text);
+        }
+
+        @Override
+        public void remove(long chunkId) {
+            records.add("remove " + chunkId);
+        }
+    }
+}
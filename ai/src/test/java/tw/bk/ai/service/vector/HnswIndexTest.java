@@ -0,0 +1,223 @@
+package tw.bk.ai.service.vector;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * HNSW 索引：以合成向量比對暴力搜尋的 recall@10，並驗證墓碑、走訪與序列化
+ */
+class HnswIndexTest {
+
+    private static final int DIMENSION = 16;
+    private static final int COUNT = 2000;
+    private static final int K = 10;
+
+    @Test
+    void recallAgainstBruteForce() {
+        SplittableRandom random = new SplittableRandom(1);
+        List<float[]> vectors = vectors(random, COUNT);
+        HnswIndex index = build(vectors);
+
+        double narrow = 0;
+        double wide = 0;
+        int queries = 100;
+        for (int q = 0; q < queries; q++) {
+            float[] query = vector(random);
+            Set<Long> expected = bruteForce(vectors, query, K, Set.of());
+            narrow += overlap(index.search(query, K, K, null), expected) / (double) K;
+            wide += overlap(index.search(query, K, 64, null), expected) / (double) K;
+        }
+
+        // 實測約 0.94（ef = k）與 1.0（ef = 64）
+        assertTrue(narrow / queries >= 0.9, "recall@10 at ef=10 " + narrow / queries);
+        assertTrue(wide / queries >= 0.99, "recall@10 at ef=64 " + wide / queries);
+    }
+
+    @Test
+    void resultsAreSortedBySimilarity() {
+        SplittableRandom random = new SplittableRandom(2);
+        List<float[]> vectors = vectors(random, 300);
+        HnswIndex index = build(vectors);
+
+        List<VectorHit> hits = index.search(vectors.get(42), K, 64, null);
+
+        assertEquals(K, hits.size());
+        assertEquals(42, hits.get(0).chunkId());
+        assertEquals(1f, hits.get(0).score(), 1e-5);
+        for (int i = 1; i < hits.size(); i++) {
+            assertTrue(hits.get(i - 1).score() >= hits.get(i).score());
+        }
+    }
+
+    @Test
+    void tombstonesAreNeverReturned() {
+        SplittableRandom random = new SplittableRandom(3);
+        List<float[]> vectors = vectors(random, COUNT);
+        HnswIndex index = build(vectors);
+        Set<Long> removed = new HashSet<>();
+        for (long id = 0; id < COUNT; id += 3) {
+            assertTrue(index.remove(id));
+            removed.add(id);
+        }
+        assertFalse(index.remove(COUNT + 1));
+        assertEquals(COUNT - removed.size(), index.liveCount());
+        assertEquals(removed.size() / (double) COUNT, index.deletedRatio(), 1e-9);
+
+        double recall = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = vector(random);
+            List<VectorHit> hits = index.search(query, K, K, id -> id % 2 == 0);
+            assertEquals(K, hits.size());
+            for (VectorHit hit : hits) {
+                assertFalse(removed.contains(hit.chunkId()));
+                assertTrue(hit.chunkId() % 2 != 0);
+            }
+            Set<Long> excluded = new HashSet<>(removed);
+            for (long id = 0; id < COUNT; id += 2) {
+                excluded.add(id);
+            }
+            recall += overlap(hits, bruteForce(vectors, query, K, excluded)) / (double) K;
+        }
+        assertTrue(recall / queries >= 0.9, "recall@10 with tombstones " + recall / queries);
+    }
+
+    @Test
+    void readdReplacesVector() {
+        HnswIndex index = new HnswIndex(2, 4, 16, 0);
+        index.add(1, new float[] {1, 0});
+        index.add(2, new float[] {0, 1});
+
+        index.add(1, new float[] {0, 3});
+
+        assertEquals(2, index.liveCount());
+        List<VectorHit> hits = index.search(new float[] {0, 1}, 2, 16, null);
+        assertEquals(1f, hits.get(0).score(), 1e-5);
+        assertEquals(1f, hits.get(1).score(), 1e-5);
+        assertTrue(index.search(new float[] {1, 0}, 2, 16, null).stream().allMatch(hit -> hit.score() < 0.01f));
+        assertThrows(IllegalArgumentException.class, () -> index.add(3, new float[] {1, 2, 3}));
+    }
+
+    @Test
+    void forEachLiveVisitsLiveVectorsInInsertionOrder() {
+        HnswIndex index = new HnswIndex(3, 4, 16, 0);
+        index.add(10, new float[] {3, 0, 4});
+        index.add(20, new float[] {0, 1, 0});
+        index.add(30, new float[] {0, 0, 2});
+        index.remove(20);
+        index.add(10, new float[] {0, 2, 0});
+
+        List<Long> ids = new ArrayList<>();
+        List<float[]> visited = new ArrayList<>();
+        index.forEachLive((id, vector) -> {
+            ids.add(id);
+            visited.add(vector);
+        });
+
+        assertEquals(List.of(30L, 10L), ids);
+        assertEquals(1f, visited.get(0)[2], 1e-6);
+        assertEquals(1f, visited.get(1)[1], 1e-6);
+    }
+
+    @Test
+    void writeToAndReadFromRoundTrip() throws IOException {
+        SplittableRandom random = new SplittableRandom(4);
+        List<float[]> vectors = vectors(random, 500);
+        HnswIndex index = build(vectors);
+        for (long id = 0; id < 500; id += 7) {
+            index.remove(id);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        index.writeTo(out);
+        out.writeInt(0xCAFE);
+        out.flush();
+        ByteBuffer in = ByteBuffer.wrap(bytes.toByteArray());
+        HnswIndex restored = HnswIndex.readFrom(in, 0);
+
+        assertEquals(0xCAFE, in.getInt());
+        assertFalse(in.hasRemaining());
+        assertEquals(index.dimension(), restored.dimension());
+        assertEquals(index.m(), restored.m());
+        assertEquals(index.efConstruction(), restored.efConstruction());
+        assertEquals(index.liveCount(), restored.liveCount());
+        assertEquals(index.deletedRatio(), restored.deletedRatio(), 1e-9);
+        assertFalse(restored.contains(7));
+        assertTrue(restored.contains(8));
+        for (int q = 0; q < 20; q++) {
+            float[] query = vector(random);
+            assertEquals(index.search(query, K, 64, null), restored.search(query, K, 64, null));
+        }
+
+        // 讀回的索引仍可繼續加入
+        restored.add(1000, vectors.get(0));
+        assertEquals(1000, restored.search(vectors.get(0), 2, 64, id -> id == 0).get(0).chunkId());
+    }
+
+    private static HnswIndex build(List<float[]> vectors) {
+        HnswIndex index = new HnswIndex(DIMENSION, 16, 100, 0);
+        for (int i = 0; i < vectors.size(); i++) {
+            index.add(i, vectors.get(i));
+        }
+        return index;
+    }
+
+    private static Set<Long> bruteForce(List<float[]> vectors, float[] query, int k, Set<Long> excluded) {
+        return new HashSet<>(IntStream.range(0, vectors.size())
+                .filter(i -> !excluded.contains((long) i))
+                .boxed()
+                .sorted(Comparator.comparingDouble(i -> -cosine(vectors.get(i), query)))
+                .limit(k)
+                .map(Integer::longValue)
+                .toList());
+    }
+
+    private static int overlap(List<VectorHit> hits, Set<Long> expected) {
+        return (int) hits.stream().filter(hit -> expected.contains(hit.chunkId())).count();
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    private static List<float[]> vectors(SplittableRandom random, int count) {
+        List<float[]> vectors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            vectors.add(vector(random));
+        }
+        return vectors;
+    }
+
+    private static float[] vector(SplittableRandom random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,148 @@
+package tw.bk.ai.service.vector;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 索引快照：寫出後讀回的世代須與原本查詢結果一致，並可讀取舊版（version 1）單一區段格式
+ */
+class IndexSnapshotTest {
+
+    private static final long KNOWLEDGE_BASE_ID = 42;
+    private static final int DIMENSION = 8;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripKeepsSegmentsAndRemoved() throws IOException {
+        IndexGeneration.Segment first = segment(1, 60, true);
+        IndexGeneration.Segment second = segment(61, 20, false);
+        IndexGeneration original = new IndexGeneration(3, List.of(first, second), Set.of(5L, 17L, 70L));
+        Path file = IndexSnapshot.snapshotFile(dir, 3);
+
+        IndexSnapshot.write(file, KNOWLEDGE_BASE_ID, 123, original);
+        IndexSnapshot.Restored restored = IndexSnapshot.read(file, KNOWLEDGE_BASE_ID, K1, B);
+
+        assertEquals(123, restored.lastChunkId());
+        assertEquals(Set.of(5L, 17L, 70L), restored.removed());
+        assertEquals(2, restored.segments().size());
+        assertNull(restored.segments().get(1).vectors());
+        assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".tmp")));
+
+        IndexGeneration loaded = new IndexGeneration(3, restored.segments(), restored.removed());
+        assertEquals(original.liveCount(), loaded.liveCount());
+        assertFalse(loaded.contains(5));
+        assertTrue(loaded.contains(6));
+        float[] query = vector(new SplittableRandom(7));
+        assertEquals(original.search(query, 10, 64), loaded.search(query, 10, 64));
+        assertEquals(original.searchLexical("chunk 70", 5), loaded.searchLexical("chunk 70", 5));
+        assertEquals(original.searchLexical("topic3", 10), loaded.searchLexical("topic3", 10));
+        assertEquals(3, IndexSnapshot.latestGeneration(dir).orElseThrow());
+    }
+
+    @Test
+    void readsSingleSegmentVersionOne() throws IOException {
+        IndexGeneration.Segment segment = segment(1, 40, true);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x56534E31);
+        out.writeInt(1);
+        out.writeLong(KNOWLEDGE_BASE_ID);
+        out.writeLong(40);
+        out.writeBoolean(true);
+        segment.vectors().writeTo(out);
+        segment.lexical().writeTo(out);
+        out.flush();
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        Path file = IndexSnapshot.snapshotFile(dir, 1);
+        Files.write(file, bytes.toByteArray());
+
+        IndexSnapshot.Restored restored = IndexSnapshot.read(file, KNOWLEDGE_BASE_ID, K1, B);
+
+        assertEquals(40, restored.lastChunkId());
+        assertTrue(restored.removed().isEmpty());
+        assertEquals(1, restored.segments().size());
+        IndexGeneration expected = new IndexGeneration(1, List.of(segment), Set.of());
+        IndexGeneration loaded = new IndexGeneration(1, restored.segments(), restored.removed());
+        float[] query = vector(new SplittableRandom(11));
+        assertEquals(expected.search(query, 5, 64), loaded.search(query, 5, 64));
+        assertEquals(expected.searchLexical("chunk 12", 3), loaded.searchLexical("chunk 12", 3));
+    }
+
+    @Test
+    void rejectsCorruptOrForeignSnapshot() throws IOException {
+        IndexGeneration generation = new IndexGeneration(1, List.of(segment(1, 20, true)), Set.of(2L));
+        Path file = IndexSnapshot.snapshotFile(dir, 1);
+        IndexSnapshot.write(file, KNOWLEDGE_BASE_ID, 20, generation);
+
+        assertThrows(IOException.class, () -> IndexSnapshot.read(file, KNOWLEDGE_BASE_ID + 1, K1, B));
+
+        byte[] content = Files.readAllBytes(file);
+        content[content.length / 2] ^= 0x5A;
+        Files.write(file, content);
+        assertThrows(IOException.class, () -> IndexSnapshot.read(file, KNOWLEDGE_BASE_ID, K1, B));
+
+        Files.write(file, new byte[] {1, 2, 3});
+        assertThrows(IOException.class, () -> IndexSnapshot.read(file, KNOWLEDGE_BASE_ID, K1, B));
+    }
+
+    @Test
+    void deleteOtherGenerationsKeepsSnapshotAndLog() throws IOException {
+        for (long generation = 1; generation <= 3; generation++) {
+            Files.write(IndexSnapshot.snapshotFile(dir, generation), new byte[] {0});
+            Files.write(IndexSnapshot.logFile(dir, generation), new byte[] {0});
+        }
+
+        IndexSnapshot.deleteOtherGenerations(dir, 2);
+
+        try (var files = Files.list(dir)) {
+            assertEquals(Set.of("snapshot-2.bin", "changes-2.log"),
+                    Set.copyOf(files.map(file -> file.getFileName().toString()).toList()));
+        }
+    }
+
+    /**
+     * 切塊 id 由 firstId 起連續配發；withVectors 為 false 時只有詞彙索引（無向量的區段）
+     */
+    private static IndexGeneration.Segment segment(long firstId, int count, boolean withVectors) {
+        SplittableRandom random = new SplittableRandom(firstId);
+        HnswIndex vectors = withVectors ? new HnswIndex(DIMENSION, 8, 50, KNOWLEDGE_BASE_ID) : null;
+        Bm25Index lexical = new Bm25Index(K1, B);
+        for (long id = firstId; id < firstId + count; id++) {
+            lexical.add(id, "chunk " + id + " topic" + (id % 5));
+            if (vectors != null) {
+                vectors.add(id, vector(random));
+            }
+        }
+        return new IndexGeneration.Segment(vectors, lexical);
+    }
+
+    private static float[] vector(SplittableRandom random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
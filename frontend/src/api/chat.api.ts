@@ -15,15 +15,22 @@ export interface ChatResp {
     updated_at: string
 }
 
+export interface CursorPage<T> {
+    items: T[]
+    next_cursor?: string | null
+    has_more: boolean
+}
+
 export interface MessageResp {
     id: number
+    seq?: number
     role: 'SYSTEM' | 'USER' | 'ASSISTANT'
     content: string
     provider?: string
     model?: string
     token_in?: number
     token_out?: number
-    metadata?: Record<string, unknown>
+    has_metadata?: boolean
     created_at: string
 }
 
@@ -31,10 +38,30 @@ export interface ChatDetailResp {
     id: number
     title: string
     messages: MessageResp[]
+    has_more?: boolean
+    next_before?: number | null
     created_at: string
     updated_at: string
 }
 
+export interface MessageSyncResp {
+    chat_id: number
+    messages: MessageResp[]
+    high_water_mark: number
+    has_more: boolean
+}
+
+export interface ChatSearchHit {
+    chat_id: number
+    chat_title: string
+    message_id: number
+    seq: number
+    role: string
+    snippet: string
+    score: number
+    created_at: string
+}
+
 export interface MessageSendReq {
     content: string
     model?: string
@@ -58,17 +85,38 @@ export function createChat(req?: ChatCreateReq): Promise<ChatResp> {
 }
 
 /**
- * 取得對話列表
+ * 取得對話列表（游標分頁）
+ */
+export function getChatList(cursor?: string | null, limit = 30): Promise<CursorPage<ChatResp>> {
+    return get<CursorPage<ChatResp>>('/chats', { cursor: cursor || undefined, limit })
+}
+
+/**
+ * 搜尋所有對話的訊息
+ */
+export function searchChats(q: string, limit = 20): Promise<ChatSearchHit[]> {
+    return get<ChatSearchHit[]>('/chats/search', { q, limit })
+}
+
+/**
+ * 取得對話詳情（含最新一頁訊息；before 用於載入更早訊息）
+ */
+export function getChatDetail(chatId: number, before?: number | null, limit = 50): Promise<ChatDetailResp> {
+    return get<ChatDetailResp>(`/chats/${chatId}`, { before: before ?? undefined, limit })
+}
+
+/**
+ * 增量同步訊息（只取 seq 大於 after 的訊息）
  */
-export function getChatList(): Promise<ChatResp[]> {
-    return get<ChatResp[]>('/chats')
+export function syncMessages(chatId: number, after: number): Promise<MessageSyncResp> {
+    return get<MessageSyncResp>(`/chats/${chatId}/messages`, { after })
 }
 
 /**
- * 取得對話詳情（含訊息）
+ * 按需取得單則訊息的擴充資料
  */
-export function getChatDetail(chatId: number): Promise<ChatDetailResp> {
-    return get<ChatDetailResp>(`/chats/${chatId}`)
+export function getMessageMetadata(chatId: number, messageId: number): Promise<Record<string, unknown>> {
+    return get<Record<string, unknown>>(`/chats/${chatId}/messages/${messageId}/metadata`)
 }
 
 /**
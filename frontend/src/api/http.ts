@@ -1,4 +1,4 @@
-import axios, { AxiosError, type AxiosInstance, type AxiosResponse } from 'axios'
+import axios, { AxiosError, type AxiosInstance, type AxiosResponse, type InternalAxiosRequestConfig } from 'axios'
 import { AppError, toAppError, type ApiResult, DEFAULT_ERROR_MESSAGES } from './error'
 import router from '@/router'
 
@@ -17,6 +17,26 @@ const http: AxiosInstance = axios.create({
 
 // 不再需要 Request Interceptor 手動附加 JWT
 
+/**
+ * Access Token 過期時以 Refresh Token Cookie 換發
+ * 同時間多個 401 共用同一個換發請求
+ */
+let refreshing: Promise<boolean> | null = null
+
+export function refreshSession(): Promise<boolean> {
+    if (!refreshing) {
+        refreshing = http.post('/auth/refresh', undefined, { _skipRefresh: true } as RetryableConfig)
+            .then(() => true)
+            .catch(() => false)
+            .finally(() => {
+                refreshing = null
+            })
+    }
+    return refreshing
+}
+
+type RetryableConfig = InternalAxiosRequestConfig & { _skipRefresh?: boolean }
+
 /**
  * Response Interceptor - 統一錯誤處理
  */
@@ -31,11 +51,20 @@ http.interceptors.response.use(
 
         return response
     },
-    (error: AxiosError<ApiResult>) => {
+    async (error: AxiosError<ApiResult>) => {
         // 處理 HTTP 錯誤
         if (error.response) {
             const { status, data } = error.response
 
+            // 401 先嘗試換發一次 Token 再重送
+            const config = error.config as RetryableConfig | undefined
+            if (status === 401 && config && !config._skipRefresh) {
+                config._skipRefresh = true
+                if (await refreshSession()) {
+                    return http(config)
+                }
+            }
+
             // 有後端回傳的錯誤格式
             if (data && data.code) {
                 const appError = toAppError(data)
@@ -3,11 +3,15 @@ import { ref, computed } from 'vue'
 import * as chatApi from '@/api/chat.api'
 import type { ChatResp, ChatDetailResp, MessageResp } from '@/api/chat.api'
 
+const DEFAULT_TITLE = 'New Chat'
+
 export const useChatStore = defineStore('chat', () => {
     // ============================================
     // State
     // ============================================
     const chats = ref<ChatResp[]>([])
+    const chatsCursor = ref<string | null>(null)
+    const hasMoreChats = ref(false)
     const currentChatId = ref<number | null>(null)
     const currentChat = ref<ChatDetailResp | null>(null)
     const loading = ref(false)
@@ -30,7 +34,27 @@ export const useChatStore = defineStore('chat', () => {
     async function loadChats() {
         loading.value = true
         try {
-            chats.value = await chatApi.getChatList()
+            const page = await chatApi.getChatList()
+            chats.value = page.items
+            chatsCursor.value = page.next_cursor ?? null
+            hasMoreChats.value = page.has_more
+        } finally {
+            loading.value = false
+        }
+    }
+
+    /**
+     * 載入下一頁對話
+     */
+    async function loadMoreChats() {
+        if (!hasMoreChats.value || !chatsCursor.value) return
+
+        loading.value = true
+        try {
+            const page = await chatApi.getChatList(chatsCursor.value)
+            chats.value.push(...page.items)
+            chatsCursor.value = page.next_cursor ?? null
+            hasMoreChats.value = page.has_more
         } finally {
             loading.value = false
         }
@@ -61,6 +85,61 @@ export const useChatStore = defineStore('chat', () => {
         }
     }
 
+    /**
+     * 載入更早的訊息（插入目前訊息之前）
+     */
+    async function loadEarlierMessages() {
+        const chat = currentChat.value
+        if (!chat || !chat.has_more || !chat.next_before) return
+
+        loading.value = true
+        try {
+            const page = await chatApi.getChatDetail(chat.id, chat.next_before)
+            if (currentChat.value?.id !== chat.id) return
+            chat.messages.unshift(...page.messages)
+            chat.has_more = page.has_more
+            chat.next_before = page.next_before
+        } finally {
+            loading.value = false
+        }
+    }
+
+    /**
+     * 與後端增量同步：以伺服器訊息取代樂觀更新的暫存訊息
+     */
+    async function syncCurrentChat() {
+        const chat = currentChat.value
+        if (!chat) return
+
+        let after = chat.messages.reduce((max, m) => Math.max(max, m.seq ?? 0), 0)
+        let hasMore = true
+        while (hasMore) {
+            const resp = await chatApi.syncMessages(chat.id, after)
+            if (currentChat.value?.id !== chat.id) return
+
+            chat.messages = chat.messages.filter((m: MessageResp) => m.seq != null)
+            chat.messages.push(...resp.messages)
+            after = resp.messages.length > 0 ? resp.messages[resp.messages.length - 1].seq ?? after : after
+            hasMore = resp.has_more && resp.messages.length > 0
+        }
+    }
+
+    /**
+     * 重新取得背景產生的標題（僅針對仍為預設標題的對話）
+     */
+    async function refreshChatTitle(chatId: number) {
+        const chat = chats.value.find((c: ChatResp) => c.id === chatId)
+        if (!chat || chat.title !== DEFAULT_TITLE) return
+
+        const detail = await chatApi.getChatDetail(chatId, null, 1)
+        if (detail.title === chat.title) return
+
+        chat.title = detail.title
+        if (currentChat.value && currentChat.value.id === chatId) {
+            currentChat.value.title = detail.title
+        }
+    }
+
     /**
      * 刪除對話
      */
@@ -170,6 +249,7 @@ export const useChatStore = defineStore('chat', () => {
     return {
         // State
         chats,
+        hasMoreChats,
         currentChatId,
         currentChat,
         loading,
@@ -180,8 +260,12 @@ export const useChatStore = defineStore('chat', () => {
         hasChats,
         // Actions
         loadChats,
+        loadMoreChats,
         createChat,
         selectChat,
+        loadEarlierMessages,
+        syncCurrentChat,
+        refreshChatTitle,
         deleteChat,
         updateChatTitle,
         addUserMessage,
@@ -1,4 +1,5 @@
 import type { MessageSendReq } from '@/api/chat.api'
+import { refreshSession } from '@/api/http'
 
 /**
  * SSE 事件類型
@@ -44,7 +45,7 @@ export async function createSseConnection(options: SseOptions): Promise<AbortCon
     const controller = new AbortController()
 
     try {
-        const response = await fetch(url, {
+        const send = () => fetch(url, {
             method: 'POST',
             credentials: 'include',  // 🔑 關鍵：啟用跨域 Cookie
             headers: {
@@ -54,6 +55,13 @@ export async function createSseConnection(options: SseOptions): Promise<AbortCon
             signal: controller.signal,
         })
 
+        let response = await send()
+
+        // Access Token 過期：換發後重送一次
+        if (response.status === 401 && await refreshSession()) {
+            response = await send()
+        }
+
         if (!response.ok) {
             callbacks.onError?.({
                 code: `HTTP_${response.status}`,
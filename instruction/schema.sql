@@ -36,10 +36,14 @@ CREATE TABLE IF NOT EXISTS `chats` (
     `id` BIGINT UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '對話 ID',
     `user_id` BIGINT UNSIGNED NOT NULL COMMENT '使用者 ID',
     `title` VARCHAR(255) DEFAULT NULL COMMENT '對話標題',
+    `last_message_seq` BIGINT UNSIGNED NOT NULL DEFAULT 0 COMMENT '最後一則訊息序號（配置 messages.seq 用）',
     `created_at` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '建立時間',
     `updated_at` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新時間',
+    `deleted_at` DATETIME DEFAULT NULL COMMENT '刪除時間（已隱藏，等待背景清除）',
+    `archived_at` DATETIME DEFAULT NULL COMMENT '封存時間（非 NULL 表示訊息已移至 chat_archives）',
+    `rehydrated_at` DATETIME DEFAULT NULL COMMENT '最後一次自封存還原的時間（延後再次封存）',
     PRIMARY KEY (`id`),
-    INDEX `idx_chats_user_id` (`user_id`),
+    INDEX `idx_chats_user_updated_id` (`user_id`, `updated_at`, `id`) COMMENT '對話列表 keyset 分頁',
     INDEX `idx_chats_updated_at` (`updated_at`),
     CONSTRAINT `fk_chats_user_id` FOREIGN KEY (`user_id`) REFERENCES `users` (`id`) ON DELETE CASCADE ON UPDATE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='對話資料表';
@@ -49,10 +53,11 @@ CREATE TABLE IF NOT EXISTS `chats` (
 -- 已預留 B 版 (RAG) 擴充欄位
 -- -------------------------------------------
 CREATE TABLE IF NOT EXISTS `messages` (
-    `id` BIGINT UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '訊息 ID',
+    `id` BIGINT UNSIGNED NOT NULL COMMENT '訊息 ID（應用程式配置的時間排序 ID）',
     `chat_id` BIGINT UNSIGNED NOT NULL COMMENT '對話 ID',
+    `seq` BIGINT UNSIGNED NOT NULL COMMENT '對話內訊息序號（分頁 / 同步游標）',
     `role` ENUM('system', 'user', 'assistant') NOT NULL COMMENT '角色類型',
-    `content` TEXT NOT NULL COMMENT '訊息內容',
+    `content` MEDIUMBLOB NOT NULL COMMENT '訊息內容（0x00 + 版本標頭；v1 原文、v2 deflate 壓縮）',
     `provider` VARCHAR(50) DEFAULT NULL COMMENT 'LLM 供應商（如 openai, anthropic）',
     `model` VARCHAR(100) DEFAULT NULL COMMENT '模型名稱（如 gpt-4, claude-3）',
     `token_in` INT UNSIGNED DEFAULT NULL COMMENT '輸入 token 數',
@@ -60,19 +65,83 @@ CREATE TABLE IF NOT EXISTS `messages` (
     `metadata_json` JSON DEFAULT NULL COMMENT '擴充資料（B 版 citations、tool output 等）',
     `created_at` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '建立時間',
     PRIMARY KEY (`id`),
-    INDEX `idx_messages_chat_id` (`chat_id`),
+    UNIQUE KEY `uk_messages_chat_seq` (`chat_id`, `seq`),
     INDEX `idx_messages_role` (`role`),
     INDEX `idx_messages_created_at` (`created_at`),
     CONSTRAINT `fk_messages_chat_id` FOREIGN KEY (`chat_id`) REFERENCES `chats` (`id`) ON DELETE CASCADE ON UPDATE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='訊息資料表';
 
+-- -------------------------------------------
+-- 4. Token 撤銷清單 (revoked_tokens)
+-- 各節點以遞增 id 增量同步到記憶體集合
+-- -------------------------------------------
+CREATE TABLE IF NOT EXISTS `revoked_tokens` (
+    `id` BIGINT UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '記錄 ID',
+    `jti` VARCHAR(36) NOT NULL COMMENT 'JWT ID',
+    `user_id` BIGINT UNSIGNED NOT NULL COMMENT '使用者 ID',
+    `token_type` VARCHAR(20) NOT NULL COMMENT 'Token 類型（access, refresh）',
+    `expires_at` DATETIME NOT NULL COMMENT 'Token 原過期時間（過期後可清除）',
+    `revoked_at` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '撤銷時間',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_revoked_tokens_jti` (`jti`),
+    INDEX `idx_revoked_tokens_expires_at` (`expires_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='Token 撤銷清單';
+
+-- -------------------------------------------
+-- 時間排序 ID 的節點編號租約 (id_node_leases)
+-- 未設定 app.id.node-id 的節點啟動時租用一個空閒編號並定期續約，避免兩個節點使用同一編號
+-- -------------------------------------------
+CREATE TABLE IF NOT EXISTS `id_node_leases` (
+    `node_id` TINYINT UNSIGNED NOT NULL COMMENT '節點編號（0 ~ 15）',
+    `owner` VARCHAR(100) NOT NULL COMMENT '持有者（主機名稱 / 隨機識別碼）',
+    `expires_at` DATETIME(3) NOT NULL COMMENT '租約到期時間（資料庫時鐘）',
+    PRIMARY KEY (`node_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='ID 節點編號租約';
+
+-- -------------------------------------------
+-- 5. 背景刪除工作 (purge_jobs)
+-- 對話 / 知識庫刪除時先隱藏，再由背景分批清除子資料
+-- -------------------------------------------
+CREATE TABLE IF NOT EXISTS `purge_jobs` (
+    `id` BIGINT UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '工作 ID',
+    `target_type` VARCHAR(20) NOT NULL COMMENT '刪除目標類型（CHAT, KNOWLEDGE_BASE）',
+    `target_id` BIGINT UNSIGNED NOT NULL COMMENT '刪除目標 ID',
+    `user_id` BIGINT UNSIGNED NOT NULL COMMENT '使用者 ID',
+    `status` VARCHAR(20) NOT NULL DEFAULT 'PENDING' COMMENT '狀態（PENDING, RUNNING, COMPLETED, FAILED）',
+    `total_rows` BIGINT UNSIGNED DEFAULT NULL COMMENT '預估待刪除列數',
+    `deleted_rows` BIGINT UNSIGNED NOT NULL DEFAULT 0 COMMENT '已刪除列數',
+    `attempts` INT UNSIGNED NOT NULL DEFAULT 0 COMMENT '執行次數',
+    `last_error` VARCHAR(500) DEFAULT NULL COMMENT '最後錯誤訊息',
+    `created_at` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '建立時間',
+    `updated_at` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '最後進度時間（心跳）',
+    `finished_at` DATETIME DEFAULT NULL COMMENT '完成時間',
+    PRIMARY KEY (`id`),
+    INDEX `idx_purge_jobs_status_updated` (`status`, `updated_at`),
+    INDEX `idx_purge_jobs_user_id` (`user_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='背景刪除工作';
+
+-- -------------------------------------------
+-- 6. 對話封存 (chat_archives)
+-- 閒置對話的訊息整批壓縮移出 messages，存取時再還原
+-- -------------------------------------------
+CREATE TABLE IF NOT EXISTS `chat_archives` (
+    `chat_id` BIGINT UNSIGNED NOT NULL COMMENT '對話 ID',
+    `message_count` INT UNSIGNED NOT NULL COMMENT '封存訊息數',
+    `max_seq` BIGINT UNSIGNED NOT NULL DEFAULT 0 COMMENT '封存訊息中最大的 seq',
+    `raw_bytes` BIGINT UNSIGNED NOT NULL COMMENT '壓縮前位元組數',
+    `payload` LONGBLOB NOT NULL COMMENT '訊息資料（版本標頭 + deflate 壓縮的二進位列）',
+    `archived_at` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '封存時間',
+    PRIMARY KEY (`chat_id`),
+    CONSTRAINT `fk_chat_archives_chat_id` FOREIGN KEY (`chat_id`) REFERENCES `chats` (`id`) ON DELETE CASCADE ON UPDATE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='對話封存（冷資料）';
+
 -- ============================================
 -- B 版 (RAG) - 擴充資料表
 -- 可在升級時再執行以下 SQL
 -- ============================================
 
 -- -------------------------------------------
--- 4. 知識庫資料表 (knowledge_bases)
+-- 7. 知識庫資料表 (knowledge_bases)
 -- -------------------------------------------
 CREATE TABLE IF NOT EXISTS `knowledge_bases` (
     `id` BIGINT UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '知識庫 ID',
@@ -82,6 +151,7 @@ CREATE TABLE IF NOT EXISTS `knowledge_bases` (
     `status` ENUM('ACTIVE', 'INACTIVE', 'PROCESSING') NOT NULL DEFAULT 'ACTIVE' COMMENT '狀態',
     `created_at` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '建立時間',
     `updated_at` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新時間',
+    `deleted_at` DATETIME DEFAULT NULL COMMENT '刪除時間（已隱藏，等待背景清除）',
     PRIMARY KEY (`id`),
     INDEX `idx_knowledge_bases_user_id` (`user_id`),
     INDEX `idx_knowledge_bases_status` (`status`),
@@ -89,7 +159,7 @@ CREATE TABLE IF NOT EXISTS `knowledge_bases` (
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='知識庫資料表';
 
 -- -------------------------------------------
--- 5. 文件資料表 (documents)
+-- 8. 文件資料表 (documents)
 -- -------------------------------------------
 CREATE TABLE IF NOT EXISTS `documents` (
     `id` BIGINT UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '文件 ID',
@@ -101,6 +171,7 @@ CREATE TABLE IF NOT EXISTS `documents` (
     `status` ENUM('PENDING', 'PROCESSING', 'COMPLETED', 'FAILED') NOT NULL DEFAULT 'PENDING' COMMENT '處理狀態',
     `chunk_count` INT UNSIGNED DEFAULT 0 COMMENT 'Chunk 數量',
     `metadata_json` JSON DEFAULT NULL COMMENT '擴充資料',
+    `reingest_from_chunk_id` BIGINT UNSIGNED DEFAULT NULL COMMENT '重新匯入起點：id 小於此值的切塊為發布中的舊版本',
     `created_at` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '建立時間',
     `updated_at` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新時間',
     PRIMARY KEY (`id`),
@@ -110,16 +181,16 @@ CREATE TABLE IF NOT EXISTS `documents` (
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='文件資料表';
 
 -- -------------------------------------------
--- 6. 文件區塊資料表 (document_chunks)
+-- 9. 文件區塊資料表 (document_chunks)
 -- -------------------------------------------
 CREATE TABLE IF NOT EXISTS `document_chunks` (
-    `id` BIGINT UNSIGNED NOT NULL AUTO_INCREMENT COMMENT 'Chunk ID',
+    `id` BIGINT UNSIGNED NOT NULL COMMENT 'Chunk ID（應用程式配置的時間排序 ID）',
     `document_id` BIGINT UNSIGNED NOT NULL COMMENT '文件 ID',
     `chunk_index` INT UNSIGNED NOT NULL COMMENT 'Chunk 順序索引',
-    `content` TEXT NOT NULL COMMENT 'Chunk 內容',
+    `content` MEDIUMBLOB NOT NULL COMMENT 'Chunk 內容（0x00 + 版本標頭；v1 原文、v2 deflate 壓縮）',
     `token_count` INT UNSIGNED DEFAULT NULL COMMENT 'Token 數量',
     `page_number` INT UNSIGNED DEFAULT NULL COMMENT '對應頁碼（PDF 適用）',
-    `embedding_vector` JSON DEFAULT NULL COMMENT '向量嵌入（若不使用外部向量庫）',
+    `embedding` MEDIUMBLOB DEFAULT NULL COMMENT '向量嵌入（0x00 + 格式標頭；float32 或 int8 + scale，little-endian）',
     `metadata_json` JSON DEFAULT NULL COMMENT '擴充資料（段落索引等）',
     `created_at` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '建立時間',
     PRIMARY KEY (`id`),
@@ -132,7 +203,7 @@ CREATE TABLE IF NOT EXISTS `document_chunks` (
 -- 可選：用量追蹤資料表 (usage_logs)
 -- ============================================
 CREATE TABLE IF NOT EXISTS `usage_logs` (
-    `id` BIGINT UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '記錄 ID',
+    `id` BIGINT UNSIGNED NOT NULL COMMENT '記錄 ID（應用程式配置的時間排序 ID）',
     `user_id` BIGINT UNSIGNED NOT NULL COMMENT '使用者 ID',
     `chat_id` BIGINT UNSIGNED DEFAULT NULL COMMENT '對話 ID',
     `message_id` BIGINT UNSIGNED DEFAULT NULL COMMENT '訊息 ID',
@@ -0,0 +1,101 @@
+-- ============================================
+-- GPT-like 全端聊天網頁 - 既有資料庫升級 (MySQL 8)
+-- schema.sql 已包含最新結構（新環境直接執行 schema.sql 即可）
+-- 舊版資料庫請依序執行下列語句；新增的資料表請重新執行 schema.sql（CREATE TABLE IF NOT EXISTS）
+-- ============================================
+
+SET NAMES utf8mb4;
+
+-- -------------------------------------------
+-- 對話列表 keyset 分頁索引
+-- 取代 idx_chats_user_id（外鍵改由新索引的最左欄位支撐）
+-- -------------------------------------------
+ALTER TABLE `chats`
+    ADD INDEX `idx_chats_user_updated_id` (`user_id`, `updated_at`, `id`),
+    DROP INDEX `idx_chats_user_id`;
+
+-- -------------------------------------------
+-- 訊息序號 (messages.seq) 與對話序號計數器
+-- 既有訊息依 created_at, id 回填序號
+-- -------------------------------------------
+ALTER TABLE `chats`
+    ADD COLUMN `last_message_seq` BIGINT UNSIGNED NOT NULL DEFAULT 0 COMMENT '最後一則訊息序號（配置 messages.seq 用）' AFTER `title`;
+
+ALTER TABLE `messages`
+    ADD COLUMN `seq` BIGINT UNSIGNED NULL COMMENT '對話內訊息序號（分頁 / 同步游標）' AFTER `chat_id`;
+
+UPDATE `messages` m
+    JOIN (SELECT `id`, ROW_NUMBER() OVER (PARTITION BY `chat_id` ORDER BY `created_at`, `id`) AS `rn`
+          FROM `messages`) r ON r.`id` = m.`id`
+SET m.`seq` = r.`rn`;
+
+UPDATE `chats` c
+SET c.`last_message_seq` = (SELECT COALESCE(MAX(m.`seq`), 0) FROM `messages` m WHERE m.`chat_id` = c.`id`),
+    c.`updated_at` = c.`updated_at`;
+
+ALTER TABLE `messages`
+    MODIFY COLUMN `seq` BIGINT UNSIGNED NOT NULL COMMENT '對話內訊息序號（分頁 / 同步游標）',
+    ADD UNIQUE KEY `uk_messages_chat_seq` (`chat_id`, `seq`),
+    DROP INDEX `idx_messages_chat_id`;
+
+-- -------------------------------------------
+-- 訊息 / 文件區塊內容改為二進位欄位（大於 1 KB 以 deflate 壓縮儲存）
+-- 既有 TEXT 內容轉為 UTF-8 位元組（無版本標頭），應用程式讀取時會自動辨識
+-- -------------------------------------------
+ALTER TABLE `messages`
+    MODIFY COLUMN `content` MEDIUMBLOB NOT NULL COMMENT '訊息內容（0x00 + 版本標頭；v1 原文、v2 deflate 壓縮）';
+
+ALTER TABLE `document_chunks`
+    MODIFY COLUMN `content` MEDIUMBLOB NOT NULL COMMENT 'Chunk 內容（0x00 + 版本標頭；v1 原文、v2 deflate 壓縮）';
+
+-- -------------------------------------------
+-- 對話 / 知識庫改為「先隱藏、背景分批清除」
+-- 另需執行 schema.sql 中的 purge_jobs 建表語句
+-- -------------------------------------------
+ALTER TABLE `chats`
+    ADD COLUMN `deleted_at` DATETIME DEFAULT NULL COMMENT '刪除時間（已隱藏，等待背景清除）' AFTER `updated_at`;
+
+ALTER TABLE `knowledge_bases`
+    ADD COLUMN `deleted_at` DATETIME DEFAULT NULL COMMENT '刪除時間（已隱藏，等待背景清除）' AFTER `updated_at`;
+
+-- -------------------------------------------
+-- 訊息 / 用量記錄 / 文件區塊改由應用程式配置時間排序 ID（可批次 INSERT）
+-- 新 ID 一律大於既有自動遞增值，排序不受影響；移除 AUTO_INCREMENT 避免混用造成碰撞
+-- -------------------------------------------
+ALTER TABLE `messages`
+    MODIFY COLUMN `id` BIGINT UNSIGNED NOT NULL COMMENT '訊息 ID（應用程式配置的時間排序 ID）';
+
+ALTER TABLE `usage_logs`
+    MODIFY COLUMN `id` BIGINT UNSIGNED NOT NULL COMMENT '記錄 ID（應用程式配置的時間排序 ID）';
+
+ALTER TABLE `document_chunks`
+    MODIFY COLUMN `id` BIGINT UNSIGNED NOT NULL COMMENT 'Chunk ID（應用程式配置的時間排序 ID）';
+
+-- -------------------------------------------
+-- 閒置對話訊息封存（冷熱分層）
+-- 另需執行 schema.sql 中的 chat_archives 建表語句
+-- -------------------------------------------
+ALTER TABLE `chats`
+    ADD COLUMN `archived_at` DATETIME DEFAULT NULL COMMENT '封存時間（非 NULL 表示訊息已移至 chat_archives）' AFTER `deleted_at`,
+    ADD COLUMN `rehydrated_at` DATETIME DEFAULT NULL COMMENT '最後一次自封存還原的時間（延後再次封存）' AFTER `archived_at`;
+
+-- -------------------------------------------
+-- 向量嵌入由 JSON 改為緊湊二進位（float32 / int8）
+-- 應用程式啟動後由 EmbeddingMigrationService 於背景分批轉換並清空 embedding_vector；
+-- log 出現 "Embedding migration complete" 後即可刪除舊欄位
+-- -------------------------------------------
+ALTER TABLE `document_chunks`
+    ADD COLUMN `embedding` MEDIUMBLOB DEFAULT NULL COMMENT '向量嵌入（0x00 + 格式標頭；float32 或 int8 + scale，little-endian）' AFTER `page_number`;
+
+-- ALTER TABLE `document_chunks` DROP COLUMN `embedding_vector`;
+
+-- -------------------------------------------
+-- 文件重新匯入：新版本切塊完成前不發布，完成時與舊版本切換
+-- -------------------------------------------
+ALTER TABLE `documents`
+    ADD COLUMN `reingest_from_chunk_id` BIGINT UNSIGNED DEFAULT NULL COMMENT '重新匯入起點：id 小於此值的切塊為發布中的舊版本' AFTER `metadata_json`;
+
+-- -------------------------------------------
+-- 時間排序 ID 節點編號改由資料庫租約配發（未設定 app.id.node-id 時）
+-- 需執行 schema.sql 中的 id_node_leases 建表語句
+-- -------------------------------------------